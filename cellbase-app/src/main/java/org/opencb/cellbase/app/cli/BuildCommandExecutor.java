@@ -17,6 +17,7 @@
 package org.opencb.cellbase.app.cli;
 
 import com.beust.jcommander.ParameterException;
+import org.opencb.biodata.tools.sequence.FastaIndexManager;
 import org.opencb.cellbase.app.transform.*;
 import org.opencb.cellbase.app.transform.clinical.variant.ClinVarParser;
 import org.opencb.cellbase.app.transform.clinical.variant.ClinicalVariantParser;
@@ -50,6 +51,8 @@ public class BuildCommandExecutor extends CommandExecutor {
     public static final String HPO_INPUT_FILE_NAME = "ALL_SOURCES_ALL_FREQUENCIES_diseases_to_genes_to_phenotypes.txt";
     public static final String DBSNP_INPUT_FILE_NAME = "All.vcf.gz";
 
+    private static final String GENOME_FASTA_INDEX_STEP = "genome_fasta_index";
+
     private CliOptionsParser.BuildCommandOptions buildCommandOptions;
 
     private Path input = null;
@@ -124,80 +127,144 @@ public class BuildCommandExecutor extends CommandExecutor {
                     buildOptions = buildCommandOptions.data.split(",");
                 }
 
-                for (int i = 0; i < buildOptions.length; i++) {
-                    String buildOption = buildOptions[i];
-
-                    logger.info("Building '{}' data", buildOption);
-                    CellBaseParser parser = null;
-                    switch (buildOption) {
-                        case EtlCommons.GENOME_INFO_DATA:
-                            buildGenomeInfo();
-                            break;
-                        case EtlCommons.GENOME_DATA:
-                            parser = buildGenomeSequence();
-                            break;
-                        case EtlCommons.GENE_DATA:
-                            parser = buildGene();
-                            break;
-                        case EtlCommons.VARIATION_DATA:
-                            parser = buildVariation();
-                            break;
-                        case EtlCommons.VARIATION_FUNCTIONAL_SCORE_DATA:
-                            parser = buildCadd();
-                            break;
-                        case EtlCommons.REGULATION_DATA:
-                            parser = buildRegulation();
-                            break;
-                        case EtlCommons.PROTEIN_DATA:
-                            parser = buildProtein();
-                            break;
-                        case EtlCommons.PPI_DATA:
-                            parser = getInteractionParser();
-                            break;
-                        case EtlCommons.CONSERVATION_DATA:
-                            parser = buildConservation();
-                            break;
-                        case EtlCommons.DRUG_DATA:
-                            parser = buildDrugParser();
-                            break;
-                        case EtlCommons.CLINICAL_VARIANTS_DATA:
-                            parser = buildClinicalVariants();
-                            break;
-                        case EtlCommons.CLINVAR_DATA:
-                            parser = buildClinvar();
-                            break;
-                        case EtlCommons.COSMIC_DATA:
-                            parser = buildCosmic();
-                            break;
-                        case EtlCommons.GWAS_DATA:
-                            parser = buildGwas();
-                            break;
-                        case EtlCommons.STRUCTURAL_VARIANTS_DATA:
-                            parser = buildStructuralVariants();
-                            break;
-                        case EtlCommons.REPEATS_DATA:
-                            parser = buildRepeats();
-                            break;
-                        default:
-                            logger.error("Build option '" + buildCommandOptions.data + "' is not valid");
-                            break;
-                    }
-
-                    if (parser != null) {
-                        try {
-                            parser.parse();
-                        } catch (Exception e) {
-                            logger.error("Error executing 'build' command " + buildCommandOptions.data + ": " + e.getMessage(), e);
-                        }
-                        parser.disconnect();
-                    }
+                BuildStepScheduler scheduler = new BuildStepScheduler(buildCommandOptions.numThreads, getMemoryBudget());
+                for (String buildOption : buildOptions) {
+                    addBuildStep(scheduler, buildOption);
                 }
+                scheduler.run();
             }
         } catch (ParameterException e) {
             logger.error("Error parsing build command line parameters: " + e.getMessage(), e);
         } catch (IOException e) {
             logger.error(e.getMessage());
+        } catch (InterruptedException e) {
+            logger.error("Build interrupted: " + e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Steps read disjoint inputs and write disjoint outputs so they can run in parallel. Steps reading the genome
+     * sequence through a FastaIndexManager depend on the step creating its RocksDB index, which cannot be created by
+     * two steps at the same time. The index is opened for writing and locked by the readers too, so clinical_variants
+     * runs after gene. Memory estimates, in MB, come from builds of the human genome.
+     */
+    private void addBuildStep(BuildStepScheduler scheduler, String buildOption) {
+        if (scheduler.contains(buildOption)) {
+            logger.warn("Build option '{}' is repeated", buildOption);
+            return;
+        }
+        List<String> noDependencies = Collections.emptyList();
+        List<String> genomeIndex = Collections.singletonList(GENOME_FASTA_INDEX_STEP);
+        switch (buildOption) {
+            case EtlCommons.GENOME_INFO_DATA:
+                scheduler.addStep(new BuildStepScheduler.Step(buildOption, noDependencies, 512, this::buildGenomeInfo));
+                break;
+            case EtlCommons.GENOME_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 2048, this::buildGenomeSequence);
+                break;
+            case EtlCommons.GENE_DATA:
+                addGenomeFastaIndexStep(scheduler);
+                addParserStep(scheduler, buildOption, genomeIndex, flexibleGTFParsing ? 12288 : 6144, this::buildGene);
+                break;
+            case EtlCommons.VARIATION_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 4096, this::buildVariation);
+                break;
+            case EtlCommons.VARIATION_FUNCTIONAL_SCORE_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 2048, this::buildCadd);
+                break;
+            case EtlCommons.REGULATION_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 4096, this::buildRegulation);
+                break;
+            case EtlCommons.PROTEIN_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 4096, this::buildProtein);
+                break;
+            case EtlCommons.PPI_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 2048, this::getInteractionParser);
+                break;
+            case EtlCommons.CONSERVATION_DATA:
+                // Chromosomes are parsed by a pool of its own
+                addParserStep(scheduler, buildOption, noDependencies, 2048, getConservationThreads(), this::buildConservation);
+                break;
+            case EtlCommons.DRUG_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 1024, this::buildDrugParser);
+                break;
+            case EtlCommons.CLINICAL_VARIANTS_DATA:
+                addGenomeFastaIndexStep(scheduler);
+                addParserStep(scheduler, buildOption, Arrays.asList(GENOME_FASTA_INDEX_STEP, EtlCommons.GENE_DATA), 6144,
+                        this::buildClinicalVariants);
+                break;
+            case EtlCommons.CLINVAR_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 4096, this::buildClinvar);
+                break;
+            case EtlCommons.COSMIC_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 2048, this::buildCosmic);
+                break;
+            case EtlCommons.GWAS_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 2048, this::buildGwas);
+                break;
+            case EtlCommons.STRUCTURAL_VARIANTS_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 1024, this::buildStructuralVariants);
+                break;
+            case EtlCommons.REPEATS_DATA:
+                addParserStep(scheduler, buildOption, noDependencies, 1024, this::buildRepeats);
+                break;
+            default:
+                logger.error("Build option '" + buildOption + "' is not valid");
+                break;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ParserBuilder {
+        CellBaseParser build() throws Exception;
+    }
+
+    private void addParserStep(BuildStepScheduler scheduler, String buildOption, List<String> dependencies, long memory,
+                               ParserBuilder parserBuilder) {
+        addParserStep(scheduler, buildOption, dependencies, memory, 1, parserBuilder);
+    }
+
+    private void addParserStep(BuildStepScheduler scheduler, String buildOption, List<String> dependencies, long memory,
+                               int threads, ParserBuilder parserBuilder) {
+        scheduler.addStep(new BuildStepScheduler.Step(buildOption, dependencies, memory, threads, () -> {
+            logger.info("Building '{}' data", buildOption);
+            CellBaseParser parser = parserBuilder.build();
+            try {
+                parser.parse();
+            } finally {
+                parser.disconnect();
+            }
+        }));
+    }
+
+    private void addGenomeFastaIndexStep(BuildStepScheduler scheduler) {
+        if (!scheduler.contains(GENOME_FASTA_INDEX_STEP)) {
+            scheduler.addStep(new BuildStepScheduler.Step(GENOME_FASTA_INDEX_STEP, Collections.emptyList(), 2048, () -> {
+                FastaIndexManager fastaIndexManager = new FastaIndexManager(getFastaReferenceGenome(), true);
+                try {
+                    if (!fastaIndexManager.isConnected()) {
+                        fastaIndexManager.index();
+                    }
+                } finally {
+                    fastaIndexManager.close();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Half of the build threads, so that conservation does not hold the whole scheduler.
+     */
+    private int getConservationThreads() {
+        return Math.max(1, buildCommandOptions.numThreads / 2);
+    }
+
+    private long getMemoryBudget() {
+        if (buildCommandOptions.memory > 0) {
+            return buildCommandOptions.memory;
         }
+        return Runtime.getRuntime().maxMemory() / (1024 * 1024);
     }
 
     private CellBaseParser buildStructuralVariants() {
@@ -220,7 +287,8 @@ public class BuildCommandExecutor extends CommandExecutor {
         return new RepeatsParser(repeatsFilesDir, serializer);
     }
 
-    private void copyVersionFiles(List<Path> pathList) {
+    // Steps may copy the same file, e.g. clinvarVersion.json for clinvar and clinical_variants
+    private synchronized void copyVersionFiles(List<Path> pathList) {
         for (Path path : pathList) {
             try {
                 Files.copy(path, output.resolve(path.getFileName()), StandardCopyOption.REPLACE_EXISTING);
@@ -305,7 +373,8 @@ public class BuildCommandExecutor extends CommandExecutor {
         copyVersionFiles(Arrays.asList(variationFunctionalScorePath.resolve("caddVersion.json")));
         Path caddFilePath = variationFunctionalScorePath.resolve(CADD_INPUT_FILE_NAME);
         CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(output, "cadd");
-        return new CaddScoreParser(caddFilePath, serializer);
+        Path binaryOutputFile = buildCommandOptions.caddBinary ? output.resolve("cadd.bin") : null;
+        return new CaddScoreParser(caddFilePath, binaryOutputFile, serializer);
     }
 
     private CellBaseParser buildRegulation() {
@@ -374,7 +443,7 @@ public class BuildCommandExecutor extends CommandExecutor {
         // TODO: chunk size is not really used in ConvervedRegionParser, remove?
         int conservationChunkSize = MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE;
         CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(output);
-        return new ConservationParser(conservationFilesDir, conservationChunkSize, serializer);
+        return new ConservationParser(conservationFilesDir, conservationChunkSize, getConservationThreads(), serializer);
     }
 
     private CellBaseParser buildClinicalVariants() {
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the build steps as a DAG: a step starts as soon as all its dependencies have finished successfully, there are
+ * enough free threads and its estimated memory fits in the remaining memory budget. A step needing more memory or
+ * threads than are free is only run when nothing else is running. Steps depending on a failed step are skipped.
+ */
+public class BuildStepScheduler {
+
+    public enum Status {
+        DONE, FAILED, SKIPPED
+    }
+
+    @FunctionalInterface
+    public interface StepAction {
+        void run() throws Exception;
+    }
+
+    public static class Step {
+
+        private final String name;
+        private final List<String> dependencies;
+        private final long memory;
+        private final int threads;
+        private final StepAction action;
+
+        /**
+         * @param name         unique name of the step
+         * @param dependencies steps that must finish before this one, those not scheduled are ignored
+         * @param memory       estimated memory used by the step in MB
+         * @param action       the work to do
+         */
+        public Step(String name, List<String> dependencies, long memory, StepAction action) {
+            this(name, dependencies, memory, 1, action);
+        }
+
+        /**
+         * @param name         unique name of the step
+         * @param dependencies steps that must finish before this one, those not scheduled are ignored
+         * @param memory       estimated memory used by the step in MB
+         * @param threads      number of threads used by the step, taken from the parallelism of the scheduler
+         * @param action       the work to do
+         */
+        public Step(String name, List<String> dependencies, long memory, int threads, StepAction action) {
+            this.name = name;
+            this.dependencies = dependencies;
+            this.memory = memory;
+            this.threads = Math.max(1, threads);
+            this.action = action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        public long getMemory() {
+            return memory;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+    }
+
+    public static class StepResult {
+
+        private final String name;
+        private final Status status;
+        private final long time;
+        private final String error;
+
+        StepResult(String name, Status status, long time, String error) {
+            this.name = name;
+            this.status = status;
+            this.time = time;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return elapsed time in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + status + " in " + time / 1000 + "s" + (error != null ? " (" + error + ")" : "");
+        }
+    }
+
+    private final int parallelism;
+    private final long memoryBudget;
+    private final Map<String, Step> steps;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * @param parallelism  maximum number of threads used by the steps run at the same time
+     * @param memoryBudget memory in MB shared by the steps running at the same time
+     */
+    public BuildStepScheduler(int parallelism, long memoryBudget) {
+        this.parallelism = Math.max(1, parallelism);
+        this.memoryBudget = memoryBudget;
+        this.steps = new LinkedHashMap<>();
+    }
+
+    public BuildStepScheduler addStep(Step step) {
+        if (steps.containsKey(step.getName())) {
+            throw new IllegalArgumentException("Build step '" + step.getName() + "' added twice");
+        }
+        steps.put(step.getName(), step);
+        return this;
+    }
+
+    public boolean contains(String name) {
+        return steps.containsKey(name);
+    }
+
+    /**
+     * Runs all the steps and waits for them to finish.
+     *
+     * @return the result of every step in the order they finished
+     * @throws InterruptedException if interrupted while waiting for the steps
+     */
+    public List<StepResult> run() throws InterruptedException {
+        checkCycles();
+
+        Map<String, StepResult> results = new LinkedHashMap<>();
+        List<Step> pending = new ArrayList<>(steps.values());
+        Set<String> running = new HashSet<>();
+        long usedMemory = 0;
+        int usedThreads = 0;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        CompletionService<StepResult> completionService = new ExecutorCompletionService<>(executorService);
+        try {
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                Iterator<Step> iterator = pending.iterator();
+                while (iterator.hasNext() && usedThreads < parallelism) {
+                    Step step = iterator.next();
+                    String failedDependency = getFailedDependency(step, results);
+                    if (failedDependency != null) {
+                        iterator.remove();
+                        StepResult result = new StepResult(step.getName(), Status.SKIPPED, 0,
+                                "dependency '" + failedDependency + "' did not finish");
+                        logger.warn("Skipping build step {}", result);
+                        results.put(step.getName(), result);
+                        // Steps depending on this one may be earlier in the list
+                        iterator = pending.iterator();
+                    } else if (isReady(step, results) && (running.isEmpty()
+                            || (usedMemory + step.getMemory() <= memoryBudget && usedThreads + step.getThreads() <= parallelism))) {
+                        iterator.remove();
+                        running.add(step.getName());
+                        usedMemory += step.getMemory();
+                        usedThreads += step.getThreads();
+                        logger.info("Starting build step '{}', {} steps running", step.getName(), running.size());
+                        completionService.submit(() -> execute(step));
+                    }
+                }
+
+                if (running.isEmpty()) {
+                    // Nothing can be started and nothing is running, only skipped steps were left
+                    continue;
+                }
+                StepResult result = getResult(completionService.take());
+                running.remove(result.getName());
+                usedMemory -= steps.get(result.getName()).getMemory();
+                usedThreads -= steps.get(result.getName()).getThreads();
+                results.put(result.getName(), result);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        logSummary(results.values());
+        return new ArrayList<>(results.values());
+    }
+
+    private StepResult execute(Step step) {
+        long start = System.currentTimeMillis();
+        try {
+            step.action.run();
+            StepResult result = new StepResult(step.getName(), Status.DONE, System.currentTimeMillis() - start, null);
+            logger.info("Build step {}", result);
+            return result;
+        } catch (Exception e) {
+            logger.error("Error executing build step '" + step.getName() + "': " + e.getMessage(), e);
+            return new StepResult(step.getName(), Status.FAILED, System.currentTimeMillis() - start, e.toString());
+        }
+    }
+
+    private StepResult getResult(Future<StepResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // execute() catches all exceptions, only errors get here
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private boolean isReady(Step step, Map<String, StepResult> results) {
+        for (String dependency : step.getDependencies()) {
+            if (steps.containsKey(dependency) && !results.containsKey(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getFailedDependency(Step step, Map<String, StepResult> results) {
+        for (String dependency : step.getDependencies()) {
+            StepResult result = results.get(dependency);
+            if (result != null && result.getStatus() != Status.DONE) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    private void checkCycles() {
+        Map<String, Integer> state = new HashMap<>();
+        for (String name : steps.keySet()) {
+            checkCycles(name, state, new ArrayDeque<>());
+        }
+    }
+
+    // state: 1 visiting, 2 visited
+    private void checkCycles(String name, Map<String, Integer> state, Deque<String> path) {
+        Integer current = state.get(name);
+        if (current != null && current == 2) {
+            return;
+        }
+        path.addLast(name);
+        if (current != null && current == 1) {
+            throw new IllegalArgumentException("Cyclic dependency between build steps: " + path);
+        }
+        state.put(name, 1);
+        for (String dependency : steps.get(name).getDependencies()) {
+            if (steps.containsKey(dependency)) {
+                checkCycles(dependency, state, path);
+            }
+        }
+        state.put(name, 2);
+        path.removeLast();
+    }
+
+    private void logSummary(Collection<StepResult> results) {
+        logger.info("Build summary:");
+        int failed = 0;
+        for (StepResult result : results) {
+            if (result.getStatus() == Status.DONE) {
+                logger.info("\t{}", result);
+            } else {
+                logger.error("\t{}", result);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            logger.error("{} out of {} build steps did not finish", failed, results.size());
+        }
+    }
+
+}
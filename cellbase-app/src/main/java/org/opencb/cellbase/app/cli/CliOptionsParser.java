@@ -184,6 +184,18 @@ public class CliOptionsParser {
                 + "requires more memory and is less efficient.", required = false, arity = 0)
         public boolean flexibleGTFParsing = false;
 
+        @Parameter(names = {"--num-threads"}, description = "Number of build steps run in parallel, steps only wait for the"
+                + " steps they depend on", required = false, arity = 1)
+        public int numThreads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = {"--memory"}, description = "Memory budget in MB shared by the build steps running at the same"
+                + " time, by default the maximum heap size of the JVM", required = false, arity = 1)
+        public long memory = 0;
+
+        @Parameter(names = {"--cadd-binary"}, description = "Also write CADD scores in a compact binary file, cadd.bin, next to"
+                + " the JSON file", required = false, arity = 0)
+        public boolean caddBinary = false;
+
     }
 
 
@@ -224,6 +236,15 @@ public class CliOptionsParser {
         @Parameter(names = {"--num-threads"}, description = "Number of threads used for loading data into the database", required = false, arity = 1)
         public int numThreads = 2;
 
+        @Parameter(names = {"--num-readers"}, description = "Number of threads used for reading the input files. Files are read"
+                + " concurrently and big uncompressed files are split in shards", required = false, arity = 1)
+        public int numReaders = 1;
+
+        @Parameter(names = {"--resume"}, description = "Resume an interrupted load run with the same --data. Progress is"
+                + " recorded in a journal file in the input directory, the input already committed to the database is"
+                + " skipped", required = false, arity = 0)
+        public boolean resume = false;
+
         @DynamicParameter(names = "-D", description = "Dynamic parameters go here", hidden = true)
         public Map<String, String> loaderParams = new HashMap<>();
 
@@ -358,6 +379,12 @@ public class CliOptionsParser {
         @Parameter(names = {"--custom-file-fields"}, description = "String containing a colon separated list (no spaces in between) of field lists which indicate the info fields to be taken from each VCF file. For example: field1File1,field2File1:field1File2,field3File2", required = false, arity = 1)
         public String customFileFields;
 
+        @Parameter(names = {"--sorted-input"}, description = "The input file is coordinate-sorted, as the custom annotation"
+                + " files. Custom annotation files are read alongside the input instead of being indexed. If not set, the input"
+                + " and custom files are checked and custom files are only indexed when some file is not sorted",
+                required = false, arity = 0)
+        public boolean sortedInput;
+
         @Parameter(names = {"--max-open-files"}, description = "Integer containing the maximum number of files that can remain open at a certain time point. This option is just used when providing custom annotation files. Custom annotation indexation may create and keep hundreds of files open at the same time for efficiency purposes. This parameter limits that number of open files: -1 indicates no limit and may be OK in most cases.", required = false, arity = 1)
         public int maxOpenFiles = -1;
 
@@ -367,6 +394,16 @@ public class CliOptionsParser {
         @Parameter(names = {"--gzip"}, description = "Whether the output file is gzipped", required = false, arity = 0)
         public boolean gzip;
 
+        @Parameter(names = {"--region"}, description = "Comma separated list (no empty spaces in between) of regions to"
+                + " annotate, e.g. 1:1000000-2000000,X:300000-400000. The input must be a bgzipped VCF indexed with tabix,"
+                + " only the lines overlapping the regions are read", required = false, arity = 1)
+        public String region;
+
+        @Parameter(names = {"--region-file"}, description = "BED file with the regions to annotate, e.g. the targets of a"
+                + " gene panel. The input must be a bgzipped VCF indexed with tabix. Can be used together with --region",
+                required = false, arity = 1)
+        public String regionFile;
+
         @Parameter(names = {"--input-variation-collection"}, description = "Input will be a local installation of the"
                 + "CellBase variation collection. Connection details must be properly specified at a configuration.json file",
                 required = false, arity = 0)
@@ -378,6 +415,11 @@ public class CliOptionsParser {
                 required = false, arity = 1)
         public String chromosomeList;
 
+        @Parameter(names = {"--parallel-chromosomes"}, description = "Number of chromosomes of the variation collection"
+                + " annotated at the same time, biggest chromosomes first. All of them share the --num-threads annotation"
+                + " threads. Only used together with --input-variation-collection", required = false, arity = 1)
+        public int parallelChromosomes = 1;
+
         @Parameter(names = {"--benchmark"}, description = "Run variant annotation benchmark. If this flag is enabled,"
                 + "a directory containing a list of Variant Effect Predictor (VEP) files is expected at the -i parameter."
                 + " All .vep files within the directory will be processed - the directory must contain only .vep files that "
@@ -385,6 +427,36 @@ public class CliOptionsParser {
                 required = false, arity = 0)
         public boolean benchmark;
 
+        @Parameter(names = {"--throughput-benchmark"}, description = "Comma separated list (no empty spaces in between) of"
+                + " synthetic datasets to measure the annotation throughput with, instead of annotating an input file:"
+                + " snv, indel, sv, phased. Datasets are generated once in the directory given at -i, or in the directory"
+                + " of the output if -i is not provided, and reused by later runs. The output (-o) is a JSON report with"
+                + " the variants/s, allocation rate and latency percentiles of every annotator",
+                required = false, arity = 1)
+        public String throughputBenchmark;
+
+        @Parameter(names = {"--benchmark-variants"}, description = "Number of variants of every --throughput-benchmark dataset",
+                required = false, arity = 1)
+        public int benchmarkVariants = 100000;
+
+        @Parameter(names = {"--benchmark-seed"}, description = "Seed of the --throughput-benchmark datasets",
+                required = false, arity = 1)
+        public long benchmarkSeed = 1;
+
+        @Parameter(names = {"--benchmark-stand-in"}, description = "Annotate the --throughput-benchmark datasets with seeded,"
+                + " made up annotations instead of querying CellBase, so that the rest of the annotation path is measured"
+                + " without a CellBase database", required = false, arity = 0)
+        public boolean benchmarkStandIn;
+
+        @Parameter(names = {"--benchmark-baseline"}, description = "Report of a previous --throughput-benchmark run. The"
+                + " command fails if the throughput or the p99 batch latency of a dataset regresses by more than"
+                + " --benchmark-max-regression", required = false, arity = 1)
+        public String benchmarkBaseline;
+
+        @Parameter(names = {"--benchmark-max-regression"}, description = "Maximum regression against --benchmark-baseline,"
+                + " as a percentage of the baseline", required = false, arity = 1)
+        public double benchmarkMaxRegression = 10;
+
         @Parameter(names = {"--reference-fasta"}, description = "Required for left aligning when annotating in remote"
                 + " mode, i.e. --local NOT present. It's strongly discouraged to use --reference-fasta together with "
                 + " the --local flag. IF however --reference-fasta is set together with --local, then the genome sequence "
@@ -394,6 +466,11 @@ public class CliOptionsParser {
                 required = false, arity = 1)
         public String referenceFasta;
 
+        @Parameter(names = {"--cadd-file"}, description = "CADD scores file written by the build with --cadd-binary. When"
+                + " present, functional scores are read from this file instead of the database. Requires --local",
+                required = false, arity = 1)
+        public String caddFile;
+
         @Parameter(names = {"--skip-normalize"}, description = "Skip normalization of input variants. Should not be used"
                 + " when the input (-i, --input-file) is a VCF file. Normalization includes splitting multi-allele positions "
                 + "read from a VCF, allele trimming and decomposing MNVs. Has"
@@ -471,6 +548,12 @@ public class CliOptionsParser {
         @Parameter(names = {"--clinical-annotation-file"}, description = "Specify a file containing variant annotations for CellBase clinical data. Accepted file formats: VEP's file format", required = false)
         public String clinicalAnnotationFilename = null;
 
+        @Parameter(names = {"-s", "--species"}, description = "Name of the species, valid format include 'Homo sapiens' or 'hsapiens'", required = false, arity = 1)
+        public String species = "Homo sapiens";
+
+        @Parameter(names = {"--interval-frequencies"}, description = "Comma separated list of data to precompute histogram interval frequencies for, e.g. gene,variation,regulation. 'regulation' includes TFBS", required = false, arity = 1)
+        public String intervalFrequencies = null;
+
     }
 
     public static final String ANSI_RESET = "\u001B[0m";
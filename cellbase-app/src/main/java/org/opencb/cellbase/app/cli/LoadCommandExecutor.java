@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.app.cli;
 
+import org.opencb.cellbase.core.loader.LoadJournal;
 import org.opencb.cellbase.core.loader.LoadRunner;
 import org.opencb.cellbase.core.loader.LoaderException;
 
@@ -27,6 +28,10 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -79,9 +84,10 @@ public class LoadCommandExecutor extends CommandExecutor {
 
         if (loadCommandOptions.data != null) {
 
-            if (loadCommandOptions.loaderParams.containsKey("mongodb-index-folder")) {
-                configuration.getDatabases().getMongodb().getOptions().put("mongodb-index-folder",
-                        loadCommandOptions.loaderParams.get("mongodb-index-folder"));
+            for (String option : Arrays.asList("mongodb-index-folder", "mongodb-bulk-load", "mongodb-write-concern")) {
+                if (loadCommandOptions.loaderParams.containsKey(option)) {
+                    configuration.getDatabases().getMongodb().getOptions().put(option, loadCommandOptions.loaderParams.get(option));
+                }
             }
             // If 'authenticationDatabase' is not passed by argument then we read it from configuration.json
             if (loadCommandOptions.loaderParams.containsKey("authenticationDatabase")) {
@@ -90,7 +96,9 @@ public class LoadCommandExecutor extends CommandExecutor {
             }
 
 //                loadRunner = new LoadRunner(loader, database, loadCommandOptions.loaderParams, numThreads, configuration);
-            loadRunner = new LoadRunner(loader, database, numThreads, configuration);
+            loadRunner = new LoadRunner(loader, database, numThreads, loadCommandOptions.numReaders, configuration);
+            LoadJournal loadJournal = createLoadJournal();
+            loadRunner.setLoadJournal(loadJournal);
 
             String[] loadOptions;
             if (loadCommandOptions.data.equals("all")) {
@@ -172,11 +180,37 @@ public class LoadCommandExecutor extends CommandExecutor {
                 } catch (IllegalAccessException | InstantiationException | InvocationTargetException | ExecutionException
                         | NoSuchMethodException | InterruptedException | ClassNotFoundException | LoaderException | IOException e) {
                     e.printStackTrace();
+                } finally {
+                    // Bulk loads drop the indexes, they are created even if the index step was not reached
+                    loadRunner.createDroppedIndexes();
+                }
+            }
+
+            if (loadJournal != null) {
+                try {
+                    loadJournal.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing load journal: {}", e.getMessage());
                 }
             }
         }
     }
 
+    /**
+     * The journal is kept in the input directory, one per database and --data value, so that an interrupted load can be
+     * resumed with --resume. Loads of other data into the same database use journals of their own.
+     */
+    private LoadJournal createLoadJournal() {
+        String journalName = "load_" + database + "_" + loadCommandOptions.data.replaceAll("[^A-Za-z0-9_-]", "_") + ".journal";
+        Path journalFile = (Files.isDirectory(input) ? input : input.toAbsolutePath().getParent()).resolve(journalName);
+        try {
+            return new LoadJournal(journalFile, loadCommandOptions.resume);
+        } catch (IOException e) {
+            logger.warn("Load journal '{}' could not be created, the load will not be resumable: {}", journalFile, e.getMessage());
+            return null;
+        }
+    }
+
     private void loadStructuralVariants() throws NoSuchMethodException, IllegalAccessException, InstantiationException,
             LoaderException, InvocationTargetException, ClassNotFoundException {
         Path path = input.resolve(EtlCommons.STRUCTURAL_VARIANTS_JSON + ".json.gz");
@@ -246,10 +280,9 @@ public class LoadCommandExecutor extends CommandExecutor {
                 return entry.getFileName().toString().startsWith("variation_chr");
             });
 
-            for (Path entry : stream) {
-                logger.info("Loading file '{}'", entry.toString());
-                loadRunner.load(input.resolve(entry.getFileName()), "variation");
-            }
+            List<Path> files = getFiles(stream);
+            logger.info("Loading files '{}'", files);
+            loadRunner.load(files, "variation");
             loadIfExists(input.resolve("ensemblVariationVersion.json"), METADATA);
             loadRunner.index("variation");
             // Custom update required e.g. population freqs loading
@@ -259,6 +292,17 @@ public class LoadCommandExecutor extends CommandExecutor {
         }
     }
 
+    private List<Path> getFiles(DirectoryStream<Path> stream) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path entry : stream) {
+            files.add(input.resolve(entry.getFileName()));
+        }
+        stream.close();
+        // Biggest files first so that the readers are kept busy until the end
+        files.sort(Comparator.comparingLong((Path path) -> path.toFile().length()).reversed());
+        return files;
+    }
+
     private void loadConservation() throws NoSuchMethodException, InterruptedException, ExecutionException,
             InstantiationException, IllegalAccessException, InvocationTargetException, ClassNotFoundException,
             IOException, LoaderException {
@@ -267,10 +311,9 @@ public class LoadCommandExecutor extends CommandExecutor {
             return entry.getFileName().toString().startsWith("conservation_");
         });
 
-        for (Path entry : stream) {
-            logger.info("Loading file '{}'", entry.toString());
-            loadRunner.load(input.resolve(entry.getFileName()), "conservation");
-        }
+        List<Path> files = getFiles(stream);
+        logger.info("Loading files '{}'", files);
+        loadRunner.load(files, "conservation");
         loadIfExists(input.resolve("gerpVersion.json"), METADATA);
         loadIfExists(input.resolve("phastConsVersion.json"), METADATA);
         loadIfExists(input.resolve("phyloPVersion.json"), METADATA);
@@ -285,10 +328,9 @@ public class LoadCommandExecutor extends CommandExecutor {
             return entry.getFileName().toString().startsWith("prot_func_pred_");
         });
 
-        for (Path entry : stream) {
-            logger.info("Loading file '{}'", entry.toString());
-            loadRunner.load(input.resolve(entry.getFileName()), "protein_functional_prediction");
-        }
+        List<Path> files = getFiles(stream);
+        logger.info("Loading files '{}'", files);
+        loadRunner.load(files, "protein_functional_prediction");
         loadRunner.index("protein_functional_prediction");
     }
 
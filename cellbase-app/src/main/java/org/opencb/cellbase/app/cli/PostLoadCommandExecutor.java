@@ -18,9 +18,14 @@ package org.opencb.cellbase.app.cli;
 
 import com.beust.jcommander.ParameterException;
 import org.opencb.biodata.formats.variant.annotation.io.VepFormatReader;
+import org.opencb.cellbase.core.api.DBAdaptorFactory;
+import org.opencb.cellbase.lib.impl.MongoDBAdaptorFactory;
+import org.opencb.commons.datastore.core.QueryResult;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by fjlopez on 14/04/15.
@@ -31,7 +36,10 @@ public class PostLoadCommandExecutor extends CommandExecutor {
 
     private Path clinicalAnnotationFilename = null;
     private String assembly = null;
+    private List<String> intervalFrequencies = null;
     private static final int CLINICAL_ANNOTATION_BATCH_SIZE = 1000;
+    private static final List<String> INTERVAL_FREQUENCIES_DATA = Arrays.asList(EtlCommons.GENE_DATA, EtlCommons.VARIATION_DATA,
+            EtlCommons.REGULATION_DATA);
 //    private static final int CLINICAL_ANNOTATION_BATCH_SIZE=1000;
 
     // TODO: remove constructor, just for debugging purposes
@@ -50,8 +58,9 @@ public class PostLoadCommandExecutor extends CommandExecutor {
         checkParameters();
         if (clinicalAnnotationFilename != null) {
             loadClinicalAnnotation();
-        } else {
-            throw new ParameterException("Only post-load of clinical annotations is available right now.");
+        }
+        if (intervalFrequencies != null) {
+            createIntervalFrequencies();
         }
     }
 
@@ -75,8 +84,45 @@ public class PostLoadCommandExecutor extends CommandExecutor {
                         + "Available assemblies: GRCh37, GRCh38");
             }
 
-        } else {
-            throw new ParameterException("Please check command line syntax. Provide a valid input file name.");
+        }
+
+        if (postLoadCommandOptions.intervalFrequencies != null) {
+            intervalFrequencies = Arrays.asList(postLoadCommandOptions.intervalFrequencies.split(","));
+            for (String data : intervalFrequencies) {
+                if (!INTERVAL_FREQUENCIES_DATA.contains(data)) {
+                    throw new ParameterException("Interval frequencies cannot be precomputed for '" + data + "'. Available data: "
+                            + String.join(", ", INTERVAL_FREQUENCIES_DATA));
+                }
+            }
+        }
+
+        if (clinicalAnnotationFilename == null && intervalFrequencies == null) {
+            throw new ParameterException("Please check command line syntax. Provide a valid input file name or the data to "
+                    + "precompute interval frequencies for.");
+        }
+    }
+
+    private void createIntervalFrequencies() {
+        logger.info("Connecting to the database...");
+        DBAdaptorFactory dbAdaptorFactory = new MongoDBAdaptorFactory(configuration);
+        for (String data : intervalFrequencies) {
+            logger.info("Precomputing '{}' interval frequencies...", data);
+            QueryResult<Long> queryResult;
+            switch (data) {
+                case EtlCommons.GENE_DATA:
+                    queryResult = dbAdaptorFactory.getGeneDBAdaptor(postLoadCommandOptions.species, postLoadCommandOptions.assembly)
+                            .createIntervalFrequencies();
+                    break;
+                case EtlCommons.VARIATION_DATA:
+                    queryResult = dbAdaptorFactory.getVariationDBAdaptor(postLoadCommandOptions.species,
+                            postLoadCommandOptions.assembly).createIntervalFrequencies();
+                    break;
+                default:
+                    queryResult = dbAdaptorFactory.getRegulationDBAdaptor(postLoadCommandOptions.species,
+                            postLoadCommandOptions.assembly).createIntervalFrequencies();
+                    break;
+            }
+            logger.info("{} '{}' intervals precomputed in {}s", queryResult.first(), data, queryResult.getDbTime() / 1000);
         }
     }
 
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import htsjdk.variant.vcf.VCFHeader;
 import org.apache.commons.lang3.tuple.Pair;
 import org.bson.Document;
 import org.opencb.biodata.formats.variant.annotation.io.JsonAnnotationWriter;
@@ -28,21 +29,32 @@ import org.opencb.biodata.formats.variant.annotation.io.VariantAvroDataWriter;
 import org.opencb.biodata.formats.variant.annotation.io.VepFormatReader;
 import org.opencb.biodata.formats.variant.annotation.io.VepFormatWriter;
 import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.tools.sequence.FastaIndexManager;
 import org.opencb.biodata.tools.variant.VariantJsonReader;
 import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.biodata.tools.variant.VariantVcfHtsjdkReader;
 import org.opencb.cellbase.app.cli.variant.annotation.*;
+import org.opencb.cellbase.app.cli.variant.annotation.benchmark.StandInVariantAnnotator;
+import org.opencb.cellbase.app.cli.variant.annotation.benchmark.SyntheticVcfGenerator;
+import org.opencb.cellbase.app.cli.variant.annotation.benchmark.ThroughputBenchmark;
+import org.opencb.cellbase.app.cli.variant.annotation.benchmark.ThroughputReport;
+import org.opencb.cellbase.app.cli.variant.annotation.benchmark.VariantMix;
 import org.opencb.cellbase.app.cli.variant.annotation.indexers.CustomAnnotationVariantIndexer;
 import org.opencb.cellbase.app.cli.variant.annotation.indexers.PopulationFrequencyVariantIndexer;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.app.cli.variant.annotation.indexers.VariantIndexer;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.client.rest.CellBaseClient;
 import org.opencb.cellbase.core.api.DBAdaptorFactory;
 import org.opencb.cellbase.core.api.GenomeDBAdaptor;
+import org.opencb.cellbase.core.api.VariantDBAdaptor;
+import org.opencb.cellbase.core.variant.annotation.CaddScoreFileAdaptor;
 import org.opencb.cellbase.core.variant.annotation.CellBaseNormalizerSequenceAdaptor;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotationCalculator;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
@@ -61,14 +73,22 @@ import org.rocksdb.RocksIterator;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
 
 import static java.nio.file.StandardOpenOption.APPEND;
 
@@ -87,11 +107,16 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private boolean local;
     private boolean cellBaseAnnotation;
     private boolean benchmark;
+    private VariantMix[] throughputBenchmarkMixes;
+    private Path benchmarkBaseline;
     private Path referenceFasta;
+    private Path caddFile;
     private boolean normalize;
     private boolean decompose;
     private boolean leftAlign;
     private List<String> chromosomeList;
+    private List<Region> regions;
+    private Map<String, Long> chromosomeSizes;
     private int port;
     private String species;
     private String assembly;
@@ -101,6 +126,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private Path populationFrequenciesFile = null;
     private Boolean completeInputPopulation;
     private List<VariantIndexer> variantIndexerList;
+    private List<CustomAnnotationMergeJoin> customAnnotationMergeJoins;
     private List<String> customFileIds;
     private List<List<String>> customFileFields;
     private int maxOpenFiles = -1;
@@ -111,6 +137,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private QueryOptions serverQueryOptions;
 
     private DBAdaptorFactory dbAdaptorFactory = null;
+    private CaddScoreFileAdaptor caddScoreFileAdaptor = null;
 
     private final int QUEUE_CAPACITY = 10;
     private final String TMP_DIR = "/tmp/";
@@ -139,6 +166,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             checkParameters();
             if (benchmark) {
                 runBenchmark();
+            } else if (throughputBenchmarkMixes != null) {
+                runThroughputBenchmark();
             } else {
                 runAnnotation();
             }
@@ -194,11 +223,72 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                 benchmarkTaskList = new ArrayList<>(numThreads);
         for (int i = 0; i < numThreads; i++) {
             // Benchmark variants are read from a VEP file, must not normalize
-            benchmarkTaskList.add(new BenchmarkTask(createCellBaseAnnotator(), fastaIndexManager));
+            benchmarkTaskList.add(new BenchmarkTask(createCellBaseAnnotator(serverQueryOptions), fastaIndexManager));
         }
         return benchmarkTaskList;
     }
 
+    /**
+     * Annotates synthetic datasets with the configured annotators, writes the throughput report to the output file and
+     * fails if a dataset regresses against the baseline report.
+     */
+    private void runThroughputBenchmark() throws Exception {
+        Path datasetDirectory = input != null ? input : output.toAbsolutePath().getParent();
+        // Custom files and population frequencies are indexed as for an input file, their annotators are measured too
+        getIndexes();
+        ThroughputBenchmark.AnnotatorFactory annotatorFactory = new ThroughputBenchmark.AnnotatorFactory() {
+            @Override
+            public List<VariantAnnotator> createAnnotators(VariantMix mix) {
+                // Phased datasets are meant to measure phased annotation
+                QueryOptions queryOptions = new QueryOptions(serverQueryOptions);
+                queryOptions.put("ignorePhase", serverQueryOptions.getBoolean("ignorePhase") && !mix.isPhased());
+                VariantAnnotator cellBaseAnnotator = variantAnnotationCommandOptions.benchmarkStandIn
+                        ? new StandInVariantAnnotator(variantAnnotationCommandOptions.benchmarkSeed)
+                        : createCellBaseAnnotator(queryOptions);
+                return VariantAnnotationCommandExecutor.this.createAnnotators(cellBaseAnnotator, queryOptions);
+            }
+
+            @Override
+            public VariantNormalizer.VariantNormalizerConfig createNormalizerConfig() throws IOException {
+                return getNormalizerConfig();
+            }
+        };
+
+        try {
+            ThroughputBenchmark throughputBenchmark = new ThroughputBenchmark(numThreads, batchSize, normalize);
+            ThroughputReport report = new ThroughputReport(Instant.now().toString(), numThreads, batchSize);
+            for (VariantMix mix : throughputBenchmarkMixes) {
+                Path vcfFile = SyntheticVcfGenerator.generate(datasetDirectory, mix, variantAnnotationCommandOptions.benchmarkVariants,
+                        variantAnnotationCommandOptions.benchmarkSeed);
+                report.getDatasets().put(mix.name().toLowerCase(), throughputBenchmark.run(vcfFile, mix, annotatorFactory));
+            }
+            report.write(output);
+            logger.info("Throughput report written to {}", output);
+
+            if (benchmarkBaseline != null) {
+                List<String> regressions = report.findRegressions(ThroughputReport.read(benchmarkBaseline),
+                        variantAnnotationCommandOptions.benchmarkMaxRegression);
+                for (String regression : regressions) {
+                    logger.error("Regression found against {}: {}", benchmarkBaseline, regression);
+                }
+                if (!regressions.isEmpty()) {
+                    throw new IllegalStateException(regressions.size() + " regressions found against " + benchmarkBaseline);
+                }
+                logger.info("No regressions found against {}", benchmarkBaseline);
+            }
+        } finally {
+            if (customFiles != null || populationFrequenciesFile != null) {
+                closeIndexes();
+            }
+            if (dbAdaptorFactory != null) {
+                dbAdaptorFactory.close();
+            }
+            if (caddScoreFileAdaptor != null) {
+                caddScoreFileAdaptor.close();
+            }
+        }
+    }
+
     private boolean runAnnotation() throws Exception {
 
         // Build indexes for custom files and/or population frequencies file
@@ -233,16 +323,20 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // If a variant file is provided then we annotate it. Lines in the input file can be computationally
             // expensive to parse, i.e.: multisample vcf with thousands of samples. A specific task is created to enable
             // parallel parsing of these lines
-            if (input != null) {
-                VariantReader variantReader = getVariantReader(input);
-                List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> variantAnnotatorTaskList
-                        = getVariantAnnotatorTaskList();
-                DataWriter<Variant> dataWriter = getVariantDataWriter(output.toString());
-
-                ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, batchSize, QUEUE_CAPACITY, false);
-                ParallelTaskRunner<Variant, Variant> runner =
-                        new ParallelTaskRunner<Variant, Variant>(variantReader, variantAnnotatorTaskList, dataWriter, config);
-                runner.run();
+            if (input != null && regions != null) {
+                // Phased annotation keeps whole regions in a batch, a phase set is expected to lie within one region
+                annotateVcfLines(new TabixRegionLineReader(input, regions, numThreads,
+                        serverQueryOptions.getBoolean("ignorePhase")));
+            } else if (input != null && useParallelBgzfReader()) {
+                logger.info("Inflating {} in parallel", input);
+                annotateVcfLines(new ParallelBgzfLineReader(input, numThreads));
+                writeRemainingPopFrequencies();
+            } else if (input != null) {
+                DataReader<Variant> variantReader = getVariantReader(input);
+                if (customAnnotationMergeJoins != null) {
+                    variantReader = new MergeJoinVariantReader(variantReader, customAnnotationMergeJoins);
+                }
+                annotate(variantReader, getVariantAnnotatorTaskList(), output.toString(), false);
                 // For internal use only - will only be run when -Dpopulation-frequencies is activated
                 writeRemainingPopFrequencies();
             } else {
@@ -252,21 +346,20 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 //                    Query query = new Query("$match",
 //                            new Document("annotation.consequenceTypes", new Document("$exists", 0)));
 //                    Query query = new Query();
-                    QueryOptions options = new QueryOptions("include", "chromosome,start,reference,alternate,type");
+                    QueryOptions options = new QueryOptions("include", VariationDataReader.INCLUDE_FIELDS);
                     List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> variantAnnotatorTaskList
                             = getVariantAnnotatorTaskList();
-                    ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, batchSize, QUEUE_CAPACITY, false);
-
-                    for (String chromosome : chromosomeList) {
-                        logger.info("Annotating chromosome {}", chromosome);
-                        Query query = new Query("chromosome", chromosome);
-                        DataReader<Variant> dataReader =
-                                new VariationDataReader(dbAdaptorFactory.getVariationDBAdaptor(species), query, options);
-                        DataWriter<Variant> dataWriter = getVariantDataWriter(output.toString() + "/"
-                                + VARIATION_ANNOTATION_FILE_PREFIX + chromosome + ".json.gz");
-                        ParallelTaskRunner<Variant, Variant> runner =
-                                new ParallelTaskRunner<Variant, Variant>(dataReader, variantAnnotatorTaskList, dataWriter, config);
-                        runner.run();
+                    if (variantAnnotationCommandOptions.parallelChromosomes > 1) {
+                        annotateVariationRanges(options, variantAnnotatorTaskList);
+                    } else {
+                        for (String chromosome : chromosomeList) {
+                            logger.info("Annotating chromosome {}", chromosome);
+                            Query query = new Query("chromosome", chromosome);
+                            DataReader<Variant> dataReader =
+                                    new VariationDataReader(dbAdaptorFactory.getVariationDBAdaptor(species), query, options);
+                            annotate(dataReader, variantAnnotatorTaskList, output.toString() + "/"
+                                    + VARIATION_ANNOTATION_FILE_PREFIX + chromosome + ".json.gz", false);
+                        }
                     }
                 }
             }
@@ -277,12 +370,121 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             if (dbAdaptorFactory != null) {
                 dbAdaptorFactory.close();
             }
+            if (caddScoreFileAdaptor != null) {
+                caddScoreFileAdaptor.close();
+            }
         }
 
         logger.info("Variant annotation finished.");
         return false;
     }
 
+    /**
+     * Annotates the variation collection several chromosomes at a time. Big chromosomes are split in ranges so that they
+     * are annotated in parallel too, each range is written to its own part file and the parts of a chromosome are
+     * concatenated once all are annotated. Ranges are only used with JSON output since gzip files can be concatenated.
+     */
+    private void annotateVariationRanges(QueryOptions options,
+                                         List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> variantAnnotatorTaskList)
+            throws Exception {
+        int parallelChromosomes = variantAnnotationCommandOptions.parallelChromosomes;
+        long maxRangeSize = Long.MAX_VALUE;
+        if (outputFormat.equals(FileFormat.JSON) && !chromosomeSizes.isEmpty()) {
+            maxRangeSize = Math.max(1, Collections.max(chromosomeSizes.values()) / parallelChromosomes);
+        }
+
+        Map<String, Region> ranges = new HashMap<>();
+        Map<String, List<String>> chromosomeRanges = new HashMap<>();
+        Map<String, Long> rangeSizes = new HashMap<>();
+        for (String chromosome : chromosomeList) {
+            Long size = chromosomeSizes.get(chromosome);
+            if (size == null || size <= maxRangeSize) {
+                chromosomeRanges.put(chromosome, Collections.singletonList(chromosome));
+                rangeSizes.put(chromosome, size == null ? -1L : size);
+                continue;
+            }
+            List<String> rangeNames = new ArrayList<>();
+            int numRanges = (int) ((size + maxRangeSize - 1) / maxRangeSize);
+            for (Region range : VariationDataReader.splitChromosome(chromosome, size, numRanges)) {
+                rangeNames.add(range.toString());
+                ranges.put(range.toString(), range);
+                rangeSizes.put(range.toString(), (long) (range.getEnd() - range.getStart() + 1));
+            }
+            chromosomeRanges.put(chromosome, rangeNames);
+        }
+
+        List<String> jobs = new ArrayList<>();
+        chromosomeList.forEach(chromosome -> jobs.addAll(chromosomeRanges.get(chromosome)));
+        VariantDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor(species);
+        Function<String, DataReader<Variant>> readers = job -> ranges.containsKey(job)
+                ? new VariationDataReader(variationDBAdaptor, ranges.get(job), options)
+                : new VariationDataReader(variationDBAdaptor, new Query("chromosome", job), options);
+        // Variation annotation files are always gzipped
+        AnnotationEncoder encoder = getAnnotationEncoder(true);
+        if (encoder != null) {
+            // Progress of all the chromosomes written in parallel
+            ProgressLogger progressLogger = new ProgressLogger("Num written variants:");
+            new ParallelVariationAnnotator<>(EncodingTask.wrap(variantAnnotatorTaskList, encoder), batchSize, parallelChromosomes,
+                    QUEUE_CAPACITY)
+                    .run(jobs, rangeSizes, readers, job -> new EncodedAnnotationWriter(getVariationAnnotationFile(job), encoder)
+                            .setProgressLogger(progressLogger));
+        } else {
+            new ParallelVariationAnnotator<>(variantAnnotatorTaskList, batchSize, parallelChromosomes, QUEUE_CAPACITY)
+                    .run(jobs, rangeSizes, readers, job -> getVariantDataWriter(getVariationAnnotationFile(job).toString()));
+        }
+
+        for (String chromosome : chromosomeList) {
+            List<String> rangeNames = chromosomeRanges.get(chromosome);
+            if (rangeNames.size() > 1) {
+                Path chromosomeFile = output.resolve(VARIATION_ANNOTATION_FILE_PREFIX + chromosome + ".json.gz");
+                try (OutputStream outputStream = Files.newOutputStream(chromosomeFile)) {
+                    for (String rangeName : rangeNames) {
+                        Path rangeFile = getVariationAnnotationFile(rangeName);
+                        Files.copy(rangeFile, outputStream);
+                        Files.delete(rangeFile);
+                    }
+                }
+            }
+        }
+    }
+
+    private Path getVariationAnnotationFile(String job) {
+        // Range names such as 1:1-2000000 are not valid file names everywhere
+        return output.resolve(VARIATION_ANNOTATION_FILE_PREFIX + job.replace(':', '_') + ".json.gz");
+    }
+
+    /**
+     * Bgzipped VCFs are inflated in parallel and their lines parsed by the annotator tasks, rather than decompressed and
+     * parsed by the reader thread. Phase sets may be split between batches, so it is only used when the phase is ignored.
+     */
+    private boolean useParallelBgzfReader() throws IOException {
+        return inputFormat == FileFormat.VCF && customAnnotationMergeJoins == null
+                && serverQueryOptions.getBoolean("ignorePhase") && ParallelBgzfLineReader.isBgzf(input);
+    }
+
+    /**
+     * Annotates the lines of a bgzipped VCF, which are parsed by the annotator tasks.
+     */
+    private void annotateVcfLines(DataReader<String> lineReader) throws Exception {
+        FullVcfCodec vcfCodec = new FullVcfCodec();
+        VCFHeader header;
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(input))) {
+            header = (VCFHeader) vcfCodec.readActualHeader(vcfCodec.makeSourceFromStream(inputStream));
+        }
+
+        // Breakends whose mate is in another batch are kept in the shared context until the mate is parsed
+        VcfStringAnnotatorTask.SharedContext sharedContext = new VcfStringAnnotatorTask.SharedContext(numThreads);
+        List<ParallelTaskRunner.TaskWithException<String, Variant, Exception>> variantAnnotatorTaskList = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            // Same study and file ids as the variants read by VariantVcfHtsjdkReader
+            variantAnnotatorTaskList.add(new VcfStringAnnotatorTask(header, vcfCodec.getVCFHeaderVersion(), createAnnotators(),
+                    sharedContext, normalize, getNormalizerConfig(), getVariantStudyMetadata(input)));
+        }
+
+        // Sorted, annotated batches are written in the same order than the lines were read
+        annotate(lineReader, variantAnnotatorTaskList, output.toString(), true);
+    }
+
     private VariantReader getVariantReader(Path input) throws IOException {
         return getVariantReader(input, serverQueryOptions.getBoolean("ignorePhase"));
     }
@@ -295,10 +497,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         switch (getFileFormat(input)) {
             case VCF:
                 logger.info("Using HTSJDK to read variants.");
-                return (new VariantVcfHtsjdkReader(input,
-                        new VariantFileMetadata(input.getFileName().toString(),
-                                input.toAbsolutePath().toString()).toVariantStudyMetadata(input.getFileName()
-                                .toString()), variantNormalizer)).setIgnorePhaseSet(ignorePhase);
+                return (new VariantVcfHtsjdkReader(input, getVariantStudyMetadata(input), variantNormalizer))
+                        .setIgnorePhaseSet(ignorePhase);
             case JSON:
                 logger.info("Using a JSON parser to read variants...");
                 return new VariantJsonReader(input, variantNormalizer);
@@ -308,6 +508,11 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         }
     }
 
+    private static VariantStudyMetadata getVariantStudyMetadata(Path input) {
+        return new VariantFileMetadata(input.getFileName().toString(), input.toAbsolutePath().toString())
+                .toVariantStudyMetadata(input.getFileName().toString());
+    }
+
     private void writeRemainingPopFrequencies() throws IOException {
         // For internal use only - will only be run when -Dpopulation-frequencies is activated
         if (populationFrequenciesFile != null) {
@@ -318,20 +523,19 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 
                 // Population frequencies rocks db will always be the last one in the list. DO NOT change the name of the
                 // rocksIterator variable - for some unexplainable reason Java VM crashes if it's named "iterator"
-                RocksIterator rocksIterator = variantIndexerList.get(variantIndexerList.size() - 1)
-                        .getDbIndex()
-                        .newIterator();
+                PopulationFrequencyVariantIndexer populationFrequencyIndexer =
+                        (PopulationFrequencyVariantIndexer) variantIndexerList.get(variantIndexerList.size() - 1);
+                RocksIterator rocksIterator = populationFrequencyIndexer.getDbIndex().newIterator();
 
-                ObjectMapper mapper = new ObjectMapper();
+                VariantIndexCodec variantCodec = new VariantIndexCodec();
                 logger.info("Writing variants with frequencies that were not found within the input file {} to {}",
                         populationFrequenciesFile.toString(), output.toString());
                 int counter = 0;
                 for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-                    Variant variant = mapper.readValue(rocksIterator.value(), Variant.class);
-                    // The additional attributes field initialized with an empty map is used as the flag to indicate that
-                    // this variant was not visited during the annotation process
-                    if (variant.getAnnotation().getAdditionalAttributes() == null) {
-                        dataWriter.write(variant);
+                    byte[] dbContent = rocksIterator.value();
+                    // Variants found during the annotation process are flagged in the indexer
+                    if (!populationFrequencyIndexer.isVisited(dbContent)) {
+                        dataWriter.write(PopulationFrequencyVariantIndexer.decodeVariant(dbContent, variantCodec));
                     }
 
                     counter++;
@@ -349,21 +553,45 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         }
     }
 
+    private void parseRegions() throws IOException {
+        if (input == null || inputFormat != FileFormat.VCF || !ParallelBgzfLineReader.isBgzf(input)
+                || !Files.exists(Paths.get(input + ".tbi"))) {
+            throw new ParameterException("--region and --region-file require a bgzipped VCF input file indexed with tabix"
+                    + " (a .tbi file next to it)");
+        }
+        regions = new ArrayList<>();
+        try {
+            if (variantAnnotationCommandOptions.region != null) {
+                regions.addAll(TabixRegionLineReader.parseRegions(variantAnnotationCommandOptions.region));
+            }
+            if (variantAnnotationCommandOptions.regionFile != null) {
+                Path regionFile = Paths.get(variantAnnotationCommandOptions.regionFile);
+                FileUtils.checkFile(regionFile);
+                regions.addAll(TabixRegionLineReader.readBedFile(regionFile));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(e.getMessage());
+        }
+        if (regions.isEmpty()) {
+            throw new ParameterException("No regions found in --region nor --region-file");
+        }
+    }
+
     private void setChromosomeList() {
 
         if (variantAnnotationCommandOptions.chromosomeList != null
                 && !variantAnnotationCommandOptions.chromosomeList.isEmpty()) {
             chromosomeList = Arrays.asList(variantAnnotationCommandOptions.chromosomeList.split(","));
             logger.info("Setting chromosomes {} for variant annotation", chromosomeList.toString());
+            // Sizes are only needed to start the annotation of parallel chromosomes from the biggest one
+            if (variantAnnotationCommandOptions.parallelChromosomes > 1) {
+                getGenomeChromosomes();
+            }
         // If the user does not provide any chromosome, fill chromosomeList with all available chromosomes in the
         // database
         } else {
             logger.info("Getting full list of chromosome names in the database");
-            dbAdaptorFactory = new MongoDBAdaptorFactory(configuration);
-            GenomeDBAdaptor genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor(species, assembly);
-            QueryResult queryResult = genomeDBAdaptor.getGenomeInfo(new QueryOptions("include", "chromosomes.name"));
-
-            List<Document> chromosomeDocumentList = (List<Document>) ((List<Document>) queryResult.getResult()).get(0).get("chromosomes");
+            List<Document> chromosomeDocumentList = getGenomeChromosomes();
             chromosomeList = new ArrayList<>(chromosomeDocumentList.size());
             for (Document chromosomeDocument : chromosomeDocumentList) {
                 chromosomeList.add((String) chromosomeDocument.get("name"));
@@ -372,6 +600,59 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         }
     }
 
+    private List<Document> getGenomeChromosomes() {
+        if (dbAdaptorFactory == null) {
+            dbAdaptorFactory = new MongoDBAdaptorFactory(configuration);
+        }
+        GenomeDBAdaptor genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor(species, assembly);
+        QueryResult queryResult = genomeDBAdaptor.getGenomeInfo(new QueryOptions("include", "chromosomes.name,chromosomes.size"));
+
+        List<Document> chromosomeDocumentList = (List<Document>) ((List<Document>) queryResult.getResult()).get(0).get("chromosomes");
+        chromosomeSizes = new HashMap<>(chromosomeDocumentList.size());
+        for (Document chromosomeDocument : chromosomeDocumentList) {
+            if (chromosomeDocument.get("size") instanceof Number) {
+                chromosomeSizes.put((String) chromosomeDocument.get("name"), ((Number) chromosomeDocument.get("size")).longValue());
+            }
+        }
+        return chromosomeDocumentList;
+    }
+
+    /**
+     * Runs the annotator tasks. JSON and Avro annotations are encoded and compressed by the annotator threads, so that
+     * the writer thread just appends bytes.
+     *
+     * @param filename output file
+     * @param sorted   whether batches are written in the order they were read
+     */
+    private <I> void annotate(DataReader<I> dataReader, List<ParallelTaskRunner.TaskWithException<I, Variant, Exception>> taskList,
+                              String filename, boolean sorted) throws Exception {
+        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, batchSize, QUEUE_CAPACITY, sorted);
+        AnnotationEncoder encoder = getAnnotationEncoder(filename.endsWith(".gz"));
+        if (encoder != null) {
+            new ParallelTaskRunner<>(dataReader, EncodingTask.wrap(taskList, encoder),
+                    new EncodedAnnotationWriter(Paths.get(filename), encoder)
+                            .setProgressLogger(new ProgressLogger("Num written variants:")), config).run();
+        } else {
+            new ParallelTaskRunner<>(dataReader, taskList, getVariantDataWriter(filename), config).run();
+        }
+    }
+
+    /**
+     * @param gzip whether JSON output is gzipped, Avro output is always compressed with deflate as VariantAvroDataWriter
+     * @return encoder of the output format, null if the output is not encoded by the annotator threads
+     */
+    private AnnotationEncoder getAnnotationEncoder(boolean gzip) {
+        if (outputFormat.equals(FileFormat.JSON)) {
+            return new JsonAnnotationEncoder(gzip);
+        } else if (outputFormat.equals(FileFormat.AVRO)) {
+            return new AvroAnnotationEncoder(true);
+        } else if (outputFormat.equals(FileFormat.VEP)) {
+            // Never compressed, as VepFormatWriter
+            return new VepAnnotationEncoder();
+        }
+        return null;
+    }
+
     private DataWriter<Variant> getVariantDataWriter(String filename) {
         DataWriter<Variant> dataWriter = null;
         if (outputFormat.equals(FileFormat.JSON)) {
@@ -435,20 +716,29 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     }
 
     private List<VariantAnnotator> createAnnotators() {
+        return createAnnotators(createCellBaseAnnotator(serverQueryOptions), serverQueryOptions);
+    }
+
+    private List<VariantAnnotator> createAnnotators(VariantAnnotator cellBaseAnnotator, QueryOptions queryOptions) {
         List<VariantAnnotator> variantAnnotatorList;
         variantAnnotatorList = new ArrayList<>();
 
         // CellBase annotator is always called
-        variantAnnotatorList.add(createCellBaseAnnotator());
+        variantAnnotatorList.add(cellBaseAnnotator);
 
         // Include custom annotators if required
         if (customFiles != null) {
             for (int i = 0; i < customFiles.size(); i++) {
-                if (customFiles.get(i).toString().endsWith(".vcf") || customFiles.get(i).toString().endsWith(".vcf.gz")) {
+                if (customAnnotationMergeJoins != null) {
+                    variantAnnotatorList.add(new MergeJoinVcfVariantAnnotator(customFiles.get(i).toString(),
+                            customAnnotationMergeJoins.get(i),
+                            customFileIds.get(i),
+                            queryOptions));
+                } else if (customFiles.get(i).toString().endsWith(".vcf") || customFiles.get(i).toString().endsWith(".vcf.gz")) {
                     variantAnnotatorList.add(new VcfVariantAnnotator(customFiles.get(i).toString(),
                             variantIndexerList.get(i).getDbIndex(),
                             customFileIds.get(i),
-                            serverQueryOptions));
+                            queryOptions));
                 }
             }
         }
@@ -458,14 +748,14 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // Rocks db indexer for population frequencies  is always the last in the list
             int i = variantIndexerList.size() - 1;
             variantAnnotatorList.add(new PopulationFrequenciesAnnotator(populationFrequenciesFile.toString(),
-                    variantIndexerList.get(i).getDbIndex(), serverQueryOptions));
+                    (PopulationFrequencyVariantIndexer) variantIndexerList.get(i), queryOptions));
 
         }
 
         return variantAnnotatorList;
     }
 
-    private VariantAnnotator createCellBaseAnnotator() {
+    private VariantAnnotator createCellBaseAnnotator(QueryOptions queryOptions) {
         // Assume annotation of CellBase variation collection will always be carried out from a local installation
         if (local || cellBaseAnnotation) {
             // dbAdaptorFactory may have been already initialized at execute if annotating CellBase variation collection
@@ -475,8 +765,20 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // Normalization should just be performed in one place: before calling the annotation calculator - within the
             // corresponding *AnnotatorTask since the AnnotatorTasks need that the number of sent variants coincides
             // equals the number of returned annotations
-            return new CellBaseLocalVariantAnnotator(new VariantAnnotationCalculator(species, assembly,
-                    dbAdaptorFactory), serverQueryOptions);
+            VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
+                    dbAdaptorFactory);
+            if (caddFile != null) {
+                // Shared by all the annotators, only the region headers of the file are kept in memory
+                if (caddScoreFileAdaptor == null) {
+                    try {
+                        caddScoreFileAdaptor = new CaddScoreFileAdaptor(caddFile);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                variantAnnotationCalculator.setCaddScoreFileAdaptor(caddScoreFileAdaptor);
+            }
+            return new CellBaseLocalVariantAnnotator(variantAnnotationCalculator, queryOptions);
         } else {
             try {
                 ClientConfiguration clientConfiguration = ClientConfiguration.load(getClass()
@@ -491,7 +793,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 
                 // TODO: normalization must be carried out in the client - phase set must be sent together with the
                 // TODO: variant string to the server for proper phase annotation by REST
-                return new CellBaseWSVariantAnnotator(cellBaseClient.getVariantClient(), serverQueryOptions);
+                return new CellBaseWSVariantAnnotator(cellBaseClient.getVariantClient(), queryOptions);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -504,8 +806,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private void getIndexes() throws IOException, RocksDBException {
         variantIndexerList = new ArrayList<>();
 
-        // Index custom files if provided
-        if (customFiles != null) {
+        // Index custom files if provided, unless they can be merge joined with the input
+        if (customFiles != null && !createCustomAnnotationMergeJoins()) {
             for (int i = 0; i < customFiles.size(); i++) {
                 // Setting ignorePhase=true since the reader for the custom annotation indexer does not care
                 // about batches splitting phase sets
@@ -534,6 +836,47 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
         }
     }
 
+    /**
+     * Custom files are read alongside the input rather than indexed when the input and all custom files are
+     * coordinate-sorted VCFs with the chromosomes in the same order.
+     *
+     * @return whether the custom files will be merge joined with the input
+     */
+    private boolean createCustomAnnotationMergeJoins() throws IOException {
+        // Region annotation reads just some blocks of the input, custom files are indexed
+        if (input == null || inputFormat != FileFormat.VCF || regions != null) {
+            return false;
+        }
+        List<String> inputChromosomes = null;
+        if (!variantAnnotationCommandOptions.sortedInput) {
+            inputChromosomes = CustomAnnotationMergeJoin.getSortedChromosomes(input);
+            if (inputChromosomes == null) {
+                logger.info("Input file {} is not sorted, custom annotation files will be indexed", input);
+                return false;
+            }
+        }
+        List<List<String>> customChromosomes = new ArrayList<>(customFiles.size());
+        for (Path customFile : customFiles) {
+            List<String> chromosomes = CustomAnnotationMergeJoin.getSortedChromosomes(customFile);
+            if (chromosomes == null || (inputChromosomes != null
+                    && !CustomAnnotationMergeJoin.isSameOrder(inputChromosomes, chromosomes))) {
+                logger.info("Custom annotation file {} is not sorted as the input file, custom annotation files will be "
+                        + "indexed", customFile);
+                return false;
+            }
+            customChromosomes.add(chromosomes);
+        }
+
+        logger.info("Input and custom annotation files are sorted, custom annotation files will be merge joined with the input");
+        customAnnotationMergeJoins = new ArrayList<>(customFiles.size());
+        for (int i = 0; i < customFiles.size(); i++) {
+            // Setting ignorePhase=true as for the custom annotation indexer
+            customAnnotationMergeJoins.add(new CustomAnnotationMergeJoin(getVariantReader(customFiles.get(i), true),
+                    customChromosomes.get(i), customFileFields.get(i)));
+        }
+        return true;
+    }
+
     private void checkParameters() throws IOException {
 
         // Get reference genome
@@ -542,6 +885,14 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             FileUtils.checkFile(referenceFasta);
         }
 
+        if (org.apache.commons.lang.StringUtils.isNotBlank(variantAnnotationCommandOptions.caddFile)) {
+            if (!variantAnnotationCommandOptions.local) {
+                throw new ParameterException("--cadd-file can only be used together with --local");
+            }
+            caddFile = Paths.get(variantAnnotationCommandOptions.caddFile);
+            FileUtils.checkFile(caddFile);
+        }
+
         // Run benchmark
         benchmark = variantAnnotationCommandOptions.benchmark;
         if (benchmark) {
@@ -552,22 +903,50 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             }
         }
 
+        // Throughput benchmark over synthetic datasets
+        if (variantAnnotationCommandOptions.throughputBenchmark != null) {
+            try {
+                throughputBenchmarkMixes = VariantMix.parse(variantAnnotationCommandOptions.throughputBenchmark);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Invalid --throughput-benchmark datasets: "
+                        + variantAnnotationCommandOptions.throughputBenchmark + ". Valid datasets are: snv, indel, sv, phased");
+            }
+            if (variantAnnotationCommandOptions.benchmarkVariants < 1) {
+                throw new ParameterException("--benchmark-variants must be a positive number");
+            }
+            if (variantAnnotationCommandOptions.benchmarkBaseline != null) {
+                benchmarkBaseline = Paths.get(variantAnnotationCommandOptions.benchmarkBaseline);
+                FileUtils.checkFile(benchmarkBaseline);
+            }
+        }
+
         // input file
         if (variantAnnotationCommandOptions.input != null) {
             input = Paths.get(variantAnnotationCommandOptions.input);
             if (benchmark) {
                 FileUtils.checkDirectory(input);
                 normalize = false;
+            } else if (throughputBenchmarkMixes != null) {
+                // Directory of the synthetic datasets, which are normalized as any input file
+                FileUtils.checkDirectory(input);
+                normalize = !variantAnnotationCommandOptions.skipNormalize;
             } else {
                 normalize =  !variantAnnotationCommandOptions.skipNormalize;
                 FileUtils.checkFile(input);
                 inputFormat = getFileFormat(input);
             }
+        // Synthetic datasets are written next to the output and normalized as any input file
+        } else if (throughputBenchmarkMixes != null) {
+            normalize = !variantAnnotationCommandOptions.skipNormalize;
         // Expected to read from variation collection - normalization must be avoided
         } else {
             normalize = false;
         }
 
+        if (variantAnnotationCommandOptions.region != null || variantAnnotationCommandOptions.regionFile != null) {
+            parseRegions();
+        }
+
         parsePhaseConfiguration();
         decompose = !variantAnnotationCommandOptions.skipDecompose;
         leftAlign = !variantAnnotationCommandOptions.skipLeftAlign;
@@ -0,0 +1,31 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes, and compresses, batches of annotated variants in the annotator threads. Encoded batches are appended to
+ * the output file by an {@link EncodedAnnotationWriter}, which just writes bytes. Implementations are shared by all
+ * the annotator threads and must be thread safe.
+ */
+public interface AnnotationEncoder {
+
+    /**
+     * @return bytes written at the beginning of the file
+     */
+    byte[] getHeader();
+
+    /**
+     * @param variants annotated variants
+     * @return encoded variants, ready to be appended to the file after the header and any other batch
+     * @throws IOException if the variants cannot be encoded
+     */
+    byte[] encode(List<Variant> variants) throws IOException;
+
+    /**
+     * @return bytes written at the end of the file
+     */
+    byte[] getFooter();
+}
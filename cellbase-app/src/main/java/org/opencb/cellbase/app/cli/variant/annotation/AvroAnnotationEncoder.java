@@ -0,0 +1,127 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes variants as the blocks of an Avro data file of VariantAvro, the same file written by VariantAvroDataWriter.
+ * Every batch is one block, serialized and compressed by the annotator thread. Blocks end with the sync marker of the
+ * header, which is the same for all the files written with one encoder.
+ */
+public class AvroAnnotationEncoder implements AnnotationEncoder {
+
+    private static final byte[] MAGIC = {'O', 'b', 'j', 1};
+    private static final int SYNC_SIZE = 16;
+
+    private final Schema schema;
+    private final boolean deflate;
+    private final byte[] sync;
+    private final ThreadLocal<ThreadEncoder> threadEncoders;
+
+    /**
+     * @param deflate whether blocks are compressed with the deflate codec, otherwise the null codec is used
+     */
+    public AvroAnnotationEncoder(boolean deflate) {
+        this.schema = VariantAvro.getClassSchema();
+        this.deflate = deflate;
+        this.sync = new byte[SYNC_SIZE];
+        new SecureRandom().nextBytes(sync);
+        this.threadEncoders = ThreadLocal.withInitial(ThreadEncoder::new);
+    }
+
+    @Override
+    public byte[] getHeader() {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(header, null);
+        try {
+            encoder.writeFixed(MAGIC);
+            encoder.writeMapStart();
+            encoder.setItemCount(2);
+            encoder.startItem();
+            encoder.writeString("avro.codec");
+            encoder.writeBytes((deflate ? "deflate" : "null").getBytes(StandardCharsets.UTF_8));
+            encoder.startItem();
+            encoder.writeString("avro.schema");
+            encoder.writeBytes(schema.toString().getBytes(StandardCharsets.UTF_8));
+            encoder.writeMapEnd();
+            encoder.writeFixed(sync);
+            encoder.flush();
+        } catch (IOException e) {
+            // Not thrown by in memory streams
+            throw new IllegalStateException(e);
+        }
+        return header.toByteArray();
+    }
+
+    @Override
+    public byte[] encode(List<Variant> variants) throws IOException {
+        if (variants.isEmpty()) {
+            return new byte[0];
+        }
+        ThreadEncoder threadEncoder = threadEncoders.get();
+        threadEncoder.data.reset();
+        threadEncoder.encoder = EncoderFactory.get().binaryEncoder(threadEncoder.data, threadEncoder.encoder);
+        for (Variant variant : variants) {
+            threadEncoder.datumWriter.write(variant.getImpl(), threadEncoder.encoder);
+        }
+        threadEncoder.encoder.flush();
+
+        byte[] data = threadEncoder.data.getBytes();
+        int dataSize = threadEncoder.data.size();
+        if (deflate) {
+            data = threadEncoder.deflate(data, dataSize);
+            dataSize = threadEncoder.compressed.size();
+        }
+
+        // Block: number of objects, size of the serialized objects, serialized objects and sync marker
+        ByteArrayOutputStream block = new ByteArrayOutputStream(dataSize + 2 * 10 + SYNC_SIZE);
+        BinaryEncoder blockEncoder = EncoderFactory.get().binaryEncoder(block, null);
+        blockEncoder.writeLong(variants.size());
+        blockEncoder.writeLong(dataSize);
+        blockEncoder.writeFixed(data, 0, dataSize);
+        blockEncoder.writeFixed(sync);
+        blockEncoder.flush();
+        return block.toByteArray();
+    }
+
+    @Override
+    public byte[] getFooter() {
+        return new byte[0];
+    }
+
+    /**
+     * Serialization buffers of one annotator thread.
+     */
+    private class ThreadEncoder {
+        private final SpecificDatumWriter<VariantAvro> datumWriter = new SpecificDatumWriter<>(schema);
+        private final EncodingBuffer data = new EncodingBuffer();
+        private final EncodingBuffer compressed = new EncodingBuffer();
+        // Avro deflate codec: raw deflate data, with no zlib header nor checksum
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final byte[] deflateBuffer = new byte[1 << 16];
+        private BinaryEncoder encoder;
+
+        private byte[] deflate(byte[] input, int length) {
+            compressed.reset();
+            deflater.reset();
+            deflater.setInput(input, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflateBuffer);
+                compressed.write(deflateBuffer, 0, n);
+            }
+            return compressed.getBytes();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.CustomAnnotationVariantIndexer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Matches the variants of a coordinate-sorted input file with those of a coordinate-sorted custom annotation VCF
+ * without indexing it: the custom file is read alongside the input and variants are matched by position and alleles,
+ * as the RocksDB index does. Normalisation may move variants some positions, custom variants are kept until the input
+ * is POSITION_WINDOW positions ahead of them.
+ *
+ * Variants are joined by the reader thread, in the order of the input file, and the matches picked up by the annotator
+ * tasks, see MergeJoinVariantReader and MergeJoinVcfVariantAnnotator.
+ */
+public class CustomAnnotationMergeJoin {
+
+    static final int POSITION_WINDOW = 1000;
+
+    private final VariantReader customReader;
+    private final Set<String> fieldSet;
+    // Order of the chromosomes in the custom file, by normalized name as Variant does, e.g. 'chr1' is '1'
+    private final Map<String, Integer> customChromosomes;
+
+    // Custom variants of the current chromosome close to the last input variant, by start
+    private final TreeMap<Integer, List<Variant>> customVariants = new TreeMap<>();
+    // Matches not yet picked up by the annotator tasks
+    private final Map<Variant, Variant> matches = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Set<String> inputChromosomes = new HashSet<>();
+    private Iterator<Variant> customIterator = Collections.emptyIterator();
+    private Variant nextCustomVariant;
+    private String chromosome;
+    private int chromosomeOrder = -1;
+    private int maxStart;
+
+    public CustomAnnotationMergeJoin(VariantReader customReader, List<String> customChromosomes, List<String> fields) {
+        this.customReader = customReader;
+        this.fieldSet = new HashSet<>(fields);
+        this.customChromosomes = new HashMap<>();
+        for (String customChromosome : customChromosomes) {
+            this.customChromosomes.putIfAbsent(Region.normalizeChromosome(customChromosome), this.customChromosomes.size());
+        }
+    }
+
+    public void open() {
+        customReader.open();
+        customReader.pre();
+        nextCustomVariant = readCustomVariant();
+    }
+
+    /**
+     * Finds the custom variants of a batch of the input file. Batches must be joined in the order they are read.
+     *
+     * @param variantList batch of input variants
+     */
+    public void join(List<Variant> variantList) {
+        for (Variant variant : variantList) {
+            // Reference blocks are neither indexed nor annotated
+            if (VariantType.NO_VARIATION.equals(variant.getType())) {
+                continue;
+            }
+            if (!variant.getChromosome().equals(chromosome)) {
+                startChromosome(variant.getChromosome());
+            }
+            if (variant.getStart() < maxStart - POSITION_WINDOW) {
+                throw new IllegalStateException("Input file is not sorted, variant " + variant + " found after position "
+                        + chromosome + ":" + maxStart);
+            }
+            maxStart = Math.max(maxStart, variant.getStart());
+            readCustomVariants(variant.getStart() + POSITION_WINDOW);
+            customVariants.headMap(maxStart - POSITION_WINDOW).clear();
+
+            Variant customVariant = find(variant);
+            if (customVariant != null) {
+                matches.put(variant, customVariant);
+            }
+        }
+    }
+
+    /**
+     * @param variant input variant, previously joined
+     * @return the custom variant matching the input variant, null if there is none
+     */
+    public Variant remove(Variant variant) {
+        return matches.remove(variant);
+    }
+
+    public void close() {
+        customReader.post();
+        customReader.close();
+    }
+
+    private void startChromosome(String newChromosome) {
+        if (!inputChromosomes.add(newChromosome)) {
+            throw new IllegalStateException("Input file is not sorted, variants of chromosome " + newChromosome
+                    + " found after those of chromosome " + chromosome);
+        }
+        Integer order = customChromosomes.get(newChromosome);
+        if (order != null && order < chromosomeOrder) {
+            throw new IllegalStateException("Chromosomes of the input and custom files are not in the same order, "
+                    + newChromosome + " found after " + chromosome);
+        }
+        chromosome = newChromosome;
+        maxStart = 0;
+        customVariants.clear();
+        if (order == null) {
+            // Not in the custom file, the custom variants left of the chromosomes already finished are skipped
+            skipCustomVariants(chromosomeOrder + 1);
+            return;
+        }
+        chromosomeOrder = order;
+        // Custom chromosomes missing in the input are skipped
+        skipCustomVariants(order);
+    }
+
+    private void skipCustomVariants(int order) {
+        while (nextCustomVariant != null && getOrder(nextCustomVariant) < order) {
+            nextCustomVariant = readCustomVariant();
+        }
+    }
+
+    private void readCustomVariants(int maxPosition) {
+        while (nextCustomVariant != null && nextCustomVariant.getChromosome().equals(chromosome)
+                && nextCustomVariant.getStart() <= maxPosition) {
+            customVariants.computeIfAbsent(nextCustomVariant.getStart(), start -> new ArrayList<>(1))
+                    .add(CustomAnnotationVariantIndexer.getVariantToIndex(nextCustomVariant, fieldSet));
+            nextCustomVariant = readCustomVariant();
+        }
+    }
+
+    private Variant readCustomVariant() {
+        while (true) {
+            while (!customIterator.hasNext()) {
+                List<Variant> variantList = customReader.read();
+                if (variantList == null || variantList.isEmpty()) {
+                    return null;
+                }
+                customIterator = variantList.iterator();
+            }
+            Variant variant = customIterator.next();
+            if (!VariantType.NO_VARIATION.equals(variant.getType())) {
+                return variant;
+            }
+        }
+    }
+
+    private int getOrder(Variant variant) {
+        return customChromosomes.getOrDefault(variant.getChromosome(), Integer.MAX_VALUE);
+    }
+
+    private Variant find(Variant variant) {
+        Variant customVariant = null;
+        // Same variant repeated in the custom file, the last one is taken as the index keeps the last one too
+        for (Variant candidate : customVariants.getOrDefault(variant.getStart(), Collections.emptyList())) {
+            if (candidate.getEnd().equals(variant.getEnd()) && candidate.getReference().equals(variant.getReference())
+                    && candidate.getAlternate().equals(variant.getAlternate())) {
+                customVariant = candidate;
+            }
+        }
+        return customVariant;
+    }
+
+    /**
+     * Reads the chromosome and position columns of a VCF file.
+     *
+     * @param vcfFile VCF file, may be gzipped
+     * @return normalized chromosomes, e.g. '1' for 'chr1', in the order they are found, null if the file is not
+     * coordinate-sorted
+     * @throws IOException if the file cannot be read
+     */
+    public static List<String> getSortedChromosomes(Path vcfFile) throws IOException {
+        List<String> chromosomes = new ArrayList<>();
+        Set<String> chromosomeSet = new HashSet<>();
+        String currentChromosome = null;
+        long position = 0;
+        try (InputStream inputStream = vcfFile.toString().endsWith(".gz")
+                ? new GZIPInputStream(Files.newInputStream(vcfFile), 65536) : Files.newInputStream(vcfFile);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                int chromosomeEnd = line.indexOf('\t');
+                int positionEnd = line.indexOf('\t', chromosomeEnd + 1);
+                if (chromosomeEnd < 0 || positionEnd < 0) {
+                    throw new IOException("Wrong VCF line in " + vcfFile + ": " + line);
+                }
+                if (currentChromosome == null || currentChromosome.length() != chromosomeEnd
+                        || !line.startsWith(currentChromosome)) {
+                    currentChromosome = line.substring(0, chromosomeEnd);
+                    String normalizedChromosome = Region.normalizeChromosome(currentChromosome);
+                    if (!chromosomeSet.add(normalizedChromosome)) {
+                        return null;
+                    }
+                    chromosomes.add(normalizedChromosome);
+                    position = 0;
+                }
+                long newPosition = Long.parseLong(line.substring(chromosomeEnd + 1, positionEnd));
+                if (newPosition < position) {
+                    return null;
+                }
+                position = newPosition;
+            }
+        }
+        return chromosomes;
+    }
+
+    /**
+     * @param chromosomes      chromosomes of a file in order
+     * @param otherChromosomes chromosomes of other file in order
+     * @return whether the chromosomes of both files are in the same order, ignoring those in only one of them
+     */
+    public static boolean isSameOrder(List<String> chromosomes, List<String> otherChromosomes) {
+        List<String> common = new ArrayList<>(chromosomes);
+        common.retainAll(otherChromosomes);
+        List<String> otherCommon = new ArrayList<>(otherChromosomes);
+        otherCommon.retainAll(chromosomes);
+        return common.equals(otherCommon);
+    }
+}
@@ -0,0 +1,102 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.io.DataWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes the batches encoded by the annotator threads with an {@link AnnotationEncoder}. Batches are just appended
+ * between the header and the footer of the encoder.
+ */
+public class EncodedAnnotationWriter implements DataWriter<EncodedBatch> {
+
+    private final Path file;
+    private final AnnotationEncoder encoder;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private OutputStream outputStream;
+    private ProgressLogger progressLogger;
+    private long numBytes;
+
+    public EncodedAnnotationWriter(Path file, AnnotationEncoder encoder) {
+        this.file = file;
+        this.encoder = encoder;
+    }
+
+    /**
+     * @param progressLogger logs the number of variants written, null to disable it
+     * @return this writer
+     */
+    public EncodedAnnotationWriter setProgressLogger(ProgressLogger progressLogger) {
+        this.progressLogger = progressLogger;
+        return this;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            outputStream = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        writeBytes(encoder.getHeader());
+        return true;
+    }
+
+    @Override
+    public boolean write(EncodedBatch batch) {
+        writeBytes(batch.getBytes());
+        if (progressLogger != null) {
+            progressLogger.increment(batch.getNumVariants());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(List<EncodedBatch> batch) {
+        for (EncodedBatch encodedBatch : batch) {
+            write(encodedBatch);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        writeBytes(encoder.getFooter());
+        return true;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        try {
+            outputStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing " + file, e);
+        }
+        numBytes += bytes.length;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error closing " + file, e);
+        }
+        logger.info("{} bytes written to {}", numBytes, file);
+        return true;
+    }
+}
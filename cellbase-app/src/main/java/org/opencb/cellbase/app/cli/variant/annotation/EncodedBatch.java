@@ -0,0 +1,24 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+/**
+ * Batch of annotated variants encoded by an {@link AnnotationEncoder}, together with the number of variants so that
+ * the {@link EncodedAnnotationWriter} can log its progress.
+ */
+public final class EncodedBatch {
+
+    private final byte[] bytes;
+    private final int numVariants;
+
+    public EncodedBatch(byte[] bytes, int numVariants) {
+        this.bytes = bytes;
+        this.numVariants = numVariants;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getNumVariants() {
+        return numVariants;
+    }
+}
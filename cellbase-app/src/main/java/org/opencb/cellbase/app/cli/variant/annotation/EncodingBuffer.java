@@ -0,0 +1,17 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Buffer reused by the encoders of an annotator thread, gives access to the bytes written without copying them.
+ */
+class EncodingBuffer extends ByteArrayOutputStream {
+
+    EncodingBuffer() {
+        super(1 << 16);
+    }
+
+    byte[] getBytes() {
+        return buf;
+    }
+}
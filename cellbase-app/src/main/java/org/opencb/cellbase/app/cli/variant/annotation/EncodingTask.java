@@ -0,0 +1,66 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.run.ParallelTaskRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Annotator task that also encodes the annotated batch, so that the writer thread just appends the encoded bytes.
+ *
+ * @param <I> input of the annotator task, variants or VCF lines
+ */
+public class EncodingTask<I> implements ParallelTaskRunner.TaskWithException<I, EncodedBatch, Exception> {
+
+    private final ParallelTaskRunner.TaskWithException<I, Variant, Exception> annotatorTask;
+    private final AnnotationEncoder encoder;
+
+    public EncodingTask(ParallelTaskRunner.TaskWithException<I, Variant, Exception> annotatorTask, AnnotationEncoder encoder) {
+        this.annotatorTask = annotatorTask;
+        this.encoder = encoder;
+    }
+
+    /**
+     * @param annotatorTasks annotator tasks
+     * @param encoder        encoder shared by all the tasks
+     * @param <I>            input of the annotator tasks
+     * @return one encoding task for each annotator task
+     */
+    public static <I> List<ParallelTaskRunner.TaskWithException<I, EncodedBatch, Exception>> wrap(
+            List<? extends ParallelTaskRunner.TaskWithException<I, Variant, Exception>> annotatorTasks, AnnotationEncoder encoder) {
+        List<ParallelTaskRunner.TaskWithException<I, EncodedBatch, Exception>> encodingTasks = new ArrayList<>(annotatorTasks.size());
+        for (ParallelTaskRunner.TaskWithException<I, Variant, Exception> annotatorTask : annotatorTasks) {
+            encodingTasks.add(new EncodingTask<>(annotatorTask, encoder));
+        }
+        return encodingTasks;
+    }
+
+    @Override
+    public void pre() throws Exception {
+        annotatorTask.pre();
+    }
+
+    @Override
+    public List<EncodedBatch> apply(List<I> batch) throws Exception {
+        return encode(annotatorTask.apply(batch));
+    }
+
+    @Override
+    public List<EncodedBatch> drain() throws Exception {
+        return encode(annotatorTask.drain());
+    }
+
+    private List<EncodedBatch> encode(List<Variant> variants) throws Exception {
+        if (variants == null || variants.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new EncodedBatch(encoder.encode(variants), variants.size()));
+    }
+
+    @Override
+    public void post() throws Exception {
+        annotatorTask.post();
+    }
+}
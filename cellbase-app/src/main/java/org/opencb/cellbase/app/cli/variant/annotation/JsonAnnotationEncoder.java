@@ -0,0 +1,56 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.core.serializer.ParallelBgzfOutputStream;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes variants as JSON lines, the same lines than JsonAnnotationWriter. Gzipped output is compressed in BGZF
+ * blocks, which any gzip reader can read as concatenated gzip members.
+ */
+public class JsonAnnotationEncoder implements AnnotationEncoder {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final boolean gzip;
+    private final ObjectWriter objectWriter;
+    private final ThreadLocal<EncodingBuffer> buffers = ThreadLocal.withInitial(EncodingBuffer::new);
+
+    public JsonAnnotationEncoder(boolean gzip) {
+        this.gzip = gzip;
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        // Variants are written one after another into the same buffer
+        jsonObjectMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.objectWriter = jsonObjectMapper.writer();
+    }
+
+    @Override
+    public byte[] getHeader() {
+        return EMPTY;
+    }
+
+    @Override
+    public byte[] encode(List<Variant> variants) throws IOException {
+        EncodingBuffer buffer = buffers.get();
+        buffer.reset();
+        for (Variant variant : variants) {
+            objectWriter.writeValue(buffer, variant.getImpl());
+            buffer.write('\n');
+        }
+        return gzip ? ParallelBgzfOutputStream.compressBlocks(buffer.getBytes(), 0, buffer.size()) : buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] getFooter() {
+        return gzip ? ParallelBgzfOutputStream.getEofBlock() : EMPTY;
+    }
+}
@@ -0,0 +1,66 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataReader;
+
+import java.util.List;
+
+/**
+ * Reads the input variants and joins each batch with the custom annotation files before it is sent to the annotator
+ * tasks. The reader runs in a single thread, so batches are joined in the order of the input file.
+ */
+public class MergeJoinVariantReader implements DataReader<Variant> {
+
+    private final DataReader<Variant> variantReader;
+    private final List<CustomAnnotationMergeJoin> mergeJoins;
+
+    public MergeJoinVariantReader(DataReader<Variant> variantReader, List<CustomAnnotationMergeJoin> mergeJoins) {
+        this.variantReader = variantReader;
+        this.mergeJoins = mergeJoins;
+    }
+
+    @Override
+    public boolean open() {
+        for (CustomAnnotationMergeJoin mergeJoin : mergeJoins) {
+            mergeJoin.open();
+        }
+        return variantReader.open();
+    }
+
+    @Override
+    public boolean pre() {
+        return variantReader.pre();
+    }
+
+    @Override
+    public List<Variant> read() {
+        return join(variantReader.read());
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        return join(variantReader.read(batchSize));
+    }
+
+    private List<Variant> join(List<Variant> variantList) {
+        if (variantList != null) {
+            for (CustomAnnotationMergeJoin mergeJoin : mergeJoins) {
+                mergeJoin.join(variantList);
+            }
+        }
+        return variantList;
+    }
+
+    @Override
+    public boolean post() {
+        return variantReader.post();
+    }
+
+    @Override
+    public boolean close() {
+        for (CustomAnnotationMergeJoin mergeJoin : mergeJoins) {
+            mergeJoin.close();
+        }
+        return variantReader.close();
+    }
+}
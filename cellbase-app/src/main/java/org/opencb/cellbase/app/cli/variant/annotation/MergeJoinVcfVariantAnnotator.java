@@ -0,0 +1,41 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Annotates variants with a custom VCF file joined with the input by a CustomAnnotationMergeJoin rather than with the
+ * RocksDB index of the custom file.
+ */
+public class MergeJoinVcfVariantAnnotator extends VcfVariantAnnotator {
+
+    private final CustomAnnotationMergeJoin mergeJoin;
+
+    public MergeJoinVcfVariantAnnotator(String fileName, CustomAnnotationMergeJoin mergeJoin, String fileId,
+                                        QueryOptions queryOptions) {
+        super(fileName, null, fileId, queryOptions);
+        this.mergeJoin = mergeJoin;
+    }
+
+    @Override
+    protected List<QueryResult<Variant>> getCustomAnnotation(List<Variant> variantList) {
+        List<QueryResult<Variant>> customAnnotationQueryResults = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            QueryResult<Variant> customAnnotationQueryResult = new QueryResult<>();
+            customAnnotationQueryResult.setId(variant.toString());
+            Variant customVariant = mergeJoin.remove(variant);
+            if (customVariant != null) {
+                customAnnotationQueryResult.setResult(Collections.singletonList(customVariant));
+                customAnnotationQueryResult.setNumTotalResults(1);
+                customAnnotationQueryResult.setNumResults(1);
+            }
+            customAnnotationQueryResults.add(customAnnotationQueryResult);
+        }
+        return customAnnotationQueryResults;
+    }
+}
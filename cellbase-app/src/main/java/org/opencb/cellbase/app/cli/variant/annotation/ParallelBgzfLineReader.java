@@ -0,0 +1,214 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.cellbase.core.serializer.BgzfInputStream;
+import org.opencb.commons.io.DataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads the lines of a BGZF file, e.g. a bgzipped VCF. The file is split at block boundaries by the reader thread,
+ * which just reads the compressed bytes, while blocks are inflated and split in lines in a thread pool. Lines are
+ * returned in the order of the file, at most 'maxPendingBlocks' blocks are being inflated at any time.
+ */
+public class ParallelBgzfLineReader implements DataReader<String> {
+
+    private final Path file;
+    private final int numThreads;
+    private final int maxPendingBlocks;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private BgzfInputStream inputStream;
+    private ExecutorService executorService;
+    private final Deque<Future<InflatedBlock>> pendingBlocks = new ArrayDeque<>();
+    private final Deque<String> lines = new ArrayDeque<>();
+    // Bytes of the line started in previous blocks
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private boolean endOfFile;
+    private long numBlocks;
+
+    /**
+     * @param file       BGZF file
+     * @param numThreads number of threads inflating blocks
+     */
+    public ParallelBgzfLineReader(Path file, int numThreads) {
+        this.file = file;
+        this.numThreads = Math.max(1, numThreads);
+        this.maxPendingBlocks = 4 * this.numThreads;
+    }
+
+    /**
+     * @param file file to check
+     * @return whether the file starts with a BGZF block, plain gzip files can not be split in blocks
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBgzf(Path file) throws IOException {
+        return BgzfInputStream.isBgzf(file);
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            inputStream = new BgzfInputStream(file);
+        } catch (IOException e) {
+            logger.error("Error opening file {}", file, e);
+            return false;
+        }
+        executorService = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        return true;
+    }
+
+    @Override
+    public List<String> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<String> read(int batchSize) {
+        try {
+            boolean moreBlocks = true;
+            while (lines.size() < batchSize && moreBlocks) {
+                moreBlocks = readBlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> batch = new ArrayList<>(Math.min(batchSize, lines.size()));
+        while (batch.size() < batchSize && !lines.isEmpty()) {
+            batch.add(lines.poll());
+        }
+        return batch;
+    }
+
+    /**
+     * Submits blocks until 'maxPendingBlocks' are being inflated and adds the lines of the first one.
+     *
+     * @return false if there are no more blocks
+     */
+    private boolean readBlock() throws IOException {
+        while (!endOfFile && pendingBlocks.size() < maxPendingBlocks) {
+            byte[] block = inputStream.readCompressedBlock();
+            if (block == null) {
+                endOfFile = true;
+            } else {
+                pendingBlocks.add(executorService.submit(() -> inflate(block)));
+            }
+        }
+        if (pendingBlocks.isEmpty()) {
+            // Last line with no line break
+            if (partialLine.size() > 0) {
+                lines.add(toLine(partialLine.toByteArray(), 0, partialLine.size()));
+                partialLine.reset();
+            }
+            return false;
+        }
+
+        InflatedBlock inflatedBlock;
+        try {
+            inflatedBlock = pendingBlocks.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + file);
+        } catch (ExecutionException e) {
+            throw new IOException("Error inflating block " + numBlocks + " of " + file, e.getCause());
+        }
+        numBlocks++;
+        partialLine.write(inflatedBlock.head, 0, inflatedBlock.head.length);
+        if (inflatedBlock.lines != null) {
+            lines.add(toLine(partialLine.toByteArray(), 0, partialLine.size()));
+            partialLine.reset();
+            lines.addAll(inflatedBlock.lines);
+            partialLine.write(inflatedBlock.tail, 0, inflatedBlock.tail.length);
+        }
+        return true;
+    }
+
+    /**
+     * Inflates a block and splits it in lines. Runs in the thread pool.
+     *
+     * @param block compressed data followed by the CRC and the size of the data
+     */
+    private static InflatedBlock inflate(byte[] block) throws IOException {
+        byte[] data = BgzfInputStream.inflate(block);
+        int size = data.length;
+
+        InflatedBlock inflatedBlock = new InflatedBlock();
+        int firstBreak = indexOf(data, 0);
+        if (firstBreak < 0) {
+            inflatedBlock.head = data;
+            return inflatedBlock;
+        }
+        inflatedBlock.head = Arrays.copyOf(data, firstBreak);
+        inflatedBlock.lines = new ArrayList<>();
+        int start = firstBreak + 1;
+        int lineBreak;
+        while ((lineBreak = indexOf(data, start)) >= 0) {
+            inflatedBlock.lines.add(toLine(data, start, lineBreak));
+            start = lineBreak + 1;
+        }
+        inflatedBlock.tail = Arrays.copyOfRange(data, start, size);
+        return inflatedBlock;
+    }
+
+    private static int indexOf(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toLine(byte[] data, int start, int end) {
+        // Same lines than BufferedReader.readLine, '\r' of Windows line breaks is removed
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        try {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing file {}", file, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lines of a block. The head is the end of the line started in previous blocks and the tail the beginning of the
+     * line finished in the next ones. Blocks with no line break have just the head, lines is null.
+     */
+    private static class InflatedBlock {
+        private byte[] head;
+        private List<String> lines;
+        private byte[] tail;
+    }
+}
@@ -0,0 +1,163 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Annotates several chromosomes of the variation collection at the same time. Each chromosome is read by its own
+ * reader and written by its own writer, while the batches of all of them are annotated by one shared pool of
+ * annotator tasks, so no worker sits idle waiting for the reader of a single chromosome. Chromosomes are started from
+ * the biggest one, this way the whole annotation takes close to the time of the biggest chromosome rather than the
+ * sum of all of them.
+ *
+ * @param <O> output of the annotator tasks, annotated variants or encoded batches
+ */
+public class ParallelVariationAnnotator<O> {
+
+    private final List<ParallelTaskRunner.TaskWithException<Variant, O, Exception>> annotatorTasks;
+    private final int batchSize;
+    private final int numConcurrentChromosomes;
+    private final int maxPendingBatches;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * @param annotatorTasks           annotator tasks shared by all chromosomes, one worker thread is created for each
+     * @param batchSize                number of variants read per batch
+     * @param numConcurrentChromosomes number of chromosomes read and written at the same time
+     * @param maxPendingBatches        batches of a chromosome being annotated at the same time, bounds the memory used
+     */
+    public ParallelVariationAnnotator(List<ParallelTaskRunner.TaskWithException<Variant, O, Exception>> annotatorTasks,
+                                      int batchSize, int numConcurrentChromosomes, int maxPendingBatches) {
+        this.annotatorTasks = annotatorTasks;
+        this.batchSize = batchSize;
+        this.numConcurrentChromosomes = Math.max(1, numConcurrentChromosomes);
+        this.maxPendingBatches = Math.max(1, maxPendingBatches);
+    }
+
+    /**
+     * Annotates all the chromosomes and waits for them to finish. The first error stops the annotation.
+     *
+     * @param chromosomes     chromosomes to annotate
+     * @param chromosomeSizes size of the chromosomes, those with unknown size are annotated last
+     * @param readers         creates the reader of a chromosome
+     * @param writers         creates the writer of a chromosome
+     * @throws Exception if any chromosome fails
+     */
+    public void run(List<String> chromosomes, Map<String, Long> chromosomeSizes, Function<String, DataReader<Variant>> readers,
+                    Function<String, DataWriter<O>> writers) throws Exception {
+        List<String> sortedChromosomes = sortBySize(chromosomes, chromosomeSizes);
+        logger.info("Annotating chromosomes {}, {} at a time", sortedChromosomes, numConcurrentChromosomes);
+
+        BlockingQueue<ParallelTaskRunner.TaskWithException<Variant, O, Exception>> taskPool =
+                new ArrayBlockingQueue<>(annotatorTasks.size());
+        for (ParallelTaskRunner.TaskWithException<Variant, O, Exception> annotatorTask : annotatorTasks) {
+            annotatorTask.pre();
+            taskPool.add(annotatorTask);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(annotatorTasks.size());
+        ExecutorService chromosomeExecutor = Executors.newFixedThreadPool(numConcurrentChromosomes);
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(chromosomeExecutor);
+            for (String chromosome : sortedChromosomes) {
+                completionService.submit(() -> {
+                    annotate(chromosome, readers.apply(chromosome), writers.apply(chromosome), taskPool, workers);
+                    return null;
+                });
+            }
+            // Chromosomes are checked as they finish so that any error stops the rest straight away
+            for (int i = 0; i < sortedChromosomes.size(); i++) {
+                getResult(completionService.take());
+            }
+        } finally {
+            chromosomeExecutor.shutdownNow();
+            workers.shutdownNow();
+            for (ParallelTaskRunner.TaskWithException<Variant, O, Exception> annotatorTask : annotatorTasks) {
+                annotatorTask.post();
+            }
+        }
+    }
+
+    static List<String> sortBySize(List<String> chromosomes, Map<String, Long> chromosomeSizes) {
+        List<String> sortedChromosomes = new ArrayList<>(chromosomes);
+        // Stable sort, chromosomes with unknown size keep their order at the end
+        sortedChromosomes.sort(Comparator.comparingLong((String chromosome) -> chromosomeSizes.getOrDefault(chromosome, -1L))
+                .reversed());
+        return sortedChromosomes;
+    }
+
+    /**
+     * Reads the batches of one chromosome and submits them to the shared workers. Annotated batches are written in
+     * the same order they were read, at most 'maxPendingBatches' are waiting to be written.
+     */
+    private void annotate(String chromosome, DataReader<Variant> reader, DataWriter<O> writer,
+                          BlockingQueue<ParallelTaskRunner.TaskWithException<Variant, O, Exception>> taskPool,
+                          ExecutorService workers) throws Exception {
+        logger.info("Annotating chromosome {}", chromosome);
+        long start = System.currentTimeMillis();
+        Deque<Future<List<O>>> pendingBatches = new ArrayDeque<>(maxPendingBatches);
+        int numVariants = 0;
+        // Reader and writer are closed even if the chromosome fails, otherwise files and connections would stay open
+        // until the whole annotation finishes
+        reader.open();
+        try {
+            reader.pre();
+            writer.open();
+            try {
+                writer.pre();
+                List<Variant> batch;
+                while ((batch = reader.read(batchSize)) != null && !batch.isEmpty()) {
+                    List<Variant> variants = batch;
+                    numVariants += variants.size();
+                    pendingBatches.add(workers.submit(() -> apply(variants, taskPool)));
+                    if (pendingBatches.size() >= maxPendingBatches) {
+                        writer.write(getResult(pendingBatches.poll()));
+                    }
+                }
+                while (!pendingBatches.isEmpty()) {
+                    writer.write(getResult(pendingBatches.poll()));
+                }
+                writer.post();
+            } finally {
+                for (Future<List<O>> pendingBatch : pendingBatches) {
+                    pendingBatch.cancel(true);
+                }
+                writer.close();
+            }
+            reader.post();
+        } finally {
+            reader.close();
+        }
+        logger.info("Chromosome {} annotated, {} variants in {}s", chromosome, numVariants,
+                (System.currentTimeMillis() - start) / 1000);
+    }
+
+    private List<O> apply(List<Variant> batch,
+                          BlockingQueue<ParallelTaskRunner.TaskWithException<Variant, O, Exception>> taskPool)
+            throws Exception {
+        // There are as many tasks as workers, a task is always available
+        ParallelTaskRunner.TaskWithException<Variant, O, Exception> annotatorTask = taskPool.take();
+        try {
+            return annotatorTask.apply(batch);
+        } finally {
+            taskPool.add(annotatorTask);
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
@@ -1,12 +1,10 @@
 package org.opencb.cellbase.app.cli.variant.annotation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.PopulationFrequencyVariantIndexer;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -28,25 +26,22 @@ import java.util.List;
 public class PopulationFrequenciesAnnotator implements VariantAnnotator {
 
     private String fileName;
+    private PopulationFrequencyVariantIndexer indexer;
     private RocksDB dbIndex;
     private RandomAccessFile reader;
     private final QueryOptions queryOptions;
+    private final VariantIndexCodec variantCodec;
 
-
-    private static ObjectMapper mapper = new ObjectMapper();
-    private static ObjectWriter jsonObjectWriter;
     private static PopulationFrequencyPhasedQueryManager phasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = mapper.writer();
-    }
-
-    public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, QueryOptions queryOptions) {
+    public PopulationFrequenciesAnnotator(String fileName, PopulationFrequencyVariantIndexer indexer,
+                                          QueryOptions queryOptions) {
         this.fileName = fileName;
-        this.dbIndex = dbIndex;
+        this.indexer = indexer;
+        this.dbIndex = indexer.getDbIndex();
         this.queryOptions = queryOptions;
+        this.variantCodec = new VariantIndexCodec();
     }
 
     public boolean open() {
@@ -66,10 +61,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<QueryResult<Variant>> variantQueryResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantQueryResult.add(getPopulationFrequencies(variant));
-        }
+        List<QueryResult<Variant>> variantQueryResult = getPopulationFrequencies(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantQueryResult = phasedQueryManager.run(variantList, variantQueryResult);
@@ -98,42 +90,44 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
         }
     }
 
-    private QueryResult<Variant> getPopulationFrequencies(Variant variant) {
-        QueryResult<Variant> populationFrequencyQueryResult = new QueryResult<>();
-        populationFrequencyQueryResult.setId(variant.toString());
+    private List<QueryResult<Variant>> getPopulationFrequencies(List<Variant> variantList) {
         long start = System.currentTimeMillis();
-        try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-                flagVisitedVariant(variantKey, variant1);
-
-                populationFrequencyQueryResult.setResult(Collections.singletonList(variant1));
-                populationFrequencyQueryResult.setNumTotalResults(1);
-                populationFrequencyQueryResult.setNumResults(1);
-            }
-        } catch (RocksDBException | IOException e) {
-            e.printStackTrace();
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            variantKeys.add(VariantIndexCodec.encodeKey(variant));
         }
-
-        long end = System.currentTimeMillis();
-        populationFrequencyQueryResult.setDbTime((int) (end - start));
-
-        return populationFrequencyQueryResult;
-    }
-
-    private void flagVisitedVariant(byte[] key, Variant variant) {
-        // The annotation.additionalAttributes field is initialized with an empty map to flag this variant as
-        // already visited
-        variant.getAnnotation().setAdditionalAttributes(Collections.emptyMap());
+        // One single lookup for the whole batch
+        List<byte[]> dbContents;
         try {
-            dbIndex.put(key, jsonObjectWriter.writeValueAsBytes(variant));
+            dbContents = dbIndex.multiGetAsList(variantKeys);
         } catch (RocksDBException e) {
             e.printStackTrace();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+            dbContents = Collections.nCopies(variantList.size(), null);
+        }
+        int dbTime = (int) (System.currentTimeMillis() - start);
+
+        List<QueryResult<Variant>> populationFrequencyQueryResults = new ArrayList<>(variantList.size());
+        for (int i = 0; i < variantList.size(); i++) {
+            QueryResult<Variant> populationFrequencyQueryResult = new QueryResult<>();
+            populationFrequencyQueryResult.setId(variantList.get(i).toString());
+            byte[] dbContent = dbContents.get(i);
+            if (dbContent != null) {
+                try {
+                    Variant variant1 = PopulationFrequencyVariantIndexer.decodeVariant(dbContent, variantCodec);
+                    indexer.markVisited(dbContent);
+
+                    populationFrequencyQueryResult.setResult(Collections.singletonList(variant1));
+                    populationFrequencyQueryResult.setNumTotalResults(1);
+                    populationFrequencyQueryResult.setNumResults(1);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            populationFrequencyQueryResult.setDbTime(dbTime);
+            populationFrequencyQueryResults.add(populationFrequencyQueryResult);
         }
+
+        return populationFrequencyQueryResults;
     }
 
     public boolean close() {
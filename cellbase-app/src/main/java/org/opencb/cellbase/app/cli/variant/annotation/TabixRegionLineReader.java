@@ -0,0 +1,295 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.commons.io.DataReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads the lines of a bgzipped, tabix-indexed file overlapping a list of regions. Only the blocks of the regions are
+ * read and inflated. Regions are queried at the same time by a pool of threads, each one with its own TabixReader,
+ * while lines are returned region by region, in the order of the regions. Overlapping regions are merged and lines
+ * overlapping more than one region are returned once.
+ */
+public class TabixRegionLineReader implements DataReader<String> {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int MAX_PENDING_CHUNKS = 4;
+    private static final List<String> END_OF_REGION = Collections.emptyList();
+
+    private final Path file;
+    private final List<Region> regions;
+    private final int numThreads;
+    private final boolean splitRegions;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private BlockingQueue<TabixReader> tabixReaders;
+    private ExecutorService executorService;
+    private List<RegionLines> regionLinesList;
+    private int currentRegion;
+    private final Deque<String> lines = new ArrayDeque<>();
+
+    /**
+     * @param file         bgzipped file with a tabix index next to it
+     * @param regions      1-based, closed regions
+     * @param numThreads   number of regions queried at the same time
+     * @param splitRegions whether the lines of a region may be split between batches. Batches of phased annotation
+     *                     must keep whole regions, so that the variants of a phase set are annotated together
+     */
+    public TabixRegionLineReader(Path file, List<Region> regions, int numThreads, boolean splitRegions) {
+        this.file = file;
+        this.regions = mergeRegions(regions);
+        this.numThreads = Math.max(1, numThreads);
+        this.splitRegions = splitRegions;
+    }
+
+    /**
+     * Sorts the regions of each chromosome and merges those overlapping or adjacent. Chromosomes are kept in the order
+     * they are first found.
+     *
+     * @param regions regions to merge
+     * @return merged regions
+     */
+    static List<Region> mergeRegions(List<Region> regions) {
+        Map<String, List<Region>> chromosomeRegions = new LinkedHashMap<>();
+        for (Region region : regions) {
+            chromosomeRegions.computeIfAbsent(region.getChromosome(), chromosome -> new ArrayList<>()).add(region);
+        }
+        List<Region> mergedRegions = new ArrayList<>(regions.size());
+        for (List<Region> sameChromosome : chromosomeRegions.values()) {
+            sameChromosome.sort(Comparator.comparingInt(Region::getStart));
+            Region previous = null;
+            for (Region region : sameChromosome) {
+                if (previous != null && region.getStart() <= (long) previous.getEnd() + 1) {
+                    previous.setEnd(Math.max(previous.getEnd(), region.getEnd()));
+                } else {
+                    previous = new Region(region.getChromosome(), region.getStart(), region.getEnd());
+                    mergedRegions.add(previous);
+                }
+            }
+        }
+        return mergedRegions;
+    }
+
+    /**
+     * @param regionsString comma separated list of regions, e.g. 1:1000-2000,2:3000-4000. A chromosome name alone
+     *                      stands for the whole chromosome
+     * @return regions
+     */
+    public static List<Region> parseRegions(String regionsString) {
+        List<Region> regions = new ArrayList<>();
+        for (String regionString : regionsString.split(",")) {
+            regionString = regionString.trim();
+            if (regionString.isEmpty()) {
+                continue;
+            }
+            int colon = regionString.lastIndexOf(':');
+            if (colon < 0) {
+                regions.add(new Region(regionString, 1, Integer.MAX_VALUE));
+                continue;
+            }
+            String[] positions = regionString.substring(colon + 1).split("-");
+            if (positions.length != 2) {
+                throw new IllegalArgumentException("Invalid region " + regionString + ", expected chromosome:start-end");
+            }
+            regions.add(new Region(regionString.substring(0, colon), Integer.parseInt(positions[0].trim()),
+                    Integer.parseInt(positions[1].trim())));
+        }
+        return regions;
+    }
+
+    /**
+     * @param bedFile BED file, the first three columns are read. Header, track and browser lines are skipped
+     * @return 1-based, closed regions
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Region> readBedFile(Path bedFile) throws IOException {
+        List<Region> regions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(bedFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 4);
+                if (fields.length < 3) {
+                    throw new IOException("Invalid BED line in " + bedFile + ": " + line);
+                }
+                // BED regions are 0-based and half-open
+                regions.add(new Region(fields[0], Integer.parseInt(fields[1]) + 1, Integer.parseInt(fields[2])));
+            }
+        }
+        return regions;
+    }
+
+    @Override
+    public boolean open() {
+        tabixReaders = new ArrayBlockingQueue<>(numThreads);
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                tabixReaders.add(new TabixReader(file.toString()));
+            }
+        } catch (IOException e) {
+            logger.error("Error opening tabix index of {}", file, e);
+            return false;
+        }
+        executorService = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tabix-region-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Set<String> chromosomes = tabixReaders.peek().getChromosomes();
+        logger.info("Reading {} regions of {}", regions.size(), file);
+        // Regions are queried in order, a region is never waiting for a thread used by a later one
+        regionLinesList = new ArrayList<>(regions.size());
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            Region previous = i > 0 && regions.get(i - 1).getChromosome().equals(region.getChromosome()) ? regions.get(i - 1) : null;
+            RegionLines regionLines = new RegionLines();
+            regionLinesList.add(regionLines);
+            String chromosome = getFileChromosome(region.getChromosome(), chromosomes);
+            if (chromosome == null) {
+                logger.warn("Chromosome {} not found in {}", region.getChromosome(), file);
+                regionLines.chunks.add(END_OF_REGION);
+            } else {
+                executorService.submit(() -> query(chromosome, region, previous, regionLines));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Files may name chromosomes with or without the 'chr' prefix.
+     */
+    private static String getFileChromosome(String chromosome, Set<String> chromosomes) {
+        if (chromosomes.contains(chromosome)) {
+            return chromosome;
+        }
+        String alternative = chromosome.startsWith("chr") ? chromosome.substring(3) : "chr" + chromosome;
+        return chromosomes.contains(alternative) ? alternative : null;
+    }
+
+    private void query(String chromosome, Region region, Region previous, RegionLines regionLines) {
+        TabixReader tabixReader = null;
+        try {
+            tabixReader = tabixReaders.take();
+            TabixReader.Iterator iterator = tabixReader.query(chromosome + ":" + region.getStart() + "-" + region.getEnd());
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            String line;
+            while ((line = iterator.next()) != null) {
+                // Lines starting in the previous region of the chromosome overlap it too, they have been returned already
+                if (previous != null && getPosition(line) <= previous.getEnd()) {
+                    continue;
+                }
+                chunk.add(line);
+                if (chunk.size() == CHUNK_SIZE) {
+                    regionLines.chunks.put(chunk);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                regionLines.chunks.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException | RuntimeException e) {
+            regionLines.error = new IOException("Error reading region " + region + " of " + file, e);
+        } finally {
+            if (tabixReader != null) {
+                tabixReaders.add(tabixReader);
+            }
+        }
+        try {
+            regionLines.chunks.put(END_OF_REGION);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long getPosition(String line) {
+        int start = line.indexOf('\t') + 1;
+        int end = line.indexOf('\t', start);
+        return Long.parseLong(end < 0 ? line.substring(start) : line.substring(start, end));
+    }
+
+    @Override
+    public boolean pre() {
+        return true;
+    }
+
+    @Override
+    public List<String> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<String> read(int batchSize) {
+        List<String> batch = new ArrayList<>(batchSize);
+        try {
+            while (currentRegion < regionLinesList.size() && (batch.size() < batchSize || !splitRegions)) {
+                if (!lines.isEmpty()) {
+                    batch.add(lines.poll());
+                    continue;
+                }
+                RegionLines regionLines = regionLinesList.get(currentRegion);
+                List<String> chunk = regionLines.chunks.take();
+                if (chunk == END_OF_REGION) {
+                    if (regionLines.error != null) {
+                        throw regionLines.error;
+                    }
+                    regionLinesList.set(currentRegion, null);
+                    currentRegion++;
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                } else {
+                    lines.addAll(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while reading " + file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch;
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        if (tabixReaders != null) {
+            for (TabixReader tabixReader : tabixReaders) {
+                tabixReader.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines of a region, in chunks of at most CHUNK_SIZE lines, followed by END_OF_REGION.
+     */
+    private static class RegionLines {
+        private final BlockingQueue<List<String>> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+        private volatile IOException error;
+    }
+}
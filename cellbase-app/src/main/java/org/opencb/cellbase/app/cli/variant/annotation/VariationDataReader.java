@@ -1,7 +1,9 @@
 package org.opencb.cellbase.app.cli.variant.annotation;
 
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.cellbase.core.api.VariantDBAdaptor;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.io.DataReader;
@@ -18,13 +20,31 @@ import java.util.List;
  */
 public class VariationDataReader implements DataReader<Variant> {
 
+    /**
+     * Fields of the variation documents needed to annotate them, the rest of the document is not fetched.
+     */
+    public static final String INCLUDE_FIELDS = "chromosome,start,reference,alternate,type";
+    // Number of documents fetched per cursor round trip, several task batches are fetched at once
+    private static final String CURSOR_BATCH_SIZE = "batchSize";
+    private static final int MIN_CURSOR_BATCH_SIZE = 1000;
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    // Valid alleles are strings of [ACGT], see isValid
+    private static final boolean[] VALID_NUCLEOTIDES = new boolean[128];
+    static {
+        for (char nucleotide : "ACGT".toCharArray()) {
+            VALID_NUCLEOTIDES[nucleotide] = true;
+        }
+    }
+
     private VariantDBAdaptor dbAdaptor;
     private Query query;
     private QueryOptions options;
+    private Region range;
     private Iterator<Variant> iterator;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private int nReadVariants = 0;
-    private static final String VARIANT_STRING_PATTERN = "[ACGT]*";
+    private long startTime;
 
     public VariationDataReader(VariantDBAdaptor dbAdaptor, Query query, QueryOptions options) {
         this.dbAdaptor = dbAdaptor;
@@ -32,14 +52,62 @@ public class VariationDataReader implements DataReader<Variant> {
         this.options = options;
     }
 
+    /**
+     * Reads the variants starting within a range of a chromosome. Ranges are queried by _chunkIds, variants are only
+     * returned by the range where they start so that several readers can read adjacent ranges in parallel without
+     * returning any variant twice.
+     *
+     * @param dbAdaptor variation DB adaptor
+     * @param range     range of a chromosome, e.g. one of the ranges returned by splitChromosome
+     * @param options   query options, e.g. the fields to include
+     */
+    public VariationDataReader(VariantDBAdaptor dbAdaptor, Region range, QueryOptions options) {
+        this(dbAdaptor, new Query(VariantDBAdaptor.QueryParams.REGION.key(), range.toString()), options);
+        this.range = range;
+    }
+
+    /**
+     * Splits a chromosome in ranges of similar size aligned to the variation _chunkIds, so that the variants of a
+     * chunk are read by one single range.
+     *
+     * @param chromosome   chromosome name
+     * @param size         chromosome size
+     * @param numRanges    number of ranges
+     * @return the ranges, just the whole chromosome if it cannot be split
+     */
+    public static List<Region> splitChromosome(String chromosome, long size, int numRanges) {
+        int chunkSize = MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE;
+        long numChunks = (size + chunkSize - 1) / chunkSize;
+        if (numRanges <= 1 || numChunks < numRanges || size > Integer.MAX_VALUE) {
+            return Collections.singletonList(new Region(chromosome, 1, (int) Math.min(size, Integer.MAX_VALUE)));
+        }
+        List<Region> ranges = new ArrayList<>(numRanges);
+        int start = 1;
+        for (int i = 1; i <= numRanges; i++) {
+            int end = (i == numRanges) ? (int) size : (int) (numChunks * i / numRanges) * chunkSize;
+            ranges.add(new Region(chromosome, start, end));
+            start = end + 1;
+        }
+        return ranges;
+    }
+
     public boolean open() {
         return true;
     }
 
     public boolean pre() {
-        this.iterator = dbAdaptor.iterator(query, options);
+        return true;
+    }
 
-        return this.iterator != null;
+    private Iterator<Variant> getIterator(int batchSize) {
+        if (iterator == null) {
+            // The cursor is opened on the first read, once the size of the batches is known
+            QueryOptions queryOptions = new QueryOptions(options);
+            queryOptions.put(CURSOR_BATCH_SIZE, Math.max(batchSize, MIN_CURSOR_BATCH_SIZE));
+            iterator = dbAdaptor.iterator(query, queryOptions);
+            startTime = System.currentTimeMillis();
+        }
+        return iterator;
     }
 
     /**
@@ -48,22 +116,8 @@ public class VariationDataReader implements DataReader<Variant> {
      * @return  List of variants. It can be expected to contain only one variant.
      */
     public List<Variant> read() {
-        Variant variant = null;
-        boolean valid = false;
-        while (iterator.hasNext() && !valid) {
-            variant = iterator.next();
-            valid = isValid(variant);
-        }
-        if (valid) {
-            // New variants in the variation collection created during the update of the frequencies may not have
-            // the variant type set and this might cause NPE
-            if (variant.getType() == null) {
-                variant.setType(variant.inferType(variant.getReference(), variant.getAlternate()));
-            }
-            return Collections.singletonList(variant);
-        } else {
-            return null;
-        }
+        List<Variant> variants = read(1);
+        return variants.isEmpty() ? null : variants;
     }
 
     /**
@@ -76,28 +130,54 @@ public class VariationDataReader implements DataReader<Variant> {
      * as well for the variant to be valid. Functionality of the method may be improved in the future.
      */
     private boolean isValid(Variant variant) {
-        return (variant.getReference().matches(VARIANT_STRING_PATTERN)
-                && variant.getAlternate().matches(VARIANT_STRING_PATTERN)
-                && !variant.getAlternate().equals(variant.getReference()));
+        return isValidAllele(variant.getReference())
+                && isValidAllele(variant.getAlternate())
+                && !variant.getAlternate().equals(variant.getReference());
+    }
+
+    static boolean isValidAllele(String allele) {
+        for (int i = 0; i < allele.length(); i++) {
+            char nucleotide = allele.charAt(i);
+            if (nucleotide >= VALID_NUCLEOTIDES.length || !VALID_NUCLEOTIDES[nucleotide]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean inRange(Variant variant) {
+        return range == null || (variant.getStart() >= range.getStart() && variant.getStart() <= range.getEnd());
     }
 
     public List<Variant> read(int batchSize) {
+        Iterator<Variant> variantIterator = getIterator(batchSize);
         List<Variant> listRecords = new ArrayList<>(batchSize);
-        for (int i = 0; i < batchSize; i++) {
-            List<Variant> variants = this.read();
-            if (variants != null) {
-                listRecords.addAll(variants);
-                nReadVariants += variants.size();
-            } else {
-                logger.info("{} variants read", nReadVariants);
-                return listRecords;
+        while (listRecords.size() < batchSize && variantIterator.hasNext()) {
+            Variant variant = variantIterator.next();
+            if (isValid(variant) && inRange(variant)) {
+                // New variants in the variation collection created during the update of the frequencies may not have
+                // the variant type set and this might cause NPE
+                if (variant.getType() == null) {
+                    variant.setType(variant.inferType(variant.getReference(), variant.getAlternate()));
+                }
+                listRecords.add(variant);
+                if (++nReadVariants % PROGRESS_INTERVAL == 0) {
+                    logProgress();
+                }
             }
         }
-
-        logger.info("{} variants read", nReadVariants);
+        if (listRecords.size() < batchSize) {
+            logProgress();
+        }
         return listRecords;
     }
 
+    private void logProgress() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        logger.info("{} variants read from {}, {} variants/s", nReadVariants, range != null ? range : query,
+                nReadVariants * 1000L / elapsed);
+    }
+
     public boolean post() {
         return true;
     }
@@ -25,6 +25,7 @@ import htsjdk.variant.vcf.VCFHeaderVersion;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.biodata.tools.variant.converters.avro.VariantContextToVariantConverter;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
@@ -39,7 +40,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Created by fjlopez on 02/03/15.
  */
-@Deprecated
 public class VcfStringAnnotatorTask implements ParallelTaskRunner.TaskWithException<String, Variant, Exception> {
 
     private static final String MATEID = "MATEID";
@@ -53,6 +53,7 @@ public class VcfStringAnnotatorTask implements ParallelTaskRunner.TaskWithExcept
 //    private static VariantNormalizer normalizer = new VariantNormalizer(true, false, true);
     private VariantNormalizer normalizer;
     private boolean normalize;
+    private boolean failOnError;
 
     public VcfStringAnnotatorTask(VCFHeader header, VCFHeaderVersion version,
                                   List<VariantAnnotator> variantAnnotatorList, SharedContext sharedContext) {
@@ -63,6 +64,23 @@ public class VcfStringAnnotatorTask implements ParallelTaskRunner.TaskWithExcept
     public VcfStringAnnotatorTask(VCFHeader header, VCFHeaderVersion version,
                                   List<VariantAnnotator> variantAnnotatorList, SharedContext sharedContext,
                                   boolean normalize, VariantNormalizer.VariantNormalizerConfig variantNormalizerConfig) {
+        this(header, version, variantAnnotatorList, sharedContext, normalize, variantNormalizerConfig, null);
+    }
+
+    /**
+     * @param header                  header of the VCF
+     * @param version                 version of the VCF
+     * @param variantAnnotatorList    annotators run on the parsed variants
+     * @param sharedContext           context shared by all the tasks, keeps the breakends whose mate is not parsed yet
+     * @param normalize               whether variants are normalized before being annotated
+     * @param variantNormalizerConfig configuration of the normalizer
+     * @param metadata                study and file of the VCF, the same given to VariantVcfHtsjdkReader so that both
+     *                                produce the same variants. Null to leave the study and file ids empty
+     */
+    public VcfStringAnnotatorTask(VCFHeader header, VCFHeaderVersion version,
+                                  List<VariantAnnotator> variantAnnotatorList, SharedContext sharedContext,
+                                  boolean normalize, VariantNormalizer.VariantNormalizerConfig variantNormalizerConfig,
+                                  VariantStudyMetadata metadata) {
         this.vcfCodec = new FullVcfCodec();
         this.vcfCodec.setVCFHeader(header, version);
 
@@ -79,9 +97,23 @@ public class VcfStringAnnotatorTask implements ParallelTaskRunner.TaskWithExcept
             samplesInOriginalOrder.set(entry.getValue(), entry.getKey());
         }
 
-        this.converter = new VariantContextToVariantConverter("", "", samplesInOriginalOrder);
-
+        if (metadata != null) {
+            this.converter = new VariantContextToVariantConverter(metadata.getId(), metadata.getFiles().get(0).getId(),
+                    samplesInOriginalOrder);
+        } else {
+            this.converter = new VariantContextToVariantConverter("", "", samplesInOriginalOrder);
+        }
+    }
 
+    /**
+     * Lines that cannot be parsed are skipped by default, as VariantVcfHtsjdkReader does.
+     *
+     * @param failOnError true to fail the annotation on the first line that cannot be parsed
+     * @return this task
+     */
+    public VcfStringAnnotatorTask setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+        return this;
     }
 
     @Override
@@ -140,6 +172,9 @@ public class VcfStringAnnotatorTask implements ParallelTaskRunner.TaskWithExcept
                 try {
                     variantContext = vcfCodec.decode(line);
                 } catch (TribbleException e) {
+                    if (failOnError) {
+                        throw e;
+                    }
                     logger.warn("Error found while parsing VCF line {} ", line);
                     logger.warn("This line will be skipped and process will continue");
                     logger.warn("Full stack trace", e);
@@ -1,11 +1,10 @@
 package org.opencb.cellbase.app.cli.variant.annotation;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AdditionalAttribute;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.CustomAnnotationPhasedQueryManager;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
@@ -23,13 +22,8 @@ import java.util.*;
  */
 public class VcfVariantAnnotator implements VariantAnnotator {
 
-    private static ObjectMapper mapper = new ObjectMapper();
-
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-    }
-
     private final QueryOptions queryOptions;
+    private final VariantIndexCodec variantCodec;
     private String fileName;
     private RocksDB dbIndex;
     private String fileId;
@@ -41,6 +35,7 @@ public class VcfVariantAnnotator implements VariantAnnotator {
         this.dbIndex = dbIndex;
         this.fileId = fileId;
         this.queryOptions = queryOptions;
+        this.variantCodec = new VariantIndexCodec();
     }
 
     public boolean open() {
@@ -61,10 +56,7 @@ public class VcfVariantAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<QueryResult<Variant>> variantQueryResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantQueryResult.add(getCustomAnnotation(variant));
-        }
+        List<QueryResult<Variant>> variantQueryResult = getCustomAnnotation(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantQueryResult = phasedQueryManager.run(variantList, variantQueryResult);
@@ -117,28 +109,47 @@ public class VcfVariantAnnotator implements VariantAnnotator {
         return null;
     }
 
-    private QueryResult<Variant> getCustomAnnotation(Variant variant) {
-        QueryResult<Variant> customAnnotationQueryResult = new QueryResult<>();
-        customAnnotationQueryResult.setId(variant.toString());
+    /**
+     * @param variantList variants to annotate
+     * @return for each variant, the variant of the custom file with the same position and alleles, if any
+     */
+    protected List<QueryResult<Variant>> getCustomAnnotation(List<Variant> variantList) {
         long start = System.currentTimeMillis();
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            variantKeys.add(VariantIndexCodec.encodeKey(variant));
+        }
+        // One single lookup for the whole batch
+        List<byte[]> dbContents;
         try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-
-                customAnnotationQueryResult.setResult(Collections.singletonList(variant1));
-                customAnnotationQueryResult.setNumTotalResults(1);
-                customAnnotationQueryResult.setNumResults(1);
-            }
-        } catch (RocksDBException | IOException e) {
+            dbContents = dbIndex.multiGetAsList(variantKeys);
+        } catch (RocksDBException e) {
             e.printStackTrace();
+            dbContents = Collections.nCopies(variantList.size(), null);
         }
+        int dbTime = (int) (System.currentTimeMillis() - start);
 
-        long end = System.currentTimeMillis();
-        customAnnotationQueryResult.setDbTime((int) (end - start));
+        List<QueryResult<Variant>> customAnnotationQueryResults = new ArrayList<>(variantList.size());
+        for (int i = 0; i < variantList.size(); i++) {
+            QueryResult<Variant> customAnnotationQueryResult = new QueryResult<>();
+            customAnnotationQueryResult.setId(variantList.get(i).toString());
+            byte[] dbContent = dbContents.get(i);
+            if (dbContent != null) {
+                try {
+                    Variant variant1 = variantCodec.decode(dbContent);
+
+                    customAnnotationQueryResult.setResult(Collections.singletonList(variant1));
+                    customAnnotationQueryResult.setNumTotalResults(1);
+                    customAnnotationQueryResult.setNumResults(1);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            customAnnotationQueryResult.setDbTime(dbTime);
+            customAnnotationQueryResults.add(customAnnotationQueryResult);
+        }
 
-        return customAnnotationQueryResult;
+        return customAnnotationQueryResults;
     }
 
     public boolean close() {
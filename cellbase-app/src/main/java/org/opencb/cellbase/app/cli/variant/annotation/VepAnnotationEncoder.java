@@ -0,0 +1,172 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes variants in the VEP format, the same lines than biodata VepFormatWriter: one line for each consequence type.
+ * Lines are built in a StringBuilder reused by each annotator thread, without the intermediate strings of the
+ * writer. Variants without annotation or consequence types, which make VepFormatWriter fail, are skipped: each one is
+ * logged at debug level and their number is logged as a warning with the footer.
+ */
+public class VepAnnotationEncoder implements AnnotationEncoder {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final String COLUMNS = "#Uploaded_variation\tLocation\tAllele\tGene\tFeature Feature_type\tConsequence"
+            + "\tcDNA_position\tCDS_position\tProtein_position\tAmino_acids\tCodons\tExisting_variation\tExtra\n";
+    private static final String NO_VALUE = "-";
+    private static final Map<VariantType, String> SYMBOLIC_ALLELES = new EnumMap<>(VariantType.class);
+
+    static {
+        SYMBOLIC_ALLELES.put(VariantType.CNV, "CNV");
+        SYMBOLIC_ALLELES.put(VariantType.DELETION, "deletion");
+        SYMBOLIC_ALLELES.put(VariantType.INSERTION, "insertion");
+        SYMBOLIC_ALLELES.put(VariantType.INVERSION, "INV");
+        SYMBOLIC_ALLELES.put(VariantType.DUPLICATION, "duplication");
+    }
+
+    // VepFormatWriter writes with the default charset
+    private final Charset charset = Charset.defaultCharset();
+    private final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(1 << 16));
+    private final AtomicLong numSkippedVariants = new AtomicLong();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Override
+    public byte[] getHeader() {
+        return ("## VARIANT EFFECT FORMAT GENERATOR\n"
+                + "## Output produced at " + new SimpleDateFormat().format(new Date()) + "\n"
+                + COLUMNS).getBytes(charset);
+    }
+
+    @Override
+    public byte[] encode(List<Variant> variants) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        for (Variant variant : variants) {
+            VariantAnnotation variantAnnotation = variant.getAnnotation();
+            if (variantAnnotation == null || variantAnnotation.getConsequenceTypes() == null) {
+                skip(variant);
+                continue;
+            }
+            // Columns shared by all the consequence types of the variant
+            int variantStart = builder.length();
+            builder.append(variantAnnotation.getId() != null ? variantAnnotation.getId() : NO_VALUE).append('\t')
+                    .append(variantAnnotation.getChromosome()).append(':');
+            appendLocationAndAllele(builder, variant);
+            int variantEnd = builder.length();
+            boolean first = true;
+            for (ConsequenceType consequenceType : variantAnnotation.getConsequenceTypes()) {
+                if (!first) {
+                    builder.append(builder, variantStart, variantEnd);
+                }
+                first = false;
+                appendConsequenceType(builder, consequenceType);
+            }
+            // Variant with no consequence type, nothing written
+            if (first) {
+                builder.setLength(variantStart);
+                skip(variant);
+            }
+        }
+        return builder.length() == 0 ? EMPTY : builder.toString().getBytes(charset);
+    }
+
+    private void skip(Variant variant) {
+        numSkippedVariants.incrementAndGet();
+        logger.debug("Variant {} not written, it has no annotation or consequence types", variant);
+    }
+
+    /**
+     * @return number of variants not written because they have no annotation or consequence types
+     */
+    public long getNumSkippedVariants() {
+        return numSkippedVariants.get();
+    }
+
+    private static void appendLocationAndAllele(StringBuilder builder, Variant variant) {
+        switch (variant.getType()) {
+            case SNV:
+                builder.append(variant.getStart()).append('\t').append(variant.getAlternate());
+                break;
+            case INDEL:
+                if (StringUtils.isBlank(variant.getAlternate())) {
+                    builder.append(variant.getStart());
+                    if (variant.getReference().length() > 1) {
+                        builder.append('-').append(variant.getEnd());
+                    }
+                    builder.append('\t').append(NO_VALUE);
+                } else if (StringUtils.isBlank(variant.getReference())) {
+                    // Insertions end before they start
+                    builder.append(variant.getEnd()).append('-').append(variant.getStart()).append('\t')
+                            .append(variant.getAlternate());
+                } else {
+                    builder.append(variant.getStart()).append('-').append(variant.getEnd()).append('\t')
+                            .append(variant.getAlternate());
+                }
+                break;
+            default:
+                builder.append(variant.getStart()).append('-').append(variant.getEnd()).append('\t')
+                        .append(SYMBOLIC_ALLELES.get(variant.getType()));
+                break;
+        }
+        builder.append('\t');
+    }
+
+    private static void appendConsequenceType(StringBuilder builder, ConsequenceType consequenceType) {
+        appendOrNoValue(builder, consequenceType.getEnsemblGeneId()).append('\t');
+        appendOrNoValue(builder, consequenceType.getEnsemblTranscriptId()).append('\t');
+        appendOrNoValue(builder, consequenceType.getBiotype()).append('\t');
+
+        List<SequenceOntologyTerm> sequenceOntologyTerms = consequenceType.getSequenceOntologyTerms();
+        if (sequenceOntologyTerms == null || sequenceOntologyTerms.isEmpty()) {
+            builder.append(NO_VALUE);
+        } else {
+            builder.append(sequenceOntologyTerms.get(0).getName());
+            for (int i = 1; i < sequenceOntologyTerms.size(); i++) {
+                builder.append(',').append(sequenceOntologyTerms.get(i).getName());
+            }
+        }
+        builder.append('\t');
+
+        appendOrNoValue(builder, consequenceType.getCdnaPosition()).append('\t');
+        appendOrNoValue(builder, consequenceType.getCdsPosition()).append('\t');
+        ProteinVariantAnnotation proteinVariantAnnotation = consequenceType.getProteinVariantAnnotation();
+        appendOrNoValue(builder, proteinVariantAnnotation != null ? proteinVariantAnnotation.getPosition() : null).append('\t');
+        if (proteinVariantAnnotation == null || proteinVariantAnnotation.getAlternate() == null) {
+            builder.append(NO_VALUE);
+        } else {
+            builder.append(proteinVariantAnnotation.getReference()).append('/').append(proteinVariantAnnotation.getAlternate());
+        }
+        builder.append('\t');
+        appendOrNoValue(builder, consequenceType.getCodon()).append("\t-\t-\n");
+    }
+
+    private static StringBuilder appendOrNoValue(StringBuilder builder, Object value) {
+        return builder.append(value != null ? value : NO_VALUE);
+    }
+
+    @Override
+    public byte[] getFooter() {
+        if (numSkippedVariants.get() > 0) {
+            logger.warn("{} variants without annotation or consequence types were not written to the VEP file",
+                    numSkippedVariants.get());
+        }
+        return EMPTY;
+    }
+}
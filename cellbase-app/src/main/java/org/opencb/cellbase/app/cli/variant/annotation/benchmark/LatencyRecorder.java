@@ -0,0 +1,77 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Latencies and allocated bytes of the calls to one stage of the annotation, e.g. one annotator. Shared by all the
+ * annotator threads.
+ */
+public class LatencyRecorder {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long totalNanos;
+    private long allocatedBytes;
+
+    /**
+     * @return bytes allocated so far by the current thread, -1 if the JVM does not measure allocations
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            if (threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param nanos               duration of the call
+     * @param startAllocatedBytes bytes allocated by the thread before the call, as returned by
+     *                            {@link #getCurrentThreadAllocatedBytes()}
+     */
+    public void record(long nanos, long startAllocatedBytes) {
+        long endAllocatedBytes = startAllocatedBytes < 0 ? -1 : getCurrentThreadAllocatedBytes();
+        synchronized (this) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            totalNanos += nanos;
+            if (endAllocatedBytes >= 0) {
+                allocatedBytes += endAllocatedBytes - startAllocatedBytes;
+            }
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return latency in nanoseconds of the given percentile, nearest-rank method, 0 if nothing has been recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.min(count, Math.max(1, rank)) - 1];
+    }
+}
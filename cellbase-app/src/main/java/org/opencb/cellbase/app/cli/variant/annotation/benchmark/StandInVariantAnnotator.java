@@ -0,0 +1,154 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.biodata.models.variant.avro.Score;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stands in for the CellBase annotator when the throughput benchmark is run without a CellBase database, so that the
+ * reading, parsing, normalization and encoding of the annotation can be measured anywhere. Variants are given made up
+ * consequence types, population frequencies and scores, as many as a database annotation usually has. The annotation
+ * of a variant only depends on the variant and the seed.
+ */
+public class StandInVariantAnnotator implements VariantAnnotator {
+
+    private static final SequenceOntologyTerm[] CODING_TERMS = {
+            new SequenceOntologyTerm("SO:0001583", "missense_variant"),
+            new SequenceOntologyTerm("SO:0001819", "synonymous_variant"),
+            new SequenceOntologyTerm("SO:0001587", "stop_gained"),
+    };
+    private static final SequenceOntologyTerm[] NON_CODING_TERMS = {
+            new SequenceOntologyTerm("SO:0001627", "intron_variant"),
+            new SequenceOntologyTerm("SO:0001631", "upstream_gene_variant"),
+            new SequenceOntologyTerm("SO:0001632", "downstream_gene_variant"),
+            new SequenceOntologyTerm("SO:0001566", "regulatory_region_variant"),
+    };
+    private static final SequenceOntologyTerm FRAMESHIFT = new SequenceOntologyTerm("SO:0001589", "frameshift_variant");
+    private static final SequenceOntologyTerm FEATURE_ABLATION = new SequenceOntologyTerm("SO:0001893", "transcript_ablation");
+    private static final String[] BIOTYPES = {"protein_coding", "nonsense_mediated_decay", "processed_transcript", "lincRNA"};
+    private static final List<String> POPULATIONS = Arrays.asList("ALL", "AFR", "AMR", "EAS", "EUR", "SAS");
+    private static final String[] AMINO_ACIDS = {"ALA", "ARG", "ASN", "ASP", "CYS", "GLN", "GLU", "GLY", "HIS", "ILE", "LEU",
+            "LYS", "MET", "PHE", "PRO", "SER", "THR", "TRP", "TYR", "VAL"};
+    private static final int MAX_TRANSCRIPTS = 6;
+
+    private final long seed;
+    // Reseeded for every variant
+    private final Random random = new Random();
+
+    public StandInVariantAnnotator(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public boolean open() {
+        return true;
+    }
+
+    @Override
+    public void run(List<Variant> variantList) {
+        for (Variant variant : variantList) {
+            random.setSeed(seed(variant));
+            variant.setAnnotation(annotate(variant));
+        }
+    }
+
+    private long seed(Variant variant) {
+        long variantSeed = seed;
+        variantSeed = 31 * variantSeed + variant.getChromosome().hashCode();
+        variantSeed = 31 * variantSeed + variant.getStart();
+        variantSeed = 31 * variantSeed + variant.getEnd();
+        variantSeed = 31 * variantSeed + variant.getReference().hashCode();
+        return 31 * variantSeed + variant.getAlternate().hashCode();
+    }
+
+    private VariantAnnotation annotate(Variant variant) {
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setChromosome(variant.getChromosome());
+        variantAnnotation.setStart(variant.getStart());
+        variantAnnotation.setEnd(variant.getEnd());
+        variantAnnotation.setReference(variant.getReference());
+        variantAnnotation.setAlternate(variant.getAlternate());
+        // Most of the variants are known
+        if (random.nextInt(10) < 8) {
+            variantAnnotation.setId("rs" + (1 + random.nextInt(Integer.MAX_VALUE)));
+        }
+
+        int geneNumber = random.nextInt(20000);
+        int numTranscripts = 1 + random.nextInt(MAX_TRANSCRIPTS);
+        List<ConsequenceType> consequenceTypes = new ArrayList<>(numTranscripts);
+        for (int i = 0; i < numTranscripts; i++) {
+            consequenceTypes.add(createConsequenceType(variant, geneNumber, i));
+        }
+        variantAnnotation.setConsequenceTypes(consequenceTypes);
+        variantAnnotation.setDisplayConsequenceType(consequenceTypes.get(0).getSequenceOntologyTerms().get(0).getName());
+
+        if (variantAnnotation.getId() != null) {
+            List<PopulationFrequency> populationFrequencies = new ArrayList<>(POPULATIONS.size());
+            for (String population : POPULATIONS) {
+                float altAlleleFreq = random.nextFloat() / 2;
+                float refAlleleFreq = 1 - altAlleleFreq;
+                populationFrequencies.add(new PopulationFrequency("1kG_phase3", population, variant.getReference(),
+                        variant.getAlternate(), refAlleleFreq, altAlleleFreq, refAlleleFreq * refAlleleFreq,
+                        2 * refAlleleFreq * altAlleleFreq, altAlleleFreq * altAlleleFreq));
+            }
+            variantAnnotation.setPopulationFrequencies(populationFrequencies);
+        }
+        variantAnnotation.setConservation(Arrays.asList(new Score(random.nextDouble(), "phastCons", ""),
+                new Score(random.nextDouble() * 20 - 10, "phylop", ""), new Score(random.nextDouble() * 12 - 6, "gerp", "")));
+        variantAnnotation.setFunctionalScore(Arrays.asList(new Score(random.nextDouble() * 10, "cadd_raw", ""),
+                new Score(random.nextDouble() * 40, "cadd_scaled", "")));
+        return variantAnnotation;
+    }
+
+    private ConsequenceType createConsequenceType(Variant variant, int geneNumber, int transcriptNumber) {
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setGeneName("GENE" + geneNumber);
+        consequenceType.setEnsemblGeneId(String.format("ENSG%011d", geneNumber));
+        consequenceType.setEnsemblTranscriptId(String.format("ENST%011d", geneNumber * MAX_TRANSCRIPTS + transcriptNumber));
+        consequenceType.setStrand(geneNumber % 2 == 0 ? "+" : "-");
+        String biotype = BIOTYPES[random.nextInt(BIOTYPES.length)];
+        consequenceType.setBiotype(biotype);
+
+        if (variant.getType() != VariantType.SNV && variant.getType() != VariantType.INDEL) {
+            consequenceType.setSequenceOntologyTerms(Collections.singletonList(FEATURE_ABLATION));
+        } else if (biotype.equals(BIOTYPES[0]) && random.nextBoolean()) {
+            // Coding variant
+            int cdsPosition = 1 + random.nextInt(3000);
+            consequenceType.setCdnaPosition(cdsPosition + 60);
+            consequenceType.setCdsPosition(cdsPosition);
+            consequenceType.setCodon("Cgg/Tgg");
+            ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+            proteinVariantAnnotation.setUniprotAccession(String.format("P%05d", geneNumber));
+            proteinVariantAnnotation.setPosition((cdsPosition + 2) / 3);
+            proteinVariantAnnotation.setReference(AMINO_ACIDS[random.nextInt(AMINO_ACIDS.length)]);
+            proteinVariantAnnotation.setAlternate(AMINO_ACIDS[random.nextInt(AMINO_ACIDS.length)]);
+            proteinVariantAnnotation.setSubstitutionScores(Arrays.asList(new Score(random.nextDouble(), "sift", "tolerated"),
+                    new Score(random.nextDouble(), "polyphen", "benign")));
+            consequenceType.setProteinVariantAnnotation(proteinVariantAnnotation);
+            consequenceType.setSequenceOntologyTerms(Collections.singletonList(variant.getType() == VariantType.INDEL
+                    ? FRAMESHIFT
+                    : CODING_TERMS[random.nextInt(CODING_TERMS.length)]));
+        } else {
+            SequenceOntologyTerm sequenceOntologyTerm = NON_CODING_TERMS[random.nextInt(NON_CODING_TERMS.length)];
+            consequenceType.setSequenceOntologyTerms(Collections.singletonList(sequenceOntologyTerm));
+        }
+        return consequenceType;
+    }
+
+    @Override
+    public boolean close() {
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes the bgzipped VCFs annotated by the throughput benchmark. Files are fully determined by the mix, the number of
+ * variants and the seed, and are generated once: later runs with the same parameters reuse the file, so that their
+ * results can be compared.
+ */
+public final class SyntheticVcfGenerator {
+
+    private static final List<String> CHROMOSOMES = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11",
+            "12", "13", "14", "15", "16", "17", "18", "19", "20", "21", "22", "X");
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+    private static final String[] SV_TYPES = {"DEL", "DUP", "INV", "CNV"};
+    private static final int FIRST_POSITION = 1000000;
+    private static final int MAX_GAP = 2000;
+    private static final int MAX_PHASED_GAP = 10;
+    private static final int MAX_INDEL_LENGTH = 20;
+    private static final int MIN_SV_LENGTH = 1000;
+    private static final int MAX_SV_LENGTH = 100000;
+
+    private static final String HEADER = "##fileformat=VCFv4.2\n"
+            + "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position of the structural variant\">\n"
+            + "##INFO=<ID=SVTYPE,Number=1,Type=String,Description=\"Type of structural variant\">\n"
+            + "##INFO=<ID=SVLEN,Number=1,Type=Integer,Description=\"Difference in length between REF and ALT alleles\">\n"
+            + "##ALT=<ID=DEL,Description=\"Deletion\">\n"
+            + "##ALT=<ID=DUP,Description=\"Duplication\">\n"
+            + "##ALT=<ID=INV,Description=\"Inversion\">\n"
+            + "##ALT=<ID=CNV,Description=\"Copy number variable region\">\n"
+            + "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n"
+            + "##FORMAT=<ID=PS,Number=1,Type=Integer,Description=\"Phase set\">\n";
+
+    private SyntheticVcfGenerator() {
+    }
+
+    /**
+     * @param directory   directory of the benchmark datasets
+     * @param mix         composition of the file
+     * @param numVariants number of variants of the file
+     * @param seed        seed of the random generator
+     * @return path of the file, which may not exist yet
+     */
+    public static Path getFile(Path directory, VariantMix mix, int numVariants, long seed) {
+        return directory.resolve("benchmark_" + mix.name().toLowerCase() + "_" + numVariants + "_" + seed + ".vcf.gz");
+    }
+
+    /**
+     * Generates the file unless it already exists.
+     *
+     * @param directory   directory of the benchmark datasets
+     * @param mix         composition of the file
+     * @param numVariants number of variants of the file
+     * @param seed        seed of the random generator
+     * @return bgzipped VCF
+     * @throws IOException if the file cannot be written
+     */
+    public static Path generate(Path directory, VariantMix mix, int numVariants, long seed) throws IOException {
+        Path file = getFile(directory, mix, numVariants, seed);
+        if (Files.exists(file)) {
+            return file;
+        }
+        // An interrupted run must not leave a truncated file that later runs would take as the dataset
+        Path tmpFile = directory.resolve(file.getFileName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(tmpFile.toFile()), StandardCharsets.UTF_8)) {
+            write(writer, mix, numVariants, seed);
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * @param writer      destination of the VCF
+     * @param mix         composition of the file
+     * @param numVariants number of variants, spread over chromosomes 1-22 and X
+     * @param seed        seed of the random generator
+     * @throws IOException if the VCF cannot be written
+     */
+    public static void write(Writer writer, VariantMix mix, int numVariants, long seed) throws IOException {
+        writer.write(HEADER);
+        StringBuilder line = new StringBuilder();
+        for (String chromosome : CHROMOSOMES) {
+            line.append("##contig=<ID=").append(chromosome).append(">\n");
+        }
+        line.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE\n");
+        writer.write(line.toString());
+
+        // String hash codes are stable, files do not depend on the declaration order of the mixes
+        Random random = new Random(seed * 31 + mix.name().hashCode());
+        for (int i = 0; i < CHROMOSOMES.size(); i++) {
+            int chromosomeVariants = numVariants / CHROMOSOMES.size() + (i < numVariants % CHROMOSOMES.size() ? 1 : 0);
+            int position = FIRST_POSITION;
+            int phaseSet = 0;
+            int remainingInPhaseSet = 0;
+            for (int j = 0; j < chromosomeVariants; j++) {
+                if (mix.isPhased() && remainingInPhaseSet > 0) {
+                    position += 1 + random.nextInt(MAX_PHASED_GAP);
+                    remainingInPhaseSet--;
+                } else {
+                    position += 1 + random.nextInt(MAX_GAP);
+                    phaseSet = position;
+                    remainingInPhaseSet = 1 + random.nextInt(4);
+                }
+                line.setLength(0);
+                line.append(CHROMOSOMES.get(i)).append('\t').append(position).append("\t.\t");
+                appendAlleles(line, mix, position, random);
+                if (mix.isPhased()) {
+                    String[] genotypes = {"0|1", "1|0", "1|1"};
+                    line.append("\tGT:PS\t").append(genotypes[random.nextInt(genotypes.length)]).append(':').append(phaseSet);
+                } else {
+                    line.append("\tGT\t").append(random.nextBoolean() ? "0/1" : "1/1");
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Appends the REF, ALT, QUAL, FILTER and INFO columns.
+     */
+    private static void appendAlleles(StringBuilder line, VariantMix mix, int position, Random random) {
+        char reference = BASES[random.nextInt(BASES.length)];
+        int insertionThreshold = mix.getSnvWeight() + mix.getInsertionWeight();
+        int deletionThreshold = insertionThreshold + mix.getDeletionWeight();
+        int type = random.nextInt(deletionThreshold + mix.getSvWeight());
+        if (type < mix.getSnvWeight()) {
+            line.append(reference).append('\t').append(BASES[(indexOf(reference) + 1 + random.nextInt(3)) % BASES.length])
+                    .append("\t.\tPASS\t.");
+        } else if (type < insertionThreshold) {
+            line.append(reference).append('\t').append(reference);
+            appendSequence(line, 1 + random.nextInt(MAX_INDEL_LENGTH), random);
+            line.append("\t.\tPASS\t.");
+        } else if (type < deletionThreshold) {
+            line.append(reference);
+            appendSequence(line, 1 + random.nextInt(MAX_INDEL_LENGTH), random);
+            line.append('\t').append(reference).append("\t.\tPASS\t.");
+        } else {
+            String svType = SV_TYPES[random.nextInt(SV_TYPES.length)];
+            int length = MIN_SV_LENGTH + random.nextInt(MAX_SV_LENGTH - MIN_SV_LENGTH);
+            line.append(reference).append("\t<").append(svType).append(">\t.\tPASS\tSVTYPE=").append(svType)
+                    .append(";END=").append(position + length)
+                    .append(";SVLEN=").append(svType.equals("DEL") ? -length : length);
+        }
+    }
+
+    private static void appendSequence(StringBuilder line, int length, Random random) {
+        for (int i = 0; i < length; i++) {
+            line.append(BASES[random.nextInt(BASES.length)]);
+        }
+    }
+
+    private static int indexOf(char base) {
+        for (int i = 0; i < BASES.length; i++) {
+            if (BASES[i] == base) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
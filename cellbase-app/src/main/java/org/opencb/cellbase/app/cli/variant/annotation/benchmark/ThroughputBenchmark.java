@@ -0,0 +1,249 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import htsjdk.variant.vcf.VCFHeader;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
+import org.opencb.biodata.tools.variant.VariantNormalizer;
+import org.opencb.biodata.tools.variant.VariantVcfHtsjdkReader;
+import org.opencb.cellbase.app.cli.variant.annotation.EncodedBatch;
+import org.opencb.cellbase.app.cli.variant.annotation.EncodingTask;
+import org.opencb.cellbase.app.cli.variant.annotation.JsonAnnotationEncoder;
+import org.opencb.cellbase.app.cli.variant.annotation.ParallelBgzfLineReader;
+import org.opencb.cellbase.app.cli.variant.annotation.VariantAnnotatorTask;
+import org.opencb.cellbase.app.cli.variant.annotation.VcfStringAnnotatorTask;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Measures the throughput of the annotation of a VCF through the same path as the variant-annotation command: lines
+ * are read by a {@link ParallelBgzfLineReader}, parsed, normalized and annotated by {@link VcfStringAnnotatorTask}s and
+ * encoded as JSON by the annotator threads. As in the command, phased files are read by the htsjdk reader instead.
+ * Encoded batches are discarded, so that the disk does not take part in the measure. Every annotator and the whole
+ * batch are timed.
+ */
+public class ThroughputBenchmark {
+
+    private static final int QUEUE_CAPACITY = 10;
+
+    private final int numThreads;
+    private final int batchSize;
+    private final boolean normalize;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Creates the annotators of every annotator thread.
+     */
+    public interface AnnotatorFactory {
+
+        /**
+         * @param mix composition of the annotated file, phased files are expected to be annotated with phase
+         * @return annotators of one thread
+         */
+        List<VariantAnnotator> createAnnotators(VariantMix mix);
+
+        VariantNormalizer.VariantNormalizerConfig createNormalizerConfig() throws IOException;
+    }
+
+    public ThroughputBenchmark(int numThreads, int batchSize, boolean normalize) {
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+        this.normalize = normalize;
+    }
+
+    /**
+     * @param vcfFile          bgzipped VCF, usually written by {@link SyntheticVcfGenerator}
+     * @param mix              composition of the file
+     * @param annotatorFactory annotators to measure
+     * @return throughput, allocation rate and latencies of the annotation
+     * @throws Exception if the annotation fails
+     */
+    public ThroughputReport.DatasetReport run(Path vcfFile, VariantMix mix, AnnotatorFactory annotatorFactory) throws Exception {
+        // Recorders are shared by the threads, annotators of the same class are told apart by their position
+        Map<String, LatencyRecorder> latencyRecorders = new LinkedHashMap<>();
+        LatencyRecorder batchRecorder = new LatencyRecorder();
+        latencyRecorders.put(ThroughputReport.BATCH_STAGE, batchRecorder);
+
+        logger.info("Annotating {}", vcfFile);
+        long start = System.nanoTime();
+        if (mix.isPhased()) {
+            runPhased(vcfFile, mix, annotatorFactory, latencyRecorders, batchRecorder);
+        } else {
+            runLines(vcfFile, mix, annotatorFactory, latencyRecorders, batchRecorder);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long numVariants = countVariantLines(vcfFile);
+        ThroughputReport.DatasetReport datasetReport = new ThroughputReport.DatasetReport()
+                .setFile(vcfFile.getFileName().toString())
+                .setMd5(md5(vcfFile))
+                .setNumVariants(numVariants)
+                .setSeconds(seconds)
+                .setVariantsPerSecond(numVariants / seconds)
+                .setAllocatedBytesPerSecond(batchRecorder.getAllocatedBytes() / seconds);
+        for (Map.Entry<String, LatencyRecorder> entry : latencyRecorders.entrySet()) {
+            datasetReport.getStages().put(entry.getKey(), new ThroughputReport.StageReport(entry.getValue()));
+        }
+        logger.info("{}: {} variants/s, {} MB/s allocated, p99 batch latency {} ms", mix,
+                String.format("%.1f", datasetReport.getVariantsPerSecond()),
+                String.format("%.1f", datasetReport.getAllocatedBytesPerSecond() / 1e6),
+                String.format("%.2f", datasetReport.getStages().get(ThroughputReport.BATCH_STAGE).getP99Millis()));
+        return datasetReport;
+    }
+
+    /**
+     * Same path as the command for a bgzipped VCF when the phase is ignored: lines are inflated in parallel and parsed
+     * by the annotator tasks.
+     */
+    private void runLines(Path vcfFile, VariantMix mix, AnnotatorFactory annotatorFactory, Map<String, LatencyRecorder> latencyRecorders,
+                          LatencyRecorder batchRecorder) throws Exception {
+        FullVcfCodec vcfCodec = new FullVcfCodec();
+        VCFHeader header;
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(vcfFile))) {
+            header = (VCFHeader) vcfCodec.readActualHeader(vcfCodec.makeSourceFromStream(inputStream));
+        }
+
+        VcfStringAnnotatorTask.SharedContext sharedContext = new VcfStringAnnotatorTask.SharedContext(numThreads);
+        List<ParallelTaskRunner.TaskWithException<String, Variant, Exception>> tasks = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            tasks.add(new VcfStringAnnotatorTask(header, vcfCodec.getVCFHeaderVersion(),
+                    createTimedAnnotators(annotatorFactory.createAnnotators(mix), latencyRecorders), sharedContext, normalize,
+                    annotatorFactory.createNormalizerConfig()));
+        }
+        run(new ParallelBgzfLineReader(vcfFile, numThreads), tasks, batchRecorder, false);
+    }
+
+    /**
+     * Same path as the command for a phased VCF: phase sets may be split between the batches of the parallel reader, so
+     * variants are read, normalized and given their phase set by the htsjdk reader, and written in order.
+     */
+    private void runPhased(Path vcfFile, VariantMix mix, AnnotatorFactory annotatorFactory, Map<String, LatencyRecorder> latencyRecorders,
+                           LatencyRecorder batchRecorder) throws Exception {
+        VariantStudyMetadata metadata = new VariantFileMetadata(vcfFile.getFileName().toString(), vcfFile.toAbsolutePath().toString())
+                .toVariantStudyMetadata(vcfFile.getFileName().toString());
+        VariantNormalizer variantNormalizer = normalize ? new VariantNormalizer(annotatorFactory.createNormalizerConfig()) : null;
+        VariantReader variantReader = new VariantVcfHtsjdkReader(vcfFile, metadata, variantNormalizer).setIgnorePhaseSet(false);
+
+        List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> tasks = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            tasks.add(new VariantAnnotatorTask(createTimedAnnotators(annotatorFactory.createAnnotators(mix), latencyRecorders)));
+        }
+        run(variantReader, tasks, batchRecorder, true);
+    }
+
+    private static List<VariantAnnotator> createTimedAnnotators(List<VariantAnnotator> variantAnnotators,
+                                                                Map<String, LatencyRecorder> latencyRecorders) {
+        List<VariantAnnotator> timedAnnotators = new ArrayList<>(variantAnnotators.size());
+        for (int i = 0; i < variantAnnotators.size(); i++) {
+            String name = i + "-" + variantAnnotators.get(i).getClass().getSimpleName();
+            LatencyRecorder latencyRecorder = latencyRecorders.computeIfAbsent(name, key -> new LatencyRecorder());
+            timedAnnotators.add(new TimedVariantAnnotator(variantAnnotators.get(i), latencyRecorder));
+        }
+        return timedAnnotators;
+    }
+
+    /**
+     * Annotates and encodes as JSON the batches of the reader, timing every batch.
+     */
+    private <I> void run(DataReader<I> reader, List<ParallelTaskRunner.TaskWithException<I, Variant, Exception>> tasks,
+                         LatencyRecorder batchRecorder, boolean sorted) throws Exception {
+        List<ParallelTaskRunner.TaskWithException<I, EncodedBatch, Exception>> timedTasks = new ArrayList<>(tasks.size());
+        for (ParallelTaskRunner.TaskWithException<I, EncodedBatch, Exception> task
+                : EncodingTask.wrap(tasks, new JsonAnnotationEncoder(false))) {
+            timedTasks.add(new TimedTask<>(task, batchRecorder));
+        }
+        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, batchSize, QUEUE_CAPACITY, sorted);
+        new ParallelTaskRunner<>(reader, timedTasks, new DiscardingWriter(), config).run();
+    }
+
+    private static long countVariantLines(Path vcfFile) throws IOException {
+        ParallelBgzfLineReader reader = new ParallelBgzfLineReader(vcfFile, 1);
+        reader.open();
+        long numLines = 0;
+        try {
+            List<String> lines;
+            while (!(lines = reader.read(1000)).isEmpty()) {
+                for (String line : lines) {
+                    if (!line.startsWith("#")) {
+                        numLines++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return numLines;
+    }
+
+    private static String md5(Path file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(file), messageDigest)) {
+            byte[] buffer = new byte[1 << 16];
+            while (inputStream.read(buffer) >= 0) {
+                continue;
+            }
+        }
+        StringBuilder md5 = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            md5.append(String.format("%02x", b));
+        }
+        return md5.toString();
+    }
+
+    /**
+     * Discards the encoded batches.
+     */
+    private static class DiscardingWriter implements DataWriter<EncodedBatch> {
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean write(EncodedBatch batch) {
+            return true;
+        }
+
+        @Override
+        public boolean write(List<EncodedBatch> batch) {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a throughput benchmark run, stored as JSON so that later runs can be compared against it.
+ */
+public class ThroughputReport {
+
+    /**
+     * Stage including the parsing, normalization, annotation and encoding of a batch.
+     */
+    public static final String BATCH_STAGE = "batch";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private String date;
+    private int numThreads;
+    private int batchSize;
+    private Map<String, DatasetReport> datasets;
+
+    public ThroughputReport() {
+        this.datasets = new LinkedHashMap<>();
+    }
+
+    public ThroughputReport(String date, int numThreads, int batchSize) {
+        this();
+        this.date = date;
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+    }
+
+    public static ThroughputReport read(Path file) throws IOException {
+        return OBJECT_MAPPER.readValue(file.toFile(), ThroughputReport.class);
+    }
+
+    public void write(Path file) throws IOException {
+        OBJECT_MAPPER.writeValue(file.toFile(), this);
+    }
+
+    /**
+     * Compares the datasets found in both reports. A dataset regresses if its throughput is lower, or the 99th
+     * percentile of its batch latency higher, than the baseline by more than the given percentage. Reports of runs
+     * with a different number of threads or batch size cannot be compared, which is reported as a regression.
+     *
+     * @param baseline      report of a previous run
+     * @param maxRegression maximum regression allowed, as a percentage of the baseline
+     * @return description of the regressions found, empty if none
+     */
+    public List<String> findRegressions(ThroughputReport baseline, double maxRegression) {
+        if (baseline.getNumThreads() != numThreads || baseline.getBatchSize() != batchSize) {
+            return Collections.singletonList(String.format("baseline run with %d threads and batches of %d variants, this run with"
+                    + " %d threads and batches of %d variants, results cannot be compared", baseline.getNumThreads(),
+                    baseline.getBatchSize(), numThreads, batchSize));
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, DatasetReport> entry : datasets.entrySet()) {
+            DatasetReport baselineDataset = baseline.getDatasets().get(entry.getKey());
+            if (baselineDataset == null) {
+                continue;
+            }
+            DatasetReport dataset = entry.getValue();
+            if (baselineDataset.getMd5() != null && !baselineDataset.getMd5().equals(dataset.getMd5())) {
+                regressions.add(entry.getKey() + ": dataset differs from the baseline one, results cannot be compared");
+                continue;
+            }
+            double minThroughput = baselineDataset.getVariantsPerSecond() * (1 - maxRegression / 100);
+            if (dataset.getVariantsPerSecond() < minThroughput) {
+                regressions.add(String.format("%s: %.1f variants/s, baseline %.1f variants/s", entry.getKey(),
+                        dataset.getVariantsPerSecond(), baselineDataset.getVariantsPerSecond()));
+            }
+            StageReport batch = dataset.getStages().get(BATCH_STAGE);
+            StageReport baselineBatch = baselineDataset.getStages().get(BATCH_STAGE);
+            if (batch != null && baselineBatch != null && batch.getP99Millis() > baselineBatch.getP99Millis() * (1 + maxRegression / 100)) {
+                regressions.add(String.format("%s: p99 batch latency %.2f ms, baseline %.2f ms", entry.getKey(),
+                        batch.getP99Millis(), baselineBatch.getP99Millis()));
+            }
+        }
+        return regressions;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public ThroughputReport setDate(String date) {
+        this.date = date;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public ThroughputReport setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public ThroughputReport setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public Map<String, DatasetReport> getDatasets() {
+        return datasets;
+    }
+
+    public ThroughputReport setDatasets(Map<String, DatasetReport> datasets) {
+        this.datasets = datasets;
+        return this;
+    }
+
+    /**
+     * Results of the annotation of one synthetic VCF.
+     */
+    public static class DatasetReport {
+
+        private String file;
+        private String md5;
+        private long numVariants;
+        private double seconds;
+        private double variantsPerSecond;
+        private double allocatedBytesPerSecond;
+        private Map<String, StageReport> stages;
+
+        public DatasetReport() {
+            this.stages = new LinkedHashMap<>();
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public DatasetReport setFile(String file) {
+            this.file = file;
+            return this;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public DatasetReport setMd5(String md5) {
+            this.md5 = md5;
+            return this;
+        }
+
+        public long getNumVariants() {
+            return numVariants;
+        }
+
+        public DatasetReport setNumVariants(long numVariants) {
+            this.numVariants = numVariants;
+            return this;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public DatasetReport setSeconds(double seconds) {
+            this.seconds = seconds;
+            return this;
+        }
+
+        public double getVariantsPerSecond() {
+            return variantsPerSecond;
+        }
+
+        public DatasetReport setVariantsPerSecond(double variantsPerSecond) {
+            this.variantsPerSecond = variantsPerSecond;
+            return this;
+        }
+
+        public double getAllocatedBytesPerSecond() {
+            return allocatedBytesPerSecond;
+        }
+
+        public DatasetReport setAllocatedBytesPerSecond(double allocatedBytesPerSecond) {
+            this.allocatedBytesPerSecond = allocatedBytesPerSecond;
+            return this;
+        }
+
+        public Map<String, StageReport> getStages() {
+            return stages;
+        }
+
+        public DatasetReport setStages(Map<String, StageReport> stages) {
+            this.stages = stages;
+            return this;
+        }
+    }
+
+    /**
+     * Latency percentiles and allocations of the calls to one stage, e.g. one annotator.
+     */
+    public static class StageReport {
+
+        private int count;
+        private double meanMillis;
+        private double p50Millis;
+        private double p90Millis;
+        private double p99Millis;
+        private double maxMillis;
+        private long allocatedBytes;
+
+        public StageReport() {
+        }
+
+        public StageReport(LatencyRecorder latencyRecorder) {
+            this.count = latencyRecorder.getCount();
+            this.meanMillis = count == 0 ? 0 : toMillis(latencyRecorder.getTotalNanos()) / count;
+            this.p50Millis = toMillis(latencyRecorder.getPercentile(50));
+            this.p90Millis = toMillis(latencyRecorder.getPercentile(90));
+            this.p99Millis = toMillis(latencyRecorder.getPercentile(99));
+            this.maxMillis = toMillis(latencyRecorder.getPercentile(100));
+            this.allocatedBytes = latencyRecorder.getAllocatedBytes();
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1e6;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public StageReport setCount(int count) {
+            this.count = count;
+            return this;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public StageReport setMeanMillis(double meanMillis) {
+            this.meanMillis = meanMillis;
+            return this;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public StageReport setP50Millis(double p50Millis) {
+            this.p50Millis = p50Millis;
+            return this;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public StageReport setP90Millis(double p90Millis) {
+            this.p90Millis = p90Millis;
+            return this;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public StageReport setP99Millis(double p99Millis) {
+            this.p99Millis = p99Millis;
+            return this;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public StageReport setMaxMillis(double maxMillis) {
+            this.maxMillis = maxMillis;
+            return this;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public StageReport setAllocatedBytes(long allocatedBytes) {
+            this.allocatedBytes = allocatedBytes;
+            return this;
+        }
+    }
+}
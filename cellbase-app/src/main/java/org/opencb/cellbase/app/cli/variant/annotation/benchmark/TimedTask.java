@@ -0,0 +1,46 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import org.opencb.commons.run.ParallelTaskRunner;
+
+import java.util.List;
+
+/**
+ * Records the latency and allocations of every batch processed by a task.
+ *
+ * @param <I> input of the task
+ * @param <O> output of the task
+ */
+public class TimedTask<I, O> implements ParallelTaskRunner.TaskWithException<I, O, Exception> {
+
+    private final ParallelTaskRunner.TaskWithException<I, O, Exception> task;
+    private final LatencyRecorder latencyRecorder;
+
+    public TimedTask(ParallelTaskRunner.TaskWithException<I, O, Exception> task, LatencyRecorder latencyRecorder) {
+        this.task = task;
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    @Override
+    public void pre() throws Exception {
+        task.pre();
+    }
+
+    @Override
+    public List<O> apply(List<I> batch) throws Exception {
+        long startAllocatedBytes = LatencyRecorder.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        List<O> output = task.apply(batch);
+        latencyRecorder.record(System.nanoTime() - start, startAllocatedBytes);
+        return output;
+    }
+
+    @Override
+    public List<O> drain() throws Exception {
+        return task.drain();
+    }
+
+    @Override
+    public void post() throws Exception {
+        task.post();
+    }
+}
@@ -0,0 +1,39 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Records the latency and allocations of every call to an annotator.
+ */
+public class TimedVariantAnnotator implements VariantAnnotator {
+
+    private final VariantAnnotator variantAnnotator;
+    private final LatencyRecorder latencyRecorder;
+
+    public TimedVariantAnnotator(VariantAnnotator variantAnnotator, LatencyRecorder latencyRecorder) {
+        this.variantAnnotator = variantAnnotator;
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    @Override
+    public boolean open() {
+        return variantAnnotator.open();
+    }
+
+    @Override
+    public void run(List<Variant> variantList) throws InterruptedException, ExecutionException {
+        long startAllocatedBytes = LatencyRecorder.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        variantAnnotator.run(variantList);
+        latencyRecorder.record(System.nanoTime() - start, startAllocatedBytes);
+    }
+
+    @Override
+    public boolean close() {
+        return variantAnnotator.close();
+    }
+}
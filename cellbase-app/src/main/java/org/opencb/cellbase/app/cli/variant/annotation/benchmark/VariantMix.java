@@ -0,0 +1,61 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+/**
+ * Composition of the synthetic VCFs annotated by the throughput benchmark. Weights are the percentage of SNVs,
+ * insertions, deletions and symbolic structural variants.
+ */
+public enum VariantMix {
+
+    SNV(90, 5, 5, 0, false),
+    INDEL(20, 40, 40, 0, false),
+    SV(40, 5, 5, 50, false),
+    // Blocks of nearby SNVs and indels sharing a phase set
+    PHASED(80, 10, 10, 0, true);
+
+    private final int snvWeight;
+    private final int insertionWeight;
+    private final int deletionWeight;
+    private final int svWeight;
+    private final boolean phased;
+
+    VariantMix(int snvWeight, int insertionWeight, int deletionWeight, int svWeight, boolean phased) {
+        this.snvWeight = snvWeight;
+        this.insertionWeight = insertionWeight;
+        this.deletionWeight = deletionWeight;
+        this.svWeight = svWeight;
+        this.phased = phased;
+    }
+
+    /**
+     * @param mixes comma separated list of mixes, case insensitive, e.g. snv,indel
+     * @return mixes in the given order
+     */
+    public static VariantMix[] parse(String mixes) {
+        String[] names = mixes.split(",");
+        VariantMix[] variantMixes = new VariantMix[names.length];
+        for (int i = 0; i < names.length; i++) {
+            variantMixes[i] = valueOf(names[i].trim().toUpperCase());
+        }
+        return variantMixes;
+    }
+
+    public int getSnvWeight() {
+        return snvWeight;
+    }
+
+    public int getInsertionWeight() {
+        return insertionWeight;
+    }
+
+    public int getDeletionWeight() {
+        return deletionWeight;
+    }
+
+    public int getSvWeight() {
+        return svWeight;
+    }
+
+    public boolean isPhased() {
+        return phased;
+    }
+}
@@ -27,15 +27,19 @@ public class CustomAnnotationVariantIndexer extends VariantIndexer {
     protected void updateIndex(List<Variant> variantList) throws IOException, RocksDBException {
         for (Variant variant : variantList) {
             if (variant.getType() != VariantType.NO_VARIATION) {
-                dbIndex.put(variant.toString().getBytes(),
-                        jsonObjectWriter.writeValueAsBytes(getVariantToIndex(variant)));
+                dbIndex.put(VariantIndexCodec.encodeKey(variant), variantCodec.encode(getVariantToIndex(variant, fieldSet)));
             }
 
         }
 
     }
 
-    private Variant getVariantToIndex(Variant variant) {
+    /**
+     * @param variant  variant read from the custom file
+     * @param fieldSet info fields to keep
+     * @return the variant as it is indexed, with just the essential data
+     */
+    public static Variant getVariantToIndex(Variant variant, Set<String> fieldSet) {
         // Only essential variant data will be indexed
         VariantBuilder variantBuilder = new VariantBuilder(variant.getChromosome(),
                 variant.getStart(),
@@ -43,7 +47,7 @@ public class CustomAnnotationVariantIndexer extends VariantIndexer {
                 variant.getReference(),
                 variant.getAlternate());
 
-        variantBuilder.setAttributes(parseInfoAttributes(variant));
+        variantBuilder.setAttributes(parseInfoAttributes(variant, fieldSet));
 
         // Samples data contains the phase
         if (variant.getStudies() != null && !variant.getStudies().isEmpty()) {
@@ -54,7 +58,7 @@ public class CustomAnnotationVariantIndexer extends VariantIndexer {
          return variantBuilder.build();
     }
 
-    private Map<String, String> parseInfoAttributes(Variant variant) {
+    private static Map<String, String> parseInfoAttributes(Variant variant, Set<String> fieldSet) {
         Map<String, String> infoMap = variant.getStudies().get(0).getFiles().get(0).getAttributes();
         Map<String, String> parsedInfo = new HashMap<>();
         for (String attribute : infoMap.keySet()) {
@@ -10,12 +10,22 @@ import org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager;
 import org.rocksdb.RocksDBException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 import java.util.List;
 
+/**
+ * Indexes the population frequencies of a file. Values start with the ordinal of the variant in the index, the variants
+ * found while annotating are flagged in a bitmap by their ordinal rather than rewriting their value in the index.
+ */
 public class PopulationFrequencyVariantIndexer extends VariantIndexer {
     private static final String EMPTY_ALLELE_STRING = "";
     private static final char SHIFTED_POSITION_CHARACTER = '-';
     private static final char UKNOWN_NUCLEOTIDE = 'n';
+    private static final int ORDINAL_LENGTH = Integer.BYTES;
+
+    private final BitSet visitedVariants = new BitSet();
+    private int numVariants = 0;
 
     public PopulationFrequencyVariantIndexer(VariantReader variantReader, int maxOpenFiles, boolean forceCreate) {
         super(variantReader, maxOpenFiles, forceCreate);
@@ -35,13 +45,17 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
                 }
             }
 
-            byte[] dbContent = dbIndex.get(variant.toString().getBytes());
+            byte[] key = VariantIndexCodec.encodeKey(variant);
+            byte[] dbContent = dbIndex.get(key);
             Variant variantToIndex;
+            int ordinal;
 
             if (dbContent == null) {
                 variantToIndex = variant;
+                ordinal = numVariants++;
             } else {
-                variantToIndex = jsonObjectMapper.readValue(dbContent, Variant.class);
+                variantToIndex = variantCodec.decode(dbContent, ORDINAL_LENGTH);
+                ordinal = getOrdinal(dbContent);
 
                 // Add all pop frequencies from current variant
                 variantToIndex
@@ -49,7 +63,46 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
                         .getPopulationFrequencies().addAll(variant.getAnnotation().getPopulationFrequencies());
             }
 
-            dbIndex.put(variantToIndex.toString().getBytes(), jsonObjectWriter.writeValueAsBytes(variantToIndex));
+            byte[] encodedVariant = variantCodec.encode(variantToIndex);
+            dbIndex.put(key, ByteBuffer.allocate(ORDINAL_LENGTH + encodedVariant.length)
+                    .putInt(ordinal)
+                    .put(encodedVariant)
+                    .array());
+        }
+    }
+
+    /**
+     * @param dbContent value read from the index
+     * @return ordinal of the variant in the index
+     */
+    public static int getOrdinal(byte[] dbContent) {
+        return ByteBuffer.wrap(dbContent).getInt();
+    }
+
+    /**
+     * @param dbContent value read from the index
+     * @param codec     codec used to decode the variant, codecs are not thread safe
+     * @return the variant
+     * @throws IOException if the value cannot be decoded
+     */
+    public static Variant decodeVariant(byte[] dbContent, VariantIndexCodec codec) throws IOException {
+        return codec.decode(dbContent, ORDINAL_LENGTH);
+    }
+
+    /**
+     * Flags a variant as found in the annotated file. Called by the annotator tasks concurrently.
+     *
+     * @param dbContent value read from the index
+     */
+    public void markVisited(byte[] dbContent) {
+        synchronized (visitedVariants) {
+            visitedVariants.set(getOrdinal(dbContent));
+        }
+    }
+
+    public boolean isVisited(byte[] dbContent) {
+        synchronized (visitedVariants) {
+            return visitedVariants.get(getOrdinal(dbContent));
         }
     }
 
@@ -0,0 +1,148 @@
+package org.opencb.cellbase.app.cli.variant.annotation.indexers;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.*;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary keys and values of the variants stored in the RocksDB indexes of the custom and population frequency files.
+ *
+ * Keys are the chromosome ordinal, the start and end big endian, the length of the reference and the reference and
+ * alternate bytes, so they are compact and sorted by position. Values are Avro encoded, the first byte tells the
+ * encoding: variants that Avro cannot write, e.g. a required field is null, are stored as JSON. Not thread safe.
+ */
+public class VariantIndexCodec {
+
+    private static final byte AVRO = 1;
+    private static final byte JSON = 2;
+
+    // Chromosomes with no ordinal are written after a 0 ordinal with their name
+    private static final String[] CHROMOSOMES = {"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13",
+            "14", "15", "16", "17", "18", "19", "20", "21", "22", "X", "Y", "MT", };
+    private static final Map<String, Byte> CHROMOSOME_ORDINALS = new HashMap<>();
+    static {
+        for (int i = 0; i < CHROMOSOMES.length; i++) {
+            CHROMOSOME_ORDINALS.put(CHROMOSOMES[i], (byte) (i + 1));
+        }
+    }
+
+    private static Logger logger = LoggerFactory.getLogger(VariantIndexCodec.class);
+
+    private final ObjectWriter jsonObjectWriter;
+    private final ObjectReader jsonObjectReader;
+
+    private final DatumWriter<VariantAvro> datumWriter;
+    private final DatumReader<VariantAvro> datumReader;
+    private final ByteArrayOutputStream outputStream;
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+    private int numJsonValues;
+
+    public VariantIndexCodec() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectWriter = mapper.writer();
+        jsonObjectReader = mapper.readerFor(Variant.class);
+
+        datumWriter = new SpecificDatumWriter<>(VariantAvro.getClassSchema());
+        datumReader = new SpecificDatumReader<VariantAvro>(VariantAvro.class) {
+            @Override
+            protected Object newArray(Object old, int size, Schema schema) {
+                return new ArrayList<>(size);
+            }
+
+            @Override
+            protected Object newMap(Object old, int size) {
+                return new LinkedHashMap<>();
+            }
+
+            @Override
+            protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+                return in.readString();
+            }
+        };
+        outputStream = new ByteArrayOutputStream(1024);
+    }
+
+    /**
+     * @param variant variant
+     * @return binary key of the variant, the same for all variants with the same position and alleles
+     */
+    public static byte[] encodeKey(Variant variant) {
+        byte[] chromosome = null;
+        Byte ordinal = CHROMOSOME_ORDINALS.get(variant.getChromosome());
+        if (ordinal == null) {
+            chromosome = variant.getChromosome().getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] reference = variant.getReference().getBytes(StandardCharsets.UTF_8);
+        byte[] alternate = variant.getAlternate().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer key = ByteBuffer.allocate(1 + (chromosome == null ? 0 : chromosome.length + 1) + 12 + reference.length
+                + alternate.length);
+        if (chromosome == null) {
+            key.put(ordinal);
+        } else {
+            key.put((byte) 0).put(chromosome).put((byte) 0);
+        }
+        key.putInt(variant.getStart()).putInt(variant.getEnd()).putInt(reference.length).put(reference).put(alternate);
+        return key.array();
+    }
+
+    public byte[] encode(Variant variant) throws IOException {
+        outputStream.reset();
+        outputStream.write(AVRO);
+        encoder = EncoderFactory.get().directBinaryEncoder(outputStream, encoder);
+        try {
+            datumWriter.write(variant.getImpl(), encoder);
+        } catch (NullPointerException | ClassCastException | AvroRuntimeException e) {
+            if (numJsonValues++ == 0) {
+                logger.warn("Variant {} cannot be Avro encoded, storing it as JSON: {}", variant, e.toString());
+            }
+            outputStream.reset();
+            outputStream.write(JSON);
+            jsonObjectWriter.writeValue(outputStream, variant);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public Variant decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0);
+    }
+
+    /**
+     * @param bytes  value read from the index
+     * @param offset position of the encoded variant within the value
+     * @return the variant
+     * @throws IOException if the value cannot be decoded
+     */
+    public Variant decode(byte[] bytes, int offset) throws IOException {
+        switch (bytes[offset]) {
+            case AVRO:
+                decoder = DecoderFactory.get().binaryDecoder(bytes, offset + 1, bytes.length - offset - 1, decoder);
+                return new Variant(datumReader.read(null, decoder));
+            case JSON:
+                return jsonObjectReader.readValue(bytes, offset + 1, bytes.length - offset - 1);
+            default:
+                throw new IOException("Unknown variant encoding " + bytes[offset]);
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package org.opencb.cellbase.app.cli.variant.annotation.indexers;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.rocksdb.Options;
@@ -19,8 +16,10 @@ import java.util.stream.Collectors;
 
 public abstract class VariantIndexer {
 
-    protected ObjectMapper jsonObjectMapper;
-    protected ObjectWriter jsonObjectWriter;
+    // Indexes created by former versions have string keys and JSON values, they are not reused
+    private static final String INDEX_SUFFIX = ".v2.idx";
+
+    protected VariantIndexCodec variantCodec;
 
     private final Logger logger = LoggerFactory.getLogger(VariantIndexer.class);
 
@@ -38,10 +37,7 @@ public abstract class VariantIndexer {
         this.forceCreate = forceCreate;
         this.maxOpenFiles = maxOpenFiles;
 
-        jsonObjectMapper = new ObjectMapper();
-        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = jsonObjectMapper.writer();
-
+        variantCodec = new VariantIndexCodec();
     }
 
     public RocksDB getDbIndex() {
@@ -65,7 +61,7 @@ public abstract class VariantIndexer {
     }
 
     private Object[] getDBConnection() {
-        String dbLocation = variantReader.getVariantFileMetadata().getPath() + ".idx";
+        String dbLocation = variantReader.getVariantFileMetadata().getPath() + INDEX_SUFFIX;
         boolean indexingNeeded = forceCreate || !Files.exists(Paths.get(dbLocation));
         // a static method that loads the RocksDB C++ library.
         RocksDB.loadLibrary();
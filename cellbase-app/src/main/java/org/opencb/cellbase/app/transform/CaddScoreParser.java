@@ -17,16 +17,20 @@
 package org.opencb.cellbase.app.transform;
 
 import org.opencb.biodata.models.core.GenomicScoreRegion;
+import org.opencb.cellbase.core.common.GenomicScoreBinaryFile;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
 import org.opencb.commons.utils.FileUtils;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Created by imedina on 06/11/15.
@@ -34,13 +38,53 @@ import java.util.Map;
 public class CaddScoreParser extends CellBaseParser {
 
     private Path caddFilePath;
+    private Path binaryOutputFile;
 
+    private GenomicScoreBinaryFile.Writer binaryWriter;
+
+    // Must be the same than VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE, this is decoded by VariantMongoDBAdaptor
     private static final int CHUNK_SIZE = 1000;
     private static final int DECIMAL_RESOLUTION = 100;
 
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int NUM_FIELDS = 6;
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    // Nucleotide index in the packed long, A is stored in the highest 16 bits
+    private static final int[] NUCLEOTIDE_INDEX = new int[128];
+
+    static {
+        Arrays.fill(NUCLEOTIDE_INDEX, -1);
+        NUCLEOTIDE_INDEX['A'] = 0;
+        NUCLEOTIDE_INDEX['C'] = 1;
+        NUCLEOTIDE_INDEX['G'] = 2;
+        NUCLEOTIDE_INDEX['T'] = 3;
+    }
+
+    private byte[] buffer;
+    private int bufferStart;
+    private int bufferEnd;
+    private final int[] fieldStarts = new int[NUM_FIELDS];
+    private final int[] fieldEnds = new int[NUM_FIELDS];
+
+    private long[] rawValues;
+    private long[] scaledValues;
+    private int numValues;
+
     public CaddScoreParser(Path caddFilePath, CellBaseSerializer serializer) {
+        this(caddFilePath, null, serializer);
+    }
+
+    /**
+     * @param caddFilePath     CADD whole genome SNVs file, plain or gzipped
+     * @param binaryOutputFile when not null the scores are also written in this file in the compact
+     *                         {@link GenomicScoreBinaryFile} format
+     * @param serializer       JSON serializer
+     */
+    public CaddScoreParser(Path caddFilePath, Path binaryOutputFile, CellBaseSerializer serializer) {
         super(serializer);
         this.caddFilePath = caddFilePath;
+        this.binaryOutputFile = binaryOutputFile;
 
         logger = LoggerFactory.getLogger(ConservationParser.class);
     }
@@ -55,153 +99,301 @@ public class CaddScoreParser extends CellBaseParser {
         1       10002   A       G       0.178363        4.450
         1       10002   A       T       0.347401        6.143
     */
+    /**
+     * Lines are tokenized in place over a byte buffer, no String is created per line. Packed scores are accumulated in
+     * primitive arrays and only boxed when a chunk is serialized.
+     */
     @Override
     public void parse() throws Exception {
         FileUtils.checkPath(caddFilePath);
 
-        BufferedReader bufferedReader = FileUtils.newBufferedReader(caddFilePath);
-        List<Long> rawValues = new ArrayList<>(CHUNK_SIZE);
-        List<Long> scaledValues = new ArrayList<>(CHUNK_SIZE);
+        buffer = new byte[BUFFER_SIZE];
+        bufferStart = 0;
+        bufferEnd = 0;
+        rawValues = new long[CHUNK_SIZE];
+        scaledValues = new long[CHUNK_SIZE];
+        numValues = 0;
+        if (binaryOutputFile != null) {
+            binaryWriter = new GenomicScoreBinaryFile.Writer(binaryOutputFile);
+        }
 
         int start = 1;
-//        int end = 1999;
         int end = CHUNK_SIZE - 1;
-        String line;
-        String[] fields = new String[0];
         short v;
         int lineCount = 0;
-        int counter = 1;
-        int serializedChunks = 0;
         int previousPosition = 0;
         int newPosition = 0;
+        byte[] chromosomeBytes = new byte[0];
         String chromosome = null;
 
-        String[] nucleotides = new String[]{"A", "C", "G", "T"};
         long rawLongValue = 0;
         long scaledLongValue = 0;
-        Map<String, Float> rawScoreValuesMap = new HashMap<>();
-        Map<String, Float> scaledScoreValuesMap = new HashMap<>();
-        while ((line = bufferedReader.readLine()) != null) {
-            if (!line.startsWith("#")) {
-                fields = line.split("\t");
-                newPosition = Integer.parseInt(fields[1]);
-//                if (fields[0].equals("1") && fields[1].equals("249240621")) {
-//                if (fields[0].equals("1") && fields[1].equals("69100")) {
-//                if (fields[0].equals("1") && fields[1].equals("144854598")) {
-//                    logger.debug("line {} reached", line);
-//                    logger.debug("Associated chunk count {}", serializedChunks);
-//                    logger.debug("start {}", start);
-//                    logger.debug("end {}", end);
-//                    logger.debug("chunk size {}", CHUNK_SIZE);
-//                }
+        // Scores of the current position indexed by nucleotide, null (not present) values are marked with NaN
+        float[] rawScores = new float[4];
+        float[] scaledScores = new float[4];
+        Arrays.fill(rawScores, Float.NaN);
+        Arrays.fill(scaledScores, Float.NaN);
+
+        try (InputStream inputStream = newInputStream(caddFilePath)) {
+            int lineStart;
+            while ((lineStart = nextLine(inputStream)) >= 0) {
+                if (buffer[lineStart] == '#' || !tokenize(lineStart)) {
+                    continue;
+                }
+                newPosition = parseInt(1);
+
                 // this only happens the first time, when we start reading the file
                 if (chromosome == null) {
-                    logger.info("Parsing chr {} ", fields[0]);
-                    chromosome = fields[0];
+                    chromosomeBytes = Arrays.copyOfRange(buffer, fieldStarts[0], fieldEnds[0]);
+                    chromosome = new String(chromosomeBytes, StandardCharsets.US_ASCII);
+                    logger.info("Parsing chr {} ", chromosome);
 
                     start = newPosition;
                     previousPosition = newPosition;
                     end = start + CHUNK_SIZE - 2;
                 }
 
-                if (!chromosome.equals(fields[0])) {
-                    logger.info("Parsing chr {} ", fields[0]);
+                if (!fieldEquals(0, chromosomeBytes)) {
                     // both raw and scaled are serialized
-                    GenomicScoreRegion<Long> genomicScoreRegion =
-                            new GenomicScoreRegion<>(chromosome, start, previousPosition, "cadd_raw", rawValues);
-                    serializer.serialize(genomicScoreRegion);
-
-                    genomicScoreRegion = new GenomicScoreRegion<>(chromosome, start, previousPosition, "cadd_scaled", scaledValues);
-                    serializer.serialize(genomicScoreRegion);
+                    serializeChunk(chromosome, start, previousPosition);
 
-                    serializedChunks++;
-                    chromosome = fields[0];
+                    chromosomeBytes = Arrays.copyOfRange(buffer, fieldStarts[0], fieldEnds[0]);
+                    chromosome = new String(chromosomeBytes, StandardCharsets.US_ASCII);
+                    logger.info("Parsing chr {} ", chromosome);
                     start = newPosition;
-//                    end = CHUNK_SIZE - 1;
                     end = start + CHUNK_SIZE - 2;
-
-                    counter = 0;
-                    rawValues.clear();
-                    scaledValues.clear();
-//                    rawLongValue = 0;
-//                    lineCount = 0;
-//                    rawScoreValuesMap.clear();
-//                    scaledScoreValuesMap.clear();
                 // The series of cadd scores is not continuous through the whole chromosome
                 } else if (end < newPosition || (newPosition - previousPosition) > 1) {
                     // both raw and scaled are serialized
-                    GenomicScoreRegion genomicScoreRegion
-                            = new GenomicScoreRegion<>(fields[0], start, previousPosition, "cadd_raw", rawValues);
-                    serializer.serialize(genomicScoreRegion);
-
-                    genomicScoreRegion
-                            = new GenomicScoreRegion<>(fields[0], start, previousPosition, "cadd_scaled", scaledValues);
-                    serializer.serialize(genomicScoreRegion);
+                    serializeChunk(chromosome, start, previousPosition);
 
-                    serializedChunks++;
                     start = newPosition;
-//                    start = end + 1;
-//                    end += CHUNK_SIZE;
                     end = (start / CHUNK_SIZE) * CHUNK_SIZE + CHUNK_SIZE - 1;
-
-                    counter = 0;
-                    rawValues.clear();
-                    scaledValues.clear();
                 }
 
-                rawScoreValuesMap.put(fields[3], Float.valueOf(fields[4]));
-                scaledScoreValuesMap.put(fields[3], Float.valueOf(fields[5]));
+                int nucleotide = fieldEnds[3] - fieldStarts[3] == 1 && buffer[fieldStarts[3]] >= 0
+                        ? NUCLEOTIDE_INDEX[buffer[fieldStarts[3]]]
+                        : -1;
+                float rawScore = parseFloat(4);
+                float scaledScore = parseFloat(5);
+                if (nucleotide >= 0) {
+                    rawScores[nucleotide] = rawScore;
+                    scaledScores[nucleotide] = scaledScore;
+                }
 
                 if (++lineCount == 3) {
-//                    if (fields[0].equals("1") && fields[1].equals("249240621")) {
-//                    if (fields[0].equals("1") && fields[1].equals("69100")) {
-//                    if (fields[0].equals("1") && fields[1].equals("144854598")) {
-//                        logger.info("offset: {}", rawValues.size());
-//                    }
-
-                    for (String nucleotide : nucleotides) {
+                    for (int i = 0; i < 4; i++) {
                         // raw CADD score values can be negative, we add 10 to make positive
-                        float a = rawScoreValuesMap.getOrDefault(nucleotide, 10f) + 10.0f;
+                        float a = (Float.isNaN(rawScores[i]) ? 10f : rawScores[i]) + 10.0f;
                         v = (short) (a * DECIMAL_RESOLUTION);
                         rawLongValue = (rawLongValue << 16) | v;
 
                         // scaled CADD scores are always positive
-                        a = scaledScoreValuesMap.getOrDefault(nucleotide, 0f);
+                        a = Float.isNaN(scaledScores[i]) ? 0f : scaledScores[i];
                         v = (short) (a * DECIMAL_RESOLUTION);
                         scaledLongValue = (scaledLongValue << 16) | v;
                     }
+                    addValues(rawLongValue, scaledLongValue);
 
-//                    if (rawLongValue < 0 || scaledLongValue < 0) {
-//                        logger.error("raw/scaled Long Values cannot be 0");
-//                        logger.error("Last read line {}", line);
-//                        System.exit(1);
-//                    }
-                    rawValues.add(rawLongValue);
-                    scaledValues.add(scaledLongValue);
-
-                    counter++;
                     rawLongValue = 0;
                     lineCount = 0;
-                    rawScoreValuesMap.clear();
-                    scaledScoreValuesMap.clear();
+                    Arrays.fill(rawScores, Float.NaN);
+                    Arrays.fill(scaledScores, Float.NaN);
                 }
                 previousPosition = newPosition;
             }
         }
 
         // Last chunks can be incomplete for both raw and scaled are serialized
-//        GenomicScoreRegion<Long> genomicScoreRegion =
-//                new GenomicScoreRegion<>(fields[0], start, start + rawValues.size() - 1, "cadd_raw", rawValues);
-        GenomicScoreRegion<Long> genomicScoreRegion =
-                new GenomicScoreRegion<>(fields[0], start, newPosition, "cadd_raw", rawValues);
-        serializer.serialize(genomicScoreRegion);
-
-//        genomicScoreRegion = new GenomicScoreRegion<>(fields[0], start, start + scaledValues.size() - 1, "cadd_scaled", scaledValues);
-        genomicScoreRegion = new GenomicScoreRegion<>(fields[0], start, newPosition, "cadd_scaled", scaledValues);
-        serializer.serialize(genomicScoreRegion);
+        if (chromosome != null) {
+            serializeChunk(chromosome, start, newPosition);
+        }
 
         serializer.close();
-        bufferedReader.close();
+        if (binaryWriter != null) {
+            binaryWriter.close();
+        }
         logger.info("Parsing finished.");
     }
+
+    private void addValues(long rawLongValue, long scaledLongValue) {
+        if (numValues == rawValues.length) {
+            rawValues = Arrays.copyOf(rawValues, numValues * 2);
+            scaledValues = Arrays.copyOf(scaledValues, numValues * 2);
+        }
+        rawValues[numValues] = rawLongValue;
+        scaledValues[numValues] = scaledLongValue;
+        numValues++;
+    }
+
+    private void serializeChunk(String chromosome, int start, int end) throws IOException {
+        serializer.serialize(new GenomicScoreRegion<>(chromosome, start, end, "cadd_raw", asList(rawValues, numValues)));
+        serializer.serialize(new GenomicScoreRegion<>(chromosome, start, end, "cadd_scaled", asList(scaledValues, numValues)));
+        if (binaryWriter != null) {
+            binaryWriter.write("cadd_raw", chromosome, start, end, rawValues, numValues);
+            binaryWriter.write("cadd_scaled", chromosome, start, end, scaledValues, numValues);
+        }
+        numValues = 0;
+    }
+
+    /**
+     * Read-only list over a copy of the values, the serializer may keep the region after this call while the
+     * buffers are reused for the next chunk.
+     */
+    private static List<Long> asList(long[] values, int length) {
+        long[] copy = Arrays.copyOf(values, length);
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                return copy[index];
+            }
+
+            @Override
+            public int size() {
+                return copy.length;
+            }
+        };
+    }
+
+    private static InputStream newInputStream(Path path) throws IOException {
+        InputStream inputStream = Files.newInputStream(path);
+        if (path.toString().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Moves to the next non empty line, refilling the buffer when needed.
+     * @return start of the next line in buffer, the line ends at {@link #bufferStart} - 1, or -1 at the end of the file
+     */
+    private int nextLine(InputStream inputStream) throws IOException {
+        while (true) {
+            for (int i = bufferStart; i < bufferEnd; i++) {
+                if (buffer[i] == '\n') {
+                    int lineStart = bufferStart;
+                    bufferStart = i + 1;
+                    if (i > lineStart) {
+                        return lineStart;
+                    }
+                }
+            }
+            // Move the incomplete line to the beginning of the buffer and read more data
+            int remaining = bufferEnd - bufferStart;
+            if (remaining == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else {
+                System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+            }
+            bufferStart = 0;
+            bufferEnd = remaining;
+            int read = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+            if (read < 0) {
+                if (remaining == 0) {
+                    return -1;
+                }
+                // Last line without '\n'
+                if (bufferEnd == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length + 1);
+                }
+                buffer[bufferEnd++] = '\n';
+            } else {
+                bufferEnd += read;
+            }
+        }
+    }
+
+    /**
+     * Sets the start and end of the first NUM_FIELDS tab separated fields of the line.
+     * @return false if the line has less fields than expected
+     */
+    private boolean tokenize(int lineStart) {
+        int lineEnd = bufferStart - 1;
+        int field = 0;
+        fieldStarts[0] = lineStart;
+        for (int i = lineStart; i < lineEnd && field < NUM_FIELDS - 1; i++) {
+            if (buffer[i] == '\t') {
+                fieldEnds[field] = i;
+                fieldStarts[++field] = i + 1;
+            }
+        }
+        if (field < NUM_FIELDS - 1) {
+            logger.warn("Skipping malformed line: {}", new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII));
+            return false;
+        }
+        int i = fieldStarts[field];
+        while (i < lineEnd && buffer[i] != '\t' && buffer[i] != '\r') {
+            i++;
+        }
+        fieldEnds[field] = i;
+        return true;
+    }
+
+    private boolean fieldEquals(int field, byte[] value) {
+        int length = fieldEnds[field] - fieldStarts[field];
+        if (length != value.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[fieldStarts[field] + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parseInt(int field) {
+        int value = 0;
+        for (int i = fieldStarts[field]; i < fieldEnds[field]; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + fieldToString(field) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Plain decimal numbers with up to 7 significant digits are exactly representable as floats, so dividing by
+     * the power of ten gives the same correctly rounded value than Float.parseFloat. Any other format falls back to it.
+     */
+    private float parseFloat(int field) {
+        int i = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        int mantissa = 0;
+        int decimals = -1;
+        int digits = 0;
+        boolean hasDigits = false;
+        for (; i < end; i++) {
+            byte c = buffer[i];
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9' && digits < 7) {
+                mantissa = mantissa * 10 + (c - '0');
+                hasDigits = true;
+                if (mantissa > 0) {
+                    digits++;
+                }
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return Float.parseFloat(fieldToString(field));
+            }
+        }
+        if (!hasDigits || decimals >= POWERS_OF_TEN.length) {
+            return Float.parseFloat(fieldToString(field));
+        }
+        float value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private String fieldToString(int field) {
+        return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.US_ASCII);
+    }
 }
@@ -16,6 +16,9 @@
 
 package org.opencb.cellbase.app.transform;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.opencb.biodata.models.core.GenomicScoreRegion;
 import org.opencb.cellbase.app.cli.EtlCommons;
 import org.opencb.cellbase.core.serializer.CellBaseFileSerializer;
@@ -23,14 +26,16 @@ import org.opencb.commons.utils.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class ConservationParser extends CellBaseParser {
 
@@ -39,6 +44,7 @@ public class ConservationParser extends CellBaseParser {
     private Logger logger;
     private Path conservedRegionPath;
     private int chunkSize;
+    private int numThreads;
 
     private CellBaseFileSerializer fileSerializer;
     private Map<String, String> outputFileNames;
@@ -53,14 +59,31 @@ public class ConservationParser extends CellBaseParser {
     }
 
     public ConservationParser(Path conservedRegionPath, int chunkSize, CellBaseFileSerializer serializer) {
+        this(conservedRegionPath, chunkSize, Runtime.getRuntime().availableProcessors(), serializer);
+    }
+
+    /**
+     * @param conservedRegionPath directory with the gerp, phastCons and phylop folders
+     * @param chunkSize           GERP chunk size
+     * @param numThreads          number of chromosomes parsed at the same time, the serializer must support concurrent
+     *                            writes to different files
+     * @param serializer          serializer, one file is written per chromosome
+     */
+    public ConservationParser(Path conservedRegionPath, int chunkSize, int numThreads, CellBaseFileSerializer serializer) {
         super(serializer);
         fileSerializer = serializer;
         this.conservedRegionPath = conservedRegionPath;
         this.chunkSize = chunkSize;
+        this.numThreads = Math.max(1, numThreads);
         logger = LoggerFactory.getLogger(ConservationParser.class);
-        outputFileNames = new HashMap<>();
+        outputFileNames = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Chromosomes are independent and are parsed in parallel. All the sources of a chromosome are written to the same
+     * file in this order: GERP, phastCons and phylop, so the wigFix files of a chromosome are not parsed until its GERP
+     * scores have been read from the GERP archive.
+     */
     @Override
     public void parse() throws IOException, InterruptedException {
         System.out.println("conservedRegionPath = " + conservedRegionPath.toString());
@@ -68,105 +91,156 @@ public class ConservationParser extends CellBaseParser {
             throw new IOException("Conservation directory whether does not exist, is not a directory or cannot be read");
         }
 
-        /*
-         * GERP is stored in a particular format
-         */
-        Path gerpFolderPath = conservedRegionPath.resolve(EtlCommons.GERP_SUBDIRECTORY);
-        if (gerpFolderPath.toFile().exists()) {
-            logger.debug("Parsing GERP data ...");
-            gerpParser(gerpFolderPath);
-        }
-
-
         /*
          * UCSC phastCons and phylop are stored in the same format. They are processed together.
          */
         Map<String, Path> files = new HashMap<>();
         String chromosome;
-        Set<String> chromosomes = new HashSet<>();
+        Set<String> chromosomes = new LinkedHashSet<>();
 
         // Reading all files in phastCons folder
-        DirectoryStream<Path> directoryStream = Files.newDirectoryStream(conservedRegionPath.resolve("phastCons"), "*.wigFix.gz");
-        for (Path path : directoryStream) {
-            chromosome = path.getFileName().toString().split("\\.")[0].replace("chr", "");
-            chromosomes.add(chromosome);
-            files.put(chromosome + "phastCons", path);
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(conservedRegionPath.resolve("phastCons"),
+                "*.wigFix.gz")) {
+            for (Path path : directoryStream) {
+                chromosome = path.getFileName().toString().split("\\.")[0].replace("chr", "");
+                chromosomes.add(chromosome);
+                files.put(chromosome + "phastCons", path);
+            }
         }
 
         // Reading all files in phylop folder
-        directoryStream = Files.newDirectoryStream(conservedRegionPath.resolve("phylop"), "*.wigFix.gz");
-        for (Path path : directoryStream) {
-            chromosome = path.getFileName().toString().split("\\.")[0].replace("chr", "");
-            chromosomes.add(chromosome);
-            files.put(chromosome + "phylop", path);
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(conservedRegionPath.resolve("phylop"),
+                "*.wigFix.gz")) {
+            for (Path path : directoryStream) {
+                chromosome = path.getFileName().toString().split("\\.")[0].replace("chr", "");
+                chromosomes.add(chromosome);
+                files.put(chromosome + "phylop", path);
+            }
         }
-
-        /*
-         * Now we can iterate over all the chromosomes found and process the files
-         */
         logger.debug("Chromosomes found '{}'", chromosomes.toString());
-        for (String chr : chromosomes) {
-            logger.debug("Processing chromosome '{}', file '{}'", chr, files.get(chr + "phastCons"));
-            processWigFixFile(files.get(chr + "phastCons"), "phastCons");
 
-            logger.debug("Processing chromosome '{}', file '{}'", chr, files.get(chr + "phylop"));
-            processWigFixFile(files.get(chr + "phylop"), "phylop");
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            /*
+             * GERP is stored in a particular format, it is read in this thread while the chromosomes already read
+             * are processed by the pool
+             */
+            Path gerpFolderPath = conservedRegionPath.resolve(EtlCommons.GERP_SUBDIRECTORY);
+            if (gerpFolderPath.toFile().exists()) {
+                logger.debug("Parsing GERP data ...");
+                gerpParser(gerpFolderPath, chr -> {
+                    if (chromosomes.remove(chr)) {
+                        futures.add(executorService.submit(() -> processChromosome(chr, files)));
+                    }
+                });
+            }
+
+            /*
+             * Now we can process the chromosomes with no GERP scores
+             */
+            for (String chr : chromosomes) {
+                futures.add(executorService.submit(() -> processChromosome(chr, files)));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
         }
     }
 
+    private Void processChromosome(String chromosome, Map<String, Path> files) throws IOException {
+        for (String source : Arrays.asList("phastCons", "phylop")) {
+            Path path = files.get(chromosome + source);
+            if (path == null) {
+                logger.warn("No {} file found for chromosome '{}'", source, chromosome);
+                continue;
+            }
+            logger.debug("Processing chromosome '{}', file '{}'", chromosome, path);
+            processWigFixFile(path, source);
+        }
+        return null;
+    }
 
-    private void gerpParser(Path gerpFolderPath) throws IOException, InterruptedException {
-        logger.info("Uncompressing {}", gerpFolderPath.resolve(EtlCommons.GERP_FILE));
-        List<String> tarArgs = Arrays.asList("-xvzf", gerpFolderPath.resolve(EtlCommons.GERP_FILE).toString(),
-                "--overwrite", "-C", gerpFolderPath.toString());
-        EtlCommons.runCommandLineProcess(null, "tar", tarArgs, null);
-
-        DirectoryStream<Path> pathDirectoryStream = Files.newDirectoryStream(gerpFolderPath, "*.rates");
+    /**
+     * GERP scores are streamed from the tar.gz archive, nothing is extracted to disk. When the archive is not present
+     * any *.rates file already extracted in the GERP folder is parsed.
+     */
+    private void gerpParser(Path gerpFolderPath, ChromosomeListener listener) throws IOException {
+        Path gerpFile = gerpFolderPath.resolve(EtlCommons.GERP_FILE);
         boolean filesFound = false;
-        for (Path path : pathDirectoryStream) {
-            filesFound = true;
-            logger.info("Processing file '{}'", path.getFileName().toString());
-            String[] chromosome = path.getFileName().toString().replaceFirst("chr", "").split("\\.");
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(String.valueOf(path))));
-            String line;
-            int start = 1;
-            int end = 1999;
-            int counter = 1;
-            String[] fields;
-            List<Float> val = new ArrayList<>(chunkSize);
-            while ((line = bufferedReader.readLine()) != null) {
-                fields = line.split("\t");
-                val.add(Float.valueOf(fields[1]));
-                counter++;
-                if (counter == chunkSize) {
-//                    ConservationScoreRegion conservationScoreRegion = new ConservationScoreRegion(chromosome[0], start, end, "gerp", val);
-                    GenomicScoreRegion<Float> conservationScoreRegion =
-                            new GenomicScoreRegion<>(chromosome[0], start, end, "gerp", val);
-                    fileSerializer.serialize(conservationScoreRegion, getOutputFileName(chromosome[0]));
-
-                    start = end + 1;
-                    end += chunkSize;
-
-                    counter = 0;
-                    val.clear();
+        if (Files.exists(gerpFile)) {
+            logger.info("Reading {}", gerpFile);
+            try (TarArchiveInputStream tarInputStream = new TarArchiveInputStream(
+                    new GzipCompressorInputStream(new BufferedInputStream(Files.newInputStream(gerpFile))))) {
+                // The reader must not be closed, it would close the archive
+                BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(tarInputStream, StandardCharsets.UTF_8));
+                TarArchiveEntry entry;
+                while ((entry = tarInputStream.getNextTarEntry()) != null) {
+                    String fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                    if (entry.isFile() && fileName.endsWith(".rates")) {
+                        filesFound = true;
+                        listener.done(processGerpFile(fileName, bufferedReader));
+                        bufferedReader = new BufferedReader(new InputStreamReader(tarInputStream, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        } else {
+            try (DirectoryStream<Path> pathDirectoryStream = Files.newDirectoryStream(gerpFolderPath, "*.rates")) {
+                for (Path path : pathDirectoryStream) {
+                    filesFound = true;
+                    try (BufferedReader bufferedReader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                        listener.done(processGerpFile(path.getFileName().toString(), bufferedReader));
+                    }
                 }
             }
-
-            // we need to serialize the last chunk that might be incomplete
-//            ConservationScoreRegion conservationScoreRegion =
-//                    new ConservationScoreRegion(chromosome[0], start, start + val.size() - 1, "gerp", val);
-            GenomicScoreRegion<Float> conservationScoreRegion =
-                    new GenomicScoreRegion<>(chromosome[0], start, start + val.size() - 1, "gerp", val);
-            fileSerializer.serialize(conservationScoreRegion, getOutputFileName(chromosome[0]));
-
-            bufferedReader.close();
         }
 
         if (!filesFound) {
-            logger.warn("No GERP++ files were found. Please check that the original file {} is there, that it was"
-                    + " properly decompressed and that the *.rates files are present",
-                    gerpFolderPath.resolve(EtlCommons.GERP_FILE));
+            logger.warn("No GERP++ files were found. Please check that the original file {} is there and that it"
+                    + " contains the *.rates files", gerpFile);
+        }
+    }
+
+    private String processGerpFile(String fileName, BufferedReader bufferedReader) throws IOException {
+        logger.info("Processing file '{}'", fileName);
+        String chromosome = fileName.replaceFirst("chr", "").split("\\.")[0];
+        String line;
+        int start = 1;
+        int end = 1999;
+        int counter = 1;
+        ScoreBuffer val = new ScoreBuffer(chunkSize);
+        while ((line = bufferedReader.readLine()) != null) {
+            // Score is the second column
+            int valueStart = line.indexOf('\t') + 1;
+            int valueEnd = line.indexOf('\t', valueStart);
+            val.add(Float.parseFloat(valueEnd < 0 ? line.substring(valueStart) : line.substring(valueStart, valueEnd)));
+            counter++;
+            if (counter == chunkSize) {
+                GenomicScoreRegion<Float> conservationScoreRegion =
+                        new GenomicScoreRegion<>(chromosome, start, end, "gerp", val.toList());
+                fileSerializer.serialize(conservationScoreRegion, getOutputFileName(chromosome));
+
+                start = end + 1;
+                end += chunkSize;
+
+                counter = 0;
+                val.clear();
+            }
         }
+
+        // we need to serialize the last chunk that might be incomplete
+        GenomicScoreRegion<Float> conservationScoreRegion =
+                new GenomicScoreRegion<>(chromosome, start, start + val.size() - 1, "gerp", val.toList());
+        fileSerializer.serialize(conservationScoreRegion, getOutputFileName(chromosome));
+        return chromosome;
     }
 
     private void processWigFixFile(Path inGzPath, String conservationSource) throws IOException {
@@ -174,27 +248,20 @@ public class ConservationParser extends CellBaseParser {
 
         String line;
         String chromosome = "";
-//        int start = 0, end = 0;
         int start = 0;
-        float value;
         Map<String, String> attributes = new HashMap<>();
-//        ConservedRegion conservedRegion =  null;
-        List<Float> values = new ArrayList<>();
-//        ConservationScoreRegion conservedRegion = null;
+        ScoreBuffer values = new ScoreBuffer(CHUNK_SIZE);
         GenomicScoreRegion<Float> conservedRegion = null;
 
         while ((line = bufferedReader.readLine()) != null) {
             if (line.startsWith("fixedStep")) {
                 //new group, save last
                 if (conservedRegion != null) {
-//                    conservedRegion.setEnd(end);
-//                    conservedRegion = new ConservationScoreRegion(chromosome, start, end, conservationSource, values);
                     conservedRegion = new GenomicScoreRegion<>(chromosome, start, start + values.size() - 1,
-                            conservationSource, values);
+                            conservationSource, values.toList());
                     fileSerializer.serialize(conservedRegion, getOutputFileName(chromosome));
                 }
 
-//                offset = 0;
                 attributes.clear();
                 String[] attrFields = line.split(" ");
                 String[] attrKeyValue;
@@ -206,12 +273,10 @@ public class ConservationParser extends CellBaseParser {
                 }
                 chromosome = attributes.get("chrom").replace("chr", "");
                 start = Integer.parseInt(attributes.get("start"));
-//                end = Integer.parseInt(attributes.get("start"));
 
-                values = new ArrayList<>(2000);
+                values.clear();
             } else {
                 int startChunk = start / CHUNK_SIZE;
-//                end++;
                 int endChunk = (start + values.size()) / CHUNK_SIZE; // This is the endChunk if current read score is
                                                                      // appended to the array (otherwise it would be
                                                                      // start + values.size() - 1). If this endChunk is
@@ -224,32 +289,75 @@ public class ConservationParser extends CellBaseParser {
                                                                      // just that score - the chunk was left empty with
                                                                      // the old code
                 if (startChunk != endChunk) {
-//                    conservedRegion = new ConservationScoreRegion(chromosome, start, end - 1, conservationSource, values);
                     conservedRegion = new GenomicScoreRegion<>(chromosome, start, start + values.size() - 1,
-                            conservationSource, values);
+                            conservationSource, values.toList());
                     fileSerializer.serialize(conservedRegion, getOutputFileName(chromosome));
                     start = start + values.size();
                     values.clear();
                 }
 
-                value = Float.parseFloat(line.trim());
-                values.add(value);
+                values.add(Float.parseFloat(line.trim()));
             }
         }
         //write last
-//        conservedRegion = new ConservationScoreRegion(chromosome, start, end, conservationSource, values);
         conservedRegion = new GenomicScoreRegion<>(chromosome, start, start + values.size() - 1, conservationSource,
-                values);
+                values.toList());
         fileSerializer.serialize(conservedRegion, getOutputFileName(chromosome));
         bufferedReader.close();
     }
 
     private String getOutputFileName(String chromosome) {
-        String outputFileName = outputFileNames.get(chromosome);
-        if (outputFileName == null) {
-            outputFileName = "conservation_" + chromosome;
-            outputFileNames.put(chromosome, outputFileName);
+        return outputFileNames.computeIfAbsent(chromosome, key -> "conservation_" + key);
+    }
+
+    @FunctionalInterface
+    private interface ChromosomeListener {
+        void done(String chromosome);
+    }
+
+    /**
+     * Reusable primitive buffer for the scores of one chunk, scores are only boxed when the chunk is serialized.
+     */
+    private static class ScoreBuffer {
+
+        private float[] values;
+        private int size;
+
+        ScoreBuffer(int capacity) {
+            values = new float[capacity];
+        }
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * @return a read-only list over a copy of the current values, the buffer can be cleared afterwards
+         */
+        List<Float> toList() {
+            float[] copy = Arrays.copyOf(values, size);
+            return new AbstractList<Float>() {
+                @Override
+                public Float get(int index) {
+                    return copy[index];
+                }
+
+                @Override
+                public int size() {
+                    return copy.length;
+                }
+            };
         }
-        return outputFileName;
     }
 }
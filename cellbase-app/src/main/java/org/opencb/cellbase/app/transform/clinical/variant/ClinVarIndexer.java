@@ -200,7 +200,7 @@ public class ClinVarIndexer extends ClinicalIndexer {
                         clinicalHaplotypeString,
                         traitsToEfoTermsMap);
 
-                rdb.put(normalisedVariantString.getBytes(), jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                putVariantAnnotation(normalisedVariantString.getBytes(), variantAnnotation);
             }
             return true;
         }
@@ -253,7 +253,7 @@ public class ClinVarIndexer extends ClinicalIndexer {
                             reviewStatusName, getObservedIn);
                 }
 
-                rdb.put(normalisedVariantString.getBytes(), jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                putVariantAnnotation(normalisedVariantString.getBytes(), variantAnnotation);
             }
             return true;
         }
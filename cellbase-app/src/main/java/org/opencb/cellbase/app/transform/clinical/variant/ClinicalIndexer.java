@@ -10,10 +10,13 @@ import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.cellbase.core.variant.annotation.VariantAnnotationUtils;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,6 +39,11 @@ public abstract class ClinicalIndexer {
 
 
     private static final String SYMBOL = "symbol";
+    private static final int WRITE_BATCH_SIZE = 10000;
+
+    private final VariantAnnotationCodec codec = new VariantAnnotationCodec();
+    // Encoded values not written to RocksDB yet, reads must look here first
+    private final Map<ByteBuffer, byte[]> pendingWrites = new LinkedHashMap<>();
 
     protected static ObjectMapper mapper;
     protected static ObjectWriter jsonObjectWriter;
@@ -70,7 +78,10 @@ public abstract class ClinicalIndexer {
 
 
     protected VariantAnnotation getVariantAnnotation(byte[] key) throws RocksDBException, IOException {
-        byte[] dbContent = rdb.get(key);
+        byte[] dbContent = pendingWrites.get(ByteBuffer.wrap(key));
+        if (dbContent == null) {
+            dbContent = rdb.get(key);
+        }
 //        List<EvidenceEntry> evidenceEntryList;
         VariantAnnotation variantAnnotation;
         if (dbContent == null) {
@@ -79,7 +90,7 @@ public abstract class ClinicalIndexer {
             variantAnnotation.setTraitAssociation(evidenceEntryList);
             numberNewVariants++;
         } else {
-            variantAnnotation = mapper.readValue(dbContent, VariantAnnotation.class);
+            variantAnnotation = codec.decode(dbContent);
 //            List<EvidenceEntry> evidenceEntryList = mapper.readValue(dbContent, mapper.getTypeFactory()
 // .constructParametrizedType(List.class, List.class, EvidenceEntry.class));
 
@@ -88,6 +99,35 @@ public abstract class ClinicalIndexer {
         return variantAnnotation;
     }
 
+    /**
+     * Updates are encoded straight away, so later changes to the object are not stored, but they are only written to
+     * RocksDB in batches of WRITE_BATCH_SIZE variants. Call {@link #flush()} once indexing is finished.
+     * @param key variant string
+     * @param variantAnnotation annotation to store
+     * @throws RocksDBException if the batch cannot be written
+     * @throws IOException if the annotation cannot be encoded
+     */
+    protected void putVariantAnnotation(byte[] key, VariantAnnotation variantAnnotation) throws RocksDBException, IOException {
+        pendingWrites.put(ByteBuffer.wrap(key), codec.encode(variantAnnotation));
+        if (pendingWrites.size() >= WRITE_BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    public void flush() throws RocksDBException {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        // The index is temporary, it is rebuilt from scratch if the build fails
+        try (WriteBatch writeBatch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions().setDisableWAL(true)) {
+            for (Map.Entry<ByteBuffer, byte[]> entry : pendingWrites.entrySet()) {
+                writeBatch.put(entry.getKey().array(), entry.getValue());
+            }
+            rdb.write(writeOptions, writeBatch);
+        }
+        pendingWrites.clear();
+    }
+
     protected GenomicFeature createGeneGenomicFeature(String gene) {
         Map<String, String> map = new HashMap<>(1);
         map.put(SYMBOL, gene);
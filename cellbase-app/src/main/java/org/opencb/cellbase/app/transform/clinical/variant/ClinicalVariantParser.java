@@ -1,15 +1,11 @@
 package org.opencb.cellbase.app.transform.clinical.variant;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.app.cli.EtlCommons;
 import org.opencb.cellbase.app.transform.CellBaseParser;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
-import org.rocksdb.Options;
-import org.rocksdb.RocksDB;
-import org.rocksdb.RocksDBException;
-import org.rocksdb.RocksIterator;
+import org.rocksdb.*;
 
 import java.io.File;
 import java.io.IOException;
@@ -99,6 +95,7 @@ public class ClinicalVariantParser extends CellBaseParser {
                 ClinVarIndexer clinvarIndexer = new ClinVarIndexer(clinvarXMLFile, clinvarSummaryFile,
                         clinvarVariationAlleleFile, clinvarEFOFile, normalize, genomeSequenceFilePath, assembly, rdb);
                 clinvarIndexer.index();
+                clinvarIndexer.flush();
             } else {
                 logger.warn("One or more of required ClinVar files are missing. Skipping ClinVar data.\n"
                         + "Please, ensure that these two files exist:\n"
@@ -110,6 +107,7 @@ public class ClinicalVariantParser extends CellBaseParser {
                 CosmicIndexer cosmicIndexer = new CosmicIndexer(cosmicFile, normalize, genomeSequenceFilePath,
                         assembly, rdb);
                 cosmicIndexer.index();
+                cosmicIndexer.flush();
             } else {
                 logger.warn("Cosmic file {} missing. Skipping Cosmic data", cosmicFile);
             }
@@ -124,6 +122,7 @@ public class ClinicalVariantParser extends CellBaseParser {
                         iarctp53GermlineReferencesFile, iarctp53SomaticFile, iarctp53SomaticReferencesFile,
                         normalize, genomeSequenceFilePath, assembly, rdb);
                 iarctp53Indexer.index();
+                iarctp53Indexer.flush();
             } else {
                 logger.warn("One or more of required IARCTP53 files are missing. Skipping IARCTP53 data.");
             }
@@ -131,6 +130,7 @@ public class ClinicalVariantParser extends CellBaseParser {
             if (this.docmFile != null && Files.exists(docmFile)) {
                 DOCMIndexer docmIndexer = new DOCMIndexer(docmFile, normalize, genomeSequenceFilePath, assembly, rdb);
                 docmIndexer.index();
+                docmIndexer.flush();
             } else {
                 logger.warn("The DOCM file {} is missing. Skipping DOCM data.", docmFile);
             }
@@ -151,13 +151,12 @@ public class ClinicalVariantParser extends CellBaseParser {
         // named "iterator"
         RocksIterator rocksIterator = rdb.newIterator();
 
-        ObjectMapper mapper = new ObjectMapper();
+        VariantAnnotationCodec codec = new VariantAnnotationCodec();
         logger.info("Reading from RoocksDB index and serializing to {}.json.gz",
                 serializer.getOutdir().resolve(serializer.getFileName()));
         int counter = 0;
         for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-            VariantAnnotation variantAnnotation
-                    = mapper.readValue(rocksIterator.value(), VariantAnnotation.class);
+            VariantAnnotation variantAnnotation = codec.decode(rocksIterator.value());
 //            List<EvidenceEntry> evidenceEntryList
 //                    = mapper.readValue(rocksIterator.value(), List.class);
             Variant variant = parseVariantFromVariantId(new String(rocksIterator.key()));
@@ -191,13 +190,25 @@ public class ClinicalVariantParser extends CellBaseParser {
         }
     }
 
-    private Object[] getDBConnection(String dbLocation, boolean forceCreate) {
+    private Object[] getDBConnection(String dbLocation, boolean forceCreate) throws IOException {
         boolean indexingNeeded = forceCreate || !Files.exists(Paths.get(dbLocation));
+        if (forceCreate && Files.exists(Paths.get(dbLocation))) {
+            // Left by an interrupted build, its values may not be readable by the VariantAnnotationCodec
+            logger.warn("Deleting index {} left by a previous build", dbLocation);
+            org.apache.commons.io.FileUtils.deleteDirectory(new File(dbLocation));
+        }
         // a static method that loads the RocksDB C++ library.
         RocksDB.loadLibrary();
         // the Options class contains a set of configurable DB options
-        // that determines the behavior of a database.
-        Options options = new Options().setCreateIfMissing(true);
+        // that determines the behavior of a database. Every update reads the variant first, so compactions are kept
+        // on to bound the number of files to look up: large write buffers and bloom filters for these lookups
+        Options options = new Options()
+                .setCreateIfMissing(true)
+                .setWriteBufferSize(256 * 1024 * 1024)
+                .setMaxWriteBufferNumber(4)
+                .setCompressionType(CompressionType.LZ4_COMPRESSION)
+                .setIncreaseParallelism(Runtime.getRuntime().availableProcessors())
+                .setTableFormatConfig(new BlockBasedTableConfig().setFilter(new BloomFilter(10, false)));
         RocksDB db = null;
         try {
             // a factory method that returns a RocksDB instance
@@ -168,7 +168,7 @@ public class CosmicIndexer extends ClinicalIndexer {
                 VariantAnnotation variantAnnotation = getVariantAnnotation(normalisedVariantString.getBytes());
                 addHaplotypeProperty(evidenceEntry, normalisedVariantStringList);
                 addNewEntry(variantAnnotation, evidenceEntry);
-                rdb.put(normalisedVariantString.getBytes(), jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                putVariantAnnotation(normalisedVariantString.getBytes(), variantAnnotation);
             }
             return true;
         }
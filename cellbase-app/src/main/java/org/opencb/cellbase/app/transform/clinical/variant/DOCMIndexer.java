@@ -126,7 +126,7 @@ public class DOCMIndexer extends ClinicalIndexer {
 
                 }
 
-                rdb.put(normalisedVariantString.getBytes(), jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                putVariantAnnotation(normalisedVariantString.getBytes(), variantAnnotation);
             }
 
             return true;
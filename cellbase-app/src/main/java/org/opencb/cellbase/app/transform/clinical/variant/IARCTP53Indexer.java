@@ -72,26 +72,30 @@ public class IARCTP53Indexer extends ClinicalIndexer {
         smallSizePattern = Pattern.compile("\\d+");
     }
 
-    public void index() throws RocksDBException {
+    public void index() throws IOException, RocksDBException {
         index(germlineFile, germlineReferencesFile, true);
         index(somaticFile, somaticReferencesFile, false);
         this.printSummary();
     }
 
-    private void index(Path filePath, Path referencesFilePath, boolean isGermline) throws RocksDBException {
+    private void index(Path filePath, Path referencesFilePath, boolean isGermline) throws IOException, RocksDBException {
 
-        // Preparing the fasta file for fast accessing
-        FastaIndexManager fastaIndexManager = null;
+        // Preparing the fasta file for fast accessing. Failing to open it fails the build rather than silently
+        // leaving TP53 variants out
+        FastaIndexManager fastaIndexManager = new FastaIndexManager(genomeSequenceFilePath, true);
         try {
-            fastaIndexManager = new FastaIndexManager(genomeSequenceFilePath, true);
             if (!fastaIndexManager.isConnected()) {
                 fastaIndexManager.index();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
+            index(filePath, referencesFilePath, isGermline, fastaIndexManager);
+        } finally {
+            // The RocksDB index is locked while open, the somatic file opens it again
+            fastaIndexManager.close();
         }
+    }
 
+    private void index(Path filePath, Path referencesFilePath, boolean isGermline, FastaIndexManager fastaIndexManager)
+            throws RocksDBException {
         logger.info("Parsing {} ...", filePath.toString());
         int variantIdColumnIndex = isGermline ? 9 : 1;
 
@@ -250,7 +254,7 @@ public class IARCTP53Indexer extends ClinicalIndexer {
                 addHaplotypeProperty(evidenceEntryList, normalisedVariantStringList);
 
                 variantAnnotation.getTraitAssociation().addAll(evidenceEntryList);
-                rdb.put(normalisedVariantString.getBytes(), jsonObjectWriter.writeValueAsBytes(variantAnnotation));
+                putVariantAnnotation(normalisedVariantString.getBytes(), variantAnnotation);
             }
 
             return true;
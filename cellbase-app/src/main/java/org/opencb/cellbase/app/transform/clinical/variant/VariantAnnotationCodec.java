@@ -0,0 +1,156 @@
+package org.opencb.cellbase.app.transform.clinical.variant;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.io.*;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Binary encoding of the VariantAnnotation objects stored in the clinical RocksDB index. Values are Avro encoded, the
+ * first byte tells the encoding: annotations that Avro cannot write are stored as JSON. The indexers leave many
+ * required fields null, e.g. the consequence types, so the schema used is a copy of the VariantAnnotation one where
+ * every field is nullable. Decoded lists and maps are ArrayList and LinkedHashMap, as Jackson creates them, so the
+ * objects serialized from the index are the same than with the former JSON values. Not thread safe.
+ */
+class VariantAnnotationCodec {
+
+    private static final byte AVRO = 1;
+    private static final byte JSON = 2;
+    private static final Schema SCHEMA = nullable(VariantAnnotation.getClassSchema(), new HashMap<>());
+
+    private static Logger logger = LoggerFactory.getLogger(VariantAnnotationCodec.class);
+
+    private final ObjectWriter jsonObjectWriter;
+    private final ObjectReader jsonObjectReader;
+
+    private final DatumWriter<VariantAnnotation> datumWriter;
+    private final DatumReader<VariantAnnotation> datumReader;
+    private final ByteArrayOutputStream outputStream;
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+    private int numJsonValues;
+
+    VariantAnnotationCodec() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectWriter = mapper.writer();
+        jsonObjectReader = mapper.readerFor(VariantAnnotation.class);
+
+        datumWriter = new SpecificDatumWriter<>(SCHEMA);
+        datumReader = new SpecificDatumReader<VariantAnnotation>(SCHEMA) {
+            @Override
+            protected Object newArray(Object old, int size, Schema schema) {
+                return new ArrayList<>(size);
+            }
+
+            @Override
+            protected Object newMap(Object old, int size) {
+                return new LinkedHashMap<>();
+            }
+
+            @Override
+            protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+                return in.readString();
+            }
+        };
+        outputStream = new ByteArrayOutputStream(4096);
+    }
+
+    /**
+     * Copies the schema making every field of the records nullable. Records keep their names, so they are still read
+     * and written as the generated classes.
+     *
+     * @param records copies of the records already made, by name
+     */
+    private static Schema nullable(Schema schema, Map<String, Schema> records) {
+        switch (schema.getType()) {
+            case RECORD:
+                Schema record = records.get(schema.getFullName());
+                if (record == null) {
+                    record = Schema.createRecord(schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError());
+                    records.put(schema.getFullName(), record);
+                    List<Schema.Field> fields = new ArrayList<>(schema.getFields().size());
+                    for (Schema.Field field : schema.getFields()) {
+                        fields.add(new Schema.Field(field.name(), optional(nullable(field.schema(), records)), field.doc(), null));
+                    }
+                    record.setFields(fields);
+                }
+                return record;
+            case ARRAY:
+                return Schema.createArray(nullable(schema.getElementType(), records));
+            case MAP:
+                return Schema.createMap(nullable(schema.getValueType(), records));
+            case UNION:
+                List<Schema> types = new ArrayList<>(schema.getTypes().size());
+                for (Schema type : schema.getTypes()) {
+                    types.add(nullable(type, records));
+                }
+                return Schema.createUnion(types);
+            default:
+                return schema;
+        }
+    }
+
+    private static Schema optional(Schema schema) {
+        if (schema.getType() == Schema.Type.NULL
+                || schema.getType() == Schema.Type.UNION && schema.getIndexNamed(Schema.Type.NULL.getName()) != null) {
+            return schema;
+        }
+        List<Schema> types = new ArrayList<>();
+        types.add(Schema.create(Schema.Type.NULL));
+        if (schema.getType() == Schema.Type.UNION) {
+            types.addAll(schema.getTypes());
+        } else {
+            types.add(schema);
+        }
+        return Schema.createUnion(types);
+    }
+
+    byte[] encode(VariantAnnotation variantAnnotation) throws IOException {
+        outputStream.reset();
+        outputStream.write(AVRO);
+        encoder = EncoderFactory.get().directBinaryEncoder(outputStream, encoder);
+        try {
+            datumWriter.write(variantAnnotation, encoder);
+        } catch (NullPointerException | ClassCastException | AvroRuntimeException e) {
+            if (numJsonValues++ == 0) {
+                logger.warn("Annotation cannot be Avro encoded, storing it as JSON: {}", e.toString());
+            }
+            outputStream.reset();
+            outputStream.write(JSON);
+            jsonObjectWriter.writeValue(outputStream, variantAnnotation);
+        }
+        return outputStream.toByteArray();
+    }
+
+    VariantAnnotation decode(byte[] bytes) throws IOException {
+        switch (bytes[0]) {
+            case AVRO:
+                decoder = DecoderFactory.get().binaryDecoder(bytes, 1, bytes.length - 1, decoder);
+                return datumReader.read(null, decoder);
+            case JSON:
+                return jsonObjectReader.readValue(bytes, 1, bytes.length - 1);
+            default:
+                throw new IOException("Unknown variant annotation encoding " + bytes[0]);
+        }
+    }
+
+    /**
+     * @return number of annotations encoded as JSON because Avro could not encode them
+     */
+    int getNumJsonValues() {
+        return numJsonValues;
+    }
+}
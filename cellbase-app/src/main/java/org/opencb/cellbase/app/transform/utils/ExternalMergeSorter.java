@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.transform.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sorts tab separated files by a numeric column using a bounded amount of memory, the same ordering as
+ * 'sort -t $'\t' -k N -n --stable': the key is the leading number of the column, lines with a non numeric key are
+ * sorted as 0 and lines with equal keys keep their input order.
+ *
+ * Input is read in chunks that fit in the memory budget, each chunk is sorted and written to a gzipped temporary run by
+ * a pool of threads while the next chunk is read. Runs are then merged, groups of runs in parallel when there are too
+ * many of them to be merged at once.
+ */
+public class ExternalMergeSorter {
+
+    private static final int MAX_MERGE_FAN_IN = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Approximate size of a String and its Record in the heap, besides the characters
+    private static final int RECORD_OVERHEAD = 80;
+
+    private final int columnIndex;
+    private final long memoryBudget;
+    private final int numThreads;
+    private final Path tmpDirectory;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * @param columnIndex  0-based index of the numeric column used as key
+     * @param memoryBudget bytes of heap to be used by the lines being sorted
+     * @param numThreads   number of threads sorting and merging runs
+     * @param tmpDirectory directory for the temporary runs
+     */
+    public ExternalMergeSorter(int columnIndex, long memoryBudget, int numThreads, Path tmpDirectory) {
+        this.columnIndex = columnIndex;
+        this.memoryBudget = memoryBudget;
+        this.numThreads = Math.max(1, numThreads);
+        this.tmpDirectory = tmpDirectory;
+    }
+
+    /**
+     * Sorts the input file into the output file. Files ending in '.gz' are read and written gzipped.
+     *
+     * @param inputFile  file to be sorted
+     * @param outputFile sorted file
+     * @return number of lines sorted
+     * @throws IOException if files cannot be read or written
+     */
+    public long sort(Path inputFile, Path outputFile) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        List<Path> runs = new ArrayList<>();
+        try {
+            long numLines = createRuns(inputFile, runs, executorService);
+            logger.debug("{} lines read from {} into {} sorted runs", numLines, inputFile, runs.size());
+
+            while (runs.size() > MAX_MERGE_FAN_IN) {
+                runs = mergePass(runs, executorService);
+            }
+            try (BufferedWriter writer = newWriter(outputFile, false)) {
+                merge(runs, writer);
+            }
+            return numLines;
+        } finally {
+            executorService.shutdownNow();
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private long createRuns(Path inputFile, List<Path> runs, ExecutorService executorService) throws IOException {
+        // The reader fills one chunk while the threads sort and write the others
+        long chunkBudget = Math.max(1, memoryBudget / (numThreads + 1));
+        Semaphore chunksInMemory = new Semaphore(numThreads);
+        List<Future<Path>> futures = new ArrayList<>();
+
+        long numLines = 0;
+        try (BufferedReader reader = newReader(inputFile)) {
+            List<String> chunk = new ArrayList<>();
+            long chunkSize = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(line);
+                chunkSize += RECORD_OVERHEAD + 2L * line.length();
+                numLines++;
+                if (chunkSize >= chunkBudget) {
+                    futures.add(submitRun(chunk, chunksInMemory, executorService));
+                    chunk = new ArrayList<>();
+                    chunkSize = 0;
+                }
+            }
+            if (!chunk.isEmpty() || futures.isEmpty()) {
+                futures.add(submitRun(chunk, chunksInMemory, executorService));
+            }
+        } finally {
+            // Runs must be collected even on errors so that they are deleted
+            IOException exception = null;
+            for (Future<Path> future : futures) {
+                try {
+                    runs.add(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    exception = new IOException("Error creating sorted run: " + e.getMessage(), e);
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+        return numLines;
+    }
+
+    private Future<Path> submitRun(List<String> chunk, Semaphore chunksInMemory, ExecutorService executorService)
+            throws IOException {
+        try {
+            chunksInMemory.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sorting");
+        }
+        return executorService.submit(() -> {
+            try {
+                return writeRun(chunk);
+            } finally {
+                chunksInMemory.release();
+            }
+        });
+    }
+
+    private Path writeRun(List<String> chunk) throws IOException {
+        Record[] records = new Record[chunk.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new Record(chunk.get(i), getKey(chunk.get(i)));
+        }
+        // Arrays.sort on objects is stable, lines with the same key keep their order
+        Arrays.sort(records, Comparator.comparingLong(record -> record.key));
+
+        Path run = Files.createTempFile(tmpDirectory, "sort", ".run.gz");
+        try (BufferedWriter writer = newWriter(run, true)) {
+            for (Record record : records) {
+                writer.write(record.line);
+                writer.write('\n');
+            }
+        }
+        return run;
+    }
+
+    private List<Path> mergePass(List<Path> runs, ExecutorService executorService) throws IOException {
+        List<Future<Path>> futures = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += MAX_MERGE_FAN_IN) {
+            List<Path> group = runs.subList(i, Math.min(i + MAX_MERGE_FAN_IN, runs.size()));
+            futures.add(executorService.submit(() -> {
+                Path mergedRun = Files.createTempFile(tmpDirectory, "sort", ".run.gz");
+                try (BufferedWriter writer = newWriter(mergedRun, true)) {
+                    merge(group, writer);
+                }
+                return mergedRun;
+            }));
+        }
+
+        List<Path> mergedRuns = new ArrayList<>(futures.size());
+        IOException exception = null;
+        for (Future<Path> future : futures) {
+            try {
+                mergedRuns.add(future.get());
+            } catch (InterruptedException | ExecutionException e) {
+                exception = new IOException("Error merging sorted runs: " + e.getMessage(), e);
+            }
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        if (exception != null) {
+            for (Path run : mergedRuns) {
+                Files.deleteIfExists(run);
+            }
+            throw exception;
+        }
+        return mergedRuns;
+    }
+
+    /**
+     * K-way merge of sorted runs. On equal keys the line from the earlier run goes first, which keeps the sort stable
+     * since runs are in input order.
+     */
+    private void merge(List<Path> runs, BufferedWriter writer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.<RunReader>comparingLong(runReader -> runReader.key).thenComparingInt(runReader -> runReader.index));
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader runReader = new RunReader(newReader(runs.get(i)), i);
+                if (runReader.next()) {
+                    queue.add(runReader);
+                } else {
+                    runReader.reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader runReader = queue.poll();
+                writer.write(runReader.line);
+                writer.write('\n');
+                if (runReader.next()) {
+                    queue.add(runReader);
+                } else {
+                    runReader.reader.close();
+                }
+            }
+        } finally {
+            for (RunReader runReader : queue) {
+                runReader.reader.close();
+            }
+        }
+    }
+
+    /**
+     * Same as 'sort -n': leading blanks are skipped, then an optional minus sign and digits. Anything else is 0.
+     */
+    long getKey(String line) {
+        int position = 0;
+        for (int column = 0; column < columnIndex && position >= 0; column++) {
+            position = line.indexOf('\t', position);
+            if (position >= 0) {
+                position++;
+            }
+        }
+        if (position < 0) {
+            return 0;
+        }
+        int length = line.length();
+        while (position < length && (line.charAt(position) == ' ')) {
+            position++;
+        }
+        boolean negative = false;
+        if (position < length && line.charAt(position) == '-') {
+            negative = true;
+            position++;
+        }
+        long key = 0;
+        while (position < length) {
+            char c = line.charAt(position++);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return negative ? -key : key;
+    }
+
+    private BufferedReader newReader(Path file) throws IOException {
+        InputStream inputStream = Files.newInputStream(file);
+        if (file.toString().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private BufferedWriter newWriter(Path file, boolean fast) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(file);
+        if (file.toString().endsWith(".gz")) {
+            // Temporary runs are only read once, the fastest compression is used for them
+            int level = fast ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION;
+            outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static class Record {
+        private final String line;
+        private final long key;
+
+        Record(String line, long key) {
+            this.line = line;
+            this.key = key;
+        }
+    }
+
+    private class RunReader {
+        private final BufferedReader reader;
+        private final int index;
+        private String line;
+        private long key;
+
+        RunReader(BufferedReader reader, int index) {
+            this.reader = reader;
+            this.index = index;
+        }
+
+        boolean next() throws IOException {
+            line = reader.readLine();
+            if (line != null) {
+                key = getKey(line);
+                return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -1,8 +1,7 @@
 package org.opencb.cellbase.app.transform.variation;
 
 import com.google.common.base.Stopwatch;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.opencb.cellbase.app.transform.utils.ExternalMergeSorter;
 import org.opencb.commons.utils.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,17 +9,22 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by parce on 08/12/15.
  */
 public abstract class AbstractVariationFile {
 
+    // Fraction of the heap used to sort each file
+    private static final int SORT_MEMORY_FRACTION = 4;
+
     protected Logger logger;
 
     protected Path variationDirectory;
@@ -111,77 +115,52 @@ public abstract class AbstractVariationFile {
         return lastReadVariationId > variationId;
     }
 
-    public void gunzip() throws IOException, InterruptedException {
-        if (!existsZippedOrUnzippedFile(preprocessedFileName)) {
-            // unzip variation file name for preprocess it later
-            gunzipFileIfNeeded(variationDirectory, unprocessedFileName);
-        }
-    }
-
     protected boolean existsZippedOrUnzippedFile(String baseFilename) {
         return Files.exists(variationDirectory.resolve(baseFilename))
                 || Files.exists(variationDirectory.resolve(baseFilename + ".gz"));
     }
 
-    private void gunzipFileIfNeeded(Path directory, String fileName) throws IOException, InterruptedException {
-        Path zippedFile = directory.resolve(fileName + ".gz");
-        if (Files.exists(zippedFile)) {
-            logger.info("Unzipping {} ...", zippedFile);
-            Process process = Runtime.getRuntime().exec("gunzip " + zippedFile.toAbsolutePath());
-            process.waitFor();
-        } else {
-            Path unzippedFile = directory.resolve(fileName);
-            if (Files.exists(unzippedFile)) {
-                logger.info("File {} was previously unzipped: skipping 'gunzip' for this file ...", unzippedFile);
-            } else {
-                throw new FileNotFoundException("File " + zippedFile + " doesn't exist");
-            }
-        }
-    }
-
     public void sort() throws IOException, InterruptedException {
         if (!existsZippedOrUnzippedFile(preprocessedFileName)) {
             Path sortedFile = variationDirectory.resolve(preprocessedFileName);
+            // Gzipped files are sorted as they are, no need to unzip them first
             Path unsortedFile = variationDirectory.resolve(unprocessedFileName);
+            if (!Files.exists(unsortedFile)) {
+                unsortedFile = variationDirectory.resolve(unprocessedFileName + ".gz");
+                if (!Files.exists(unsortedFile)) {
+                    throw new FileNotFoundException("File " + unsortedFile + " doesn't exist");
+                }
+            }
             sortFileByNumericColumn(unsortedFile, sortedFile, variationIdColumnIndex);
         }
     }
 
-    protected void sortFileByNumericColumn(Path inputFile, Path outputFile, int columnIndex) throws InterruptedException, IOException {
+    protected void sortFileByNumericColumn(Path inputFile, Path outputFile, int columnIndex) throws IOException {
         logger.info("Sorting file {} into {} ...", inputFile, outputFile);
-
-        // increment column index by 1, beacause Java indexes are 0-based and 'sort' command uses 1-based indexes
-        columnIndex++;
-        ProcessBuilder pb = new ProcessBuilder("sort", "-t", "\t", "-k", Integer.toString(columnIndex),
-                "-n", "--stable", inputFile.toAbsolutePath().toString(), "-T", variationDirectory.toString(),
-                "-o", outputFile.toAbsolutePath().toString());
-        logger.debug("Executing '{}' ...", StringUtils.join(pb.command(), " "));
         Stopwatch stopwatch = Stopwatch.createStarted();
-        Process process = pb.start();
-        process.waitFor();
-
-        int returnedValue = process.exitValue();
-        if (returnedValue != 0) {
-            String errorMessage = IOUtils.toString(process.getErrorStream());
-            logger.error("Error sorting {}", inputFile);
-            logger.error(errorMessage);
-            throw new RuntimeException("Error sorting " + inputFile);
-        }
-        logger.info("Sorted");
+
+        ExternalMergeSorter sorter = new ExternalMergeSorter(columnIndex, Runtime.getRuntime().maxMemory() / SORT_MEMORY_FRACTION,
+                Runtime.getRuntime().availableProcessors(), variationDirectory);
+        long numLines = sorter.sort(inputFile, outputFile);
+
+        logger.info("Sorted {} lines", numLines);
         logger.debug("Elapsed time sorting file: {}", stopwatch);
     }
 
-    public void gzip() throws IOException, InterruptedException {
+    public void gzip() throws IOException {
         gzipFile(unprocessedFileName);
         gzipFile(preprocessedFileName);
     }
 
-    private void gzipFile(String fileName) throws IOException, InterruptedException {
+    private void gzipFile(String fileName) throws IOException {
         Path unzippedFile = variationDirectory.resolve(fileName);
         if (Files.exists(unzippedFile)) {
             logger.info("Compressing {}", unzippedFile.toAbsolutePath());
-            Process process = Runtime.getRuntime().exec("gzip " + unzippedFile.toAbsolutePath());
-            process.waitFor();
+            Path zippedFile = variationDirectory.resolve(fileName + ".gz");
+            try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(zippedFile), 1 << 16)) {
+                Files.copy(unzippedFile, outputStream);
+            }
+            Files.delete(unzippedFile);
         }
     }
 
@@ -213,7 +213,6 @@ public class VariationParser extends CellBaseParser {
     }
 
     private void preprocessInputFiles() throws IOException, InterruptedException {
-        gunzipVariationInputFiles();
         variationFile.sort();
         variationFeatureFile.sort();
         variationSynonymFile.sort();
@@ -535,19 +534,6 @@ public class VariationParser extends CellBaseParser {
                 (transVarFields[21] != null && !transVarFields[21].equals("\\N")) ? Float.parseFloat(transVarFields[21]) : null);
     }
 
-    private void gunzipVariationInputFiles() throws IOException, InterruptedException {
-        logger.info("Unzipping variation files ...");
-        Stopwatch stopwatch = Stopwatch.createStarted();
-
-        variationFile.gunzip();
-        variationTranscriptFile.gunzip();
-        variationFeatureFile.gunzip();
-        variationSynonymFile.gunzip();
-
-        logger.info("Done");
-        logger.debug("Elapsed time unzipping files: {}", stopwatch);
-    }
-
     private void gzipVariationFiles(Path variationDirectoryPath) throws IOException, InterruptedException {
         logger.info("Compressing variation files ...");
         Stopwatch stopwatch = Stopwatch.createStarted();
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BuildStepSchedulerTest {
+
+    @Test
+    public void dependenciesAreRunFirst() throws Exception {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        BuildStepScheduler scheduler = new BuildStepScheduler(4, 1000)
+                .addStep(step("gene", Collections.singletonList("index"), 1, () -> executed.add("gene")))
+                .addStep(step("clinical", Collections.singletonList("index"), 1, () -> executed.add("clinical")))
+                .addStep(step("index", Collections.emptyList(), 1, () -> executed.add("index")));
+
+        List<BuildStepScheduler.StepResult> results = scheduler.run();
+
+        assertEquals(3, results.size());
+        assertEquals("index", executed.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("gene", "clinical")), new HashSet<>(executed.subList(1, 3)));
+        for (BuildStepScheduler.StepResult result : results) {
+            assertEquals(BuildStepScheduler.Status.DONE, result.getStatus());
+        }
+    }
+
+    @Test
+    public void independentStepsRunConcurrently() throws Exception {
+        // Both steps wait for each other, it can only finish if they run at the same time
+        CountDownLatch latch = new CountDownLatch(2);
+        BuildStepScheduler.StepAction action = () -> {
+            latch.countDown();
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        };
+        List<BuildStepScheduler.StepResult> results = new BuildStepScheduler(2, 1000)
+                .addStep(step("variation", Collections.emptyList(), 1, action))
+                .addStep(step("conservation", Collections.emptyList(), 1, action))
+                .run();
+
+        for (BuildStepScheduler.StepResult result : results) {
+            assertEquals(BuildStepScheduler.Status.DONE, result.getStatus());
+        }
+    }
+
+    @Test
+    public void memoryBudgetIsRespected() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        BuildStepScheduler.StepAction action = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+        };
+        BuildStepScheduler scheduler = new BuildStepScheduler(4, 100);
+        for (int i = 0; i < 4; i++) {
+            scheduler.addStep(step("step" + i, Collections.emptyList(), 60, action));
+        }
+        // Bigger than the whole budget, run alone
+        scheduler.addStep(step("big", Collections.emptyList(), 500, action));
+
+        List<BuildStepScheduler.StepResult> results = scheduler.run();
+
+        assertEquals(5, results.size());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void threadsAreRespected() throws Exception {
+        AtomicInteger usedThreads = new AtomicInteger();
+        AtomicInteger maxUsedThreads = new AtomicInteger();
+        BuildStepScheduler scheduler = new BuildStepScheduler(4, 1000);
+        for (int i = 0; i < 4; i++) {
+            scheduler.addStep(threadsStep("step" + i, 1, usedThreads, maxUsedThreads));
+        }
+        // Runs its own pool of three threads
+        scheduler.addStep(threadsStep("conservation", 3, usedThreads, maxUsedThreads));
+        // More threads than the scheduler has, run alone
+        scheduler.addStep(threadsStep("big", 8, usedThreads, maxUsedThreads));
+
+        List<BuildStepScheduler.StepResult> results = scheduler.run();
+
+        assertEquals(6, results.size());
+        assertEquals(8, maxUsedThreads.get());
+        for (BuildStepScheduler.StepResult result : results) {
+            assertEquals(BuildStepScheduler.Status.DONE, result.getStatus());
+        }
+    }
+
+    private BuildStepScheduler.Step threadsStep(String name, int threads, AtomicInteger usedThreads, AtomicInteger maxUsedThreads) {
+        return new BuildStepScheduler.Step(name, Collections.emptyList(), 1, threads, () -> {
+            int used = usedThreads.addAndGet(threads);
+            maxUsedThreads.accumulateAndGet(used, Math::max);
+            // Steps other than the big one never use more than the parallelism of the scheduler
+            assertTrue(threads > 4 ? used == threads : used <= 4);
+            Thread.sleep(50);
+            usedThreads.addAndGet(-threads);
+        });
+    }
+
+    @Test
+    public void failedDependencySkipsSteps() throws Exception {
+        Map<String, BuildStepScheduler.Status> statuses = new ConcurrentHashMap<>();
+        List<BuildStepScheduler.StepResult> results = new BuildStepScheduler(2, 1000)
+                .addStep(step("gene", Collections.singletonList("index"), 1, () -> { }))
+                .addStep(step("index", Collections.emptyList(), 1, () -> {
+                    throw new IllegalStateException("no fasta");
+                }))
+                .addStep(step("repeats", Collections.emptyList(), 1, () -> { }))
+                .run();
+
+        for (BuildStepScheduler.StepResult result : results) {
+            statuses.put(result.getName(), result.getStatus());
+        }
+        assertEquals(BuildStepScheduler.Status.FAILED, statuses.get("index"));
+        assertEquals(BuildStepScheduler.Status.SKIPPED, statuses.get("gene"));
+        assertEquals(BuildStepScheduler.Status.DONE, statuses.get("repeats"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclicDependencies() throws Exception {
+        new BuildStepScheduler(2, 1000)
+                .addStep(step("a", Collections.singletonList("b"), 1, () -> { }))
+                .addStep(step("b", Collections.singletonList("a"), 1, () -> { }))
+                .run();
+    }
+
+    private BuildStepScheduler.Step step(String name, List<String> dependencies, long memory,
+                                         BuildStepScheduler.StepAction action) {
+        return new BuildStepScheduler.Step(name, dependencies, memory, action);
+    }
+
+}
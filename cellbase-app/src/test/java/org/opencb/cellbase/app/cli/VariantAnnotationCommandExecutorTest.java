@@ -707,9 +707,9 @@ public class VariantAnnotationCommandExecutorTest {
     private void cleanUp() throws IOException {
         (new File(OUTPUT_FILENAME)).delete();
         org.apache.commons.io.FileUtils.deleteDirectory(resourcesFolder
-                .resolve("commandExecutor/additionalPopulationFrequency/chr1.2017-12-27_01_12.hgva.freq.cellbase.test.json.gz.idx").toFile());
+                .resolve("commandExecutor/additionalPopulationFrequency/chr1.2017-12-27_01_12.hgva.freq.cellbase.test.json.gz.v2.idx").toFile());
         org.apache.commons.io.FileUtils.deleteDirectory(resourcesFolder
-                .resolve("commandExecutor/customAnnotation/GEL_GL_6628.duprem.sites.annot.subset.atomic.left.split.test.vcf.gz.idx").toFile());
+                .resolve("commandExecutor/customAnnotation/GEL_GL_6628.duprem.sites.annot.subset.atomic.left.split.test.vcf.gz.v2.idx").toFile());
     }
 
     private CliOptionsParser.VariantAnnotationCommandOptions
@@ -0,0 +1,182 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.models.variant.avro.AdditionalAttribute;
+import org.opencb.biodata.tools.variant.VariantVcfHtsjdkReader;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.CustomAnnotationVariantIndexer;
+import org.opencb.cellbase.app.cli.variant.annotation.indexers.VariantIndexer;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CustomAnnotationMergeJoinTest {
+
+    private static final String HEADER = "##fileformat=VCFv4.2\n"
+            + "##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele frequency\">\n"
+            + "##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameAnnotationThanIndex() throws Exception {
+        Path customFile = createVcf("custom.vcf",
+                "1\t100\t.\tA\tT\t.\t.\tAF=0.1;AC=1",
+                "1\t100\t.\tA\tC\t.\t.\tAF=0.2;AC=2",
+                "1\t250\t.\tG\tA\t.\t.\tAF=0.3;AC=3",
+                // Repeated, the last one is taken
+                "1\t250\t.\tG\tA\t.\t.\tAF=0.35;AC=35",
+                "1\t5000\t.\tC\tG\t.\t.\tAF=0.4;AC=4",
+                "2\t100\t.\tA\tT\t.\t.\tAF=0.5;AC=5",
+                "3\t100\t.\tA\tT\t.\t.\tAF=0.6;AC=6",
+                "3\t3000\t.\tT\tC\t.\t.\tAF=0.7",
+                "X\t100\t.\tA\tT\t.\t.\tAF=0.8;AC=8");
+        Path inputFile = createVcf("input.vcf",
+                "1\t100\t.\tA\tC\t.\t.\t.",
+                "1\t150\t.\tA\tC\t.\t.\t.",
+                "1\t250\t.\tG\tA\t.\t.\t.",
+                "1\t5000\t.\tC\tT\t.\t.\t.",
+                "3\t100\t.\tA\tT\t.\t.\t.",
+                "3\t3000\t.\tT\tC\t.\t.\t.",
+                "4\t100\t.\tA\tT\t.\t.\t.",
+                "X\t100\t.\tA\tT\t.\t.\t.");
+        List<String> fields = Arrays.asList("AF", "AC");
+
+        assertTrue(CustomAnnotationMergeJoin.isSameOrder(CustomAnnotationMergeJoin.getSortedChromosomes(inputFile),
+                CustomAnnotationMergeJoin.getSortedChromosomes(customFile)));
+
+        // Annotation with the RocksDB index of the custom file
+        VariantIndexer variantIndexer = new CustomAnnotationVariantIndexer(getVariantReader(customFile), -1, fields);
+        variantIndexer.open();
+        variantIndexer.run();
+        List<Variant> indexedVariants = readAll(getVariantReader(inputFile));
+        VcfVariantAnnotator vcfVariantAnnotator = new VcfVariantAnnotator(customFile.toString(), variantIndexer.getDbIndex(),
+                "custom", new QueryOptions());
+        vcfVariantAnnotator.open();
+        vcfVariantAnnotator.run(indexedVariants);
+        vcfVariantAnnotator.close();
+        variantIndexer.close();
+
+        // Annotation joining the input and the custom file
+        List<Variant> joinedVariants = mergeJoin(inputFile, customFile, fields);
+
+        assertEquals(8, joinedVariants.size());
+        assertEquals(getCustomAnnotations(indexedVariants), getCustomAnnotations(joinedVariants));
+        Map<String, Map<String, String>> customAnnotations = getCustomAnnotations(joinedVariants);
+        assertEquals("0.2", customAnnotations.get("1:100:A:C").get("AF"));
+        assertEquals("35", customAnnotations.get("1:250:G:A").get("AC"));
+        assertNull(customAnnotations.get("1:150:A:C"));
+        assertNull(customAnnotations.get("1:5000:C:T"));
+        assertEquals("0.6", customAnnotations.get("3:100:A:T").get("AF"));
+        assertNull(customAnnotations.get("4:100:A:T"));
+        assertEquals("0.8", customAnnotations.get("X:100:A:T").get("AF"));
+    }
+
+    @Test
+    public void chrPrefixedCustomFile() throws Exception {
+        Path customFile = createVcf("custom_chr.vcf",
+                "chr1\t100\t.\tA\tT\t.\t.\tAF=0.1;AC=1",
+                "chr1\t9000\t.\tA\tT\t.\t.\tAF=0.2;AC=2",
+                "chr3\t100\t.\tA\tT\t.\t.\tAF=0.3;AC=3",
+                "chrX\t100\t.\tA\tT\t.\t.\tAF=0.4;AC=4");
+        // Chromosome 2 is not in the custom file, the custom variants left of chromosome 1 are skipped there
+        Path inputFile = createVcf("input_chr.vcf",
+                "1\t100\t.\tA\tT\t.\t.\t.",
+                "2\t100\t.\tA\tT\t.\t.\t.",
+                "3\t100\t.\tA\tT\t.\t.\t.",
+                "X\t100\t.\tA\tT\t.\t.\t.");
+
+        assertEquals(Arrays.asList("1", "3", "X"), CustomAnnotationMergeJoin.getSortedChromosomes(customFile));
+        assertTrue(CustomAnnotationMergeJoin.isSameOrder(CustomAnnotationMergeJoin.getSortedChromosomes(inputFile),
+                CustomAnnotationMergeJoin.getSortedChromosomes(customFile)));
+
+        Map<String, Map<String, String>> customAnnotations = getCustomAnnotations(mergeJoin(inputFile, customFile,
+                Arrays.asList("AF", "AC")));
+        assertEquals("0.1", customAnnotations.get("1:100:A:T").get("AF"));
+        assertNull(customAnnotations.get("2:100:A:T"));
+        assertEquals("0.3", customAnnotations.get("3:100:A:T").get("AF"));
+        assertEquals("0.4", customAnnotations.get("X:100:A:T").get("AF"));
+    }
+
+    @Test
+    public void unsortedFiles() throws Exception {
+        assertNull(CustomAnnotationMergeJoin.getSortedChromosomes(createVcf("unsorted_positions.vcf",
+                "1\t200\t.\tA\tT\t.\t.\t.",
+                "1\t100\t.\tA\tT\t.\t.\t.")));
+        assertNull(CustomAnnotationMergeJoin.getSortedChromosomes(createVcf("unsorted_chromosomes.vcf",
+                "1\t100\t.\tA\tT\t.\t.\t.",
+                "2\t100\t.\tA\tT\t.\t.\t.",
+                "1\t200\t.\tA\tT\t.\t.\t.")));
+        assertFalse(CustomAnnotationMergeJoin.isSameOrder(Arrays.asList("1", "2", "X"), Arrays.asList("2", "1")));
+        assertTrue(CustomAnnotationMergeJoin.isSameOrder(Arrays.asList("1", "2", "X"), Arrays.asList("1", "MT", "X")));
+    }
+
+    private static List<Variant> mergeJoin(Path inputFile, Path customFile, List<String> fields) throws IOException {
+        CustomAnnotationMergeJoin mergeJoin = new CustomAnnotationMergeJoin(getVariantReader(customFile),
+                CustomAnnotationMergeJoin.getSortedChromosomes(customFile), fields);
+        MergeJoinVariantReader reader = new MergeJoinVariantReader(getVariantReader(inputFile),
+                Collections.singletonList(mergeJoin));
+        MergeJoinVcfVariantAnnotator mergeJoinVcfVariantAnnotator = new MergeJoinVcfVariantAnnotator(customFile.toString(),
+                mergeJoin, "custom", new QueryOptions());
+        mergeJoinVcfVariantAnnotator.open();
+        List<Variant> joinedVariants = new ArrayList<>();
+        reader.open();
+        reader.pre();
+        List<Variant> batch;
+        while ((batch = reader.read(3)) != null && !batch.isEmpty()) {
+            mergeJoinVcfVariantAnnotator.run(batch);
+            joinedVariants.addAll(batch);
+        }
+        reader.post();
+        reader.close();
+        mergeJoinVcfVariantAnnotator.close();
+        return joinedVariants;
+    }
+
+    private Path createVcf(String fileName, String... lines) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        Files.write(file, (HEADER + String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static VariantReader getVariantReader(Path vcfFile) {
+        return new VariantVcfHtsjdkReader(vcfFile, new VariantFileMetadata(vcfFile.getFileName().toString(),
+                vcfFile.toAbsolutePath().toString()).toVariantStudyMetadata(vcfFile.getFileName().toString()), null);
+    }
+
+    private static List<Variant> readAll(VariantReader variantReader) {
+        List<Variant> variants = new ArrayList<>();
+        variantReader.open();
+        variantReader.pre();
+        List<Variant> batch;
+        while ((batch = variantReader.read(10)) != null && !batch.isEmpty()) {
+            variants.addAll(batch);
+        }
+        variantReader.post();
+        variantReader.close();
+        return variants;
+    }
+
+    private static Map<String, Map<String, String>> getCustomAnnotations(List<Variant> variants) {
+        Map<String, Map<String, String>> customAnnotations = new HashMap<>();
+        for (Variant variant : variants) {
+            if (variant.getAnnotation() != null && variant.getAnnotation().getAdditionalAttributes() != null) {
+                AdditionalAttribute additionalAttribute = variant.getAnnotation().getAdditionalAttributes().get("custom");
+                customAnnotations.put(variant.toString(), additionalAttribute.getAttribute());
+            }
+        }
+        return customAnnotations;
+    }
+}
@@ -0,0 +1,170 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.run.ParallelTaskRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class EncodedAnnotationWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ObjectWriter objectWriter;
+
+    public EncodedAnnotationWriterTest() {
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        objectWriter = jsonObjectMapper.writer();
+    }
+
+    @Test
+    public void json() throws Exception {
+        List<Variant> variants = createVariants(5000);
+        List<String> expected = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            expected.add(objectWriter.writeValueAsString(variant.getImpl()));
+        }
+
+        for (boolean gzip : new boolean[]{false, true}) {
+            Path singleThreadFile = annotate(variants, new JsonAnnotationEncoder(gzip), 1, "single.json" + (gzip ? ".gz" : ""));
+            Path multiThreadFile = annotate(variants, new JsonAnnotationEncoder(gzip), 4, "multi.json" + (gzip ? ".gz" : ""));
+            assertEquals(expected, readLines(singleThreadFile, gzip));
+            assertEquals(expected, readLines(multiThreadFile, gzip));
+            assertArrayEquals(Files.readAllBytes(singleThreadFile), Files.readAllBytes(multiThreadFile));
+        }
+    }
+
+    @Test
+    public void avro() throws Exception {
+        List<Variant> variants = createVariants(5000);
+        List<String> expected = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            expected.add(objectWriter.writeValueAsString(variant.getImpl()));
+        }
+
+        for (boolean deflate : new boolean[]{false, true}) {
+            // Files differ in the random sync marker, decoded variants are the same
+            assertEquals(expected, readAvro(annotate(variants, new AvroAnnotationEncoder(deflate), 1, "single.avro")));
+            assertEquals(expected, readAvro(annotate(variants, new AvroAnnotationEncoder(deflate), 4, "multi.avro")));
+        }
+    }
+
+    @Test
+    public void emptyOutput() throws Exception {
+        assertTrue(readLines(annotate(Collections.emptyList(), new JsonAnnotationEncoder(true), 2, "empty.json.gz"), true)
+                .isEmpty());
+        assertTrue(readAvro(annotate(Collections.emptyList(), new AvroAnnotationEncoder(true), 2, "empty.avro")).isEmpty());
+    }
+
+    private Path annotate(List<Variant> variants, AnnotationEncoder encoder, int numThreads, String fileName) throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        List<ParallelTaskRunner.TaskWithException<Variant, Variant, Exception>> tasks = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            tasks.add(batch -> batch);
+        }
+        ParallelTaskRunner.Config config = new ParallelTaskRunner.Config(numThreads, 70, 10, true);
+        new ParallelTaskRunner<>(new ListReader(variants), EncodingTask.wrap(tasks, encoder), new EncodedAnnotationWriter(file, encoder),
+                config).run();
+        return file;
+    }
+
+    private static List<Variant> createVariants(int numVariants) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        Random random = new Random(5);
+        for (int i = 0; i < numVariants; i++) {
+            Variant variant = new Variant("1", 1000 + i * 10, "A", i % 2 == 0 ? "T" : "GC");
+            VariantAnnotation variantAnnotation = new VariantAnnotation();
+            variantAnnotation.setId("rs" + i);
+            float frequency = random.nextFloat();
+            variantAnnotation.setPopulationFrequencies(Collections.singletonList(new PopulationFrequency("GNOMAD_GENOMES", "ALL",
+                    "A", "T", 1 - frequency, frequency, 0f, 0f, 0f)));
+            variant.setAnnotation(variantAnnotation);
+            variants.add(variant);
+        }
+        return variants;
+    }
+
+    private static List<String> readLines(Path file, boolean gzip) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputStream inputStream = gzip ? new GZIPInputStream(Files.newInputStream(file)) : Files.newInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private List<String> readAvro(Path file) throws IOException {
+        List<String> variants = new ArrayList<>();
+        try (DataFileReader<VariantAvro> reader = new DataFileReader<>(file.toFile(), new SpecificDatumReader<>(VariantAvro.class))) {
+            for (VariantAvro variantAvro : reader) {
+                variants.add(objectWriter.writeValueAsString(variantAvro));
+            }
+        }
+        return variants;
+    }
+
+    private static class ListReader implements DataReader<Variant> {
+
+        private final Iterator<Variant> iterator;
+
+        ListReader(List<Variant> variants) {
+            this.iterator = variants.iterator();
+        }
+
+        public boolean open() {
+            return true;
+        }
+
+        public boolean pre() {
+            return true;
+        }
+
+        public List<Variant> read() {
+            return read(1);
+        }
+
+        public List<Variant> read(int batchSize) {
+            List<Variant> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+            }
+            return batch;
+        }
+
+        public boolean post() {
+            return true;
+        }
+
+        public boolean close() {
+            return true;
+        }
+    }
+}
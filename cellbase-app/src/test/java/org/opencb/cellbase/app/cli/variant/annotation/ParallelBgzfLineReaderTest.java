@@ -0,0 +1,83 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.cellbase.core.serializer.ParallelBgzfOutputStream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelBgzfLineReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readLines() throws Exception {
+        StringBuilder content = new StringBuilder("##fileformat=VCFv4.2\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+        Random random = new Random(7);
+        for (int i = 0; i < 50000; i++) {
+            content.append("1\t").append(i + 1).append("\trs").append(random.nextInt()).append("\tA\tT\t.\tPASS\t");
+            // Lines longer than a block and multi-byte characters split between blocks
+            int infoLength = i % 5000 == 0 ? 100000 : random.nextInt(200);
+            for (int j = 0; j < infoLength; j++) {
+                content.append(j % 7 == 0 ? 'é' : (char) ('A' + random.nextInt(26)));
+            }
+            content.append(i % 1000 == 0 ? "\r\n" : "\n");
+        }
+        content.append("X\t100\t.\tA\tT\t.\tPASS\tLAST");
+
+        Path file = temporaryFolder.getRoot().toPath().resolve("test.vcf.gz");
+        try (OutputStream outputStream = new ParallelBgzfOutputStream(Files.newOutputStream(file))) {
+            outputStream.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(ParallelBgzfLineReader.isBgzf(file));
+
+        List<String> expected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+        }
+
+        for (int batchSize : new int[]{1, 100, 7000}) {
+            ParallelBgzfLineReader reader = new ParallelBgzfLineReader(file, 4);
+            assertTrue(reader.open());
+            reader.pre();
+            List<String> lines = new ArrayList<>();
+            List<String> batch;
+            while (!(batch = reader.read(batchSize)).isEmpty()) {
+                assertTrue(batch.size() <= batchSize);
+                lines.addAll(batch);
+            }
+            reader.post();
+            reader.close();
+            assertEquals(expected.size(), lines.size());
+            assertEquals(expected, lines);
+        }
+    }
+
+    @Test
+    public void plainGzipIsNotBgzf() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("test.vcf.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(file))) {
+            outputStream.write("##fileformat=VCFv4.2\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(ParallelBgzfLineReader.isBgzf(file));
+    }
+}
@@ -0,0 +1,196 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.ParallelTaskRunner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelVariationAnnotatorTest {
+
+    @Test
+    public void annotateAllChromosomes() throws Exception {
+        Map<String, Integer> numVariants = new LinkedHashMap<>();
+        numVariants.put("1", 1000);
+        numVariants.put("2", 50);
+        numVariants.put("X", 0);
+        numVariants.put("3", 333);
+
+        List<CountingTask> tasks = Arrays.asList(new CountingTask(null), new CountingTask(null), new CountingTask(null));
+        Map<String, List<Variant>> written = new ConcurrentHashMap<>();
+        new ParallelVariationAnnotator<>(new ArrayList<>(tasks), 7, 2, 3)
+                .run(new ArrayList<>(numVariants.keySet()), Collections.emptyMap(),
+                        chromosome -> new ListReader(createVariants(chromosome, numVariants.get(chromosome)), null),
+                        chromosome -> new ListWriter(written.computeIfAbsent(chromosome, c -> new ArrayList<>())));
+
+        // Every chromosome is written in its own output in the order it was read
+        for (Map.Entry<String, Integer> entry : numVariants.entrySet()) {
+            assertEquals(createVariants(entry.getKey(), entry.getValue()), written.get(entry.getKey()));
+        }
+        int numAnnotated = 0;
+        for (CountingTask task : tasks) {
+            assertEquals(1, task.numPre);
+            assertEquals(1, task.numPost);
+            numAnnotated += task.numAnnotated.get();
+        }
+        assertEquals(1383, numAnnotated);
+    }
+
+    @Test
+    public void biggestChromosomesFirst() throws Exception {
+        Map<String, Long> chromosomeSizes = new HashMap<>();
+        chromosomeSizes.put("1", 249250621L);
+        chromosomeSizes.put("2", 243199373L);
+        chromosomeSizes.put("21", 48129895L);
+        chromosomeSizes.put("22", 51304566L);
+
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        new ParallelVariationAnnotator<>(Collections.singletonList(new CountingTask(null)), 10, 1, 2)
+                .run(Arrays.asList("21", "MT", "22", "1", "2"), chromosomeSizes,
+                        chromosome -> new ListReader(createVariants(chromosome, 5), () -> started.add(chromosome)),
+                        chromosome -> new ListWriter(new ArrayList<>()));
+
+        // Chromosomes with unknown size go last
+        assertEquals(Arrays.asList("1", "2", "22", "21", "MT"), started);
+    }
+
+    @Test
+    public void errorStopsTheAnnotation() throws Exception {
+        Map<String, ListReader> readers = new ConcurrentHashMap<>();
+        Map<String, ListWriter> writers = new ConcurrentHashMap<>();
+        try {
+            new ParallelVariationAnnotator<>(Arrays.asList(new CountingTask("2"), new CountingTask("2")), 10, 2, 2)
+                    .run(Arrays.asList("1", "2", "3"), Collections.emptyMap(),
+                            chromosome -> readers.computeIfAbsent(chromosome,
+                                    c -> new ListReader(createVariants(chromosome, 100), null)),
+                            chromosome -> writers.computeIfAbsent(chromosome, c -> new ListWriter(new ArrayList<>())));
+            fail("Annotation error expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Cannot annotate chromosome 2", e.getMessage());
+        }
+        // The failed chromosome does not leave its reader and writer open
+        assertTrue(readers.get("2").closed);
+        assertTrue(writers.get("2").closed);
+    }
+
+    private static List<Variant> createVariants(String chromosome, int numVariants) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            variants.add(new Variant(chromosome, 1000 + i, "A", "T"));
+        }
+        return variants;
+    }
+
+    private static class CountingTask implements ParallelTaskRunner.TaskWithException<Variant, Variant, Exception> {
+
+        private final String failingChromosome;
+        private int numPre;
+        private int numPost;
+        private final AtomicInteger numAnnotated = new AtomicInteger();
+
+        CountingTask(String failingChromosome) {
+            this.failingChromosome = failingChromosome;
+        }
+
+        public void pre() {
+            numPre++;
+        }
+
+        public List<Variant> apply(List<Variant> batch) {
+            if (batch.get(0).getChromosome().equals(failingChromosome)) {
+                throw new IllegalStateException("Cannot annotate chromosome " + failingChromosome);
+            }
+            numAnnotated.addAndGet(batch.size());
+            return batch;
+        }
+
+        public void post() {
+            numPost++;
+        }
+    }
+
+    private static class ListReader implements DataReader<Variant> {
+
+        private final Iterator<Variant> iterator;
+        private final Runnable onOpen;
+        private volatile boolean closed;
+
+        ListReader(List<Variant> variants, Runnable onOpen) {
+            this.iterator = variants.iterator();
+            this.onOpen = onOpen;
+        }
+
+        public boolean open() {
+            if (onOpen != null) {
+                onOpen.run();
+            }
+            return true;
+        }
+
+        public boolean pre() {
+            return true;
+        }
+
+        public List<Variant> read() {
+            return read(1);
+        }
+
+        public List<Variant> read(int batchSize) {
+            List<Variant> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+            }
+            return batch;
+        }
+
+        public boolean post() {
+            return true;
+        }
+
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+    }
+
+    private static class ListWriter implements DataWriter<Variant> {
+
+        private final List<Variant> variants;
+        private volatile boolean closed;
+
+        ListWriter(List<Variant> variants) {
+            this.variants = variants;
+        }
+
+        public boolean open() {
+            return true;
+        }
+
+        public boolean pre() {
+            return true;
+        }
+
+        public boolean write(Variant variant) {
+            return variants.add(variant);
+        }
+
+        public boolean write(List<Variant> batch) {
+            return variants.addAll(batch);
+        }
+
+        public boolean post() {
+            return true;
+        }
+
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+    }
+}
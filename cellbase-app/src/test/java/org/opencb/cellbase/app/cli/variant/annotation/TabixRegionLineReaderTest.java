@@ -0,0 +1,134 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndex;
+import htsjdk.variant.vcf.VCFCodec;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TabixRegionLineReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path vcfFile;
+    private List<String> variantLines;
+
+    @Before
+    public void setUp() throws Exception {
+        // Bgzipped and indexed on the fly, enough lines for several BGZF blocks per chromosome
+        variantLines = new ArrayList<>();
+        for (String chromosome : Arrays.asList("1", "2", "X")) {
+            for (int position = 100; position <= 500000; position += 100) {
+                variantLines.add(chromosome + "\t" + position + "\t.\tA\tT\t.\tPASS\t.");
+            }
+            // Deletion overlapping the regions 1:2000000-2000100 and 1:2000150-2000200
+            variantLines.add(chromosome + "\t2000090\t.\tA" + StringUtils.repeat('C', 71) + "\tA\t.\tPASS\t.");
+        }
+        vcfFile = temporaryFolder.getRoot().toPath().resolve("test.vcf.gz");
+        try (OutputStream outputStream = new BlockCompressedOutputStream(vcfFile.toFile())) {
+            outputStream.write(("##fileformat=VCFv4.2\n##contig=<ID=1>\n##contig=<ID=2>\n##contig=<ID=X>\n"
+                    + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n").getBytes(StandardCharsets.UTF_8));
+            for (String line : variantLines) {
+                outputStream.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        TabixIndex tabixIndex = IndexFactory.createTabixIndex(vcfFile.toFile(), new VCFCodec(), TabixFormat.VCF, null);
+        tabixIndex.writeBasedOnFeatureFile(vcfFile.toFile());
+    }
+
+    @Test
+    public void readRegions() throws Exception {
+        List<Region> regions = Arrays.asList(
+                new Region("2", 1000, 5000),
+                new Region("1", 250000, 260000),
+                // Overlaps the previous region, merged
+                new Region("1", 255000, 270000),
+                new Region("chrX", 1, 1000),
+                new Region("1", 2000000, 2000100),
+                new Region("1", 2000150, 2000200),
+                new Region("5", 1, 1000));
+
+        for (int batchSize : new int[]{1, 7, 1000}) {
+            List<String> lines = readAll(new TabixRegionLineReader(vcfFile, regions, 3, true), batchSize);
+            List<String> expected = new ArrayList<>();
+            expected.addAll(getLines("2", 1000, 5000));
+            expected.addAll(getLines("1", 250000, 270000));
+            // The deletion is returned once
+            expected.addAll(getLines("1", 2000000, 2000100));
+            expected.addAll(getLines("X", 1, 1000));
+            assertEquals(expected, lines);
+        }
+    }
+
+    @Test
+    public void keepRegionsTogether() throws Exception {
+        List<Region> regions = Arrays.asList(new Region("1", 1, 10000), new Region("2", 1, 300));
+        TabixRegionLineReader reader = new TabixRegionLineReader(vcfFile, regions, 2, false);
+        assertTrue(reader.open());
+        assertEquals(100, reader.read(10).size());
+        assertEquals(3, reader.read(10).size());
+        assertTrue(reader.read(10).isEmpty());
+        reader.close();
+    }
+
+    @Test
+    public void parseRegions() throws IOException {
+        List<Region> regions = TabixRegionLineReader.parseRegions("1:1000-2000,X:1000000-2000000");
+        assertEquals(2, regions.size());
+        assertEquals("X", regions.get(1).getChromosome());
+        assertEquals(1000000, regions.get(1).getStart());
+        assertEquals(Integer.MAX_VALUE, TabixRegionLineReader.parseRegions("MT").get(0).getEnd());
+
+        Path bedFile = temporaryFolder.getRoot().toPath().resolve("panel.bed");
+        Files.write(bedFile, Arrays.asList("track name=panel", "1\t999\t2000\tBRCA", "2\t0\t100"));
+        List<Region> bedRegions = TabixRegionLineReader.readBedFile(bedFile);
+        assertEquals(2, bedRegions.size());
+        assertEquals(1000, bedRegions.get(0).getStart());
+        assertEquals(2000, bedRegions.get(0).getEnd());
+        assertEquals(1, bedRegions.get(1).getStart());
+    }
+
+    private List<String> getLines(String chromosome, int start, int end) {
+        List<String> lines = new ArrayList<>();
+        for (String line : variantLines) {
+            String[] fields = line.split("\t");
+            int position = Integer.parseInt(fields[1]);
+            if (fields[0].equals(chromosome) && position + fields[3].length() - 1 >= start && position <= end) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> readAll(TabixRegionLineReader reader, int batchSize) {
+        assertTrue(reader.open());
+        reader.pre();
+        List<String> lines = new ArrayList<>();
+        List<String> batch;
+        while (!(batch = reader.read(batchSize)).isEmpty()) {
+            assertTrue(batch.size() <= batchSize);
+            lines.addAll(batch);
+        }
+        reader.post();
+        reader.close();
+        return lines;
+    }
+}
@@ -0,0 +1,51 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class VariationDataReaderTest {
+
+    @Test
+    public void isValidAllele() {
+        assertTrue(VariationDataReader.isValidAllele("ACGT"));
+        assertTrue(VariationDataReader.isValidAllele(""));
+        assertFalse(VariationDataReader.isValidAllele("acgt"));
+        assertFalse(VariationDataReader.isValidAllele("N"));
+        assertFalse(VariationDataReader.isValidAllele("(CAG)4"));
+        assertFalse(VariationDataReader.isValidAllele("A\u00c1"));
+    }
+
+    @Test
+    public void splitChromosome() {
+        int chunkSize = MongoDBCollectionConfiguration.VARIATION_CHUNK_SIZE;
+        List<Region> ranges = VariationDataReader.splitChromosome("1", 249250621, 4);
+        assertEquals(4, ranges.size());
+        assertEquals(1, ranges.get(0).getStart());
+        assertEquals(249250621, ranges.get(3).getEnd());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals("1", ranges.get(i).getChromosome());
+            if (i > 0) {
+                // Adjacent ranges, each one starts at the beginning of a chunk
+                assertEquals(ranges.get(i - 1).getEnd() + 1, ranges.get(i).getStart());
+                assertEquals(1, ranges.get(i).getStart() % chunkSize);
+            }
+        }
+    }
+
+    @Test
+    public void splitSmallChromosome() {
+        assertEquals(Collections.singletonList("MT:1-16569"), toStrings(VariationDataReader.splitChromosome("MT", 16569, 4)));
+        assertEquals(Collections.singletonList("1:1-249250621"), toStrings(VariationDataReader.splitChromosome("1", 249250621, 1)));
+    }
+
+    private static List<String> toStrings(List<Region> regions) {
+        return regions.stream().map(Region::toString).collect(Collectors.toList());
+    }
+}
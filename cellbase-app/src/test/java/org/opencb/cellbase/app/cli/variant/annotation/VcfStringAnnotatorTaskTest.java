@@ -1,11 +1,14 @@
 package org.opencb.cellbase.app.cli.variant.annotation;
 
+import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.readers.LineIterator;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderVersion;
 import org.junit.Test;
 import org.opencb.biodata.formats.variant.vcf4.FullVcfCodec;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.commons.io.DataReader;
 import org.opencb.commons.io.StringDataReader;
 
@@ -20,6 +23,7 @@ import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class VcfStringAnnotatorTaskTest {
 
@@ -79,4 +83,54 @@ public class VcfStringAnnotatorTaskTest {
         assertEquals("42", samplesData.get(1).get(fdpPosition));
 
     }
+
+    @Test
+    public void sameStudyAndFileAsHtsjdkReader() throws Exception {
+        Path input = resourcesFolder.resolve("sample1_sample2.vcf.gz");
+        VariantStudyMetadata metadata = new VariantFileMetadata(input.getFileName().toString(),
+                input.toAbsolutePath().toString()).toVariantStudyMetadata(input.getFileName().toString());
+        VcfStringAnnotatorTask vcfStringAnnotatorTask = createTask(input, metadata);
+
+        List<Variant> variantList = vcfStringAnnotatorTask.apply(readFirstVariantLine(input));
+        assertEquals(1, variantList.size());
+        assertEquals(metadata.getId(), variantList.get(0).getStudies().get(0).getStudyId());
+        assertEquals(metadata.getFiles().get(0).getId(), variantList.get(0).getStudies().get(0).getFiles().get(0).getFileId());
+    }
+
+    @Test
+    public void malformedLines() throws Exception {
+        Path input = resourcesFolder.resolve("sample1_sample2.vcf.gz");
+        List<String> lines = Collections.singletonList("1\t100");
+
+        // Skipped by default, as VariantVcfHtsjdkReader does
+        assertEquals(0, createTask(input, null).apply(lines).size());
+        try {
+            createTask(input, null).setFailOnError(true).apply(lines);
+            fail("Malformed line must fail the annotation");
+        } catch (TribbleException e) {
+            // expected
+        }
+    }
+
+    private static VcfStringAnnotatorTask createTask(Path input, VariantStudyMetadata metadata) throws IOException {
+        FullVcfCodec codec = new FullVcfCodec();
+        try (InputStream inputStream = new GZIPInputStream(new FileInputStream(input.toFile()))) {
+            VCFHeader header = (VCFHeader) codec.readActualHeader(codec.makeSourceFromStream(inputStream));
+            return new VcfStringAnnotatorTask(header, codec.getVCFHeaderVersion(), Collections.emptyList(), null, false, null,
+                    metadata);
+        }
+    }
+
+    private static List<String> readFirstVariantLine(Path input) {
+        DataReader<String> dataReader = new StringDataReader(input);
+        dataReader.open();
+        dataReader.pre();
+        List<String> line = dataReader.read();
+        while (line != null && !line.isEmpty() && line.get(0).startsWith("#")) {
+            line = dataReader.read();
+        }
+        dataReader.post();
+        dataReader.close();
+        return line;
+    }
 }
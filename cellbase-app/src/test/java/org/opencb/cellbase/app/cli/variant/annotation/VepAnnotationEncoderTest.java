@@ -0,0 +1,140 @@
+package org.opencb.cellbase.app.cli.variant.annotation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.annotation.io.VepFormatWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Golden test, the output of the encoder must be byte for byte the one of biodata VepFormatWriter.
+ */
+public class VepAnnotationEncoderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameOutputAsVepFormatWriter() throws Exception {
+        List<Variant> variants = createVariants();
+
+        Path file = temporaryFolder.getRoot().toPath().resolve("annotation.vep");
+        VepFormatWriter vepFormatWriter = new VepFormatWriter(file.toString());
+        vepFormatWriter.open();
+        vepFormatWriter.pre();
+        vepFormatWriter.write(variants);
+        vepFormatWriter.post();
+        vepFormatWriter.close();
+        byte[] expected = Files.readAllBytes(file);
+
+        VepAnnotationEncoder encoder = new VepAnnotationEncoder();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(encoder.getHeader());
+        // Batches of different sizes, the reused buffer must not leak lines from one batch to the next
+        outputStream.write(encoder.encode(variants.subList(0, 4)));
+        outputStream.write(encoder.encode(variants.subList(4, 5)));
+        outputStream.write(encoder.encode(variants.subList(5, variants.size())));
+        outputStream.write(encoder.getFooter());
+
+        // The header has the time the file was produced
+        assertEquals(withoutTime(expected), withoutTime(outputStream.toByteArray()));
+        assertEquals(1, encoder.getNumSkippedVariants());
+    }
+
+    @Test
+    public void skippedVariants() {
+        // VepFormatWriter fails with these variants
+        Variant notAnnotated = new Variant("17", 7579472, "G", "A");
+        Variant noConsequenceTypes = annotate(new Variant("17", 7579500, "G", "A"), "rs1", null);
+        Variant emptyConsequenceTypes = annotate(new Variant("17", 7579600, "G", "A"), "rs2", Collections.emptyList());
+
+        VepAnnotationEncoder encoder = new VepAnnotationEncoder();
+        assertEquals(0, encoder.encode(Arrays.asList(notAnnotated, noConsequenceTypes, emptyConsequenceTypes)).length);
+        assertEquals(3, encoder.getNumSkippedVariants());
+        assertEquals(0, encoder.getFooter().length);
+    }
+
+    @Test
+    public void emptyBatch() {
+        assertEquals(0, new VepAnnotationEncoder().encode(Collections.emptyList()).length);
+    }
+
+    private static String withoutTime(byte[] bytes) {
+        return new String(bytes, Charset.defaultCharset()).replaceFirst("## Output produced at [^\n]*\n", "");
+    }
+
+    private static List<Variant> createVariants() {
+        List<Variant> variants = new ArrayList<>();
+
+        ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+        proteinVariantAnnotation.setPosition(57);
+        proteinVariantAnnotation.setReference("ARG");
+        proteinVariantAnnotation.setAlternate("TRP");
+        ConsequenceType missense = createConsequenceType("ENSG00000141510", "ENST00000269305", "protein_coding",
+                Arrays.asList(new SequenceOntologyTerm("SO:0001583", "missense_variant"),
+                        new SequenceOntologyTerm("SO:0001630", "splice_region_variant")));
+        missense.setCdnaPosition(359);
+        missense.setCdsPosition(169);
+        missense.setCodon("Cgg/Tgg");
+        missense.setProteinVariantAnnotation(proteinVariantAnnotation);
+        // Protein annotation without alternate amino acid
+        ConsequenceType synonymous = createConsequenceType("ENSG00000141510", "ENST00000413465", "nonsense_mediated_decay",
+                Collections.singletonList(new SequenceOntologyTerm("SO:0001819", "synonymous_variant")));
+        synonymous.setProteinVariantAnnotation(new ProteinVariantAnnotation());
+        ConsequenceType regulatory = createConsequenceType(null, null, null,
+                Collections.singletonList(new SequenceOntologyTerm("SO:0001566", "regulatory_region_variant")));
+        variants.add(annotate(new Variant("17", 7579472, "G", "A"), "rs1042522", Arrays.asList(missense, synonymous, regulatory)));
+
+        // Deletions of one and several bases, insertion and MNV
+        variants.add(annotate(new Variant("17", 7579500, "AT", ""), null, Collections.singletonList(regulatory)));
+        variants.add(annotate(new Variant("17", 7579600, "A", ""), "rs2", Collections.singletonList(synonymous)));
+        variants.add(annotate(new Variant("17", 7579700, "", "TTG"), "rs3", Arrays.asList(regulatory, missense)));
+        variants.add(annotate(new Variant("17", 7579800, "AC", "GT"), "rs4", Collections.singletonList(regulatory)));
+
+        // Structural variants
+        Variant deletion = new Variant("17", 7580000, "A", "T");
+        deletion.setEnd(7581000);
+        deletion.setType(VariantType.DELETION);
+        variants.add(annotate(deletion, "sv1", Collections.singletonList(regulatory)));
+        Variant cnv = new Variant("17", 7590000, "A", "T");
+        cnv.setEnd(7591000);
+        cnv.setType(VariantType.CNV);
+        variants.add(annotate(cnv, "sv2", Collections.singletonList(missense)));
+
+        // No consequence types, nothing written
+        variants.add(annotate(new Variant("17", 7600000, "C", "T"), "rs5", Collections.emptyList()));
+        variants.add(annotate(new Variant("X", 100000, "C", "T"), "rs6", Collections.singletonList(regulatory)));
+        return variants;
+    }
+
+    private static ConsequenceType createConsequenceType(String gene, String transcript, String biotype,
+                                                         List<SequenceOntologyTerm> sequenceOntologyTerms) {
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setEnsemblGeneId(gene);
+        consequenceType.setEnsemblTranscriptId(transcript);
+        consequenceType.setBiotype(biotype);
+        consequenceType.setSequenceOntologyTerms(sequenceOntologyTerms);
+        return consequenceType;
+    }
+
+    private static Variant annotate(Variant variant, String id, List<ConsequenceType> consequenceTypes) {
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setId(id);
+        variantAnnotation.setChromosome(variant.getChromosome());
+        variantAnnotation.setConsequenceTypes(consequenceTypes);
+        variant.setAnnotation(variantAnnotation);
+        return variant;
+    }
+}
@@ -0,0 +1,209 @@
+package org.opencb.cellbase.app.cli.variant.annotation.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.tools.variant.VariantNormalizer;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotator;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ThroughputBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void syntheticVcf() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        for (VariantMix mix : VariantMix.values()) {
+            Path file = SyntheticVcfGenerator.generate(directory, mix, 1000, 3);
+            byte[] bytes = Files.readAllBytes(file);
+            // Pinned: the file is not written again, and the same parameters write the same variants
+            assertEquals(file, SyntheticVcfGenerator.generate(directory, mix, 1000, 3));
+            Files.delete(file);
+            assertArrayEquals(bytes, Files.readAllBytes(SyntheticVcfGenerator.generate(directory, mix, 1000, 3)));
+
+            List<String> lines = readVariantLines(file);
+            assertEquals(1000, lines.size());
+            long numSvs = lines.stream().filter(line -> line.split("\t")[4].startsWith("<")).count();
+            assertEquals(mix == VariantMix.SV, numSvs > 100);
+            assertEquals(mix.isPhased(), lines.stream().allMatch(line -> line.split("\t")[8].equals("GT:PS")));
+        }
+        assertFalse(Arrays.equals(Files.readAllBytes(SyntheticVcfGenerator.generate(directory, VariantMix.SNV, 1000, 3)),
+                Files.readAllBytes(SyntheticVcfGenerator.generate(directory, VariantMix.SNV, 1000, 4))));
+    }
+
+    @Test
+    public void run() throws Exception {
+        Path file = SyntheticVcfGenerator.generate(temporaryFolder.getRoot().toPath(), VariantMix.SNV, 5000, 1);
+        AtomicInteger numAnnotated = new AtomicInteger();
+        ThroughputBenchmark.AnnotatorFactory annotatorFactory = new ThroughputBenchmark.AnnotatorFactory() {
+            @Override
+            public List<VariantAnnotator> createAnnotators(VariantMix mix) {
+                return Arrays.asList(new IdAnnotator(numAnnotated), new IdAnnotator(new AtomicInteger()));
+            }
+
+            @Override
+            public VariantNormalizer.VariantNormalizerConfig createNormalizerConfig() {
+                return new VariantNormalizer.VariantNormalizerConfig();
+            }
+        };
+
+        ThroughputReport.DatasetReport report = new ThroughputBenchmark(3, 100, false).run(file, VariantMix.SNV, annotatorFactory);
+        assertEquals(5000, numAnnotated.get());
+        assertEquals(5000, report.getNumVariants());
+        assertTrue(report.getVariantsPerSecond() > 0);
+        assertEquals(Arrays.asList(ThroughputReport.BATCH_STAGE, "0-IdAnnotator", "1-IdAnnotator"),
+                new ArrayList<>(report.getStages().keySet()));
+        for (ThroughputReport.StageReport stageReport : report.getStages().values()) {
+            // Header lines are read in the batches too
+            assertTrue(stageReport.getCount() >= 50);
+            assertTrue(stageReport.getP50Millis() <= stageReport.getP99Millis());
+            assertTrue(stageReport.getP99Millis() <= stageReport.getMaxMillis());
+        }
+    }
+
+    @Test
+    public void phased() throws Exception {
+        Path file = SyntheticVcfGenerator.generate(temporaryFolder.getRoot().toPath(), VariantMix.PHASED, 2000, 1);
+        AtomicInteger numAnnotated = new AtomicInteger();
+        ThroughputBenchmark.AnnotatorFactory annotatorFactory = new ThroughputBenchmark.AnnotatorFactory() {
+            @Override
+            public List<VariantAnnotator> createAnnotators(VariantMix mix) {
+                return Arrays.asList(new StandInVariantAnnotator(1), new IdAnnotator(numAnnotated));
+            }
+
+            @Override
+            public VariantNormalizer.VariantNormalizerConfig createNormalizerConfig() {
+                return new VariantNormalizer.VariantNormalizerConfig();
+            }
+        };
+
+        // Read by the htsjdk reader, every batch is annotated
+        ThroughputReport.DatasetReport report = new ThroughputBenchmark(2, 100, false).run(file, VariantMix.PHASED, annotatorFactory);
+        assertEquals(2000, numAnnotated.get());
+        assertEquals(2000, report.getNumVariants());
+        assertEquals(Arrays.asList(ThroughputReport.BATCH_STAGE, "0-StandInVariantAnnotator", "1-IdAnnotator"),
+                new ArrayList<>(report.getStages().keySet()));
+    }
+
+    @Test
+    public void standInAnnotation() throws Exception {
+        List<Variant> variants = Arrays.asList(new Variant("1:1000:A:T"), new Variant("1:1000:A:T"), new Variant("2:2000:AC:-"));
+        new StandInVariantAnnotator(1).run(variants);
+        // The same variant and seed are given the same annotation
+        assertEquals(variants.get(0).getAnnotation(), variants.get(1).getAnnotation());
+        assertNotEquals(variants.get(0).getAnnotation(), variants.get(2).getAnnotation());
+        for (Variant variant : variants) {
+            assertFalse(variant.getAnnotation().getConsequenceTypes().isEmpty());
+        }
+        Variant variant = new Variant("1:1000:A:T");
+        new StandInVariantAnnotator(2).run(Collections.singletonList(variant));
+        assertNotEquals(variants.get(0).getAnnotation(), variant.getAnnotation());
+    }
+
+    @Test
+    public void latencyPercentiles() {
+        LatencyRecorder latencyRecorder = new LatencyRecorder();
+        assertEquals(0, latencyRecorder.getPercentile(99));
+        for (int i = 2000; i > 0; i--) {
+            latencyRecorder.record(i, -1);
+        }
+        assertEquals(2000, latencyRecorder.getCount());
+        assertEquals(1000, latencyRecorder.getPercentile(50));
+        assertEquals(1980, latencyRecorder.getPercentile(99));
+        assertEquals(2000, latencyRecorder.getPercentile(100));
+        assertEquals(2001000, latencyRecorder.getTotalNanos());
+    }
+
+    @Test
+    public void findRegressions() throws Exception {
+        ThroughputReport baseline = createReport("md5", 1000, 10);
+        Path baselineFile = temporaryFolder.getRoot().toPath().resolve("baseline.json");
+        baseline.write(baselineFile);
+        baseline = ThroughputReport.read(baselineFile);
+
+        assertTrue(createReport("md5", 950, 10.5).findRegressions(baseline, 10).isEmpty());
+        assertTrue(createReport("md5", 2000, 1).findRegressions(baseline, 10).isEmpty());
+        assertEquals(1, createReport("md5", 850, 10).findRegressions(baseline, 10).size());
+        assertEquals(1, createReport("md5", 1000, 12).findRegressions(baseline, 10).size());
+        assertEquals(2, createReport("md5", 800, 20).findRegressions(baseline, 10).size());
+        // Throughput of other datasets is not comparable
+        assertEquals(1, createReport("other", 1000, 10).findRegressions(baseline, 10).size());
+        assertTrue(createReport("md5", 1, 100).findRegressions(new ThroughputReport("2020-01-01T00:00:00Z", 4, 200), 10).isEmpty());
+        // Nor the throughput of runs with other settings
+        assertEquals(1, createReport("md5", 1000, 10).findRegressions(baseline.setNumThreads(8), 10).size());
+        assertEquals(1, createReport("md5", 1000, 10).findRegressions(baseline.setNumThreads(4).setBatchSize(100), 10).size());
+    }
+
+    private static ThroughputReport createReport(String md5, double variantsPerSecond, double p99Millis) {
+        ThroughputReport report = new ThroughputReport("2020-01-01T00:00:00Z", 4, 200);
+        ThroughputReport.DatasetReport datasetReport = new ThroughputReport.DatasetReport()
+                .setMd5(md5)
+                .setVariantsPerSecond(variantsPerSecond);
+        datasetReport.getStages().put(ThroughputReport.BATCH_STAGE, new ThroughputReport.StageReport().setP99Millis(p99Millis));
+        report.getDatasets().put("snv", datasetReport);
+        return report;
+    }
+
+    private static List<String> readVariantLines(Path file) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Annotator backed by no database, sets the id of the variants.
+     */
+    private static class IdAnnotator implements VariantAnnotator {
+
+        private final AtomicInteger numAnnotated;
+
+        IdAnnotator(AtomicInteger numAnnotated) {
+            this.numAnnotated = numAnnotated;
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public void run(List<Variant> variantList) {
+            for (Variant variant : variantList) {
+                VariantAnnotation variantAnnotation = new VariantAnnotation();
+                variantAnnotation.setId(variant.toString());
+                variant.setAnnotation(variantAnnotation);
+            }
+            numAnnotated.addAndGet(variantList.size());
+        }
+
+        @Override
+        public boolean close() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.opencb.cellbase.app.cli.variant.annotation.indexers;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VariantIndexCodecTest {
+
+    @Test
+    public void encodeKey() {
+        List<Variant> variants = Arrays.asList(new Variant("1:1000:A:T"), new Variant("1:1000:A:C"),
+                new Variant("1:1000:AT:T"), new Variant("1:1000:A:TT"), new Variant("1:1001:A:T"),
+                new Variant("2:1000:A:T"), new Variant("GL000192.1:1000:A:T"), new Variant("GL000193.1:1000:A:T"));
+        Set<String> keys = new HashSet<>();
+        for (Variant variant : variants) {
+            assertTrue(keys.add(Arrays.toString(VariantIndexCodec.encodeKey(variant))));
+            assertArrayEquals(VariantIndexCodec.encodeKey(variant), VariantIndexCodec.encodeKey(new Variant(variant.toString())));
+        }
+    }
+
+    @Test
+    public void encodeDecode() throws Exception {
+        Variant variant = new Variant("22:16050075:A:G");
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        List<PopulationFrequency> populationFrequencies = new ArrayList<>();
+        populationFrequencies.add(new PopulationFrequency("GNOMAD_GENOMES", "ALL", "A", "G", 0.99f, 0.01f, 0.98f, 0.02f,
+                0f));
+        variantAnnotation.setPopulationFrequencies(populationFrequencies);
+        variant.setAnnotation(variantAnnotation);
+
+        VariantIndexCodec codec = new VariantIndexCodec();
+        Variant decodedVariant = codec.decode(codec.encode(variant));
+        assertEquals(variant.toString(), decodedVariant.toString());
+        assertEquals(populationFrequencies, decodedVariant.getAnnotation().getPopulationFrequencies());
+        // Indexers add the frequencies of other files to the decoded lists
+        decodedVariant.getAnnotation().getPopulationFrequencies().addAll(populationFrequencies);
+    }
+}
@@ -17,12 +17,25 @@
 package org.opencb.cellbase.app.transform;
 
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.GenomicScoreRegion;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.Score;
+import org.opencb.cellbase.core.common.GenomicScoreBinaryFile;
 import org.opencb.cellbase.core.serializer.CellBaseJsonFileSerializer;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.core.variant.annotation.CaddScoreFileAdaptor;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -31,6 +44,11 @@ import static org.junit.Assert.*;
  */
 public class CaddScoreParserTest {
 
+    private static final float DECIMAL_RESOLUTION = 100f;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     // TODO: to finish - properly reimplement
     @Ignore
     @Test
@@ -50,9 +68,6 @@ public class CaddScoreParserTest {
         long l3 = 1701815202902769664L;
         long l4 = 421650576018505728L;
 
-        float DECIMAL_RESOLUTION = 100f;
-
-
         // raw CADD scores tests
         float a = (((short) (l1 >> 48)) / DECIMAL_RESOLUTION) - 10;
         float c = (((short) (l1 >> 32)) / DECIMAL_RESOLUTION) - 10;
@@ -97,4 +112,109 @@ public class CaddScoreParserTest {
         assertEquals("Error getting G score value from scaled CADD", 0.748f, g, 1 / DECIMAL_RESOLUTION);
         assertEquals("Error getting T score value from scaled CADD", 0f, t, 1 / DECIMAL_RESOLUTION);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseBinaryOutput() throws Exception {
+        List<GenomicScoreRegion<Long>> jsonRegions = new ArrayList<>();
+        Path inputPath = Paths.get(getClass().getResource("/cadd_example.txt.gz").toURI());
+        Path binaryPath = temporaryFolder.getRoot().toPath().resolve("cadd.bin");
+        new CaddScoreParser(inputPath, binaryPath, createSerializer(jsonRegions)).parse();
+
+        try (GenomicScoreBinaryFile.Reader reader = new GenomicScoreBinaryFile.Reader(binaryPath)) {
+            // Binary regions are the same than the JSON ones
+            List<GenomicScoreRegion<Long>> binaryRegions = new ArrayList<>();
+            reader.readRegions(binaryRegions::add);
+            assertEquals(jsonRegions.size(), binaryRegions.size());
+            for (int i = 0; i < jsonRegions.size(); i++) {
+                assertEquals(jsonRegions.get(i).getSource(), binaryRegions.get(i).getSource());
+                assertEquals(jsonRegions.get(i).getChromosome(), binaryRegions.get(i).getChromosome());
+                assertEquals(jsonRegions.get(i).getStart(), binaryRegions.get(i).getStart());
+                assertEquals(jsonRegions.get(i).getEnd(), binaryRegions.get(i).getEnd());
+                assertEquals(new ArrayList<>(jsonRegions.get(i).getValues()), binaryRegions.get(i).getValues());
+            }
+
+            // First position: 1 69100 G -> A,C,T, missing G is 10 for raw and 0 for scaled scores
+            long raw = reader.get("cadd_raw", "1", 69100);
+            assertEquals(4.408347f, (((short) (raw >> 48)) / DECIMAL_RESOLUTION) - 10, 1 / DECIMAL_RESOLUTION);
+            assertEquals(3.257483f, (((short) (raw >> 32)) / DECIMAL_RESOLUTION) - 10, 1 / DECIMAL_RESOLUTION);
+            assertEquals(10f, (((short) (raw >> 16)) / DECIMAL_RESOLUTION) - 10, 1 / DECIMAL_RESOLUTION);
+            assertEquals(8.698387f, (((short) raw) / DECIMAL_RESOLUTION) - 10, 1 / DECIMAL_RESOLUTION);
+
+            long scaled = reader.get("cadd_scaled", "1", 69100);
+            assertEquals(24.1f, ((short) (scaled >> 48)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+            assertEquals(22.8f, ((short) (scaled >> 32)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+            assertEquals(0f, ((short) (scaled >> 16)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+            assertEquals(35f, ((short) scaled) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+
+            // Last position: 1 11999 T -> A,C,G
+            scaled = reader.get("cadd_scaled", "1", 11999);
+            assertEquals(1.498f, ((short) (scaled >> 48)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+            assertEquals(0.247f, ((short) (scaled >> 32)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+            assertEquals(0.748f, ((short) (scaled >> 16)) / DECIMAL_RESOLUTION, 1 / DECIMAL_RESOLUTION);
+
+            assertNull(reader.get("cadd_raw", "1", 1));
+            assertNull(reader.get("cadd_raw", "2", 69100));
+        }
+    }
+
+    @Test
+    public void testCaddScoreFileAdaptor() throws Exception {
+        List<GenomicScoreRegion<Long>> jsonRegions = new ArrayList<>();
+        Path inputPath = Paths.get(getClass().getResource("/cadd_example.txt.gz").toURI());
+        Path binaryPath = temporaryFolder.getRoot().toPath().resolve("cadd.bin");
+        new CaddScoreParser(inputPath, binaryPath, createSerializer(jsonRegions)).parse();
+
+        // Values of each region are compressed
+        long numValues = 0;
+        for (GenomicScoreRegion<Long> region : jsonRegions) {
+            numValues += region.getValues().size();
+        }
+        assertTrue(Files.size(binaryPath) < numValues * Long.BYTES);
+
+        try (CaddScoreFileAdaptor caddScoreFileAdaptor = new CaddScoreFileAdaptor(binaryPath)) {
+            // Positions of different regions one after the other, and the first one again
+            List<Variant> variants = Arrays.asList(new Variant("1:69100:G:A"), new Variant("1:11999:T:C"),
+                    new Variant("1:69100:G:T"), new Variant("1:69100:G:-"), new Variant("1:1:A:C"));
+            List<QueryResult<Score>> queryResults = caddScoreFileAdaptor.getFunctionalScoreVariant(variants, QueryOptions.empty());
+            assertEquals(variants.size(), queryResults.size());
+
+            assertScores(queryResults.get(0), 4.408347f, 24.1f);
+            assertScores(queryResults.get(1), -0.479723f, 0.247f);
+            assertScores(queryResults.get(2), 8.698387f, 35f);
+            // Only SNVs have functional scores
+            assertEquals(0, queryResults.get(3).getNumResults());
+            assertEquals(0, queryResults.get(4).getNumResults());
+        }
+    }
+
+    private void assertScores(QueryResult<Score> queryResult, float raw, float scaled) {
+        assertEquals(2, queryResult.getNumResults());
+        assertEquals(CaddScoreFileAdaptor.CADD_RAW, queryResult.getResult().get(0).getSource());
+        assertEquals(raw, queryResult.getResult().get(0).getScore(), 1 / DECIMAL_RESOLUTION);
+        assertEquals(CaddScoreFileAdaptor.CADD_SCALED, queryResult.getResult().get(1).getSource());
+        assertEquals(scaled, queryResult.getResult().get(1).getScore(), 1 / DECIMAL_RESOLUTION);
+    }
+
+    private CellBaseSerializer createSerializer(List<GenomicScoreRegion<Long>> regions) {
+        return new CellBaseSerializer() {
+            @Override
+            public void serialize(Object object) {
+                regions.add((GenomicScoreRegion<Long>) object);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public Path getOutdir() {
+                return temporaryFolder.getRoot().toPath();
+            }
+
+            @Override
+            public String getFileName() {
+                return "cadd";
+            }
+        };
+    }
+}
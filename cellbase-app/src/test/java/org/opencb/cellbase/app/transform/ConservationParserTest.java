@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.transform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.cellbase.core.serializer.CellBaseFileSerializer;
+import org.opencb.cellbase.core.serializer.CellBaseJsonFileSerializer;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ConservationParserTest {
+
+    private static final ObjectMapper jsonObjectMapper = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Expected files were created by the serial parser. The synthetic inputs include GERP chunks, fixedStep blocks
+     * starting at the last position of a chunk and chromosomes with no GERP scores.
+     */
+    @Test
+    public void testParse() throws Exception {
+        Path conservationDir = Paths.get(getClass().getResource("/conservation").toURI());
+        Path outputDir = temporaryFolder.getRoot().toPath();
+
+        CellBaseFileSerializer serializer = new CellBaseJsonFileSerializer(outputDir);
+        ConservationParser conservationParser = new ConservationParser(conservationDir, 2000, 4, serializer);
+        conservationParser.parse();
+        serializer.close();
+
+        for (String chromosome : new String[]{"1", "2", "3"}) {
+            String fileName = "conservation_" + chromosome + ".json.gz";
+            List<JsonNode> expected = loadJsonLines(conservationDir.resolve(fileName));
+            assertFalse(expected.isEmpty());
+            assertEquals(fileName, expected, loadJsonLines(outputDir.resolve(fileName)));
+        }
+    }
+
+    private List<JsonNode> loadJsonLines(Path path) throws IOException {
+        List<JsonNode> jsonNodes = new ArrayList<>();
+        try (BufferedReader bufferedReader = FileUtils.newBufferedReader(path)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                jsonNodes.add(jsonObjectMapper.readTree(line));
+            }
+        }
+        return jsonNodes;
+    }
+}
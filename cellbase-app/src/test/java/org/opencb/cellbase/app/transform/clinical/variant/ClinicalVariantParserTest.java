@@ -13,6 +13,8 @@ import org.opencb.cellbase.app.cli.EtlCommons;
 import org.opencb.cellbase.core.serializer.CellBaseJsonFileSerializer;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
 import org.opencb.commons.utils.FileUtils;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -90,6 +92,44 @@ public class ClinicalVariantParserTest {
 
     }
 
+    @Test
+    public void leftoverIndexTest() throws Exception {
+        // Remove all previous clinical variant temporary test data
+        cleanUp();
+
+        // Separate copy of the test data, see noNormaliseTest
+        Path clinicalVariantFolder = Paths.get(getClass().getResource("/variant/annotation/clinicalVariant").toURI());
+        org.apache.commons.io.FileUtils.copyDirectory(clinicalVariantFolder.toFile(),
+                Paths.get("/tmp/clinicalVariant4").toFile());
+        clinicalVariantFolder = Paths.get("/tmp/clinicalVariant4");
+        for (String extension : new String[]{"", ".fai", ".gzi"}) {
+            org.apache.commons.io.FileUtils.copyFile(Paths.get(getClass().getResource("/variant/annotation/"
+                            + "Homo_sapiens.GRCh37.75.dna.primary_assembly.chr17.fa.gz" + extension).toURI()).toFile(),
+                    clinicalVariantFolder.resolve("Homo_sapiens.GRCh37.75.dna.primary_assembly.chr17.fa.gz" + extension).toFile());
+        }
+        Path genomeSequenceFilePath = clinicalVariantFolder.resolve("Homo_sapiens.GRCh37.75.dna.primary_assembly.chr17.fa.gz");
+
+        // Index left by an interrupted build of a previous version, values are untagged JSON
+        RocksDB.loadLibrary();
+        Options options = new Options().setCreateIfMissing(true);
+        RocksDB rdb = RocksDB.open(options, clinicalVariantFolder.resolve("integration.idx").toString());
+        EvidenceEntry evidenceEntry = new EvidenceEntry();
+        evidenceEntry.setId("LEFTOVER");
+        VariantAnnotation leftover = new VariantAnnotation();
+        leftover.setTraitAssociation(Collections.singletonList(evidenceEntry));
+        rdb.put("17:53:C:CC".getBytes(), jsonObjectMapper.writeValueAsBytes(leftover));
+        rdb.close();
+        options.dispose();
+
+        CellBaseSerializer serializer = new CellBaseJsonFileSerializer(Paths.get("/tmp/"), EtlCommons.CLINICAL_VARIANTS_DATA, true);
+        (new ClinicalVariantParser(clinicalVariantFolder, false, genomeSequenceFilePath, "GRCh37",  serializer)).parse();
+
+        // The leftover index is deleted and built again
+        List<Variant> parsedVariantList = loadSerializedVariants("/tmp/" + EtlCommons.CLINICAL_VARIANTS_JSON_FILE);
+        assertEquals(23, parsedVariantList.size());
+        assertTrue(getVariantByAccession(parsedVariantList, "LEFTOVER").isEmpty());
+    }
+
     @Test
     public void parseMNVTest() throws Exception {
 
@@ -552,6 +592,7 @@ public class ClinicalVariantParserTest {
         org.apache.commons.io.FileUtils.deleteDirectory(Paths.get("/tmp/clinicalVariant1/").toFile());
         org.apache.commons.io.FileUtils.deleteDirectory(Paths.get("/tmp/clinicalVariant2/").toFile());
         org.apache.commons.io.FileUtils.deleteDirectory(Paths.get("/tmp/clinicalVariant3/").toFile());
+        org.apache.commons.io.FileUtils.deleteDirectory(Paths.get("/tmp/clinicalVariant4/").toFile());
         Paths.get("/tmp/clinical_variants.json.gz").toFile().delete();
     }
 
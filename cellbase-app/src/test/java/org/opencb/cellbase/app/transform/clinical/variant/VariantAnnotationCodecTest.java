@@ -0,0 +1,209 @@
+package org.opencb.cellbase.app.transform.clinical.variant;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.avro.*;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Annotations read back from the clinical index must be the same as with the former JSON values: same JSON once
+ * serialized, and the same list, map and string classes that Jackson creates.
+ */
+public class VariantAnnotationCodecTest {
+
+    private static final byte AVRO = 1;
+    private static final byte JSON = 2;
+
+    private final ObjectMapper jsonObjectMapper;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    public VariantAnnotationCodecTest() {
+        jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+    }
+
+    @Test
+    public void sameAsJackson() throws Exception {
+        VariantAnnotation variantAnnotation = createVariantAnnotation("RCV000488336", "RCV000077146");
+        VariantAnnotationCodec codec = new VariantAnnotationCodec();
+
+        byte[] bytes = codec.encode(variantAnnotation);
+        assertEquals(AVRO, bytes[0]);
+        VariantAnnotation decoded = codec.decode(bytes);
+        assertEquals(0, codec.getNumJsonValues());
+
+        assertEquals(jsonObjectMapper.writeValueAsString(jacksonRoundTrip(variantAnnotation)),
+                jsonObjectMapper.writeValueAsString(decoded));
+        assertJacksonClasses(decoded);
+
+        // The codec is reused for every value of the index
+        VariantAnnotation other = createVariantAnnotation("COSM12600");
+        assertEquals(jsonObjectMapper.writeValueAsString(jacksonRoundTrip(other)),
+                jsonObjectMapper.writeValueAsString(codec.decode(codec.encode(other))));
+        assertEquals(jsonObjectMapper.writeValueAsString(decoded), jsonObjectMapper.writeValueAsString(codec.decode(bytes)));
+    }
+
+    @Test
+    public void requiredFieldsLeftNull() throws Exception {
+        // As created by the indexers: consequence types, evidence source and most of the evidence lists are null
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        EvidenceEntry evidenceEntry = new EvidenceEntry();
+        evidenceEntry.setId("RCV000488336");
+        variantAnnotation.setTraitAssociation(new ArrayList<>(Collections.singletonList(evidenceEntry)));
+        VariantAnnotationCodec codec = new VariantAnnotationCodec();
+
+        byte[] bytes = codec.encode(variantAnnotation);
+        assertEquals(AVRO, bytes[0]);
+        assertEquals(jsonObjectMapper.writeValueAsString(jacksonRoundTrip(variantAnnotation)),
+                jsonObjectMapper.writeValueAsString(codec.decode(bytes)));
+    }
+
+    @Test
+    public void jsonFallback() throws Exception {
+        VariantAnnotation variantAnnotation = createVariantAnnotation("RCV000488336");
+        // Elements of the arrays are not nullable
+        variantAnnotation.getTraitAssociation().get(0).getBibliography().add(null);
+        VariantAnnotationCodec codec = new VariantAnnotationCodec();
+
+        byte[] bytes = codec.encode(variantAnnotation);
+        assertEquals(JSON, bytes[0]);
+        assertEquals(1, codec.getNumJsonValues());
+        VariantAnnotation decoded = codec.decode(bytes);
+        assertEquals(jsonObjectMapper.writeValueAsString(jacksonRoundTrip(variantAnnotation)),
+                jsonObjectMapper.writeValueAsString(decoded));
+        assertJacksonClasses(decoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void untaggedJson() throws Exception {
+        // Values of an index written before the values were tagged
+        new VariantAnnotationCodec().decode(jsonObjectMapper.writeValueAsBytes(createVariantAnnotation("RCV000488336")));
+    }
+
+    @Test
+    public void pendingWrites() throws Exception {
+        RocksDB.loadLibrary();
+        Options options = new Options().setCreateIfMissing(true);
+        RocksDB rdb = RocksDB.open(options, temporaryFolder.newFolder("integration.idx").getAbsolutePath());
+        try {
+            ClinicalIndexer indexer = new ClinicalIndexer(null) { };
+            indexer.rdb = rdb;
+            byte[] key = "17:53:C:CC".getBytes(StandardCharsets.UTF_8);
+
+            VariantAnnotation variantAnnotation = indexer.getVariantAnnotation(key);
+            variantAnnotation.getTraitAssociation().add(createEvidenceEntry("RCV000488336"));
+            indexer.putVariantAnnotation(key, variantAnnotation);
+            // Later changes are not stored
+            variantAnnotation.getTraitAssociation().clear();
+
+            // Not in RocksDB yet, the update is read from the pending writes
+            assertNull(rdb.get(key));
+            variantAnnotation = indexer.getVariantAnnotation(key);
+            assertEquals(1, variantAnnotation.getTraitAssociation().size());
+            variantAnnotation.getTraitAssociation().add(createEvidenceEntry("COSM12600"));
+            indexer.putVariantAnnotation(key, variantAnnotation);
+
+            indexer.flush();
+            VariantAnnotation stored = new VariantAnnotationCodec().decode(rdb.get(key));
+            assertEquals(Arrays.asList("RCV000488336", "COSM12600"), getIds(stored));
+            assertEquals(jsonObjectMapper.writeValueAsString(stored),
+                    jsonObjectMapper.writeValueAsString(indexer.getVariantAnnotation(key)));
+
+            // Pending writes are written in batches without calling flush
+            for (int i = 0; i < 10000; i++) {
+                byte[] batchKey = ("17:" + i + ":A:T").getBytes(StandardCharsets.UTF_8);
+                variantAnnotation = indexer.getVariantAnnotation(batchKey);
+                variantAnnotation.getTraitAssociation().add(createEvidenceEntry("RCV" + i));
+                indexer.putVariantAnnotation(batchKey, variantAnnotation);
+            }
+            assertNotNull(rdb.get("17:0:A:T".getBytes(StandardCharsets.UTF_8)));
+            assertNotNull(rdb.get("17:9999:A:T".getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            rdb.close();
+            options.dispose();
+        }
+    }
+
+    private VariantAnnotation jacksonRoundTrip(VariantAnnotation variantAnnotation) throws IOException {
+        return jsonObjectMapper.readValue(jsonObjectMapper.writeValueAsBytes(variantAnnotation), VariantAnnotation.class);
+    }
+
+    private static List<String> getIds(VariantAnnotation variantAnnotation) {
+        List<String> ids = new ArrayList<>();
+        for (EvidenceEntry evidenceEntry : variantAnnotation.getTraitAssociation()) {
+            ids.add(evidenceEntry.getId());
+        }
+        return ids;
+    }
+
+    private static void assertJacksonClasses(VariantAnnotation variantAnnotation) {
+        assertEquals(ArrayList.class, variantAnnotation.getTraitAssociation().getClass());
+        for (EvidenceEntry evidenceEntry : variantAnnotation.getTraitAssociation()) {
+            assertEquals(String.class, ((Object) evidenceEntry.getId()).getClass());
+            assertEquals(ArrayList.class, evidenceEntry.getBibliography().getClass());
+            for (Object bibliography : evidenceEntry.getBibliography()) {
+                assertTrue(bibliography == null || bibliography.getClass() == String.class);
+            }
+            for (GenomicFeature genomicFeature : evidenceEntry.getGenomicFeatures()) {
+                assertEquals(LinkedHashMap.class, genomicFeature.getXrefs().getClass());
+                for (Map.Entry<?, ?> entry : genomicFeature.getXrefs().entrySet()) {
+                    assertEquals(String.class, entry.getKey().getClass());
+                    assertEquals(String.class, entry.getValue().getClass());
+                }
+            }
+        }
+        assertEquals(LinkedHashMap.class, variantAnnotation.getAdditionalAttributes().getClass());
+        for (Map.Entry<?, AdditionalAttribute> entry : variantAnnotation.getAdditionalAttributes().entrySet()) {
+            assertEquals(String.class, entry.getKey().getClass());
+            assertEquals(LinkedHashMap.class, entry.getValue().getAttribute().getClass());
+        }
+    }
+
+    private static VariantAnnotation createVariantAnnotation(String... ids) {
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        List<EvidenceEntry> evidenceEntries = new ArrayList<>();
+        for (String id : ids) {
+            evidenceEntries.add(createEvidenceEntry(id));
+        }
+        variantAnnotation.setTraitAssociation(evidenceEntries);
+        Map<String, String> attribute = new LinkedHashMap<>();
+        attribute.put("reviewStatus", "CRITERIA_PROVIDED_SINGLE_SUBMITTER");
+        attribute.put("étude", "über");
+        Map<String, AdditionalAttribute> additionalAttributes = new LinkedHashMap<>();
+        additionalAttributes.put("clinvar", new AdditionalAttribute(attribute));
+        variantAnnotation.setAdditionalAttributes(additionalAttributes);
+        return variantAnnotation;
+    }
+
+    private static EvidenceEntry createEvidenceEntry(String id) {
+        EvidenceEntry evidenceEntry = new EvidenceEntry();
+        evidenceEntry.setSource(new EvidenceSource("clinvar", "2017.08", "2017-08-01"));
+        evidenceEntry.setId(id);
+        evidenceEntry.setUrl("https://www.ncbi.nlm.nih.gov/clinvar/" + id);
+        evidenceEntry.setAlleleOrigin(new ArrayList<>(Collections.singletonList(AlleleOrigin.germline_variant)));
+        Map<String, String> xrefs = new LinkedHashMap<>();
+        xrefs.put("symbol", "TP53");
+        xrefs.put("ensemblGeneId", "ENSG00000141510");
+        GenomicFeature genomicFeature = new GenomicFeature();
+        genomicFeature.setFeatureType(FeatureTypes.gene);
+        genomicFeature.setXrefs(xrefs);
+        evidenceEntry.setGenomicFeatures(new ArrayList<>(Collections.singletonList(genomicFeature)));
+        evidenceEntry.setAdditionalProperties(new ArrayList<>(Arrays.asList(
+                new Property("ReviewStatus_in_source_file", "ReviewStatus_in_source_file", "no assertion"),
+                new Property(null, "ClinicalSignificance_in_source_file", "Pathogenic"))));
+        evidenceEntry.setBibliography(new ArrayList<>(Arrays.asList("PMID:12345", "PMID:67890")));
+        return evidenceEntry;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.transform.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExternalMergeSorterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sortBiggerThanMemoryBudget() throws Exception {
+        List<String> lines = createLines(50000, 1, new Random(1));
+        Path input = write(lines, "variation.txt");
+        Path output = temporaryFolder.getRoot().toPath().resolve("variation.sorted.txt");
+
+        // ~3.5MB of lines sorted with 64KB, several merge passes are needed
+        long numLines = new ExternalMergeSorter(1, 64 * 1024, 4, temporaryFolder.getRoot().toPath()).sort(input, output);
+
+        assertEquals(lines.size(), numLines);
+        assertEquals(stableSort(lines, 1), read(output));
+        // Only input and output are left, temporary runs are removed
+        assertEquals(2, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void sortGzippedInputAndOutput() throws Exception {
+        List<String> lines = createLines(20000, 0, new Random(2));
+        Path input = write(lines, "variation_feature.txt.gz");
+        Path output = temporaryFolder.getRoot().toPath().resolve("variation_feature.sorted.txt.gz");
+
+        new ExternalMergeSorter(0, 32 * 1024, 2, temporaryFolder.getRoot().toPath()).sort(input, output);
+
+        assertEquals(stableSort(lines, 0), read(output));
+    }
+
+    @Test
+    public void sortIsStable() throws Exception {
+        // Lines with the same key keep the input order, also across runs
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            lines.add((i % 3) + "\tline" + i);
+        }
+        Path input = write(lines, "stable.txt");
+        Path output = temporaryFolder.getRoot().toPath().resolve("stable.sorted.txt");
+
+        new ExternalMergeSorter(0, 16 * 1024, 3, temporaryFolder.getRoot().toPath()).sort(input, output);
+
+        assertEquals(stableSort(lines, 0), read(output));
+    }
+
+    @Test
+    public void sortEmptyFile() throws Exception {
+        Path input = write(Collections.emptyList(), "empty.txt");
+        Path output = temporaryFolder.getRoot().toPath().resolve("empty.sorted.txt");
+
+        assertEquals(0, new ExternalMergeSorter(0, 1024, 2, temporaryFolder.getRoot().toPath()).sort(input, output));
+        assertEquals(Collections.emptyList(), read(output));
+    }
+
+    @Test
+    public void getKey() {
+        ExternalMergeSorter sorter = new ExternalMergeSorter(2, 1024, 1, temporaryFolder.getRoot().toPath());
+        assertEquals(123, sorter.getKey("a\tb\t123\tc"));
+        assertEquals(123, sorter.getKey("a\tb\t 123abc"));
+        assertEquals(-5, sorter.getKey("a\tb\t-5"));
+        // Non numeric and missing values are 0, as in 'sort -n'
+        assertEquals(0, sorter.getKey("a\tb\t\\N\tc"));
+        assertEquals(0, sorter.getKey("a\tb\tnull"));
+        assertEquals(0, sorter.getKey("a\tb"));
+    }
+
+    private List<String> createLines(int numLines, int keyColumn, Random random) {
+        List<String> lines = new ArrayList<>(numLines);
+        for (int i = 0; i < numLines; i++) {
+            String key = random.nextInt(20) == 0 ? "\\N" : Integer.toString(random.nextInt(numLines));
+            String[] fields = {"id" + i, "rs" + random.nextInt(1000000), "SNV", "ensembl"};
+            fields[keyColumn] = key;
+            lines.add(String.join("\t", fields) + "\t" + i);
+        }
+        return lines;
+    }
+
+    private List<String> stableSort(List<String> lines, int keyColumn) {
+        // Collections.sort is stable
+        return lines.stream()
+                .sorted(Comparator.comparingLong(line -> {
+                    String value = line.split("\t", -1)[keyColumn];
+                    return value.matches("-?\\d+") ? Long.parseLong(value) : 0;
+                }))
+                .collect(Collectors.toList());
+    }
+
+    private Path write(List<String> lines, String fileName) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        OutputStream outputStream = Files.newOutputStream(file);
+        if (fileName.endsWith(".gz")) {
+            outputStream = new GZIPOutputStream(outputStream);
+        }
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private List<String> read(Path file) throws IOException {
+        InputStream inputStream = Files.newInputStream(file);
+        if (file.toString().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.core.GenomicScoreRegion;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.avro.Cytoband;
+import org.opencb.cellbase.core.api.GenomeDBAdaptor;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Genome adaptor without a database behind, subclasses implement the sequence queries. Any other query fails.
+ */
+abstract class AbstractGenomeDBAdaptor implements GenomeDBAdaptor {
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Only the sequence queries are supported without a database");
+    }
+
+    @Override
+    public QueryResult getGenomeInfo(QueryOptions queryOptions) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult getChromosomeInfo(String chromosomeId, QueryOptions queryOptions) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<QueryResult<GenomicScoreRegion<Float>>> getConservation(List<Region> regions, QueryOptions queryOptions) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult<Cytoband> getCytobands(Region region, QueryOptions queryOptions) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult<Long> update(List objectList, String field, String[] innerFields) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult<Long> count(Query query) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult distinct(Query query, String field) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult stats(Query query) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult get(Query query, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult nativeGet(Query query, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public Iterator iterator(Query query, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public Iterator nativeIterator(Query query, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult rank(Query query, String field, int numResults, boolean asc) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult groupBy(Query query, String field, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResult groupBy(Query query, List fields, QueryOptions options) {
+        throw unsupported();
+    }
+
+    @Override
+    public void forEach(Query query, Consumer action, QueryOptions options) {
+        throw unsupported();
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.biodata.models.variant.avro.Score;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.api.GenomeDBAdaptor;
+import org.opencb.cellbase.core.common.DNASequenceUtils;
+import org.opencb.cellbase.core.variant.annotation.ConsequenceTypeCalculator;
+import org.opencb.cellbase.core.variant.annotation.ConsequenceTypeDeletionCalculator;
+import org.opencb.cellbase.core.variant.annotation.ConsequenceTypeInsertionCalculator;
+import org.opencb.cellbase.core.variant.annotation.ConsequenceTypeSNVCalculator;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotationUtils;
+import org.opencb.cellbase.core.variant.annotation.hgvs.HgvsCalculator;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory gene models and reference sequence for the annotation benchmarks. A random reference sequence holds two
+ * protein coding genes, one per strand, with the same number of exons. Each gene has three transcripts: the canonical
+ * one, a coding isoform with shorter UTRs and a non coding isoform skipping an exon. The coding sequence of the genes
+ * is written into the reference, so that the exon sequences, cDNA and protein sequences of the transcripts agree with
+ * each other as they do in the database. The same seed always creates the same fixtures.
+ */
+public class AnnotationFixtures {
+
+    public static final String CHROMOSOME = "1";
+    public static final String ASSEMBLY = "GRCh38";
+    public static final long DEFAULT_SEED = 1;
+
+    /**
+     * Number of exons of the transcripts, the exons and introns have realistic lengths.
+     */
+    public enum TranscriptSize {
+        SMALL(3),
+        MEDIUM(10),
+        LARGE(60);
+
+        private final int numExons;
+
+        TranscriptSize(int numExons) {
+            this.numExons = numExons;
+        }
+
+        public int getNumExons() {
+            return numExons;
+        }
+    }
+
+    /**
+     * Variant types annotated by a dedicated consequence type calculator.
+     */
+    public enum VariantKind {
+        SNV,
+        INSERTION,
+        DELETION
+    }
+
+    // Longer than the 5 kb checked for upstream and downstream variants
+    private static final int FLANK_LENGTH = 6000;
+    private static final int UPSTREAM_LENGTH = 5000;
+    private static final int MIN_EXON_LENGTH = 150;
+    private static final int MAX_EXON_LENGTH = 300;
+    private static final int MIN_INTRON_LENGTH = 300;
+    private static final int MAX_INTRON_LENGTH = 1500;
+    private static final int UTR5_LENGTH = 60;
+    private static final int UTR3_LENGTH = 100;
+    private static final int MAX_INDEL_LENGTH = 6;
+    private static final String NUCLEOTIDES = "ACGT";
+    private static final String START_CODON = "ATG";
+    private static final String STOP_CODON = "TAA";
+    private static final String STOP = "STOP";
+    private static final String[] SENSE_CODONS = VariantAnnotationUtils.CODON_TO_A.entrySet().stream()
+            .filter(entry -> !STOP.equals(entry.getValue()))
+            .map(Map.Entry::getKey)
+            .sorted()
+            .toArray(String[]::new);
+
+    private final Random random;
+    private final char[] reference;
+    private final List<Gene> genes;
+    private final InMemoryGenomeDBAdaptor genomeDBAdaptor;
+
+    public AnnotationFixtures(TranscriptSize transcriptSize, long seed) {
+        this.random = new Random(seed);
+
+        // Genomic coordinates of the exons of the canonical transcripts, in genomic order
+        int[][] positiveExons = createExonLayout(FLANK_LENGTH + 1, transcriptSize.getNumExons());
+        int[][] negativeExons = createExonLayout(positiveExons[positiveExons.length - 1][1] + 2 * FLANK_LENGTH,
+                transcriptSize.getNumExons());
+        int length = negativeExons[negativeExons.length - 1][1] + FLANK_LENGTH;
+        this.reference = new char[length];
+        for (int i = 0; i < length; i++) {
+            reference[i] = NUCLEOTIDES.charAt(random.nextInt(NUCLEOTIDES.length()));
+        }
+
+        this.genes = Arrays.asList(createGene(1, "+", positiveExons), createGene(2, "-", negativeExons));
+        this.genomeDBAdaptor = new InMemoryGenomeDBAdaptor(CHROMOSOME, new String(reference));
+    }
+
+    /**
+     * @param variantKind type of the variants
+     * @param numVariants number of variants
+     * @return variants in the coding sequence, UTRs, introns, splice regions and flanks of the genes, with the alleles
+     * normalized as the annotator receives them
+     */
+    public List<Variant> createVariants(VariantKind variantKind, int numVariants) {
+        List<Variant> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            Transcript transcript = genes.get(random.nextInt(genes.size())).getTranscripts().get(0);
+            int position = choosePosition(transcript);
+            switch (variantKind) {
+                case SNV:
+                    String nucleotide = getSequence(position, position);
+                    String alternate;
+                    do {
+                        alternate = randomSequence(1);
+                    } while (alternate.equals(nucleotide));
+                    variants.add(new Variant(CHROMOSOME, position, nucleotide, alternate));
+                    break;
+                case INSERTION:
+                    variants.add(new Variant(CHROMOSOME, position, "", randomSequence(1 + random.nextInt(MAX_INDEL_LENGTH))));
+                    break;
+                case DELETION:
+                    int end = position + random.nextInt(MAX_INDEL_LENGTH);
+                    variants.add(new Variant(CHROMOSOME, position, getSequence(position, end), ""));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown variant kind " + variantKind);
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * @param variant variant created by {@link #createVariants}
+     * @return genes overlapping the variant or its upstream and downstream regions, as queried by the annotator
+     */
+    public List<Gene> getGenes(Variant variant) {
+        List<Gene> overlappingGenes = new ArrayList<>(1);
+        for (Gene gene : genes) {
+            if (variant.getStart() <= gene.getEnd() + UPSTREAM_LENGTH && variant.getEnd() >= gene.getStart() - UPSTREAM_LENGTH) {
+                overlappingGenes.add(gene);
+            }
+        }
+        return overlappingGenes;
+    }
+
+    /**
+     * @param variant variant created by {@link #createVariants}
+     * @return calculator the annotator would use for the variant
+     */
+    public ConsequenceTypeCalculator createConsequenceTypeCalculator(Variant variant) {
+        switch (VariantAnnotationUtils.getVariantType(variant)) {
+            case SNV:
+                return new ConsequenceTypeSNVCalculator();
+            case INSERTION:
+                return new ConsequenceTypeInsertionCalculator(genomeDBAdaptor);
+            case DELETION:
+                return new ConsequenceTypeDeletionCalculator(genomeDBAdaptor);
+            default:
+                throw new IllegalArgumentException("No calculator for variant " + variant);
+        }
+    }
+
+    /**
+     * Annotates the variant with its consequence types and HGVS identifiers, and with the population frequencies and
+     * scores of a well known variant. Fields left empty by the calculators are filled in, so that the annotation can
+     * be converted by ProtoConverterUtils, which expects them.
+     *
+     * @param variant variant created by {@link #createVariants}
+     * @return annotation of the variant
+     */
+    public VariantAnnotation annotate(Variant variant) {
+        List<Gene> variantGenes = getGenes(variant);
+        List<ConsequenceType> consequenceTypes = createConsequenceTypeCalculator(variant)
+                .run(variant, variantGenes, new boolean[]{false, false}, new QueryOptions());
+        for (ConsequenceType consequenceType : consequenceTypes) {
+            complete(consequenceType);
+        }
+
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setId(VariantAnnotationUtils.buildVariantId(variant.getChromosome(), variant.getStart(),
+                variant.getReference(), variant.getAlternate()));
+        variantAnnotation.setChromosome(variant.getChromosome());
+        variantAnnotation.setStart(variant.getStart());
+        variantAnnotation.setReference(variant.getReference());
+        variantAnnotation.setAlternate(variant.getAlternate());
+        variantAnnotation.setConsequenceTypes(consequenceTypes);
+        variantAnnotation.setHgvs(new HgvsCalculator(genomeDBAdaptor).run(variant, variantGenes, false));
+        List<PopulationFrequency> populationFrequencies = new ArrayList<>();
+        for (String population : Arrays.asList("ALL", "AFR", "AMR", "EAS", "EUR", "SAS")) {
+            populationFrequencies.add(new PopulationFrequency("1kG_phase3", population, variant.getReference(),
+                    variant.getAlternate(), 0.9f, 0.1f, 0.81f, 0.18f, 0.01f));
+        }
+        variantAnnotation.setPopulationFrequencies(populationFrequencies);
+        variantAnnotation.setConservation(Arrays.asList(new Score(0.98, "phastCons", ""), new Score(4.2, "phylop", ""),
+                new Score(5.1, "gerp", "")));
+        return variantAnnotation;
+    }
+
+    public List<Gene> getGenes() {
+        return genes;
+    }
+
+    public GenomeDBAdaptor getGenomeDBAdaptor() {
+        return genomeDBAdaptor;
+    }
+
+    /**
+     * @param start first position, 1-based
+     * @param end   last position, included
+     * @return forward strand sequence of the reference
+     */
+    public String getSequence(int start, int end) {
+        return new String(reference, start - 1, end - start + 1);
+    }
+
+    private int[][] createExonLayout(int start, int numExons) {
+        int[][] exons = new int[numExons][];
+        int position = start;
+        for (int i = 0; i < numExons; i++) {
+            int end = position + MIN_EXON_LENGTH + random.nextInt(MAX_EXON_LENGTH - MIN_EXON_LENGTH + 1) - 1;
+            exons[i] = new int[]{position, end};
+            position = end + MIN_INTRON_LENGTH + random.nextInt(MAX_INTRON_LENGTH - MIN_INTRON_LENGTH + 1) + 1;
+        }
+        return exons;
+    }
+
+    private Gene createGene(int number, String strand, int[][] exons) {
+        boolean positive = "+".equals(strand);
+
+        // Exonic positions in transcript order
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < exons.length; i++) {
+            int[] exon = exons[positive ? i : exons.length - 1 - i];
+            for (int j = 0; j <= exon[1] - exon[0]; j++) {
+                positions.add(positive ? exon[0] + j : exon[1] - j);
+            }
+        }
+        int utr3Length = UTR3_LENGTH + (positions.size() - UTR5_LENGTH - UTR3_LENGTH) % 3;
+        int cdsLength = positions.size() - UTR5_LENGTH - utr3Length;
+        StringBuilder cds = new StringBuilder(cdsLength).append(START_CODON);
+        while (cds.length() < cdsLength - STOP_CODON.length()) {
+            cds.append(SENSE_CODONS[random.nextInt(SENSE_CODONS.length)]);
+        }
+        cds.append(STOP_CODON);
+        for (int i = 0; i < cdsLength; i++) {
+            char nucleotide = cds.charAt(i);
+            reference[positions.get(UTR5_LENGTH + i) - 1] = positive ? nucleotide : DNASequenceUtils.COMPLEMENT.get(nucleotide);
+        }
+        int codingStart = positions.get(positive ? UTR5_LENGTH : UTR5_LENGTH + cdsLength - 1);
+        int codingEnd = positions.get(positive ? UTR5_LENGTH + cdsLength - 1 : UTR5_LENGTH);
+
+        String geneId = "ENSG0000000000" + number;
+        String geneName = "BENCH" + number;
+        List<Transcript> transcripts = new ArrayList<>(3);
+        transcripts.add(createTranscript(geneName, number * 10 + 1, "protein_coding", strand, exons, codingStart, codingEnd));
+
+        // Alternative transcription start and polyadenylation sites
+        int[][] shortUtrExons = copy(exons);
+        shortUtrExons[0][0] += positive ? UTR5_LENGTH / 2 : UTR3_LENGTH / 2;
+        shortUtrExons[exons.length - 1][1] -= positive ? UTR3_LENGTH / 2 : UTR5_LENGTH / 2;
+        transcripts.add(createTranscript(geneName, number * 10 + 2, "protein_coding", strand, shortUtrExons, codingStart,
+                codingEnd));
+
+        int[][] skippedExons = new int[exons.length - 1][];
+        skippedExons[0] = exons[0].clone();
+        for (int i = 2; i < exons.length; i++) {
+            skippedExons[i - 1] = exons[i].clone();
+        }
+        transcripts.add(createTranscript(geneName, number * 10 + 3, "processed_transcript", strand, skippedExons, 0, 0));
+
+        return new Gene(geneId, geneName, "protein_coding", "KNOWN", CHROMOSOME, exons[0][0], exons[exons.length - 1][1],
+                strand, "Ensembl", "Benchmark gene " + number, transcripts, null, null);
+    }
+
+    private Transcript createTranscript(String geneName, int number, String biotype, String strand, int[][] exons,
+                                        int codingStart, int codingEnd) {
+        boolean positive = "+".equals(strand);
+        String id = "ENST000000000" + number;
+        Transcript transcript = new Transcript(id, geneName + "-" + number, biotype, "KNOWN", CHROMOSOME, exons[0][0],
+                exons[exons.length - 1][1], strand, 0, 0, 0, 0, 0, "", "", new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>(), null);
+        transcript.setAnnotationFlags(new HashSet<>(Collections.singletonList("basic")));
+
+        // Coordinates are set as GeneParser does from the GTF
+        StringBuilder cDna = new StringBuilder();
+        int cds = 1;
+        for (int i = 0; i < exons.length; i++) {
+            int start = exons[positive ? i : exons.length - 1 - i][0];
+            int end = exons[positive ? i : exons.length - 1 - i][1];
+            String sequence = getSequence(start, end);
+            Exon exon = new Exon(id + "-E" + (i + 1), CHROMOSOME, start, end, strand, 0, 0, 0, 0, 0, 0, -1, i + 1, sequence);
+            int cdna = cDna.length() + 1;
+            cDna.append(positive ? sequence : DNASequenceUtils.reverseComplement(sequence));
+
+            int exonCodingStart = Math.max(start, codingStart);
+            int exonCodingEnd = Math.min(end, codingEnd);
+            if (codingStart > 0 && exonCodingStart <= exonCodingEnd) {
+                exon.setGenomicCodingStart(exonCodingStart);
+                exon.setGenomicCodingEnd(exonCodingEnd);
+                if (positive) {
+                    exon.setCdnaCodingStart(exonCodingStart - start + cdna);
+                    exon.setCdnaCodingEnd(exonCodingEnd - start + cdna);
+                } else {
+                    // cdnaCodingStart points to the same base position than genomicCodingEnd
+                    exon.setCdnaCodingStart(end - exonCodingEnd + cdna);
+                    exon.setCdnaCodingEnd(end - exonCodingStart + cdna);
+                }
+                exon.setCdsStart(cds);
+                exon.setCdsEnd(exonCodingEnd - exonCodingStart + cds);
+                // GTF frame, bases before the first complete codon of the exon
+                exon.setPhase((3 - (cds - 1) % 3) % 3);
+                if (transcript.getCdnaCodingStart() == 0) {
+                    transcript.setCdnaCodingStart(exon.getCdnaCodingStart());
+                }
+                transcript.setCdnaCodingEnd(exon.getCdnaCodingEnd());
+                cds += exonCodingEnd - exonCodingStart + 1;
+            }
+            transcript.getExons().add(exon);
+        }
+        transcript.setcDnaSequence(cDna.toString());
+
+        if (codingStart > 0) {
+            transcript.setGenomicCodingStart(codingStart);
+            transcript.setGenomicCodingEnd(codingEnd);
+            transcript.setCdsLength(cds - 1);
+            transcript.setProteinID("ENSP000000000" + number);
+            transcript.setProteinSequence(translate(cDna.substring(transcript.getCdnaCodingStart() - 1,
+                    transcript.getCdnaCodingEnd())));
+        }
+        return transcript;
+    }
+
+    private int choosePosition(Transcript transcript) {
+        List<Exon> exons = transcript.getExons();
+        boolean positive = "+".equals(transcript.getStrand());
+        int region = random.nextInt(100);
+        if (region < 60) {
+            // Coding sequence
+            int cdsPosition = 1 + random.nextInt(transcript.getCdsLength());
+            for (Exon exon : exons) {
+                if (exon.getPhase() != -1 && cdsPosition <= exon.getCdsEnd()) {
+                    return positive
+                            ? exon.getGenomicCodingStart() + cdsPosition - exon.getCdsStart()
+                            : exon.getGenomicCodingEnd() - cdsPosition + exon.getCdsStart();
+                }
+            }
+            throw new IllegalStateException("CDS position " + cdsPosition + " not found in " + transcript.getId());
+        } else if (region < 70) {
+            // UTRs, in the first and last exons
+            int position;
+            do {
+                Exon exon = exons.get(random.nextBoolean() ? 0 : exons.size() - 1);
+                position = exon.getStart() + random.nextInt(exon.getEnd() - exon.getStart() + 1);
+            } while (position >= transcript.getGenomicCodingStart() && position <= transcript.getGenomicCodingEnd());
+            return position;
+        }
+
+        // Introns, splice regions and flanks are chosen in genomic order
+        int intron = random.nextInt(exons.size() - 1);
+        Exon leftExon = exons.get(positive ? intron : exons.size() - 1 - intron);
+        Exon rightExon = exons.get(positive ? intron + 1 : exons.size() - 2 - intron);
+        if (region < 85) {
+            return leftExon.getEnd() + 1 + random.nextInt(rightExon.getStart() - leftExon.getEnd() - 1);
+        } else if (region < 95) {
+            // Last exonic bases and first intronic bases around either side of the intron
+            int offset = random.nextInt(12) - 3;
+            return random.nextBoolean() ? leftExon.getEnd() + offset : rightExon.getStart() - offset;
+        } else {
+            return random.nextBoolean()
+                    ? transcript.getStart() - 1 - random.nextInt(UPSTREAM_LENGTH)
+                    : transcript.getEnd() + 1 + random.nextInt(UPSTREAM_LENGTH);
+        }
+    }
+
+    private String randomSequence(int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(NUCLEOTIDES.charAt(random.nextInt(NUCLEOTIDES.length())));
+        }
+        return sequence.toString();
+    }
+
+    private static void complete(ConsequenceType consequenceType) {
+        if (consequenceType.getCdnaPosition() == null) {
+            consequenceType.setCdnaPosition(0);
+        }
+        if (consequenceType.getCdsPosition() == null) {
+            consequenceType.setCdsPosition(0);
+        }
+        if (consequenceType.getCodon() == null) {
+            consequenceType.setCodon("");
+        }
+        ProteinVariantAnnotation proteinVariantAnnotation = consequenceType.getProteinVariantAnnotation();
+        if (proteinVariantAnnotation == null) {
+            proteinVariantAnnotation = new ProteinVariantAnnotation();
+            proteinVariantAnnotation.setPosition(0);
+            proteinVariantAnnotation.setReference("");
+            proteinVariantAnnotation.setAlternate("");
+            consequenceType.setProteinVariantAnnotation(proteinVariantAnnotation);
+        } else {
+            proteinVariantAnnotation.setSubstitutionScores(Arrays.asList(new Score(0.02, "sift", "deleterious"),
+                    new Score(0.95, "polyphen", "probably damaging")));
+        }
+        if (proteinVariantAnnotation.getPosition() == null) {
+            proteinVariantAnnotation.setPosition(0);
+        }
+        if (proteinVariantAnnotation.getReference() == null) {
+            proteinVariantAnnotation.setReference("");
+        }
+        if (proteinVariantAnnotation.getAlternate() == null) {
+            proteinVariantAnnotation.setAlternate("");
+        }
+        proteinVariantAnnotation.setUniprotAccession("P00000");
+        proteinVariantAnnotation.setUniprotName("BENCH_HUMAN");
+        proteinVariantAnnotation.setUniprotVariantId("");
+        proteinVariantAnnotation.setFunctionalDescription("");
+    }
+
+    private static int[][] copy(int[][] exons) {
+        int[][] copy = new int[exons.length][];
+        for (int i = 0; i < exons.length; i++) {
+            copy[i] = exons[i].clone();
+        }
+        return copy;
+    }
+
+    private static String translate(String cds) {
+        StringBuilder protein = new StringBuilder(cds.length() / 3);
+        for (int i = 0; i + 3 <= cds.length(); i += 3) {
+            String aminoacid = VariantAnnotationUtils.CODON_TO_A.get(cds.substring(i, i + 3));
+            if (STOP.equals(aminoacid)) {
+                break;
+            }
+            protein.append(VariantAnnotationUtils.TO_ABBREVIATED_AA.get(aminoacid));
+        }
+        return protein.toString();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.core.variant.annotation.hgvs.HgvsCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HGVS identifiers of one variant over the transcripts of the genes it overlaps. Variants are already normalized,
+ * as in the annotator.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class HgvsCalculatorBenchmark {
+
+    private static final int NUM_VARIANTS = 1000;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private AnnotationFixtures.TranscriptSize transcriptSize;
+
+    private VariantCycle snvs;
+    private VariantCycle insertions;
+    private VariantCycle deletions;
+    private HgvsCalculator hgvsCalculator;
+
+    @Setup
+    public void setup() {
+        AnnotationFixtures fixtures = new AnnotationFixtures(transcriptSize, AnnotationFixtures.DEFAULT_SEED);
+        snvs = new VariantCycle(fixtures, AnnotationFixtures.VariantKind.SNV, NUM_VARIANTS);
+        insertions = new VariantCycle(fixtures, AnnotationFixtures.VariantKind.INSERTION, NUM_VARIANTS);
+        deletions = new VariantCycle(fixtures, AnnotationFixtures.VariantKind.DELETION, NUM_VARIANTS);
+        hgvsCalculator = new HgvsCalculator(fixtures.getGenomeDBAdaptor());
+    }
+
+    @Benchmark
+    public List<String> snv() {
+        Variant variant = snvs.next();
+        return hgvsCalculator.run(variant, snvs.getGenes(), false);
+    }
+
+    @Benchmark
+    public List<String> insertion() {
+        Variant variant = insertions.next();
+        return hgvsCalculator.run(variant, insertions.getGenes(), false);
+    }
+
+    @Benchmark
+    public List<String> deletion() {
+        Variant variant = deletions.next();
+        return hgvsCalculator.run(variant, deletions.getGenes(), false);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.core.GenomeSequenceFeature;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.Collections;
+
+/**
+ * Genome adaptor serving the reference sequence of a single chromosome held in memory, so that the calculators
+ * that fetch flanking sequence can be measured without a database. Only the sequence queries are supported.
+ */
+public class InMemoryGenomeDBAdaptor extends AbstractGenomeDBAdaptor {
+
+    private final String chromosome;
+    private final String sequence;
+
+    /**
+     * @param chromosome name of the chromosome
+     * @param sequence   forward strand sequence of the chromosome, starting at position 1
+     */
+    public InMemoryGenomeDBAdaptor(String chromosome, String sequence) {
+        this.chromosome = chromosome;
+        this.sequence = sequence;
+    }
+
+    @Override
+    public QueryResult<GenomeSequenceFeature> getGenomicSequence(Query query, QueryOptions queryOptions) {
+        return getSequence(Region.parseRegion(query.getString(QueryParams.REGION.key())), queryOptions);
+    }
+
+    @Override
+    public QueryResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions) {
+        QueryResult<GenomeSequenceFeature> result = new QueryResult<>(region.toString());
+        // Same as the MongoDB adaptor: nothing is returned for other chromosomes and the end is truncated
+        if (chromosome.equals(region.getChromosome()) && region.getStart() <= sequence.length()) {
+            int start = Math.max(1, region.getStart());
+            int end = Math.min(region.getEnd(), sequence.length());
+            result.setResult(Collections.singletonList(new GenomeSequenceFeature(chromosome, start, end, 1, "chromosome",
+                    AnnotationFixtures.ASSEMBLY, sequence.substring(start - 1, end))));
+        }
+        return result;
+    }
+}
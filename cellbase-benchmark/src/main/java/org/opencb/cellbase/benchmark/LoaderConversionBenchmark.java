@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.bson.BsonBinaryWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.*;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.lib.loader.JsonToBsonConverter;
+import org.opencb.cellbase.lib.loader.MongoDBCellBaseLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of one JSON record into the BSON document loaded into MongoDB, by the streaming JsonToBsonConverter and
+ * by the former path: Document.parse, the private fields added to the Document and the driver encoding it. Records are
+ * the JSON of the fixture genes and of annotated fixture variants, with trait associations for the clinical variants.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class LoaderConversionBenchmark {
+
+    private static final int NUM_VARIANTS = 999;
+
+    @Param({"gene", "variation", "clinical_variants"})
+    private String data;
+
+    private List<String> records;
+    private MongoDBCellBaseLoader loader;
+    private JsonToBsonConverter converter;
+    private DocumentCodec documentCodec;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        ObjectWriter objectWriter = jsonObjectMapper.writer();
+
+        AnnotationFixtures fixtures = new AnnotationFixtures(AnnotationFixtures.TranscriptSize.MEDIUM,
+                AnnotationFixtures.DEFAULT_SEED);
+        records = new ArrayList<>(NUM_VARIANTS);
+        if (data.equals("gene")) {
+            for (Gene gene : fixtures.getGenes()) {
+                records.add(objectWriter.writeValueAsString(gene));
+            }
+        } else {
+            int numVariants = NUM_VARIANTS / AnnotationFixtures.VariantKind.values().length;
+            for (AnnotationFixtures.VariantKind variantKind : AnnotationFixtures.VariantKind.values()) {
+                for (Variant variant : fixtures.createVariants(variantKind, numVariants)) {
+                    VariantAnnotation variantAnnotation = fixtures.annotate(variant);
+                    if (data.equals("clinical_variants")) {
+                        variantAnnotation.setTraitAssociation(createTraitAssociation(variantAnnotation));
+                    }
+                    variant.setAnnotation(variantAnnotation);
+                    records.add(objectWriter.writeValueAsString(variant));
+                }
+            }
+        }
+
+        CellBaseConfiguration cellBaseConfiguration = CellBaseConfiguration
+                .load(CellBaseConfiguration.class.getClassLoader().getResourceAsStream("configuration.json"));
+        loader = new MongoDBCellBaseLoader(new ArrayBlockingQueue<>(1), data, "cellbase_benchmark", null, null,
+                cellBaseConfiguration);
+        loader.initCollection();
+        converter = loader.getJsonToBsonConverter();
+        documentCodec = new DocumentCodec();
+    }
+
+    @Benchmark
+    public RawBsonDocument jsonToBsonConverter() throws Exception {
+        return converter.convert(next());
+    }
+
+    @Benchmark
+    public BasicOutputBuffer documentParse() throws Exception {
+        BasicOutputBuffer outputBuffer = new BasicOutputBuffer();
+        documentCodec.encode(new BsonBinaryWriter(outputBuffer), loader.parseDocument(next()), EncoderContext.builder().build());
+        return outputBuffer;
+    }
+
+    private String next() {
+        index = (index + 1) % records.size();
+        return records.get(index);
+    }
+
+    /**
+     * @return evidences with the fields read to build the private clinical fields: gene xrefs and traits
+     */
+    private static List<EvidenceEntry> createTraitAssociation(VariantAnnotation variantAnnotation) {
+        List<EvidenceEntry> evidenceEntries = new ArrayList<>();
+        for (String id : Arrays.asList("RCV000077146", "RCV000488336")) {
+            EvidenceEntry evidenceEntry = new EvidenceEntry();
+            evidenceEntry.setSource(new EvidenceSource("clinvar", "2017.08", "2017-08-01"));
+            evidenceEntry.setId(id);
+            evidenceEntry.setUrl("https://www.ncbi.nlm.nih.gov/clinvar/" + id);
+            evidenceEntry.setAlleleOrigin(Collections.singletonList(AlleleOrigin.germline_variant));
+            HeritableTrait heritableTrait = new HeritableTrait();
+            heritableTrait.setTrait("Hereditary cancer-predisposing syndrome");
+            evidenceEntry.setHeritableTraits(Collections.singletonList(heritableTrait));
+            List<GenomicFeature> genomicFeatures = new ArrayList<>();
+            for (ConsequenceType consequenceType : variantAnnotation.getConsequenceTypes()) {
+                Map<String, String> xrefs = new HashMap<>();
+                xrefs.put("symbol", consequenceType.getGeneName());
+                GenomicFeature genomicFeature = new GenomicFeature();
+                genomicFeature.setFeatureType(FeatureTypes.gene);
+                genomicFeature.setEnsemblId(consequenceType.getEnsemblGeneId());
+                genomicFeature.setXrefs(xrefs);
+                genomicFeatures.add(genomicFeature);
+            }
+            evidenceEntry.setGenomicFeatures(genomicFeatures);
+            evidenceEntry.setAdditionalProperties(Collections.singletonList(
+                    new Property(null, "ReviewStatus_in_source_file", "criteria provided, single submitter")));
+            evidenceEntry.setBibliography(Collections.singletonList("PMID:12345"));
+            evidenceEntries.add(evidenceEntry);
+        }
+        return evidenceEntries;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.protobuf.VariantAnnotationProto;
+import org.opencb.cellbase.server.grpc.ProtoConverterUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of one variant annotation, as JSON by Jackson with the settings of the annotation writers, and as
+ * protocol buffers for the gRPC server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private static final int NUM_VARIANTS = 999;
+
+    private List<VariantAnnotation> variantAnnotations;
+    private ObjectWriter objectWriter;
+    private int index;
+
+    @Setup
+    public void setup() {
+        AnnotationFixtures fixtures = new AnnotationFixtures(AnnotationFixtures.TranscriptSize.MEDIUM,
+                AnnotationFixtures.DEFAULT_SEED);
+        variantAnnotations = new ArrayList<>(NUM_VARIANTS);
+        for (AnnotationFixtures.VariantKind variantKind : AnnotationFixtures.VariantKind.values()) {
+            for (Variant variant : fixtures.createVariants(variantKind, NUM_VARIANTS / AnnotationFixtures.VariantKind.values().length)) {
+                variantAnnotations.add(fixtures.annotate(variant));
+            }
+        }
+
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        objectWriter = jsonObjectMapper.writer();
+    }
+
+    @Benchmark
+    public byte[] json() throws JsonProcessingException {
+        return objectWriter.writeValueAsBytes(next());
+    }
+
+    @Benchmark
+    public VariantAnnotationProto.VariantAnnotation protoConversion() {
+        return ProtoConverterUtils.createVariantAnnotation(next());
+    }
+
+    @Benchmark
+    public byte[] protoConversionAndSerialization() {
+        return ProtoConverterUtils.createVariantAnnotation(next()).toByteArray();
+    }
+
+    private VariantAnnotation next() {
+        index = (index + 1) % variantAnnotations.size();
+        return variantAnnotations.get(index);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.exceptions.SOTermNotAvailableException;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotationUtils;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of VariantAnnotationUtils done by the calculators for every variant and transcript. The sequence ontology
+ * names are the ones the calculators return for the fixture variants.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VariantAnnotationUtilsBenchmark {
+
+    private static final int NUM_VARIANTS = 1000;
+    private static final int NUM_CODONS = 1000;
+
+    private List<Variant> variants;
+    private List<List<String>> soNames;
+    private String[] codons;
+    private int variantIndex;
+    private int soNamesIndex;
+    private int codonIndex;
+
+    @Setup
+    public void setup() {
+        AnnotationFixtures fixtures = new AnnotationFixtures(AnnotationFixtures.TranscriptSize.MEDIUM,
+                AnnotationFixtures.DEFAULT_SEED);
+        variants = new ArrayList<>(NUM_VARIANTS);
+        for (AnnotationFixtures.VariantKind variantKind : AnnotationFixtures.VariantKind.values()) {
+            variants.addAll(fixtures.createVariants(variantKind, NUM_VARIANTS / AnnotationFixtures.VariantKind.values().length));
+        }
+        soNames = new ArrayList<>();
+        for (Variant variant : variants) {
+            for (ConsequenceType consequenceType : fixtures.createConsequenceTypeCalculator(variant)
+                    .run(variant, fixtures.getGenes(variant), new boolean[]{false, false}, new QueryOptions())) {
+                List<String> names = new ArrayList<>(consequenceType.getSequenceOntologyTerms().size());
+                for (SequenceOntologyTerm sequenceOntologyTerm : consequenceType.getSequenceOntologyTerms()) {
+                    names.add(sequenceOntologyTerm.getName());
+                }
+                soNames.add(names);
+            }
+        }
+        // Stop codons included
+        String[] allCodons = VariantAnnotationUtils.CODON_TO_A.keySet().stream().sorted().toArray(String[]::new);
+        Random random = new Random(AnnotationFixtures.DEFAULT_SEED);
+        codons = new String[NUM_CODONS];
+        for (int i = 0; i < NUM_CODONS; i++) {
+            codons[i] = allCodons[random.nextInt(allCodons.length)];
+        }
+    }
+
+    @Benchmark
+    public String getAminoacid() {
+        return VariantAnnotationUtils.getAminoacid(false, nextCodon());
+    }
+
+    @Benchmark
+    public Boolean isSynonymousCodon() {
+        return VariantAnnotationUtils.isSynonymousCodon(false, nextCodon(), nextCodon());
+    }
+
+    @Benchmark
+    public Boolean isStopCodon() {
+        return VariantAnnotationUtils.isStopCodon(false, nextCodon());
+    }
+
+    @Benchmark
+    public List<SequenceOntologyTerm> getSequenceOntologyTerms() throws SOTermNotAvailableException {
+        soNamesIndex = (soNamesIndex + 1) % soNames.size();
+        return VariantAnnotationUtils.getSequenceOntologyTerms(soNames.get(soNamesIndex));
+    }
+
+    @Benchmark
+    public String buildVariantId() {
+        Variant variant = nextVariant();
+        return VariantAnnotationUtils.buildVariantId(variant.getChromosome(), variant.getStart(), variant.getReference(),
+                variant.getAlternate());
+    }
+
+    @Benchmark
+    public VariantType getVariantType() {
+        return VariantAnnotationUtils.getVariantType(nextVariant());
+    }
+
+    private String nextCodon() {
+        codonIndex = (codonIndex + 1) % codons.length;
+        return codons[codonIndex];
+    }
+
+    private Variant nextVariant() {
+        variantIndex = (variantIndex + 1) % variants.size();
+        return variants.get(variantIndex);
+    }
+}
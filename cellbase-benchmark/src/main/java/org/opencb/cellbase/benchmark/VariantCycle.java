@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Variants of the fixtures handed out in a loop, so that every benchmark invocation annotates a different variant
+ * and the branch predictor cannot learn a single path. The genes of every variant are looked up beforehand.
+ */
+class VariantCycle {
+
+    private final List<Variant> variants;
+    private final List<List<Gene>> genes;
+    private int index;
+
+    VariantCycle(AnnotationFixtures fixtures, AnnotationFixtures.VariantKind variantKind, int numVariants) {
+        this.variants = fixtures.createVariants(variantKind, numVariants);
+        this.genes = new ArrayList<>(numVariants);
+        for (Variant variant : variants) {
+            genes.add(fixtures.getGenes(variant));
+        }
+        this.index = -1;
+    }
+
+    /**
+     * @return next variant, its genes are returned by {@link #getGenes()}
+     */
+    Variant next() {
+        index = (index + 1) % variants.size();
+        return variants.get(index);
+    }
+
+    List<Gene> getGenes() {
+        return genes.get(index);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.benchmark;
+
+import org.junit.Test;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.common.DNASequenceUtils;
+import org.opencb.cellbase.core.variant.annotation.VariantAnnotationUtils;
+import org.opencb.cellbase.server.grpc.ProtoConverterUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AnnotationFixturesTest {
+
+    @Test
+    public void transcripts() {
+        for (AnnotationFixtures.TranscriptSize transcriptSize : AnnotationFixtures.TranscriptSize.values()) {
+            AnnotationFixtures fixtures = new AnnotationFixtures(transcriptSize, AnnotationFixtures.DEFAULT_SEED);
+            assertEquals(2, fixtures.getGenes().size());
+            for (Gene gene : fixtures.getGenes()) {
+                assertEquals(transcriptSize.getNumExons(), gene.getTranscripts().get(0).getExons().size());
+                for (Transcript transcript : gene.getTranscripts()) {
+                    StringBuilder cDna = new StringBuilder();
+                    for (Exon exon : transcript.getExons()) {
+                        assertEquals(fixtures.getSequence(exon.getStart(), exon.getEnd()), exon.getSequence());
+                        cDna.append("+".equals(gene.getStrand())
+                                ? exon.getSequence()
+                                : DNASequenceUtils.reverseComplement(exon.getSequence()));
+                    }
+                    assertEquals(cDna.toString(), transcript.getcDnaSequence());
+                    if (transcript.getGenomicCodingStart() == 0) {
+                        continue;
+                    }
+
+                    String cds = cDna.substring(transcript.getCdnaCodingStart() - 1, transcript.getCdnaCodingEnd());
+                    assertEquals(transcript.getCdsLength(), cds.length());
+                    assertEquals(cds.length() / 3 - 1, transcript.getProteinSequence().length());
+                    assertTrue(transcript.getProteinSequence().startsWith("M"));
+                    assertTrue(VariantAnnotationUtils.isStopCodon(false, cds.substring(cds.length() - 3)));
+                    String firstCodon = "+".equals(gene.getStrand())
+                            ? fixtures.getSequence(transcript.getGenomicCodingStart(), transcript.getGenomicCodingStart() + 2)
+                            : DNASequenceUtils.reverseComplement(fixtures.getSequence(transcript.getGenomicCodingEnd() - 2,
+                            transcript.getGenomicCodingEnd()));
+                    assertEquals("ATG", firstCodon);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void annotate() {
+        for (AnnotationFixtures.TranscriptSize transcriptSize : AnnotationFixtures.TranscriptSize.values()) {
+            AnnotationFixtures fixtures = new AnnotationFixtures(transcriptSize, AnnotationFixtures.DEFAULT_SEED);
+            for (AnnotationFixtures.VariantKind variantKind : AnnotationFixtures.VariantKind.values()) {
+                Set<String> soNames = new HashSet<>();
+                int numHgvs = 0;
+                for (Variant variant : fixtures.createVariants(variantKind, 200)) {
+                    VariantAnnotation variantAnnotation = fixtures.annotate(variant);
+                    for (ConsequenceType consequenceType : variantAnnotation.getConsequenceTypes()) {
+                        for (SequenceOntologyTerm sequenceOntologyTerm : consequenceType.getSequenceOntologyTerms()) {
+                            soNames.add(sequenceOntologyTerm.getName());
+                        }
+                    }
+                    numHgvs += variantAnnotation.getHgvs().size();
+                    // Every field read by the converter is set
+                    assertEquals(variantAnnotation.getConsequenceTypes().size(),
+                            ProtoConverterUtils.createVariantAnnotation(variantAnnotation).getConsequenceTypesCount());
+                }
+                assertTrue(numHgvs > 0);
+                assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.INTRON_VARIANT));
+                assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.SPLICE_REGION_VARIANT));
+                assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.NON_CODING_TRANSCRIPT_EXON_VARIANT));
+                if (variantKind == AnnotationFixtures.VariantKind.SNV) {
+                    assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.MISSENSE_VARIANT));
+                    assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.SYNONYMOUS_VARIANT));
+                } else {
+                    assertTrue(soNames.toString(), soNames.contains(VariantAnnotationUtils.FRAMESHIFT_VARIANT));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void createVariants() {
+        AnnotationFixtures fixtures = new AnnotationFixtures(AnnotationFixtures.TranscriptSize.SMALL, 7);
+        List<Variant> variants = fixtures.createVariants(AnnotationFixtures.VariantKind.DELETION, 100);
+        assertEquals(variants.toString(), new AnnotationFixtures(AnnotationFixtures.TranscriptSize.SMALL, 7)
+                .createVariants(AnnotationFixtures.VariantKind.DELETION, 100).toString());
+        assertNotEquals(variants.toString(), new AnnotationFixtures(AnnotationFixtures.TranscriptSize.SMALL, 8)
+                .createVariants(AnnotationFixtures.VariantKind.DELETION, 100).toString());
+        for (Variant variant : variants) {
+            assertTrue(variant.getAlternate().isEmpty());
+            assertEquals(variant.getReference(), fixtures.getSequence(variant.getStart(), variant.getEnd()));
+            assertEquals(1, fixtures.getGenes(variant).size());
+        }
+    }
+}
@@ -23,15 +23,32 @@ import java.util.List;
  */
 public class RestConfig {
 
+    public static final String JSON_ENCODING = "json";
+    public static final String AVRO_ENCODING = "avro";
+
     private List<String> hosts;
     private int timeout;
+    /**
+     * Encoding requested to the server: json or avro. Avro is only used for results that are biodata Avro records, e.g.
+     * VariantAnnotation, which are then decoded without parsing JSON text.
+     */
+    private String encoding;
+    private boolean gzip;
 
     public RestConfig() {
+        this.encoding = JSON_ENCODING;
+        this.gzip = true;
     }
 
     public RestConfig(List<String> hosts, int timeout) {
+        this(hosts, timeout, JSON_ENCODING, true);
+    }
+
+    public RestConfig(List<String> hosts, int timeout, String encoding, boolean gzip) {
         this.hosts = hosts;
         this.timeout = timeout;
+        this.encoding = encoding;
+        this.gzip = gzip;
     }
 
     @Override
@@ -39,6 +56,8 @@ public class RestConfig {
         final StringBuilder sb = new StringBuilder("RestConfig{");
         sb.append("hosts=").append(hosts);
         sb.append(", timeout=").append(timeout);
+        sb.append(", encoding='").append(encoding).append('\'');
+        sb.append(", gzip=").append(gzip);
         sb.append('}');
         return sb.toString();
     }
@@ -60,4 +79,22 @@ public class RestConfig {
         this.timeout = timeout;
         return this;
     }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public RestConfig setEncoding(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public RestConfig setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
 }
@@ -20,10 +20,15 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.avro.specific.SpecificRecord;
 import org.apache.commons.lang3.StringUtils;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.opencb.biodata.models.variant.avro.DrugResponseClassification;
 import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.cellbase.client.config.RestConfig;
 import org.opencb.cellbase.client.rest.models.mixin.DrugResponseClassificationMixIn;
+import org.opencb.cellbase.core.serializer.QueryResponseCodec;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResponse;
@@ -35,7 +40,9 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URI;
@@ -86,6 +93,10 @@ public class ParentRestClient<T> {
         this.configuration = configuration;
 
         this.client = ClientBuilder.newClient();
+        if (configuration.getRest() != null && configuration.getRest().isGzip()) {
+            // Sends 'Accept-Encoding: gzip' and decompresses the responses transparently
+            this.client.register(GZipEncoder.class).register(EncodingFilter.class);
+        }
         logger = LoggerFactory.getLogger(this.getClass().toString());
     }
 
@@ -349,16 +360,45 @@ public class ParentRestClient<T> {
             }
         }
 
-        String jsonString;
+        Invocation.Builder request = callUrl.request(getAcceptedMediaTypes(clazz));
+        Response response;
         if (post) {
             logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().post(Entity.text(ids), String.class);
+            response = request.post(Entity.text(ids));
         } else {
             logger.debug("Making GET call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().get(String.class);
+            response = request.get();
+        }
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            response.close();
+            throw new WebApplicationException(response);
         }
 
-        return parseResult(jsonString, clazz);
+        // Servers not supporting Avro, or results that have no Avro model, are returned as JSON
+        MediaType mediaType = response.getMediaType();
+        if (mediaType != null && MediaType.valueOf(QueryResponseCodec.AVRO_MEDIA_TYPE).isCompatible(mediaType)) {
+            String record = mediaType.getParameters().get(QueryResponseCodec.RECORD_PARAMETER);
+            if (!clazz.getName().equals(record)) {
+                response.close();
+                throw new IOException("Avro response of " + record + " records, expected " + clazz.getName());
+            }
+            return QueryResponseCodec.decodeAvro(response.readEntity(byte[].class), clazz);
+        } else {
+            return parseResult(response.readEntity(String.class), clazz);
+        }
+    }
+
+    /**
+     * Avro is requested when configured and the results are biodata Avro records, the client decodes them straight into
+     * their classes. Protobuf responses are meant for other languages, the Java client does not request them.
+     */
+    private String[] getAcceptedMediaTypes(Class<?> clazz) {
+        String encoding = (configuration.getRest() != null) ? configuration.getRest().getEncoding() : null;
+        if (RestConfig.AVRO_ENCODING.equalsIgnoreCase(encoding) && SpecificRecord.class.isAssignableFrom(clazz)) {
+            return new String[]{QueryResponseCodec.AVRO_MEDIA_TYPE, MediaType.APPLICATION_JSON};
+        } else {
+            return new String[]{MediaType.APPLICATION_JSON};
+        }
     }
 
     protected WebTarget getBaseUrl(List<String> hosts, String version) {
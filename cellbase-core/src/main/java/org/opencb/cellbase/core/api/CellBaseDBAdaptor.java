@@ -31,6 +31,14 @@ import java.util.function.Consumer;
  */
 public interface CellBaseDBAdaptor<T> extends Iterable<T> {
 
+    /**
+     * QueryOptions key with the opaque token returned in NEXT_RESUME_TOKEN by the previous page. When present, results
+     * are returned in storage order starting right after the last document of the previous page, no 'skip' is used. An
+     * empty value starts from the first page. Not supported by the methods taking a list of queries.
+     */
+    String RESUME_TOKEN = "token";
+    String NEXT_RESUME_TOKEN = "nextToken";
+
     QueryResult<Long> update(List objectList, String field, String[] innerFields);
 
     default QueryResult<Long> count() {
@@ -84,4 +84,12 @@ public interface GeneDBAdaptor<T> extends FeatureDBAdaptor<T> {
 
     QueryResult<String> getBiotypes(Query query);
 
+    /**
+     * Precomputes the number of genes per genomic interval for the most common histogram interval sizes, so that
+     * getIntervalFrequencies can read them instead of counting the genes of the region. This is run once after
+     * the data is loaded, precomputed values are only used when no other filter than the region is set.
+     * @return QueryResult with the number of intervals precomputed
+     */
+    QueryResult<Long> createIntervalFrequencies();
+
 }
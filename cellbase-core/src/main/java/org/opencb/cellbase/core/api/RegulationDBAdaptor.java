@@ -17,6 +17,7 @@
 package org.opencb.cellbase.core.api;
 
 import org.opencb.commons.datastore.core.QueryParam;
+import org.opencb.commons.datastore.core.QueryResult;
 
 import static org.opencb.commons.datastore.core.QueryParam.Type.TEXT_ARRAY;
 import static org.opencb.commons.datastore.core.QueryParam.Type.DECIMAL;
@@ -97,4 +98,11 @@ public interface RegulationDBAdaptor<T> extends FeatureDBAdaptor<T> {
             return type;
         }
     }
+
+    /**
+     * Precomputes the number of regulatory regions, and of TFBS alone, per genomic interval for the histogram interval
+     * sizes, as done for genes.
+     * @return QueryResult with the number of intervals precomputed
+     */
+    QueryResult<Long> createIntervalFrequencies();
 }
@@ -161,4 +161,10 @@ public interface VariantDBAdaptor<T> extends FeatureDBAdaptor<T> {
     }
 
     List<QueryResult<Variant>> getPopulationFrequencyByVariant(List<Variant> variants, QueryOptions queryOptions);
+
+    /**
+     * Precomputes the number of variants per genomic interval for the histogram interval sizes, as done for genes.
+     * @return QueryResult with the number of intervals precomputed
+     */
+    QueryResult<Long> createIntervalFrequencies();
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.common;
+
+import org.opencb.biodata.models.core.GenomicScoreRegion;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary format for genomic score regions whose values are packed in longs, e.g. CADD scores. Each region is
+ * stored as: source, chromosome, start, end, number of values, compressed size and the raw long values deflated as a
+ * single block. Values are kept exactly as they are stored in the JSON files so they are decoded in the same way. Each
+ * region is compressed on its own so that {@link Reader} can read single positions by inflating just one region,
+ * e.g. 8 KB for the 1000 positions of a CADD chunk, without loading the rest.
+ */
+public final class GenomicScoreBinaryFile {
+
+    private static final int MAGIC = 0x43424753;  // CBGS
+    private static final int VERSION = 2;
+
+    private GenomicScoreBinaryFile() {
+    }
+
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream outputStream;
+        private final Deflater deflater;
+        private byte[] valueBytes;
+        private byte[] compressedBytes;
+
+        public Writer(Path file) throws IOException {
+            outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            deflater = new Deflater();
+            valueBytes = new byte[0];
+            compressedBytes = new byte[0];
+        }
+
+        public void write(String source, String chromosome, int start, int end, long[] values, int length) throws IOException {
+            int size = length * Long.BYTES;
+            if (valueBytes.length < size) {
+                valueBytes = new byte[size];
+                // Deflate never expands data more than a few bytes per 16 KB block
+                compressedBytes = new byte[size + size / 1000 + 64];
+            }
+            ByteBuffer.wrap(valueBytes).asLongBuffer().put(values, 0, length);
+            deflater.reset();
+            deflater.setInput(valueBytes, 0, size);
+            deflater.finish();
+            int compressedSize = 0;
+            while (!deflater.finished()) {
+                if (compressedSize == compressedBytes.length) {
+                    compressedBytes = Arrays.copyOf(compressedBytes, compressedBytes.length * 2);
+                }
+                compressedSize += deflater.deflate(compressedBytes, compressedSize, compressedBytes.length - compressedSize);
+            }
+
+            outputStream.writeUTF(source);
+            outputStream.writeUTF(chromosome);
+            outputStream.writeInt(start);
+            outputStream.writeInt(end);
+            outputStream.writeInt(length);
+            outputStream.writeInt(compressedSize);
+            outputStream.write(compressedBytes, 0, compressedSize);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                outputStream.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Random access reader, only the region headers are kept in memory. Lookups are thread safe, each thread keeps the
+     * values of the last region it read so that lookups of sorted positions inflate every region once.
+     */
+    public static class Reader implements Closeable {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final Map<String, RegionIndex> index;
+        private final ThreadLocal<RegionValues> lastRegion;
+
+        public Reader(Path file) throws IOException {
+            this.file = file;
+            this.index = new HashMap<>();
+            scan(file, (source, chromosome, start, end, length, offset, compressedSize) ->
+                    index.computeIfAbsent(source + ":" + chromosome, key -> new RegionIndex())
+                            .add(start, length, offset, compressedSize));
+            index.values().forEach(RegionIndex::sort);
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.lastRegion = ThreadLocal.withInitial(RegionValues::new);
+        }
+
+        /**
+         * @param source     score source, e.g. cadd_raw
+         * @param chromosome chromosome name
+         * @param position   genomic position
+         * @return the packed value stored for that position or null if no region contains it
+         * @throws IOException if the file cannot be read
+         */
+        public Long get(String source, String chromosome, int position) throws IOException {
+            RegionIndex regionIndex = index.get(source + ":" + chromosome);
+            if (regionIndex == null) {
+                return null;
+            }
+            int region = regionIndex.find(position);
+            if (region < 0) {
+                return null;
+            }
+            RegionValues regionValues = lastRegion.get();
+            long offset = regionIndex.offsets[region];
+            if (regionValues.offset != offset) {
+                ByteBuffer buffer = ByteBuffer.allocate(regionIndex.compressedSizes[region]);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of file " + file);
+                    }
+                }
+                regionValues.values = inflate(buffer.array(), buffer.capacity(), regionIndex.lengths[region], file);
+                regionValues.offset = offset;
+            }
+            return regionValues.values[position - regionIndex.starts[region]];
+        }
+
+        /**
+         * Streams all the regions in file order, this is what loaders consume.
+         * @param consumer receives each region
+         * @throws IOException if the file cannot be read
+         */
+        public void readRegions(Consumer<GenomicScoreRegion<Long>> consumer) throws IOException {
+            try (DataInputStream inputStream = open(file)) {
+                byte[] compressedBytes = new byte[0];
+                while (true) {
+                    String source;
+                    try {
+                        source = inputStream.readUTF();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String chromosome = inputStream.readUTF();
+                    int start = inputStream.readInt();
+                    int end = inputStream.readInt();
+                    int length = inputStream.readInt();
+                    int compressedSize = inputStream.readInt();
+                    if (compressedBytes.length < compressedSize) {
+                        compressedBytes = new byte[compressedSize];
+                    }
+                    inputStream.readFully(compressedBytes, 0, compressedSize);
+                    long[] values = inflate(compressedBytes, compressedSize, length, file);
+                    List<Long> valueList = new ArrayList<>(length);
+                    for (long value : values) {
+                        valueList.add(value);
+                    }
+                    consumer.accept(new GenomicScoreRegion<>(chromosome, start, end, source, valueList));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Values of the last region read by a thread, identified by the offset of its values in the file.
+     */
+    private static class RegionValues {
+
+        private long offset = -1;
+        private long[] values;
+    }
+
+    private static long[] inflate(byte[] compressedBytes, int compressedSize, int length, Path file) throws IOException {
+        byte[] valueBytes = new byte[length * Long.BYTES];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedBytes, 0, compressedSize);
+            int size = 0;
+            while (size < valueBytes.length && !inflater.finished()) {
+                int inflated = inflater.inflate(valueBytes, size, valueBytes.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != valueBytes.length) {
+                throw new IOException("Truncated region values in " + file + ", " + size + " bytes instead of "
+                        + valueBytes.length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted region values in " + file + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        long[] values = new long[length];
+        ByteBuffer.wrap(valueBytes).asLongBuffer().get(values);
+        return values;
+    }
+
+    @FunctionalInterface
+    private interface HeaderVisitor {
+        void visit(String source, String chromosome, int start, int end, int length, long valuesOffset, int compressedSize);
+    }
+
+    private static void scan(Path file, HeaderVisitor visitor) throws IOException {
+        try (DataInputStream inputStream = open(file)) {
+            long offset = 2 * Integer.BYTES;
+            while (true) {
+                String source;
+                try {
+                    source = inputStream.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                String chromosome = inputStream.readUTF();
+                int start = inputStream.readInt();
+                int end = inputStream.readInt();
+                int length = inputStream.readInt();
+                int compressedSize = inputStream.readInt();
+                // writeUTF uses a 2 bytes length plus the modified UTF-8 bytes, names are ASCII
+                offset += 2 + source.length() + 2 + chromosome.length() + 4 * Integer.BYTES;
+                visitor.visit(source, chromosome, start, end, length, offset, compressedSize);
+
+                long skip = compressedSize;
+                offset += skip;
+                while (skip > 0) {
+                    long skipped = inputStream.skip(skip);
+                    if (skipped <= 0) {
+                        throw new EOFException("Truncated region " + chromosome + ":" + start + "-" + end + " in " + file);
+                    }
+                    skip -= skipped;
+                }
+            }
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        if (inputStream.readInt() != MAGIC) {
+            inputStream.close();
+            throw new IOException("Not a genomic score binary file: " + file);
+        }
+        int version = inputStream.readInt();
+        if (version != VERSION) {
+            inputStream.close();
+            throw new IOException("Unsupported genomic score binary file version " + version + ": " + file);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Regions of one source and chromosome sorted by start.
+     */
+    private static class RegionIndex {
+
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private long[] offsets = new long[16];
+        private int[] compressedSizes = new int[16];
+        private int size;
+        private boolean sorted = true;
+
+        void add(int start, int length, long offset, int compressedSize) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                compressedSizes = Arrays.copyOf(compressedSizes, size * 2);
+            }
+            if (size > 0 && start < starts[size - 1]) {
+                sorted = false;
+            }
+            starts[size] = start;
+            lengths[size] = length;
+            offsets[size] = offset;
+            compressedSizes[size] = compressedSize;
+            size++;
+        }
+
+        /**
+         * Regions are written sorted by position, this is only needed for unsorted input files.
+         */
+        void sort() {
+            if (sorted) {
+                return;
+            }
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> starts[i]));
+            int[] sortedStarts = new int[size];
+            int[] sortedLengths = new int[size];
+            long[] sortedOffsets = new long[size];
+            int[] sortedCompressedSizes = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedStarts[i] = starts[order[i]];
+                sortedLengths[i] = lengths[order[i]];
+                sortedOffsets[i] = offsets[order[i]];
+                sortedCompressedSizes[i] = compressedSizes[order[i]];
+            }
+            starts = sortedStarts;
+            lengths = sortedLengths;
+            offsets = sortedOffsets;
+            compressedSizes = sortedCompressedSizes;
+            sorted = true;
+        }
+
+        /**
+         * @return index of the region containing the position, -1 if none
+         */
+        int find(int position) {
+            int i = Arrays.binarySearch(starts, 0, size, position);
+            if (i < 0) {
+                // Last region starting before the position
+                i = -i - 2;
+            }
+            if (i < 0 || position - starts[i] >= lengths[i]) {
+                return -1;
+            }
+            return i;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class CellBaseConfiguration {
     private String maintainerContact;
     private String defaultOutdir;
     private Databases databases;
+    private ServerProperties server;
     private DownloadProperties download;
     private SpeciesProperties species;
 
@@ -150,6 +151,15 @@ public class CellBaseConfiguration {
         return this;
     }
 
+    public ServerProperties getServer() {
+        return server;
+    }
+
+    public CellBaseConfiguration setServer(ServerProperties server) {
+        this.server = server;
+        return this;
+    }
+
     public String getDefaultOutdir() {
         return defaultOutdir;
     }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * REST server settings. Data is immutable for each loaded release, so GET responses can be cached by clients for
+ * 'cacheMaxAge' seconds and kept in memory by the server, up to 'responseCacheSize' MB. Response cache is disabled when 0.
+ */
+public class ServerProperties {
+
+    private int cacheMaxAge;
+    private int responseCacheSize;
+
+    public ServerProperties() {
+        this(3600, 0);
+    }
+
+    public ServerProperties(int cacheMaxAge, int responseCacheSize) {
+        this.cacheMaxAge = cacheMaxAge;
+        this.responseCacheSize = responseCacheSize;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ServerProperties{");
+        sb.append("cacheMaxAge=").append(cacheMaxAge);
+        sb.append(", responseCacheSize=").append(responseCacheSize);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getCacheMaxAge() {
+        return cacheMaxAge;
+    }
+
+    public ServerProperties setCacheMaxAge(int cacheMaxAge) {
+        this.cacheMaxAge = cacheMaxAge;
+        return this;
+    }
+
+    public int getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    public ServerProperties setResponseCacheSize(int responseCacheSize) {
+        this.responseCacheSize = responseCacheSize;
+        return this;
+    }
+}
@@ -66,9 +66,31 @@ public abstract class CellBaseLoader implements Callable<Integer> {
 
     public abstract void init() throws LoaderException;
 
+    /**
+     * Called once before the batches are loaded by any of the loaders, e.g. to prepare the collection for a bulk load.
+     *
+     * @return true if indexes were dropped, {@link #createIndex(String)} must then be called even if the load fails
+     * @throws LoaderException if the collection cannot be prepared
+     */
+    public boolean preLoad() throws LoaderException {
+        return false;
+    }
+
     @Override
     public abstract Integer call();
 
+    /**
+     * Must be called once the database has acknowledged the batch, the load journal then records it as committed.
+     * Batches failing to load must not be committed, they are loaded again when the load is resumed.
+     *
+     * @param batch batch taken from the queue
+     */
+    protected void commit(List<String> batch) {
+        if (batch instanceof LoadBatch) {
+            ((LoadBatch) batch).commit();
+        }
+    }
+
     public abstract void createIndex(String data) throws LoaderException;
 
     public abstract void close();
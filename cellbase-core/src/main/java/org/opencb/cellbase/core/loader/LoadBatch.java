@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Batch of JSON lines read by the LoadRunner together with the offset of each line in its input file. Offsets are
+ * used to build document ids that only depend on the load id and the file, so a batch loaded again when resuming an
+ * interrupted load is detected by the duplicated keys. Once the database acknowledges the batch the loader must call
+ * {@link CellBaseLoader#commit(java.util.List)} so that the load journal records it.
+ */
+public class LoadBatch extends ArrayList<String> {
+
+    public static final int DOCUMENT_ID_LENGTH = 12;
+    private static final int OFFSET_BYTES = 5;
+    private static final long MAX_OFFSET = (1L << (8 * OFFSET_BYTES)) - 1;
+
+    private final byte[] fileKey;
+    private long[] offsets;
+    private final LoadJournal.ShardProgress progress;
+    private final int batchNumber;
+    private final boolean resumed;
+    private long endOffset;
+
+    LoadBatch(int capacity, byte[] fileKey, LoadJournal.ShardProgress progress, int batchNumber, boolean resumed) {
+        super(capacity);
+        this.fileKey = fileKey;
+        this.offsets = new long[capacity];
+        this.progress = progress;
+        this.batchNumber = batchNumber;
+        this.resumed = resumed;
+    }
+
+    void add(String line, long offset) {
+        // Bigger offsets would wrap around and give the ids of the first lines of the file
+        if (offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("Offset " + offset + " does not fit in the " + OFFSET_BYTES
+                    + " bytes of the document id, input files must be smaller than 1 TB");
+        }
+        if (size() == offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(16, offsets.length * 2));
+        }
+        offsets[size()] = offset;
+        add(line);
+    }
+
+    /**
+     * @return true if the batch belongs to a resumed load, its documents may have been inserted before the interruption
+     * and duplicated keys must be skipped. Otherwise a duplicated key is an error
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * The id is made of 7 bytes identifying the load and the input file name and the 5 lower bytes of the line offset, it fits
+     * in a MongoDB ObjectId.
+     *
+     * @param index index of the line in the batch
+     * @return 12 bytes id of the document
+     */
+    public byte[] getDocumentId(int index) {
+        byte[] id = new byte[DOCUMENT_ID_LENGTH];
+        System.arraycopy(fileKey, 0, id, 0, DOCUMENT_ID_LENGTH - OFFSET_BYTES);
+        long offset = offsets[index];
+        for (int i = DOCUMENT_ID_LENGTH - 1; i >= DOCUMENT_ID_LENGTH - OFFSET_BYTES; i--) {
+            id[i] = (byte) offset;
+            offset >>>= 8;
+        }
+        return id;
+    }
+
+    void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    void commit() {
+        if (progress != null) {
+            progress.acknowledge(batchNumber, endOffset);
+        }
+    }
+
+    // Batches are compared by identity, as the POISON_PILL
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the progress of the loads so that an interrupted load can be resumed. Input files are read in shards, for
+ * each shard the journal keeps the byte offset up to which all the batches have been acknowledged by the database,
+ * and whether the whole shard has been loaded. Each time the committed offset of a shard moves forward a new line
+ * is appended to the journal file, the last line of a shard wins when the journal is read back:
+ *
+ *     data  file  shardStart  committedOffset  complete
+ *
+ * Offsets of gzipped files refer to the uncompressed content, the ones of BGZF shards to the uncompressed content from
+ * the block where the shard starts, plus the shard start. Batches are acknowledged out of order by the loaders,
+ * only the contiguous sequence of acknowledged batches is committed.
+ *
+ * The journal also keeps the random id of the load, document ids are derived from it so that only a resumed load
+ * produces the ids of the documents inserted before the interruption.
+ *
+ * The journal file is locked while it is open, a second load using the same journal fails instead of overwriting it.
+ */
+public class LoadJournal implements Closeable {
+
+    private static final String HEADER = "#data\tfile\tshardStart\tcommittedOffset\tcomplete";
+    private static final String LOAD_ID_PREFIX = "#loadId=";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path journalFile;
+    private final Map<String, Entry> entries;
+    private final Writer writer;
+    private String loadId;
+    private final boolean resumed;
+
+    private final Logger logger = LoggerFactory.getLogger(LoadJournal.class);
+
+    /**
+     * @param journalFile journal file, created if it does not exist
+     * @param resume      true to keep the progress recorded by a previous load, false to start a new journal
+     * @throws IOException if the journal cannot be read or written, or is locked by another load
+     */
+    public LoadJournal(Path journalFile, boolean resume) throws IOException {
+        this.journalFile = journalFile;
+        this.entries = new HashMap<>();
+        boolean exists = Files.exists(journalFile);
+        // Not truncated before being locked, the journal of a running load is left untouched
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock(channel);
+            if (resume && exists) {
+                read();
+                if (loadId == null) {
+                    throw new IOException("Load id not found in journal '" + journalFile + "', the load cannot be resumed");
+                }
+                logger.info("Resuming load {}, {} shards found in journal '{}'", loadId, entries.size(), journalFile);
+                resumed = true;
+                channel.position(channel.size());
+                writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.name()));
+            } else {
+                if (resume) {
+                    logger.warn("Journal '{}' not found, nothing to resume", journalFile);
+                }
+                loadId = newLoadId();
+                resumed = false;
+                channel.truncate(0);
+                writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.name()));
+                writer.write(LOAD_ID_PREFIX + loadId);
+                writer.write('\n');
+                writer.write(HEADER);
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The lock is released when the channel is closed, i.e. when the journal is closed.
+     */
+    private void lock(FileChannel channel) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Locked by this same process
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException("Journal '" + journalFile + "' is being used by another load");
+        }
+    }
+
+    private void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(LOAD_ID_PREFIX)) {
+                    loadId = line.substring(LOAD_ID_PREFIX.length());
+                    continue;
+                }
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                // A line truncated by a crash is ignored, the previous line of that shard is still valid
+                if (fields.length == 5) {
+                    Entry entry = new Entry(Long.parseLong(fields[3]), fields[4].equals("1"));
+                    entries.put(key(fields[0], fields[1], Long.parseLong(fields[2])), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a new random load id, 16 hexadecimal characters
+     */
+    static String newLoadId() {
+        byte[] bytes = new byte[8];
+        RANDOM.nextBytes(bytes);
+        StringBuilder loadId = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            loadId.append(String.format("%02x", b));
+        }
+        return loadId.toString();
+    }
+
+    /**
+     * @return id of the load, the one of the previous load when resuming
+     */
+    public String getLoadId() {
+        return loadId;
+    }
+
+    /**
+     * @return true if the progress of a previous load was read, documents of its unfinished batches may already be in
+     * the database
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @param data       data model being loaded
+     * @param file       input file
+     * @param shardStart first byte of the shard
+     * @return offset from which the shard must be read, lines before it have already been loaded
+     */
+    public synchronized long getCommittedOffset(String data, Path file, long shardStart) {
+        Entry entry = entries.get(key(data, file.toAbsolutePath().toString(), shardStart));
+        return entry != null ? Math.max(entry.committedOffset, shardStart) : shardStart;
+    }
+
+    public synchronized boolean isComplete(String data, Path file, long shardStart) {
+        Entry entry = entries.get(key(data, file.toAbsolutePath().toString(), shardStart));
+        return entry != null && entry.complete;
+    }
+
+    /**
+     * Starts tracking the batches read from a shard.
+     *
+     * @param data        data model being loaded
+     * @param file        input file
+     * @param shardStart  first byte of the shard
+     * @param startOffset offset where reading starts, i.e. the committed offset when resuming
+     * @return the progress of the shard, batches read from it must be acknowledged through it
+     */
+    public ShardProgress track(String data, Path file, long shardStart, long startOffset) {
+        return new ShardProgress(data, file.toAbsolutePath().toString(), shardStart, startOffset);
+    }
+
+    private synchronized void commit(ShardProgress progress, boolean complete) {
+        String fileName = progress.file;
+        entries.put(key(progress.data, fileName, progress.shardStart), new Entry(progress.committedOffset, complete));
+        try {
+            writer.write(progress.data + "\t" + fileName + "\t" + progress.shardStart + "\t" + progress.committedOffset + "\t"
+                    + (complete ? "1" : "0") + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            // Losing a journal line only means that more data will be loaded again when resuming
+            logger.warn("Could not write load journal '{}': {}", journalFile, e.getMessage());
+        }
+    }
+
+    private static String key(String data, String file, long shardStart) {
+        return data + "\t" + file + "\t" + shardStart;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static class Entry {
+
+        private final long committedOffset;
+        private final boolean complete;
+
+        Entry(long committedOffset, boolean complete) {
+            this.committedOffset = committedOffset;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Progress of one shard. Batches are numbered in the order they are read, a batch is committed when it and all the
+     * batches before it have been acknowledged.
+     */
+    public final class ShardProgress {
+
+        private final String data;
+        private final String file;
+        private final long shardStart;
+        private long committedOffset;
+        private int nextBatch;
+        private int numBatches = -1;
+        // Batches acknowledged before some previous batch, by batch number, with the offset where they end
+        private final TreeMap<Integer, Long> acknowledged = new TreeMap<>();
+
+        private ShardProgress(String data, String file, long shardStart, long startOffset) {
+            this.data = data;
+            this.file = file;
+            this.shardStart = shardStart;
+            this.committedOffset = startOffset;
+        }
+
+        void acknowledge(int batchNumber, long endOffset) {
+            synchronized (LoadJournal.this) {
+                acknowledged.put(batchNumber, endOffset);
+                if (acknowledged.firstKey() == nextBatch) {
+                    while (!acknowledged.isEmpty() && acknowledged.firstKey() == nextBatch) {
+                        committedOffset = acknowledged.pollFirstEntry().getValue();
+                        nextBatch++;
+                    }
+                    commit(this, nextBatch == numBatches);
+                }
+            }
+        }
+
+        /**
+         * Called when the whole shard has been read.
+         *
+         * @param numBatches number of batches read from the shard
+         * @param endOffset  offset where reading finished
+         */
+        void finish(int numBatches, long endOffset) {
+            synchronized (LoadJournal.this) {
+                this.numBatches = numBatches;
+                if (nextBatch == numBatches) {
+                    committedOffset = Math.max(committedOffset, endOffset);
+                    commit(this, true);
+                }
+            }
+        }
+    }
+}
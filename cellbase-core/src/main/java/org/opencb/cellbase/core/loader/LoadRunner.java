@@ -17,19 +17,27 @@
 package org.opencb.cellbase.core.loader;
 
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.serializer.BgzfInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -49,21 +57,55 @@ public class LoadRunner {
     private final Logger logger;
 
     private static final int QUEUE_CAPACITY = 10;
+    private static final long MIN_SHARD_SIZE = 64L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private final int numReaders;
+    private long minShardSize = MIN_SHARD_SIZE;
     private int batchSize;
+    private int minBatchSize;
+    private int maxBatchSize;
+    private LoadJournal loadJournal;
+    // Collections whose indexes were dropped by CellBaseLoader.preLoad and not created yet
+    private final Set<String> droppedIndexes = new LinkedHashSet<>();
     public static final List<String> POISON_PILL = new ArrayList<>();
 
 
     public LoadRunner(String loader, String database, int numThreads, CellBaseConfiguration cellBaseConfiguration) {
+        this(loader, database, numThreads, 1, cellBaseConfiguration);
+    }
+
+    public LoadRunner(String loader, String database, int numThreads, int numReaders, CellBaseConfiguration cellBaseConfiguration) {
         this.loader = loader;
         this.database = database;
         this.numThreads = numThreads;
+        this.numReaders = Math.max(1, numReaders);
         this.cellBaseConfiguration = cellBaseConfiguration;
 
-        this.blockingQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        // Queue depth grows with the number of consumers so that no loader waits for a batch while readers are busy
+        this.blockingQueue = new ArrayBlockingQueue<>(Math.max(QUEUE_CAPACITY, 2 * numThreads));
 
         logger = LoggerFactory.getLogger(this.getClass());
     }
 
+    /**
+     * Batches acknowledged by the loaders are recorded in the journal, shards already committed in it are skipped.
+     *
+     * @param loadJournal journal of the load, null to disable it
+     */
+    public void setLoadJournal(LoadJournal loadJournal) {
+        this.loadJournal = loadJournal;
+    }
+
+    /**
+     * Files smaller than this size are read by a single reader, 64 MB by default. BGZF files are split in shards of
+     * this size whatever the number of readers.
+     *
+     * @param minShardSize minimum size in bytes of a shard
+     */
+    void setMinShardSize(long minShardSize) {
+        this.minShardSize = minShardSize;
+    }
+
     public void load(Path filePath, String data) throws ClassNotFoundException, NoSuchMethodException, InstantiationException,
             IllegalAccessException, InvocationTargetException, ExecutionException, InterruptedException, IOException {
         load(filePath, data, null, null);
@@ -72,10 +114,45 @@ public class LoadRunner {
     public void load(Path filePath, String data, String field, String[] innerFields) throws ClassNotFoundException,
             NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException,
             ExecutionException, InterruptedException, IOException {
+        load(Collections.singletonList(filePath), data, field, innerFields);
+    }
+
+    public void load(List<Path> filePaths, String data) throws ClassNotFoundException, NoSuchMethodException,
+            InstantiationException, IllegalAccessException, InvocationTargetException, ExecutionException,
+            InterruptedException, IOException {
+        load(filePaths, data, null, null);
+    }
+
+    /**
+     * Loads all the given files into the same collection. Files are read concurrently by 'numReaders' threads, big
+     * uncompressed and BGZF files are also split into byte-range shards so that several readers can work on the same
+     * file. Plain gzip files are read by a single reader.
+     * All batches are pushed into a single queue consumed by 'numThreads' loaders. When a load journal is set the
+     * input already committed by a previous load is skipped.
+     *
+     * @param filePaths   JSON files, one document per line, plain, gzipped or bgzipped
+     * @param data        data model being loaded, i.e. the collection
+     * @param field       field to be updated, null to insert the whole documents
+     * @param innerFields inner attributes of 'field' to be overwritten
+     */
+    public void load(List<Path> filePaths, String data, String field, String[] innerFields) throws ClassNotFoundException,
+            NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException,
+            ExecutionException, InterruptedException, IOException {
         try {
 
-            if (filePath == null || !Files.exists(filePath) || Files.isDirectory(filePath)) {
-                throw new IOException("File '" + filePath + "' does not exist or is a directory");
+            for (Path filePath : filePaths) {
+                if (filePath == null || !Files.exists(filePath) || Files.isDirectory(filePath)) {
+                    throw new IOException("File '" + filePath + "' does not exist or is a directory");
+                }
+            }
+
+            List<FileShard> shards = new ArrayList<>();
+            for (Path filePath : filePaths) {
+                shards.addAll(getShards(filePath));
+            }
+            if (loadJournal != null && shards.stream().allMatch(shard -> loadJournal.isComplete(data, shard.path, shard.start))) {
+                logger.info("Files {} already loaded according to the load journal, skipping", filePaths);
+                return;
             }
 
             // protein_functional_prediction documents are extremely big. Increasing the batch size will probably
@@ -83,9 +160,12 @@ public class LoadRunner {
             // collections though
             if (data.equals(PROTEIN_FUNCTIONAL_PREDICTION)) {
                 batchSize = 50;
+                maxBatchSize = batchSize;
             } else {
                 batchSize = 1000;
+                maxBatchSize = 5 * batchSize;
             }
+            minBatchSize = Math.max(1, batchSize / 10);
 
             // One CellBaseLoader is created for each thread in 'numThreads' variable
             List<CellBaseLoader> cellBaseLoaders = new ArrayList<>(numThreads);
@@ -102,84 +182,409 @@ public class LoadRunner {
              * ExecutorServices and Futures are created, all CellBaseLoaders are initialized and submitted to them.
              * After this the different loaders are blocked waiting for the blockingQueue to be populated.
              */
-            ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
-            List<Future<Integer>> futures = new ArrayList<>(numThreads);
             for (int i = 0; i < numThreads; i++) {
                 cellBaseLoaders.get(i).init();
-                futures.add(executorService.submit(cellBaseLoaders.get(i)));
-                logger.debug("CellBaseLoader '{}' initialized and submitted to the ExecutorService", i);
             }
-
-            /*
-             * Execution starts by reading the file and loading batches to the blockingQueue. This makes the loaders
-             * to start fetching and loading batches into the database. The number of records processed is returned.
-             */
-            int processedRecords = readInputJsonFile(filePath);
-            // Check if all the records have been loaded
-            int loadedRecords = 0;
-            for (Future<Integer> future : futures) {
-                loadedRecords += future.get();
-            }
-            if (processedRecords == loadedRecords) {
-                logger.info("All the '{}' records have been loaded into the database", processedRecords);
-            } else {
-                logger.warn("Only '{}' out of '{}' have been loaded into the database", loadedRecords, processedRecords);
+            if (cellBaseLoaders.get(0).preLoad()) {
+                droppedIndexes.add(data);
             }
+            boolean loaded = false;
+            try {
+                ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+                List<Future<Integer>> futures = new ArrayList<>(numThreads);
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executorService.submit(cellBaseLoaders.get(i)));
+                    logger.debug("CellBaseLoader '{}' initialized and submitted to the ExecutorService", i);
+                }
 
-            /*
-             * For sanity database connection and other resources must be released. This close() call must be
-             * implemented in the specific data loader.
-             */
-            for (int i = 0; i < numThreads; i++) {
-                cellBaseLoaders.get(i).close();
-                logger.debug("CellBaseLoader '{}' being closed", i);
-            }
+                /*
+                 * Execution starts by reading the files and loading batches to the blockingQueue. This makes the loaders
+                 * to start fetching and loading batches into the database. The number of records processed is returned.
+                 */
+                int processedRecords = 0;
+                ExecutionException readerException = null;
+                try {
+                    processedRecords = readInputJsonFiles(filePaths, shards, data);
+                } catch (ExecutionException e) {
+                    // Loaders already got their poison pills, they are waited for and closed before failing
+                    readerException = e;
+                }
+                // Check if all the records have been loaded
+                int loadedRecords = 0;
+                ExecutionException loaderException = null;
+                for (Future<Integer> future : futures) {
+                    try {
+                        loadedRecords += future.get();
+                    } catch (ExecutionException e) {
+                        // The other loaders still drain the queue, they are waited for and closed before failing
+                        if (loaderException == null) {
+                            loaderException = e;
+                        }
+                    }
+                }
+                if (readerException == null && loaderException == null && processedRecords == loadedRecords) {
+                    logger.info("All the '{}' records have been loaded into the database", processedRecords);
+                } else if (readerException == null && loaderException == null) {
+                    logger.warn("Only '{}' out of '{}' have been loaded into the database", loadedRecords, processedRecords);
+                }
 
-            executorService.shutdown();
+                /*
+                 * For sanity database connection and other resources must be released. This close() call must be
+                 * implemented in the specific data loader.
+                 */
+                for (int i = 0; i < numThreads; i++) {
+                    cellBaseLoaders.get(i).close();
+                    logger.debug("CellBaseLoader '{}' being closed", i);
+                }
+
+                executorService.shutdown();
+                if (readerException != null) {
+                    throw readerException;
+                }
+                if (loaderException != null) {
+                    throw loaderException;
+                }
+                loaded = true;
+            } finally {
+                if (!loaded && droppedIndexes.contains(data)) {
+                    createDroppedIndex(data);
+                }
+            }
         } catch (LoaderException e) {
             logger.error("Error executing CellBase Load: " + e.getMessage());
         }
 
     }
 
-    private int readInputJsonFile(Path inputFile) {
-        int inputFileRecords = 0;
+    /**
+     * Reads all the shards and sends the poison pills to the loaders, also when a reader fails.
+     *
+     * @return number of records read
+     * @throws ExecutionException with the error of the first reader failing, once the poison pills are sent
+     */
+    private int readInputJsonFiles(List<Path> inputFiles, List<FileShard> shards, String data) throws InterruptedException,
+            ExecutionException {
+        logger.info("Reading {} files split in {} shards with {} readers", inputFiles.size(), shards.size(), numReaders);
+
+        // Salt of the document ids, a new one for every load unless the load journal has one
+        String loadId = loadJournal != null ? loadJournal.getLoadId() : LoadJournal.newLoadId();
+        AtomicInteger inputFileRecords = new AtomicInteger();
+        ExecutionException readerException = null;
+        ExecutorService readerExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(numReaders, shards.size())));
         try {
-            BufferedReader br;
-            if (inputFile.toString().endsWith(".gz")) {
-                br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFile.toFile()))));
-            } else {
-                br = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile.toFile())));
+            List<Future<?>> readers = new ArrayList<>(shards.size());
+            for (FileShard shard : shards) {
+                readers.add(readerExecutor.submit(() -> {
+                    readShard(shard, data, loadId, inputFileRecords);
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                try {
+                    reader.get();
+                } catch (ExecutionException e) {
+                    logger.error("Error reading input file: {}", e.getCause().getMessage());
+                    if (readerException == null) {
+                        readerException = e;
+                    }
+                }
+            }
+        } finally {
+            readerExecutor.shutdown();
+        }
+
+        logger.info("{} records read from {} files", inputFileRecords.get(), inputFiles.size());
+
+        // Poison Pill to consumers so they know that there are no more batches to consume
+        for (int i = 0; i < numThreads; i++) {
+            blockingQueue.put(POISON_PILL);
+        }
+        if (readerException != null) {
+            throw readerException;
+        }
+        return inputFileRecords.get();
+    }
+
+    /**
+     * Plain gzip and small files are read as one single shard. Big plain files are split in one byte-range per reader,
+     * each reader owns the lines starting within its range. Big BGZF files are split at the first block after every
+     * 'minShardSize' bytes, whatever the number of readers, see {@link #getFileKey(String, FileShard)}.
+     */
+    private List<FileShard> getShards(Path inputFile) throws IOException {
+        long size = inputFile.toFile().length();
+        if (inputFile.toString().endsWith(".gz")) {
+            if (size < minShardSize || !BgzfInputStream.isBgzf(inputFile)) {
+                return Collections.singletonList(new FileShard(inputFile, 0, Long.MAX_VALUE));
+            }
+            return getBgzfShards(inputFile, size);
+        }
+        if (numReaders == 1 || size < minShardSize) {
+            return Collections.singletonList(new FileShard(inputFile, 0, Long.MAX_VALUE));
+        }
+        int numShards = (int) Math.min(numReaders, size / minShardSize);
+        long shardSize = size / numShards;
+        List<FileShard> shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            long end = (i == numShards - 1) ? Long.MAX_VALUE : (i + 1) * shardSize;
+            shards.add(new FileShard(inputFile, i * shardSize, end));
+        }
+        return shards;
+    }
+
+    private List<FileShard> getBgzfShards(Path inputFile, long size) throws IOException {
+        long[] positions = new long[(int) ((size - 1) / minShardSize)];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = (i + 1) * minShardSize;
+        }
+        List<FileShard> shards = new ArrayList<>(positions.length + 1);
+        long start = 0;
+        for (long address : BgzfInputStream.getBlockAddresses(inputFile, positions)) {
+            // Blocks bigger than the shard size or the end of file marker
+            if (address > start && address < size) {
+                shards.add(new FileShard(inputFile, start, address, true));
+                start = address;
+            }
+        }
+        shards.add(new FileShard(inputFile, start, Long.MAX_VALUE, true));
+        return shards;
+    }
+
+    private void readShard(FileShard shard, String data, String loadId, AtomicInteger inputFileRecords) throws IOException,
+            InterruptedException {
+        long startOffset = shard.start;
+        LoadJournal.ShardProgress progress = null;
+        if (loadJournal != null) {
+            if (loadJournal.isComplete(data, shard.path, shard.start)) {
+                logger.info("'{}' already loaded according to the load journal, skipping", shard);
+                return;
             }
+            startOffset = loadJournal.getCommittedOffset(data, shard.path, shard.start);
+            if (startOffset > shard.start) {
+                logger.info("Resuming '{}' from offset {}", shard, startOffset);
+            }
+            progress = loadJournal.track(data, shard.path, shard.start, startOffset);
+        }
 
-            List<String> batch = new ArrayList<>(batchSize);
+        byte[] fileKey = getFileKey(loadId, shard);
+        boolean resumed = loadJournal != null && loadJournal.isResumed();
+        int shardRecords = 0;
+        int numBatches = 0;
+        int currentBatchSize = batchSize;
+        try (ShardLineReader reader = new ShardLineReader(shard, startOffset)) {
+            LoadBatch batch = new LoadBatch(currentBatchSize, fileKey, progress, numBatches++, resumed);
+            long offset = reader.getPosition();
             String jsonLine;
-            while ((jsonLine = br.readLine()) != null) {
-                batch.add(jsonLine);
-                inputFileRecords++;
-                if (inputFileRecords % batchSize == 0) {
+            while ((jsonLine = reader.readLine()) != null) {
+                batch.add(jsonLine, offset);
+                offset = reader.getPosition();
+                shardRecords++;
+                if (batch.size() >= currentBatchSize) {
+                    batch.setEndOffset(offset);
                     blockingQueue.put(batch);
-                    batch = new ArrayList<>(batchSize);
+                    currentBatchSize = adaptBatchSize(currentBatchSize);
+                    batch = new LoadBatch(currentBatchSize, fileKey, progress, numBatches++, resumed);
                 }
-                if (inputFileRecords % 1000 == 0) {
-                    logger.info("{} records read from {}", inputFileRecords, inputFile.toString());
+                if (inputFileRecords.incrementAndGet() % 100000 == 0) {
+                    logger.info("{} records read", inputFileRecords.get());
                 }
             }
             // Last batch
             if (!batch.isEmpty()) {
+                batch.setEndOffset(offset);
                 blockingQueue.put(batch);
+            } else {
+                numBatches--;
+            }
+            if (progress != null) {
+                progress.finish(numBatches, offset);
             }
+        }
+        logger.debug("{} records read from '{}'", shardRecords, shard);
+    }
 
-            logger.info("{} records read from '{}'", inputFileRecords, inputFile.toString());
+    /**
+     * Documents ids start with these bytes. They depend on the load id so that a file loaded again, e.g. after being
+     * rebuilt, gets new ids instead of clashing with the documents of a previous load. Only a resumed load reuses the
+     * load id stored in the journal, and with it the ids of the documents inserted before the interruption.
+     *
+     * Offsets of the lines of a BGZF shard count the uncompressed bytes from the start of the shard and may overlap
+     * the ones of the next shards, so the shards other than the first one get keys of their own. This is why BGZF
+     * shards do not depend on the number of readers.
+     */
+    private static byte[] getFileKey(String loadId, FileShard shard) {
+        String key = loadId + "\t" + shard.path.getFileName();
+        if (shard.bgzf && shard.start > 0) {
+            key += "\t" + shard.start;
+        }
+        try {
+            return MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            // Poison Pill to consumers so they know that there are no more batches to consume
-            for (int i = 0; i < numThreads; i++) {
-                blockingQueue.put(POISON_PILL);
+    /**
+     * A full queue means loaders are the bottleneck, bigger batches reduce the per-request overhead in the database.
+     * An empty queue means loaders are starving, smaller batches are handed out sooner.
+     */
+    private int adaptBatchSize(int currentBatchSize) {
+        if (blockingQueue.remainingCapacity() == 0) {
+            return Math.min(maxBatchSize, currentBatchSize * 2);
+        } else if (blockingQueue.isEmpty()) {
+            return Math.max(minBatchSize, currentBatchSize / 2);
+        }
+        return currentBatchSize;
+    }
+
+    static class FileShard {
+
+        private final Path path;
+        private final long start;
+        private final long end;
+        // Start and end are the addresses of BGZF blocks
+        private final boolean bgzf;
+
+        FileShard(Path path, long start, long end) {
+            this(path, start, end, false);
+        }
+
+        FileShard(Path path, long start, long end, boolean bgzf) {
+            this.path = path;
+            this.start = start;
+            this.end = end;
+            this.bgzf = bgzf;
+        }
+
+        @Override
+        public String toString() {
+            return start == 0 && end == Long.MAX_VALUE ? path.toString() : path + "[" + start + "-" + end + ")";
+        }
+    }
+
+    /**
+     * Reads the lines of a FileShard. Lines are returned when they start before the end of the shard, the first
+     * partial line is skipped as it belongs to the previous shard.
+     *
+     * In BGZF shards a line starts in the block of the line break ending the previous line, so a line starting right
+     * at a block boundary belongs to the shard of the previous block. Offsets count the uncompressed bytes from the
+     * start of the shard.
+     */
+    static class ShardLineReader implements AutoCloseable {
+
+        private final InputStream inputStream;
+        private final BgzfInputStream bgzfInputStream;
+        private final long end;
+        private long position;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int bufferPosition;
+        private int bufferLimit;
+        // Blocks of the bytes in the buffer and of the last byte read, BGZF shards only
+        private long bufferBlock;
+        private long lastBlock;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+
+        ShardLineReader(FileShard shard) throws IOException {
+            this(shard, shard.start);
+        }
+
+        /**
+         * @param shard       shard to be read
+         * @param startOffset offset of a line beginning within the shard where reading starts, e.g. when resuming
+         */
+        ShardLineReader(FileShard shard, long startOffset) throws IOException {
+            this.end = shard.end;
+            if (shard.bgzf) {
+                this.bgzfInputStream = new BgzfInputStream(shard.path, shard.start);
+                this.inputStream = bgzfInputStream;
+                this.position = shard.start;
+                this.lastBlock = shard.start;
+                if (shard.start > 0) {
+                    readLine(false);
+                }
+                while (position < startOffset && (bufferPosition < bufferLimit || fill())) {
+                    readLine(false);
+                }
+            } else if (shard.path.toString().endsWith(".gz")) {
+                this.bgzfInputStream = null;
+                this.inputStream = new GZIPInputStream(new FileInputStream(shard.path.toFile()), READ_BUFFER_SIZE);
+                this.position = 0;
+                while (position < startOffset && (bufferPosition < bufferLimit || fill())) {
+                    readLine(false);
+                }
+            } else {
+                this.bgzfInputStream = null;
+                FileChannel channel = FileChannel.open(shard.path, StandardOpenOption.READ);
+                long start = Math.max(shard.start, startOffset);
+                // Starting one byte before makes a shard starting exactly at a line beginning not to skip that line
+                this.position = Math.max(0, start - 1);
+                channel.position(position);
+                this.inputStream = Channels.newInputStream(channel);
+                if (start > 0) {
+                    readLine(false);
+                }
+            }
+        }
+
+        /**
+         * @return offset of the next line, in the uncompressed content for gzipped files and BGZF shards
+         */
+        long getPosition() {
+            return position;
+        }
+
+        String readLine() throws IOException {
+            if ((bgzfInputStream != null ? lastBlock : position) >= end) {
+                return null;
+            }
+            return readLine(true);
+        }
+
+        private String readLine(boolean keep) throws IOException {
+            line.reset();
+            boolean eof = true;
+            while (bufferPosition < bufferLimit || fill()) {
+                eof = false;
+                lastBlock = bufferBlock;
+                int from = bufferPosition;
+                while (bufferPosition < bufferLimit && buffer[bufferPosition] != '\n') {
+                    bufferPosition++;
+                }
+                if (keep) {
+                    line.write(buffer, from, bufferPosition - from);
+                }
+                position += bufferPosition - from;
+                if (bufferPosition < bufferLimit) {
+                    // New line character found
+                    bufferPosition++;
+                    position++;
+                    return keep ? toLine() : null;
+                }
             }
-        } catch (Exception e) {
-            logger.error(e.getMessage());
+            return eof || !keep ? null : toLine();
+        }
+
+        private boolean fill() throws IOException {
+            int read = inputStream.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            bufferLimit = Math.max(read, 0);
+            if (bgzfInputStream != null && read > 0) {
+                // A read never returns bytes of two blocks
+                bufferBlock = bgzfInputStream.getBlockAddress();
+            }
+            return read > 0;
+        }
+
+        private String toLine() {
+            int size = line.size();
+            String value = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            // Windows line endings
+            return size > 0 && value.charAt(value.length() - 1) == '\r' ? value.substring(0, value.length() - 1) : value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
         }
-        return inputFileRecords;
     }
 
     public void index(String data) throws ClassNotFoundException, NoSuchMethodException,
@@ -189,6 +594,27 @@ public class LoadRunner {
                         String[].class, CellBaseConfiguration.class)
                 .newInstance(blockingQueue, data, database, "", new String[]{""}, cellBaseConfiguration);
         cellBaseLoader.createIndex(data);
+        droppedIndexes.remove(data);
+    }
+
+    /**
+     * Creates the indexes dropped before loading that have not been created yet, e.g. because the load failed before
+     * reaching the index step. Errors are logged so that the indexes of all the collections are attempted.
+     */
+    public void createDroppedIndexes() {
+        for (String data : new ArrayList<>(droppedIndexes)) {
+            createDroppedIndex(data);
+        }
+    }
+
+    private void createDroppedIndex(String data) {
+        logger.warn("Creating the indexes of '{}' dropped before loading", data);
+        try {
+            index(data);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                | InstantiationException | LoaderException e) {
+            logger.error("Indexes of '{}' could not be created, please run its index script: {}", data, e.getMessage());
+        }
     }
 
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a BGZF file, e.g. one written by {@link ParallelBgzfOutputStream}, starting at any of its blocks. A read never
+ * returns bytes of two blocks, so the address of the block of the bytes just read is always known. Blocks can also be
+ * read compressed with {@link #readCompressedBlock()} and inflated somewhere else, e.g. in a thread pool, but both
+ * ways of reading must not be mixed.
+ */
+public class BgzfInputStream extends InputStream {
+
+    private static final int HEADER_SIZE = 18;
+    private static final int FIXED_HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 8;
+    private static final int GZIP_ID1 = 0x1f;
+    private static final int GZIP_ID2 = 0x8b;
+    private static final int FEXTRA = 4;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final Path file;
+    private final DataInputStream inputStream;
+    private long nextBlockAddress;
+    private long blockAddress = -1;
+    private long numBlocks;
+    private byte[] block = new byte[0];
+    private int blockPosition;
+
+    public BgzfInputStream(Path file) throws IOException {
+        this(file, 0);
+    }
+
+    /**
+     * @param file         BGZF file
+     * @param blockAddress offset in the file of the block where reading starts
+     * @throws IOException if the file cannot be opened
+     */
+    public BgzfInputStream(Path file, long blockAddress) throws IOException {
+        this.file = file;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(blockAddress);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.inputStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE));
+        this.nextBlockAddress = blockAddress;
+    }
+
+    /**
+     * @param file file to check
+     * @return whether the file starts with a BGZF block, plain gzip files can not be split in blocks
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBgzf(Path file) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int length = 0;
+            int read;
+            while (length < HEADER_SIZE && (read = inputStream.read(header, length, HEADER_SIZE - length)) > 0) {
+                length += read;
+            }
+            // The BC subfield is the first one in the files written by bgzip and htsjdk
+            return length == HEADER_SIZE && (header[0] & 0xff) == GZIP_ID1 && (header[1] & 0xff) == GZIP_ID2
+                    && (header[3] & FEXTRA) != 0 && header[12] == 'B' && header[13] == 'C';
+        }
+    }
+
+    /**
+     * Finds block boundaries by reading just the block headers, no block is inflated.
+     *
+     * @param file      BGZF file
+     * @param positions offsets in the file, sorted
+     * @return for each position the address of the first block starting at or after it, the size of the file if none
+     * @throws IOException if the file cannot be read or is not a BGZF file
+     */
+    public static long[] getBlockAddresses(Path file, long... positions) throws IOException {
+        long[] addresses = new long[positions.length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long address = 0;
+            long blockNumber = 0;
+            int i = 0;
+            while (i < positions.length) {
+                if (address >= positions[i] || address >= size) {
+                    addresses[i++] = Math.min(address, size);
+                } else {
+                    byte[] header = new byte[FIXED_HEADER_SIZE];
+                    readFully(channel, header, address);
+                    byte[] extra = new byte[getExtraLength(header, blockNumber, file)];
+                    readFully(channel, extra, address + FIXED_HEADER_SIZE);
+                    address += getBlockSize(extra, blockNumber, file);
+                    blockNumber++;
+                }
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return address of the block of the bytes returned by the last read, -1 if nothing has been read
+     */
+    public long getBlockAddress() {
+        return blockAddress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (blockPosition == block.length && !nextBlock()) {
+            return -1;
+        }
+        return block[blockPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (blockPosition == block.length && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(length, block.length - blockPosition);
+        System.arraycopy(block, blockPosition, bytes, offset, n);
+        blockPosition += n;
+        return n;
+    }
+
+    /**
+     * Empty blocks, e.g. the end of file marker, are skipped.
+     *
+     * @return false at the end of the file
+     */
+    private boolean nextBlock() throws IOException {
+        do {
+            long address = nextBlockAddress;
+            byte[] compressedBlock = readCompressedBlock();
+            if (compressedBlock == null) {
+                return false;
+            }
+            block = inflate(compressedBlock);
+            blockAddress = address;
+            blockPosition = 0;
+        } while (block.length == 0);
+        return true;
+    }
+
+    /**
+     * @return the next block from the end of its header, to be inflated with {@link #inflate(byte[])}, null at the end
+     * of the file
+     * @throws IOException if the file cannot be read or is not a BGZF file
+     */
+    public byte[] readCompressedBlock() throws IOException {
+        int id1 = inputStream.read();
+        if (id1 < 0) {
+            return null;
+        }
+        byte[] header = new byte[FIXED_HEADER_SIZE];
+        header[0] = (byte) id1;
+        inputStream.readFully(header, 1, FIXED_HEADER_SIZE - 1);
+        byte[] extra = new byte[getExtraLength(header, numBlocks, file)];
+        inputStream.readFully(extra);
+        int blockSize = getBlockSize(extra, numBlocks, file);
+
+        byte[] compressedBlock = new byte[blockSize - FIXED_HEADER_SIZE - extra.length];
+        inputStream.readFully(compressedBlock);
+        nextBlockAddress += blockSize;
+        numBlocks++;
+        return compressedBlock;
+    }
+
+    /**
+     * @param compressedBlock compressed data followed by the CRC and the size of the data, as read by
+     *                        {@link #readCompressedBlock()}
+     * @return the data of the block
+     * @throws IOException if the block is truncated or corrupted
+     */
+    public static byte[] inflate(byte[] compressedBlock) throws IOException {
+        int trailer = compressedBlock.length - TRAILER_SIZE;
+        int size = readInt(compressedBlock, trailer + 4);
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressedBlock, 0, trailer);
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, size - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != size) {
+                throw new IOException("Truncated BGZF block, " + length + " bytes instead of " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted BGZF block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, size);
+        if ((int) crc32.getValue() != readInt(compressedBlock, trailer)) {
+            throw new IOException("BGZF block CRC does not match");
+        }
+        return data;
+    }
+
+    private static int getExtraLength(byte[] header, long blockNumber, Path file) throws IOException {
+        if ((header[0] & 0xff) != GZIP_ID1 || (header[1] & 0xff) != GZIP_ID2 || (header[3] & FEXTRA) == 0) {
+            throw new IOException("Not a BGZF block at block " + blockNumber + " of " + file);
+        }
+        return (header[10] & 0xff) | (header[11] & 0xff) << 8;
+    }
+
+    private static int getBlockSize(byte[] extra, long blockNumber, Path file) throws IOException {
+        for (int i = 0; i + 4 <= extra.length; i += 4 + ((extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8)) {
+            if (extra[i] == 'B' && extra[i + 1] == 'C') {
+                return ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+            }
+        }
+        throw new IOException("BGZF block size missing at block " + blockNumber + " of " + file);
+    }
+
+    private static void readFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated BGZF block at offset " + position);
+            }
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
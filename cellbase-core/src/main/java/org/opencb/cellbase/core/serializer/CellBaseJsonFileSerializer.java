@@ -17,31 +17,48 @@
 package org.opencb.cellbase.core.serializer;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.zip.GZIPOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by parce on 2/6/15.
+ *
+ * Different files can be written from different threads at the same time, writes to the same file are serialized.
+ * Objects are serialized as UTF-8 JSON lines into a buffer of the calling thread, and only written to the
+ * {@link ParallelBgzfOutputStream} of the file once fully serialized, so an object failing to serialize leaves no
+ * fragment in the file. Files are compressed in parallel as concatenated gzip members that any gzip reader can read.
  */
 public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
 
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // Buffers grown by huge objects are not kept
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
     private final Path outdir;
     private final String fileName;
-    private final HashMap<String, BufferedWriter> bufferedWriters;
+    private final Map<String, OutputStream> outputStreams;
 
     private boolean serializeEmptyValues;
     private boolean excludeNullValues;
     private boolean requireGettersForSetters;
     private ObjectWriter jsonObjectWriter;
+    private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(BUFFER_SIZE));
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     public CellBaseJsonFileSerializer(Path outdir) {
         this(outdir, null);
@@ -62,7 +79,7 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
         this.serializeEmptyValues = serializeEmptyValues;
         this.excludeNullValues = excludeNullValues;
         this.requireGettersForSetters = requireGettersForSetters;
-        this.bufferedWriters = new HashMap<>();
+        this.outputStreams = new ConcurrentHashMap<>();
         init();
     }
 
@@ -72,8 +89,10 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
 
     @Override
     public void close() throws IOException {
-        for (BufferedWriter bw : bufferedWriters.values()) {
-            bw.close();
+        for (OutputStream outputStream : outputStreams.values()) {
+            synchronized (outputStream) {
+                outputStream.close();
+            }
         }
 
     }
@@ -88,21 +107,50 @@ public class CellBaseJsonFileSerializer implements CellBaseFileSerializer {
             jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
         }
         jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, requireGettersForSetters);
+        // Many objects are written to the same stream, it must not be flushed or closed after each one
+        jsonObjectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        jsonObjectMapper.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
+        jsonObjectMapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
         jsonObjectWriter = jsonObjectMapper.writer();
     }
 
+    /**
+     * @param elem     object to be written
+     * @param filename name of the file, without the '.json.gz' extension
+     * @throws UncheckedIOException if the file cannot be created or written, objects failing to serialize are just
+     * logged and skipped
+     */
     public void serialize(Object elem, String filename) {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        try {
+            jsonObjectWriter.writeValue(buffer, elem);
+        } catch (IOException e) {
+            logger.error("Object could not be serialized to '{}', skipping it: {}", filename, e.getMessage());
+            return;
+        }
+        buffer.write('\n');
+
+        OutputStream outputStream = outputStreams.computeIfAbsent(filename, this::newOutputStream);
         try {
-            if (bufferedWriters.get(filename) == null) {
-                Path outputFilePath = outdir.resolve(filename + ".json.gz");
-                BufferedWriter bw = new BufferedWriter(
-                        new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(outputFilePath))));
-                bufferedWriters.put(filename, bw);
+            synchronized (outputStream) {
+                buffer.writeTo(outputStream);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing '" + filename + "'", e);
+        } finally {
+            if (buffer.size() > MAX_BUFFER_SIZE) {
+                buffers.remove();
             }
-            bufferedWriters.get(filename).write(jsonObjectWriter.writeValueAsString(elem));
-            bufferedWriters.get(filename).newLine();
+        }
+    }
+
+    private OutputStream newOutputStream(String filename) {
+        try {
+            Path outputFilePath = outdir.resolve(filename + ".json.gz");
+            return new ParallelBgzfOutputStream(Files.newOutputStream(outputFilePath));
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses blocks of data in a thread pool. Every block is written as an independent gzip
+ * member with the BGZF extra field, so the output can be read by any gzip reader, including GZIPInputStream, and by
+ * BGZF aware tools. Blocks are written in order and the number of blocks being compressed is bounded.
+ *
+ * Data is only compressed in full blocks: {@link #flush()} writes the blocks already compressed but does not cut the
+ * current one. Not thread safe.
+ */
+public class ParallelBgzfOutputStream extends OutputStream {
+
+    // Same limits than bgzip, a block of incompressible data still fits in the maximum BGZF block size
+    static final int MAX_INPUT_SIZE = 0xff00;
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+
+    static final byte[] EOF_BLOCK = {0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42,
+            0x43, 0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static volatile ExecutorService sharedExecutorService;
+
+    private final OutputStream outputStream;
+    private final ExecutorService executorService;
+    private final int maxPendingBlocks;
+    private final Deque<Future<Block>> pendingBlocks;
+    private final Deque<byte[]> freeBuffers;
+
+    private byte[] buffer;
+    private int size;
+    private boolean closed;
+
+    public ParallelBgzfOutputStream(OutputStream outputStream) {
+        this(outputStream, getSharedExecutorService(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param outputStream     output stream, closed when this stream is closed
+     * @param executorService  thread pool where blocks are compressed
+     * @param maxPendingBlocks maximum number of blocks being compressed at any time
+     */
+    public ParallelBgzfOutputStream(OutputStream outputStream, ExecutorService executorService, int maxPendingBlocks) {
+        this.outputStream = outputStream;
+        this.executorService = executorService;
+        this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+        this.pendingBlocks = new ArrayDeque<>();
+        this.freeBuffers = new ArrayDeque<>();
+        this.buffer = new byte[MAX_INPUT_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[size++] = (byte) b;
+        if (size == MAX_INPUT_SIZE) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, MAX_INPUT_SIZE - size);
+            System.arraycopy(bytes, offset, buffer, size, n);
+            size += n;
+            offset += n;
+            length -= n;
+            if (size == MAX_INPUT_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+            writeBlock(pendingBlocks.poll());
+        }
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (size > 0) {
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(pendingBlocks.poll());
+            }
+            outputStream.write(EOF_BLOCK);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] input = buffer;
+        int length = size;
+        pendingBlocks.add(executorService.submit(() -> compress(input, length)));
+        buffer = freeBuffers.isEmpty() ? new byte[MAX_INPUT_SIZE] : freeBuffers.poll();
+        size = 0;
+
+        // Write blocks already compressed and wait if too many are pending
+        while (!pendingBlocks.isEmpty() && (pendingBlocks.size() > maxPendingBlocks || pendingBlocks.peek().isDone())) {
+            writeBlock(pendingBlocks.poll());
+        }
+    }
+
+    private void writeBlock(Future<Block> future) throws IOException {
+        Block block;
+        try {
+            block = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error compressing block", e.getCause());
+        }
+        outputStream.write(block.output, 0, block.outputLength);
+        freeBuffers.add(block.input);
+    }
+
+    /**
+     * Compresses data in the calling thread as a sequence of BGZF blocks, with no EOF block. Used to compress data in
+     * worker threads that is later appended to a BGZF file, which must be ended with {@link #getEofBlock()}.
+     *
+     * @param data   data to compress
+     * @param offset start of the data
+     * @param length number of bytes to compress
+     * @return BGZF blocks
+     */
+    public static byte[] compressBlocks(byte[] data, int offset, int length) {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream(length / 4 + HEADER_SIZE + TRAILER_SIZE);
+        byte[] output = new byte[MAX_BLOCK_SIZE];
+        for (int start = offset; start < offset + length; start += MAX_INPUT_SIZE) {
+            int blockSize = compress(data, start, Math.min(MAX_INPUT_SIZE, offset + length - start), output);
+            blocks.write(output, 0, blockSize);
+        }
+        return blocks.toByteArray();
+    }
+
+    /**
+     * @return empty block marking the end of a BGZF file
+     */
+    public static byte[] getEofBlock() {
+        return EOF_BLOCK.clone();
+    }
+
+    private static Block compress(byte[] input, int length) {
+        byte[] output = new byte[MAX_BLOCK_SIZE];
+        return new Block(input, output, compress(input, 0, length, output));
+    }
+
+    /**
+     * @return size of the block written in output
+     */
+    private static int compress(byte[] input, int offset, int length, byte[] output) {
+        Deflater deflater = DEFLATER.get();
+        int compressedLength = deflate(deflater, input, offset, length, output);
+        if (compressedLength < 0) {
+            // Only possible with incompressible data, stored blocks always fit
+            Deflater storeDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+            try {
+                compressedLength = deflate(storeDeflater, input, offset, length, output);
+            } finally {
+                storeDeflater.end();
+            }
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(input, offset, length);
+        int blockSize = HEADER_SIZE + compressedLength + TRAILER_SIZE;
+
+        // Gzip header with FEXTRA flag and the BGZF 'BC' subfield holding the block size - 1
+        output[0] = 0x1f;
+        output[1] = (byte) 0x8b;
+        output[2] = 0x08;
+        output[3] = 0x04;
+        output[4] = 0;
+        output[5] = 0;
+        output[6] = 0;
+        output[7] = 0;
+        output[8] = 0;
+        output[9] = (byte) 0xff;
+        output[10] = 0x06;
+        output[11] = 0;
+        output[12] = 'B';
+        output[13] = 'C';
+        output[14] = 0x02;
+        output[15] = 0;
+        writeShort(output, 16, blockSize - 1);
+
+        int trailer = HEADER_SIZE + compressedLength;
+        writeInt(output, trailer, (int) crc32.getValue());
+        writeInt(output, trailer + 4, length);
+        return blockSize;
+    }
+
+    /**
+     * @return compressed size or -1 if it does not fit in a BGZF block
+     */
+    private static int deflate(Deflater deflater, byte[] input, int offset, int length, byte[] output) {
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        int capacity = MAX_BLOCK_SIZE - HEADER_SIZE - TRAILER_SIZE;
+        int compressedLength = deflater.deflate(output, HEADER_SIZE, capacity);
+        return deflater.finished() ? compressedLength : -1;
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        writeShort(bytes, offset, value);
+        writeShort(bytes, offset + 2, value >>> 16);
+    }
+
+    private static ExecutorService getSharedExecutorService() {
+        if (sharedExecutorService == null) {
+            synchronized (ParallelBgzfOutputStream.class) {
+                if (sharedExecutorService == null) {
+                    AtomicInteger threadCount = new AtomicInteger();
+                    sharedExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                        Thread thread = new Thread(runnable, "bgzf-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return sharedExecutorService;
+    }
+
+    private static class Block {
+        private final byte[] input;
+        private final byte[] output;
+        private final int outputLength;
+
+        Block(byte[] input, byte[] output, int outputLength) {
+            this.input = input;
+            this.output = output;
+            this.outputLength = outputLength;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.*;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResponse;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Avro encoding of REST QueryResponse objects whose results are biodata Avro records, e.g. VariantAnnotation. The results
+ * are written with their own schema inside a QueryResponse envelope, see {@link #getAvroSchema(Schema)}, so decoding
+ * returns the same record classes without going through JSON. Query options are kept as a JSON string.
+ */
+public final class QueryResponseCodec {
+
+    public static final String AVRO_MEDIA_TYPE = "avro/binary";
+    public static final String PROTOBUF_MEDIA_TYPE = "application/x-protobuf";
+
+    /**
+     * Media type parameter with the full name of the Avro schema of the results, e.g.
+     * avro/binary;record=org.opencb.biodata.models.variant.avro.VariantAnnotation.
+     */
+    public static final String RECORD_PARAMETER = "record";
+
+    private static final String NAMESPACE = "org.opencb.cellbase.core.serializer.avro";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private QueryResponseCodec() {
+    }
+
+    /**
+     * @param queryResponse QueryResponse to encode
+     * @return schema shared by all the results of the queryResponse, null if some result is not an Avro record or records of
+     * different schemas are mixed
+     */
+    public static Schema getResultSchema(QueryResponse<?> queryResponse) {
+        Schema schema = null;
+        for (Object queryResult : queryResponse.getResponse()) {
+            if (!(queryResult instanceof QueryResult)) {
+                return null;
+            }
+            List<?> result = ((QueryResult<?>) queryResult).getResult();
+            if (result == null) {
+                continue;
+            }
+            for (Object object : result) {
+                if (!(object instanceof SpecificRecord)
+                        || schema != null && !schema.equals(((SpecificRecord) object).getSchema())) {
+                    return null;
+                }
+                schema = ((SpecificRecord) object).getSchema();
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Schema of the QueryResponse envelope, the same for the writer and the reader as long as both use the same version of
+     * the result record.
+     * @param resultSchema schema of the results
+     * @return QueryResponse schema
+     */
+    public static Schema getAvroSchema(Schema resultSchema) {
+        Schema queryResultSchema = SchemaBuilder.record("QueryResult").namespace(NAMESPACE).fields()
+                .optionalString("id")
+                .requiredInt("dbTime")
+                .requiredInt("numResults")
+                .requiredLong("numTotalResults")
+                .optionalString("warningMsg")
+                .optionalString("errorMsg")
+                .optionalString("resultType")
+                .name("result").type().array().items(resultSchema).noDefault()
+                .endRecord();
+        return SchemaBuilder.record("QueryResponse").namespace(NAMESPACE).fields()
+                .optionalString("apiVersion")
+                .requiredInt("time")
+                .optionalString("warning")
+                .optionalString("error")
+                .optionalString("queryOptions")
+                .name("response").type().array().items(queryResultSchema).noDefault()
+                .endRecord();
+    }
+
+    /**
+     * @param queryResponse QueryResponse to encode
+     * @param resultSchema schema of the results, as returned by {@link #getResultSchema(QueryResponse)}
+     * @return encoded QueryResponse
+     * @throws IOException if the response cannot be encoded, e.g. a field not nullable in the schema is null
+     */
+    public static byte[] encodeAvro(QueryResponse<?> queryResponse, Schema resultSchema) throws IOException {
+        Schema schema = getAvroSchema(resultSchema);
+        Schema queryResultSchema = schema.getField("response").schema().getElementType();
+
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("apiVersion", queryResponse.getApiVersion());
+        record.put("time", queryResponse.getTime());
+        record.put("warning", queryResponse.getWarning());
+        record.put("error", queryResponse.getError());
+        if (queryResponse.getQueryOptions() != null) {
+            record.put("queryOptions", OBJECT_MAPPER.writeValueAsString(queryResponse.getQueryOptions()));
+        }
+        List<GenericRecord> queryResults = new ArrayList<>(queryResponse.getResponse().size());
+        for (Object object : queryResponse.getResponse()) {
+            QueryResult<?> queryResult = (QueryResult<?>) object;
+            GenericRecord queryResultRecord = new GenericData.Record(queryResultSchema);
+            queryResultRecord.put("id", queryResult.getId());
+            queryResultRecord.put("dbTime", queryResult.getDbTime());
+            queryResultRecord.put("numResults", queryResult.getNumResults());
+            queryResultRecord.put("numTotalResults", queryResult.getNumTotalResults());
+            queryResultRecord.put("warningMsg", queryResult.getWarningMsg());
+            queryResultRecord.put("errorMsg", queryResult.getErrorMsg());
+            queryResultRecord.put("resultType", queryResult.getResultType());
+            queryResultRecord.put("result", queryResult.getResult() != null ? queryResult.getResult() : new ArrayList<>());
+            queryResults.add(queryResultRecord);
+        }
+        record.put("response", queryResults);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        try {
+            new SpecificDatumWriter<GenericRecord>(schema).write(record, encoder);
+        } catch (RuntimeException e) {
+            // Avro reports null values of not nullable fields with a NullPointerException
+            throw new IOException("Error encoding QueryResponse as " + resultSchema.getFullName() + ": " + e.getMessage(), e);
+        }
+        encoder.flush();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * @param bytes encoded QueryResponse
+     * @param clazz class of the Avro record of the results
+     * @param <T> type of the results
+     * @return decoded QueryResponse with results of the given class
+     * @throws IOException if the bytes are not a QueryResponse of clazz records
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> QueryResponse<T> decodeAvro(byte[] bytes, Class<T> clazz) throws IOException {
+        Schema schema = getAvroSchema(SpecificData.get().getSchema(clazz));
+        GenericRecord record;
+        try {
+            record = new QueryResponseDatumReader(schema).read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+        } catch (RuntimeException e) {
+            throw new IOException("Error decoding QueryResponse of " + clazz.getName() + ": " + e.getMessage(), e);
+        }
+
+        QueryResponse<T> queryResponse = new QueryResponse<>();
+        queryResponse.setApiVersion((String) record.get("apiVersion"));
+        queryResponse.setTime((Integer) record.get("time"));
+        queryResponse.setWarning((String) record.get("warning"));
+        queryResponse.setError((String) record.get("error"));
+        if (record.get("queryOptions") != null) {
+            queryResponse.setQueryOptions(OBJECT_MAPPER.readValue((String) record.get("queryOptions"), QueryOptions.class));
+        }
+        List<GenericRecord> queryResultRecords = (List<GenericRecord>) record.get("response");
+        List<QueryResult<T>> queryResults = new ArrayList<>(queryResultRecords.size());
+        for (GenericRecord queryResultRecord : queryResultRecords) {
+            QueryResult<T> queryResult = new QueryResult<>((String) queryResultRecord.get("id"),
+                    (Integer) queryResultRecord.get("dbTime"), (Integer) queryResultRecord.get("numResults"),
+                    (Long) queryResultRecord.get("numTotalResults"), (String) queryResultRecord.get("warningMsg"),
+                    (String) queryResultRecord.get("errorMsg"), (List<T>) queryResultRecord.get("result"));
+            queryResult.setResultType((String) queryResultRecord.get("resultType"));
+            queryResults.add(queryResult);
+        }
+        queryResponse.setResponse(queryResults);
+        return queryResponse;
+    }
+
+    /**
+     * Reads the envelope as generic records and the results as their specific classes. Lists, maps and strings are returned
+     * as ArrayList, LinkedHashMap and String, the same objects the JSON parser creates.
+     */
+    private static class QueryResponseDatumReader extends SpecificDatumReader<GenericRecord> {
+
+        QueryResponseDatumReader(Schema schema) {
+            super(schema);
+        }
+
+        @Override
+        protected Object newArray(Object old, int size, Schema schema) {
+            return new ArrayList<>(size);
+        }
+
+        @Override
+        protected Object newMap(Object old, int size) {
+            return new LinkedHashMap<>();
+        }
+
+        @Override
+        protected Object readString(Object old, Schema expected, Decoder in) throws IOException {
+            return in.readString();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.Score;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.cellbase.core.common.GenomicScoreBinaryFile;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Functional scores of variants read from the cadd.bin file written by the build with --cadd-binary instead of the
+ * database. Scores are decoded as VariantMongoDBAdaptor.getFunctionalScoreVariant does, so annotations are the same.
+ * One adaptor can be shared by all the annotation threads.
+ */
+public class CaddScoreFileAdaptor implements Closeable {
+
+    public static final String CADD_RAW = "cadd_raw";
+    public static final String CADD_SCALED = "cadd_scaled";
+
+    private static final float DECIMAL_RESOLUTION = 100f;
+
+    private final GenomicScoreBinaryFile.Reader reader;
+
+    public CaddScoreFileAdaptor(Path file) throws IOException {
+        this.reader = new GenomicScoreBinaryFile.Reader(file);
+    }
+
+    /**
+     * @param variants variants to look up, only SNVs have functional scores
+     * @param options  not used, same arguments as VariantDBAdaptor
+     * @return a QueryResult for each variant, in the same order
+     * @throws IOException if the file cannot be read
+     */
+    public List<QueryResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions options) throws IOException {
+        List<QueryResult<Score>> queryResults = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            if (variant.getType() == VariantType.SNV) {
+                queryResults.add(getFunctionalScoreVariant(variant, options));
+            } else {
+                queryResults.add(new QueryResult<>(variant.toString(), 0, 0, 0, null, null, Collections.emptyList()));
+            }
+        }
+        return queryResults;
+    }
+
+    public QueryResult<Score> getFunctionalScoreVariant(Variant variant, QueryOptions options) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<Score> scores = new ArrayList<>(2);
+        Long raw = reader.get(CADD_RAW, variant.getChromosome(), variant.getStart());
+        if (raw != null) {
+            scores.add(createScore(getValue(raw, variant.getAlternate()) - 10, CADD_RAW));
+        }
+        Long scaled = reader.get(CADD_SCALED, variant.getChromosome(), variant.getStart());
+        if (scaled != null) {
+            scores.add(createScore(getValue(scaled, variant.getAlternate()), CADD_SCALED));
+        }
+        String id = variant.getChromosome() + "_" + variant.getStart() + "_" + variant.getReference() + "_" + variant.getAlternate();
+        return new QueryResult<>(id, (int) (System.currentTimeMillis() - startTime), scores.size(), scores.size(), null, null,
+                scores);
+    }
+
+    /**
+     * @return the score of the alternate allele, packed as four shorts in A, C, G, T order
+     */
+    private static float getValue(long packedValue, String alternate) {
+        switch (alternate.toLowerCase()) {
+            case "a":
+                return ((short) (packedValue >> 48)) / DECIMAL_RESOLUTION;
+            case "c":
+                return ((short) (packedValue >> 32)) / DECIMAL_RESOLUTION;
+            case "g":
+                return ((short) (packedValue >> 16)) / DECIMAL_RESOLUTION;
+            case "t":
+                return ((short) packedValue) / DECIMAL_RESOLUTION;
+            default:
+                return 0f;
+        }
+    }
+
+    private static Score createScore(float value, String source) {
+        return Score.newBuilder()
+                .setScore(value)
+                .setSource(source)
+                .setDescription(null)
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -62,6 +62,7 @@ public class VariantAnnotationCalculator {
     private RepeatsDBAdaptor repeatsDBAdaptor;
     private ProteinDBAdaptor proteinDBAdaptor;
     private ConservationDBAdaptor conservationDBAdaptor;
+    private CaddScoreFileAdaptor caddScoreFileAdaptor;
     private Set<String> annotatorSet;
     private String includeGeneFields;
 
@@ -103,6 +104,15 @@ public class VariantAnnotationCalculator {
         logger.debug("VariantAnnotationMongoDBAdaptor: in 'constructor'");
     }
 
+    /**
+     * @param caddScoreFileAdaptor when not null functional scores are read from this file instead of the database
+     * @return this calculator
+     */
+    public VariantAnnotationCalculator setCaddScoreFileAdaptor(CaddScoreFileAdaptor caddScoreFileAdaptor) {
+        this.caddScoreFileAdaptor = caddScoreFileAdaptor;
+        return this;
+    }
+
     private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig() {
         return (new VariantNormalizer.VariantNormalizerConfig())
                 .setReuseVariants(false)
@@ -1500,8 +1510,9 @@ public class VariantAnnotationCalculator {
 //            List<QueryResult> variantFunctionalScoreQueryResultList =
 //                    variantFunctionalScoreDBAdaptor.getAllByVariantList(variantList, queryOptions);
             logger.debug("Query variant functional score");
-            List<QueryResult<Score>> variantFunctionalScoreQueryResultList =
-                    variantDBAdaptor.getFunctionalScoreVariant(variantList, queryOptions);
+            List<QueryResult<Score>> variantFunctionalScoreQueryResultList = caddScoreFileAdaptor != null
+                    ? caddScoreFileAdaptor.getFunctionalScoreVariant(variantList, queryOptions)
+                    : variantDBAdaptor.getFunctionalScoreVariant(variantList, queryOptions);
             logger.debug("VariantFunctionalScore query performance is {}ms for {} variants",
                     System.currentTimeMillis() - startTime, variantList.size());
             return variantFunctionalScoreQueryResultList;
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.serializer.ParallelBgzfOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Interrupts a load in the middle of a batch and resumes it, the result must be the same as the one of an
+ * uninterrupted load. The database is replaced by an in-memory loader which, as MongoDB, skips duplicated ids of a
+ * resumed load and counts any other duplicated id as an error.
+ */
+public class LoadRunnerResumeTest {
+
+    private static final int NUM_LINES = 12000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resume() throws Exception {
+        Path bgzfFile = createBgzfFile("variation_chr4.json.gz");
+        List<Path> files = Arrays.asList(createFile("variation_chr1.json", false), createFile("variation_chr2.json.gz", true),
+                bgzfFile);
+
+        // Uninterrupted load, the BGZF file is split in 3 shards
+        InMemoryLoader.reset(-1);
+        LoadRunner loadRunner = new LoadRunner(InMemoryLoader.class.getName(), "test", 2, 2, new CellBaseConfiguration());
+        loadRunner.setMinShardSize(Files.size(bgzfFile) / 3);
+        loadRunner.load(files, "variation");
+        Map<String, String> expected = new HashMap<>(InMemoryLoader.DOCUMENTS);
+        assertEquals(3 * NUM_LINES, expected.size());
+
+        // The loader dies half way through its 5th batch, nothing else reaches the database
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("load.journal");
+        InMemoryLoader.reset(5);
+        try (LoadJournal loadJournal = new LoadJournal(journalFile, false)) {
+            loadRunner.setLoadJournal(loadJournal);
+            loadRunner.load(files, "variation");
+        }
+        int interruptedSize = InMemoryLoader.DOCUMENTS.size();
+        assertTrue(interruptedSize > 0 && interruptedSize < 3 * NUM_LINES);
+
+        // Resume, committed batches are not loaded again and the partially loaded batch does not duplicate documents
+        InMemoryLoader.resume();
+        try (LoadJournal loadJournal = new LoadJournal(journalFile, true)) {
+            loadRunner.setLoadJournal(loadJournal);
+            loadRunner.load(files, "variation");
+        }
+        assertEquals(expected.size(), InMemoryLoader.DOCUMENTS.size());
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(InMemoryLoader.DOCUMENTS.values()));
+        assertTrue(InMemoryLoader.INSERTS.get() < 3 * NUM_LINES);
+
+        // Once completed, resuming again does not load anything
+        InMemoryLoader.resume();
+        try (LoadJournal loadJournal = new LoadJournal(journalFile, true)) {
+            loadRunner.setLoadJournal(loadJournal);
+            loadRunner.load(files, "variation");
+        }
+        assertEquals(0, InMemoryLoader.INSERTS.get());
+        assertEquals(expected.size(), InMemoryLoader.DOCUMENTS.size());
+        assertEquals(0, InMemoryLoader.DUPLICATES.get());
+    }
+
+    @Test
+    public void reloadDoesNotSkipDocuments() throws Exception {
+        List<Path> files = Collections.singletonList(createFile("variation_chr3.json", false));
+        LoadRunner loadRunner = new LoadRunner(InMemoryLoader.class.getName(), "test", 3, new CellBaseConfiguration());
+
+        InMemoryLoader.reset(-1);
+        loadRunner.load(files, "variation");
+        assertEquals(NUM_LINES, InMemoryLoader.DOCUMENTS.size());
+
+        // The same file loaded again, e.g. after being rebuilt, gets new ids and nothing is silently skipped
+        loadRunner.load(files, "variation");
+        assertEquals(2 * NUM_LINES, InMemoryLoader.DOCUMENTS.size());
+
+        // Same with a new journal, only resuming reuses the ids of the previous load
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("reload.journal");
+        try (LoadJournal loadJournal = new LoadJournal(journalFile, false)) {
+            loadRunner.setLoadJournal(loadJournal);
+            loadRunner.load(files, "variation");
+        }
+        assertEquals(3 * NUM_LINES, InMemoryLoader.DOCUMENTS.size());
+        assertEquals(0, InMemoryLoader.DUPLICATES.get());
+    }
+
+    @Test
+    public void journalInUse() throws Exception {
+        Path journalFile = temporaryFolder.getRoot().toPath().resolve("locked.journal");
+        try (LoadJournal loadJournal = new LoadJournal(journalFile, false)) {
+            List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+            try {
+                new LoadJournal(journalFile, false);
+                fail("A journal in use must not be opened by another load");
+            } catch (IOException e) {
+                // The journal of the running load is left untouched
+                assertEquals(lines, Files.readAllLines(journalFile, StandardCharsets.UTF_8));
+            }
+        }
+        // Unlocked once closed
+        new LoadJournal(journalFile, true).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetTooBig() {
+        LoadBatch batch = new LoadBatch(1, new byte[16], null, 0, false);
+        batch.add("{}", 1L << 40);
+    }
+
+    private Path createFile(String fileName, boolean gzip) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        OutputStream outputStream = Files.newOutputStream(file);
+        writeLines(fileName, gzip ? new GZIPOutputStream(outputStream) : outputStream);
+        return file;
+    }
+
+    private Path createBgzfFile(String fileName) throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        writeLines(fileName, new ParallelBgzfOutputStream(Files.newOutputStream(file)));
+        return file;
+    }
+
+    private void writeLines(String fileName, OutputStream outputStream) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < NUM_LINES; i++) {
+                writer.write("{\"chromosome\":\"" + fileName + "\",\"start\":" + i + ",\"reference\":\"A\",\"alternate\":\"T\"}\n");
+            }
+        }
+    }
+
+    /**
+     * Stand-in for a database loader, documents are kept by id and duplicated ids are skipped.
+     */
+    public static class InMemoryLoader extends CellBaseLoader {
+
+        static final Map<String, String> DOCUMENTS = new ConcurrentHashMap<>();
+        static final AtomicInteger INSERTS = new AtomicInteger();
+        // Duplicated ids outside a resumed load, MongoDBCellBaseLoader fails the load with them
+        static final AtomicInteger DUPLICATES = new AtomicInteger();
+        private static final AtomicInteger LOADED_BATCHES = new AtomicInteger();
+        private static volatile int crashAtBatch;
+        private static volatile boolean crashed;
+
+        public InMemoryLoader(BlockingQueue<List<String>> blockingQueue, String data, String database, String field,
+                              String[] innerFields, CellBaseConfiguration configuration) {
+            super(blockingQueue, data, database, field, innerFields, configuration);
+        }
+
+        static void reset(int crashAtBatch) {
+            DOCUMENTS.clear();
+            DUPLICATES.set(0);
+            resume();
+            InMemoryLoader.crashAtBatch = crashAtBatch;
+        }
+
+        static void resume() {
+            INSERTS.set(0);
+            LOADED_BATCHES.set(0);
+            crashAtBatch = -1;
+            crashed = false;
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public Integer call() {
+            int numLoaded = 0;
+            try {
+                List<String> batch;
+                while ((batch = blockingQueue.take()) != LoadRunner.POISON_PILL) {
+                    if (crashed) {
+                        continue;
+                    }
+                    if (LOADED_BATCHES.incrementAndGet() == crashAtBatch) {
+                        crashed = true;
+                        numLoaded += insert((LoadBatch) batch, batch.size() / 2);
+                    } else {
+                        numLoaded += insert((LoadBatch) batch, batch.size());
+                        commit(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return numLoaded;
+        }
+
+        private int insert(LoadBatch batch, int size) {
+            for (int i = 0; i < size; i++) {
+                INSERTS.incrementAndGet();
+                if (DOCUMENTS.putIfAbsent(Base64.getEncoder().encodeToString(batch.getDocumentId(i)), batch.get(i)) != null
+                        && !batch.isResumed()) {
+                    DUPLICATES.incrementAndGet();
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public void createIndex(String data) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.loader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.serializer.ParallelBgzfOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.*;
+
+/**
+ * Big files are split in shards read by several readers, every line must be loaded exactly once wherever the shard
+ * boundaries fall. Failures of the readers must fail the load.
+ */
+public class LoadRunnerTest {
+
+    private static final int NUM_LINES = 20000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shardedFile() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("variation_chr1.json");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < NUM_LINES; i++) {
+                // Lines of different lengths so that shard boundaries fall at any position within a line
+                writer.write("{\"id\":\"" + i + "\",\"annotation\":\"" + new String(new char[i % 97]).replace('\0', 'A') + "\"}\n");
+            }
+        }
+        long size = Files.size(file);
+
+        for (int numReaders : new int[]{2, 3, 7}) {
+            CountingLoader.LINES.clear();
+            LoadRunner loadRunner = new LoadRunner(CountingLoader.class.getName(), "test", 2, numReaders, new CellBaseConfiguration());
+            // Same as a file bigger than 64 MB read by numReaders readers
+            loadRunner.setMinShardSize(size / numReaders);
+            loadRunner.load(file, "variation");
+
+            assertEquals(NUM_LINES, CountingLoader.LINES.size());
+            for (int i = 0; i < NUM_LINES; i++) {
+                AtomicInteger count = CountingLoader.LINES.get("{\"id\":\"" + i + "\",\"annotation\":\""
+                        + new String(new char[i % 97]).replace('\0', 'A') + "\"}");
+                assertNotNull("Line " + i + " not loaded with " + numReaders + " readers", count);
+                assertEquals("Line " + i + " loaded more than once with " + numReaders + " readers", 1, count.get());
+            }
+        }
+    }
+
+    @Test
+    public void shardedBgzfFile() throws Exception {
+        // 64 bytes long lines, every block ends with a line break and the next line starts right at the block boundary
+        assertBgzfShards("variation_chr4.json.gz", i -> String.format("{\"id\":\"%08d\",\"annotation\":\"%s\"}", i,
+                new String(new char[30]).replace('\0', (char) ('A' + i % 26))));
+        // Lines of different lengths, blocks end at any position within a line
+        assertBgzfShards("variation_chr5.json.gz", i -> "{\"id\":\"" + i + "\",\"annotation\":\""
+                + new String(new char[i % 97]).replace('\0', 'A') + "\"}");
+    }
+
+    private void assertBgzfShards(String fileName, IntFunction<String> lineFunction) throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve(fileName);
+        try (Writer writer = new OutputStreamWriter(new ParallelBgzfOutputStream(Files.newOutputStream(file)),
+                StandardCharsets.UTF_8)) {
+            for (int i = 0; i < NUM_LINES; i++) {
+                writer.write(lineFunction.apply(i) + "\n");
+            }
+        }
+        long size = Files.size(file);
+
+        for (int numShards : new int[]{1, 2, 5}) {
+            for (int numReaders : new int[]{1, 3}) {
+                CountingLoader.LINES.clear();
+                LoadRunner loadRunner = new LoadRunner(CountingLoader.class.getName(), "test", 2, numReaders,
+                        new CellBaseConfiguration());
+                loadRunner.setMinShardSize(size / numShards);
+                loadRunner.load(file, "variation");
+
+                assertEquals(NUM_LINES, CountingLoader.LINES.size());
+                for (int i = 0; i < NUM_LINES; i++) {
+                    AtomicInteger count = CountingLoader.LINES.get(lineFunction.apply(i));
+                    assertNotNull("Line " + i + " not loaded from " + numShards + " shards", count);
+                    assertEquals("Line " + i + " loaded more than once from " + numShards + " shards", 1, count.get());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void readerFailure() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("variation_chr2.json");
+        Files.write(file, Arrays.asList("{\"id\":\"1\"}", "{\"id\":\"2\"}"), StandardCharsets.UTF_8);
+        Path corruptedFile = temporaryFolder.getRoot().toPath().resolve("variation_chr3.json.gz");
+        Files.write(corruptedFile, "not gzipped".getBytes(StandardCharsets.UTF_8));
+
+        CountingLoader.LINES.clear();
+        LoadRunner loadRunner = new LoadRunner(CountingLoader.class.getName(), "test", 2, 2, new CellBaseConfiguration());
+        try {
+            loadRunner.load(Arrays.asList(file, corruptedFile), "variation");
+            fail("The error of the reader must be propagated");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        // The loaders got their poison pills and finished with the lines of the other file
+        assertEquals(2, CountingLoader.LINES.size());
+    }
+
+    @Test
+    public void indexesCreatedAfterFailure() throws Exception {
+        Path corruptedFile = temporaryFolder.getRoot().toPath().resolve("gene.json.gz");
+        Files.write(corruptedFile, "not gzipped".getBytes(StandardCharsets.UTF_8));
+
+        CountingLoader.CREATED_INDEXES.clear();
+        CountingLoader.dropIndexes = true;
+        try {
+            LoadRunner loadRunner = new LoadRunner(CountingLoader.class.getName(), "test", 1, new CellBaseConfiguration());
+            try {
+                loadRunner.load(corruptedFile, "gene");
+                fail("The error of the reader must be propagated");
+            } catch (ExecutionException e) {
+                // The indexes dropped before loading are created again
+                assertEquals(Collections.singletonList("gene"), CountingLoader.CREATED_INDEXES);
+            }
+            // Already created, nothing left for the index step
+            loadRunner.createDroppedIndexes();
+            assertEquals(Collections.singletonList("gene"), CountingLoader.CREATED_INDEXES);
+        } finally {
+            CountingLoader.dropIndexes = false;
+        }
+    }
+
+    /**
+     * Stand-in for a database loader, counts how many times each line is loaded.
+     */
+    public static class CountingLoader extends CellBaseLoader {
+
+        static final Map<String, AtomicInteger> LINES = new ConcurrentHashMap<>();
+        static final List<String> CREATED_INDEXES = new CopyOnWriteArrayList<>();
+        private static volatile boolean dropIndexes;
+
+        public CountingLoader(BlockingQueue<List<String>> blockingQueue, String data, String database, String field,
+                              String[] innerFields, CellBaseConfiguration configuration) {
+            super(blockingQueue, data, database, field, innerFields, configuration);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public boolean preLoad() {
+            return dropIndexes;
+        }
+
+        @Override
+        public Integer call() {
+            int numLoaded = 0;
+            try {
+                List<String> batch;
+                while ((batch = blockingQueue.take()) != LoadRunner.POISON_PILL) {
+                    for (String line : batch) {
+                        LINES.computeIfAbsent(line, key -> new AtomicInteger()).incrementAndGet();
+                    }
+                    numLoaded += batch.size();
+                    commit(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return numLoaded;
+        }
+
+        @Override
+        public void createIndex(String data) {
+            CREATED_INDEXES.add(data);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
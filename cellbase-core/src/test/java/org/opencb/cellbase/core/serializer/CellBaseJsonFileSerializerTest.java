@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CellBaseJsonFileSerializerTest {
+
+    private static final ObjectMapper jsonObjectMapper = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<Map<String, Object>> createVariants(int numVariants) {
+        Random random = new Random(1);
+        List<Map<String, Object>> variants = new ArrayList<>(numVariants);
+        for (int i = 0; i < numVariants; i++) {
+            Map<String, Object> variant = new LinkedHashMap<>();
+            variant.put("chromosome", String.valueOf(1 + random.nextInt(22)));
+            variant.put("start", random.nextInt(200000000));
+            variant.put("id", "rs" + random.nextInt(100000000));
+            variant.put("reference", "ACGT".substring(random.nextInt(4)));
+            variant.put("alternate", "\u00c1CGT");
+            List<Map<String, Object>> frequencies = new ArrayList<>();
+            for (int j = 0; j < 6; j++) {
+                Map<String, Object> frequency = new LinkedHashMap<>();
+                frequency.put("study", "GNOMAD_GENOMES");
+                frequency.put("population", "POP" + j);
+                frequency.put("altAlleleFreq", random.nextFloat());
+                frequencies.add(frequency);
+            }
+            variant.put("populationFrequencies", frequencies);
+            variants.add(variant);
+        }
+        return variants;
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        List<Map<String, Object>> variants = createVariants(50000);
+        Path outdir = temporaryFolder.getRoot().toPath();
+        CellBaseJsonFileSerializer serializer = new CellBaseJsonFileSerializer(outdir, "variation");
+        for (Map<String, Object> variant : variants) {
+            serializer.serialize(variant);
+        }
+        serializer.close();
+        // Closing twice is allowed
+        serializer.close();
+
+        List<String> lines = readLines(outdir.resolve("variation.json.gz"));
+        assertEquals(variants.size(), lines.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(jsonObjectMapper.writeValueAsString(variants.get(i)), lines.get(i));
+        }
+    }
+
+    @Test
+    public void serializeConcurrently() throws Exception {
+        List<Map<String, Object>> variants = createVariants(20000);
+        Path outdir = temporaryFolder.getRoot().toPath();
+        CellBaseJsonFileSerializer serializer = new CellBaseJsonFileSerializer(outdir);
+
+        // One thread per file, as ConservationParser does
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String fileName = "variation_" + i;
+            futures.add(executorService.submit(() -> variants.forEach(variant -> serializer.serialize(variant, fileName))));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        serializer.close();
+
+        for (int i = 0; i < 4; i++) {
+            List<String> lines = readLines(outdir.resolve("variation_" + i + ".json.gz"));
+            assertEquals(variants.size(), lines.size());
+            assertEquals(jsonObjectMapper.writeValueAsString(variants.get(variants.size() - 1)), lines.get(lines.size() - 1));
+        }
+    }
+
+    @Test
+    public void failedObjectLeavesNoFragment() throws Exception {
+        List<Map<String, Object>> variants = createVariants(2);
+        Path outdir = temporaryFolder.getRoot().toPath();
+        CellBaseJsonFileSerializer serializer = new CellBaseJsonFileSerializer(outdir, "variation");
+        serializer.serialize(variants.get(0));
+        // Fails half way through, once its first property is serialized
+        serializer.serialize(new FailingObject());
+        serializer.serialize(variants.get(1));
+        serializer.close();
+
+        assertEquals(Arrays.asList(jsonObjectMapper.writeValueAsString(variants.get(0)),
+                jsonObjectMapper.writeValueAsString(variants.get(1))), readLines(outdir.resolve("variation.json.gz")));
+    }
+
+    /**
+     * The content must be the same as with the former implementation: a String per object written to a BufferedWriter
+     * over a single GZIPOutputStream.
+     */
+    @Test
+    public void sameContentAsGzipWriter() throws Exception {
+        List<Map<String, Object>> variants = createVariants(20000);
+        int numObjects = 100000;
+        Path outdir = temporaryFolder.getRoot().toPath();
+
+        ObjectWriter jsonObjectWriter = jsonObjectMapper.writer();
+        Path gzipFile = outdir.resolve("gzip.json.gz");
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                Files.newOutputStream(gzipFile)), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < numObjects; i++) {
+                bufferedWriter.write(jsonObjectWriter.writeValueAsString(variants.get(i % variants.size())));
+                bufferedWriter.newLine();
+            }
+        }
+
+        CellBaseJsonFileSerializer serializer = new CellBaseJsonFileSerializer(outdir, "bgzf");
+        for (int i = 0; i < numObjects; i++) {
+            serializer.serialize(variants.get(i % variants.size()));
+        }
+        serializer.close();
+
+        assertEquals(readLines(gzipFile), readLines(outdir.resolve("bgzf.json.gz")));
+    }
+
+    @JsonPropertyOrder({"id", "annotation"})
+    public static class FailingObject {
+
+        public String getId() {
+            return "rs1";
+        }
+
+        public void setId(String id) {
+        }
+
+        public String getAnnotation() {
+            throw new IllegalStateException("Annotation not available");
+        }
+
+        public void setAnnotation(String annotation) {
+        }
+    }
+
+    private List<String> readLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
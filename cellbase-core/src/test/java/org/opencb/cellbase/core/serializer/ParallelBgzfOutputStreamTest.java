@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelBgzfOutputStreamTest {
+
+    @Test
+    public void compressibleData() throws Exception {
+        byte[] data = new byte[1000000];
+        Random random = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('A' + random.nextInt(4));
+        }
+        checkRoundTrip(data);
+    }
+
+    @Test
+    public void incompressibleData() throws Exception {
+        // Random bytes do not compress, blocks must still fit in the BGZF maximum block size
+        byte[] data = new byte[500000];
+        new Random(2).nextBytes(data);
+        checkRoundTrip(data);
+    }
+
+    @Test
+    public void emptyStream() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ParallelBgzfOutputStream(outputStream).close();
+        assertArrayEquals(ParallelBgzfOutputStream.EOF_BLOCK, outputStream.toByteArray());
+        assertEquals(-1, new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray())).read());
+    }
+
+    @Test
+    public void compressBlocks() throws Exception {
+        byte[] data = new byte[300000];
+        Random random = new Random(4);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('A' + random.nextInt(4));
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ParallelBgzfOutputStream bgzfOutputStream = new ParallelBgzfOutputStream(outputStream)) {
+            bgzfOutputStream.write(data);
+        }
+
+        // Same blocks than the stream when compressed in the calling thread
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        blocks.write(ParallelBgzfOutputStream.compressBlocks(data, 0, data.length));
+        blocks.write(ParallelBgzfOutputStream.getEofBlock());
+        assertArrayEquals(outputStream.toByteArray(), blocks.toByteArray());
+        assertEquals(0, ParallelBgzfOutputStream.compressBlocks(data, 10, 0).length);
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 100010),
+                readFully(new GZIPInputStream(new ByteArrayInputStream(ParallelBgzfOutputStream.compressBlocks(data, 10, 100000)))));
+    }
+
+    private void checkRoundTrip(byte[] data) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ParallelBgzfOutputStream bgzfOutputStream = new ParallelBgzfOutputStream(outputStream, executorService, 2)) {
+            // Mix single bytes and arrays of different sizes
+            Random random = new Random(3);
+            int offset = 0;
+            while (offset < data.length) {
+                if (random.nextInt(10) == 0) {
+                    bgzfOutputStream.write(data[offset++]);
+                } else {
+                    int length = Math.min(data.length - offset, random.nextInt(100000));
+                    bgzfOutputStream.write(data, offset, length);
+                    offset += length;
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        byte[] compressed = outputStream.toByteArray();
+
+        // Any gzip reader can read the concatenated members
+        assertArrayEquals(data, readFully(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+
+        // Every member is a BGZF block with its size in the BC extra field, the last one is the EOF block
+        int position = 0;
+        int numBlocks = 0;
+        while (position < compressed.length) {
+            assertEquals(0x1f, compressed[position] & 0xff);
+            assertEquals(0x8b, compressed[position + 1] & 0xff);
+            assertEquals(4, compressed[position + 3]);
+            assertEquals('B', compressed[position + 12]);
+            assertEquals('C', compressed[position + 13]);
+            int blockSize = ((compressed[position + 16] & 0xff) | (compressed[position + 17] & 0xff) << 8) + 1;
+            assertTrue(blockSize <= 0x10000);
+            position += blockSize;
+            numBlocks++;
+        }
+        assertEquals(compressed.length, position);
+        assertEquals((data.length + ParallelBgzfOutputStream.MAX_INPUT_SIZE - 1) / ParallelBgzfOutputStream.MAX_INPUT_SIZE + 1,
+                numBlocks);
+        assertArrayEquals(ParallelBgzfOutputStream.EOF_BLOCK,
+                Arrays.copyOfRange(compressed, compressed.length - ParallelBgzfOutputStream.EOF_BLOCK.length, compressed.length));
+    }
+
+    private byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+}
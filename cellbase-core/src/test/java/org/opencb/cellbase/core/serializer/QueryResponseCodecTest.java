@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.serializer;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.Xref;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResponse;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryResponseCodecTest {
+
+    private QueryResponse<PopulationFrequency> createQueryResponse() {
+        List<QueryResult<PopulationFrequency>> queryResults = new ArrayList<>();
+        queryResults.add(new QueryResult<>("1:1000:A:T", 2, 2, 2, null, null, Arrays.asList(
+                new PopulationFrequency("GNOMAD_GENOMES", "ALL", "A", "T", 0.75f, 0.25f, 0.5f, 0.5f, 0f),
+                new PopulationFrequency("1kG_phase3", "AFR", "A", "T", 0.9f, 0.1f, 0.8f, 0.2f, 0f))));
+        queryResults.add(new QueryResult<>("1:2000:C:G", 1, 0, 10000000000L, "Not found", null, Collections.emptyList()));
+        QueryOptions queryOptions = new QueryOptions(QueryOptions.LIMIT, 10);
+        queryOptions.put(QueryOptions.EXCLUDE, Arrays.asList("a", "b"));
+        return new QueryResponse<>("v4", 5, null, null, queryOptions, queryResults);
+    }
+
+    @Test
+    public void avro() throws Exception {
+        QueryResponse<PopulationFrequency> queryResponse = createQueryResponse();
+        assertEquals(PopulationFrequency.getClassSchema(), QueryResponseCodec.getResultSchema(queryResponse));
+
+        QueryResponse<PopulationFrequency> decoded = QueryResponseCodec.decodeAvro(
+                QueryResponseCodec.encodeAvro(queryResponse, PopulationFrequency.getClassSchema()), PopulationFrequency.class);
+        assertEquals("v4", decoded.getApiVersion());
+        assertEquals(5, decoded.getTime());
+        assertNull(decoded.getError());
+        assertEquals(10, decoded.getQueryOptions().getInt(QueryOptions.LIMIT));
+        assertEquals(Arrays.asList("a", "b"), decoded.getQueryOptions().getAsStringList(QueryOptions.EXCLUDE));
+        assertEquals(queryResponse.getResponse().size(), decoded.getResponse().size());
+        for (int i = 0; i < queryResponse.getResponse().size(); i++) {
+            QueryResult<PopulationFrequency> expected = queryResponse.getResponse().get(i);
+            QueryResult<PopulationFrequency> actual = decoded.getResponse().get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getDbTime(), actual.getDbTime());
+            assertEquals(expected.getNumResults(), actual.getNumResults());
+            assertEquals(expected.getNumTotalResults(), actual.getNumTotalResults());
+            assertEquals(expected.getWarningMsg(), actual.getWarningMsg());
+            assertNull(actual.getErrorMsg());
+            // Decoded straight into the Avro class
+            assertEquals(expected.getResult(), actual.getResult());
+        }
+        assertEquals(String.class, decoded.getResponse().get(0).getResult().get(0).getStudy().getClass());
+    }
+
+    @Test
+    public void resultsWithoutAvroModel() throws Exception {
+        QueryResponse<Object> queryResponse = new QueryResponse<>();
+        queryResponse.setResponse(Collections.singletonList(new QueryResult<>("BRCA2", 0, 1, 1, null, null,
+                Collections.singletonList(new Document("id", "ENSG00000139618")))));
+        assertNull(QueryResponseCodec.getResultSchema(queryResponse));
+
+        // Records of different classes
+        queryResponse.setResponse(Collections.singletonList(new QueryResult<>("rs1", 0, 2, 2, null, null, Arrays.asList(
+                new PopulationFrequency("GNOMAD_GENOMES", "ALL", "A", "T", 0.75f, 0.25f, 0.5f, 0.5f, 0f), new Xref("rs1", "dbSNP")))));
+        assertNull(QueryResponseCodec.getResultSchema(queryResponse));
+    }
+}
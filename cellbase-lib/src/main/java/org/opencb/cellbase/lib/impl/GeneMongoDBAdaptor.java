@@ -51,6 +51,7 @@ public class GeneMongoDBAdaptor extends MongoDBAdaptor implements GeneDBAdaptor<
 
     private static final String TRANSCRIPTS = "transcripts";
     private static final String GENE = "gene";
+    private static final String INTERVAL_FREQUENCIES_ID = "gene";
     private static final String ANNOTATION_FLAGS = "annotationFlags";
 
     public GeneMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore) {
@@ -75,11 +76,28 @@ public class GeneMongoDBAdaptor extends MongoDBAdaptor implements GeneDBAdaptor<
         if (query.getString(QueryParams.REGION.key()) != null) {
             Region region = Region.parseRegion(query.getString(QueryParams.REGION.key()));
             Bson bsonDocument = parseQuery(query);
-            return getIntervalFrequencies(bsonDocument, region, intervalSize, options);
+            return getIntervalFrequencies(getIntervalFrequenciesId(query), bsonDocument, region, intervalSize, options);
         }
         return null;
     }
 
+    @Override
+    public QueryResult<Long> createIntervalFrequencies() {
+        return createIntervalFrequencies(INTERVAL_FREQUENCIES_ID, new Document());
+    }
+
+    private String getIntervalFrequenciesId(Query query) {
+        Query filters = new Query(query);
+        filters.remove(QueryParams.REGION.key());
+        return isEmptyQuery(parseQuery(filters)) ? INTERVAL_FREQUENCIES_ID : null;
+    }
+
+    @Override
+    public List<QueryResult> getIntervalFrequencies(List<Query> queries, int intervalSize, QueryOptions options) {
+        return executeQueriesInParallel(queries, options,
+                (query, queryOptions) -> getIntervalFrequencies(query, intervalSize, queryOptions));
+    }
+
     @Override
     public QueryResult<Long> update(List objectList, String field, String[] innerFields) {
         return null;
@@ -142,7 +160,12 @@ public class GeneMongoDBAdaptor extends MongoDBAdaptor implements GeneDBAdaptor<
         Bson bson = parseQuery(query);
         logger.info("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()) .toJson());
         logger.info("options: {}", options.toJson());
-        return postDBFiltering(query, mongoDBCollection.find(bson, options));
+        return postDBFiltering(query, nativeFind(bson, options));
+    }
+
+    @Override
+    public List<QueryResult> nativeGet(List<Query> queries, QueryOptions options) {
+        return executeQueriesInParallel(queries, options, (query, queryOptions) -> nativeGet(query, queryOptions));
     }
 
     @Override
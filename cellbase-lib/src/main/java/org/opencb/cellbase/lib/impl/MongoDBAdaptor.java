@@ -22,8 +22,11 @@ import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.*;
 import org.bson.*;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
 import org.opencb.cellbase.core.common.IntervalFeatureFrequency;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
@@ -34,11 +37,33 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
 
 public class MongoDBAdaptor {
 
     enum QueryValueType {INTEGER, STRING}
 
+    private static final int MAX_PRESIZED_RESULTS = 1000;
+
+    /**
+     * Interval sizes precomputed for histograms by createIntervalFrequencies, sorted and each one multiple of the first.
+     */
+    protected static final int[] PRECOMPUTED_INTERVAL_SIZES = {10000, 50000, 100000, 200000, 500000, 1000000};
+    protected static final String INTERVAL_FREQUENCIES_COLLECTION = "interval_frequencies";
+    private static final int INTERVAL_FREQUENCIES_BATCH_SIZE = 5000;
+
+    /**
+     * Max number of queries of a same request, e.g. comma-separated regions, running at the same time. All adaptors share
+     * this pool so that the number of MongoDB connections used by multi-query requests remains bounded.
+     */
+    protected static final int QUERY_POOL_SIZE = Math.max(2, Math.min(16, Runtime.getRuntime().availableProcessors() * 2));
+    private static final ExecutorService QUERY_EXECUTOR_SERVICE = Executors.newFixedThreadPool(QUERY_POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "mongodb-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected String species;
     protected String assembly;
 
@@ -297,31 +322,7 @@ public class MongoDBAdaptor {
         Bson match = Aggregates.match(query);
 
         // group
-//        Document divide1 = new Document();
-//        divide1.append("$start", interval);
-//        divide1.add("$start");
-//        divide1.add(interval);
-        BsonArray divide1 = new BsonArray();
-        divide1.add(new BsonString("$start"));
-        divide1.add(new BsonInt32(interval));
-
-//        Document divide2 = new Document();
-//        divide2.add(new Document("$mod", divide1));
-//        divide2.add(interval);
-        BsonArray divide2 = new BsonArray();
-        divide2.add(new BsonDocument("$mod", divide1));
-        divide2.add(new BsonInt32(interval));
-
-//        Document subtractList = new Document();
-//        subtractList.append("$divide", divide1);
-//        subtractList.append("$divide", divide2);
-        BsonArray subtractList = new BsonArray();
-        subtractList.add(new BsonDocument("$divide", divide1));
-        subtractList.add(new BsonDocument("$divide", divide2));
-//        subtractList.add(new Document("$divide", divide1));
-//        subtractList.add(new Document("$divide", divide2));
-
-        Document substract = new Document("$subtract", subtractList);
+        Document substract = getIntervalIdExpression(interval);
         Document totalCount = new Document("$sum", 1);
 
         Document g = new Document("_id", substract);
@@ -380,10 +381,312 @@ public class MongoDBAdaptor {
         return queryResult;
     }
 
+    /**
+     * Same as getIntervalFrequencies(Bson, Region, int, QueryOptions) but reading the intervals precomputed by
+     * createIntervalFrequencies when possible, this takes one indexed read per interval instead of aggregating all the
+     * features of the region. Any other interval size, or regions not precomputed, fall back to the aggregation. So do
+     * the first and last intervals when the region only covers part of them, since precomputed counts include all their
+     * features.
+     * @param featureSetId id of the precomputed intervals, e.g. 'gene', null if the query has other filters than the region
+     * @param query MongoDB query used by the aggregation
+     * @param region region of the histogram
+     * @param intervalSize size of each interval
+     * @param options query options
+     * @return QueryResult with one document per interval
+     */
+    protected QueryResult getIntervalFrequencies(String featureSetId, Bson query, Region region, int intervalSize,
+                                                 QueryOptions options) {
+        int interval = (intervalSize > 0) ? intervalSize : 50000;
+        if (featureSetId != null && Arrays.binarySearch(PRECOMPUTED_INTERVAL_SIZES, interval) >= 0) {
+            QueryResult queryResult = getPrecomputedIntervalFrequencies(featureSetId, region, interval);
+            if (queryResult != null) {
+                boolean partialFirst = region.getStart() > 1 && region.getStart() % interval != 0;
+                boolean partialLast = (region.getEnd() + 1) % interval != 0;
+                if (partialFirst || partialLast) {
+                    aggregatePartialIntervals(queryResult, query, region, interval, partialFirst, partialLast, options);
+                }
+                return queryResult;
+            }
+        }
+        return getIntervalFrequencies(query, region, intervalSize, options);
+    }
+
+    private void aggregatePartialIntervals(QueryResult queryResult, Bson query, Region region, int interval, boolean partialFirst,
+                                           boolean partialLast, QueryOptions options) {
+        List<Document> intervals = queryResult.getResult();
+        int firstChunkId = getChunkId(region.getStart(), interval);
+        int lastChunkId = getChunkId(region.getEnd(), interval);
+        List<Bson> startFilters = new ArrayList<>(2);
+        if (partialFirst) {
+            startFilters.add(Filters.and(Filters.gte("start", getChunkStart(firstChunkId, interval)),
+                    Filters.lte("start", getChunkEnd(firstChunkId, interval))));
+        }
+        if (partialLast) {
+            startFilters.add(Filters.and(Filters.gte("start", getChunkStart(lastChunkId, interval)),
+                    Filters.lte("start", getChunkEnd(lastChunkId, interval))));
+        }
+
+        // Only the features starting in the partial intervals are aggregated, the result has the same intervals
+        List<Document> aggregated = getIntervalFrequencies(Filters.and(query, Filters.or(startFilters)), region, interval,
+                options).getResult();
+        if (partialFirst) {
+            intervals.set(0, aggregated.get(0));
+        }
+        if (partialLast) {
+            intervals.set(intervals.size() - 1, aggregated.get(aggregated.size() - 1));
+        }
+    }
+
+    private QueryResult getPrecomputedIntervalFrequencies(String featureSetId, Region region, int interval) {
+        long dbTimeStart = System.currentTimeMillis();
+        int firstChunkId = getChunkId(region.getStart(), interval);
+        int lastChunkId = getChunkId(region.getEnd(), interval);
+
+        Bson query = Filters.and(Filters.eq("id", featureSetId), Filters.eq("chromosome", region.getChromosome()),
+                Filters.eq("interval", interval), Filters.gte("bin", firstChunkId), Filters.lte("bin", lastChunkId));
+        QueryOptions options = new QueryOptions(QueryOptions.INCLUDE, Arrays.asList("bin", "count"))
+                .append(QueryOptions.SORT, new Document("bin", 1));
+        List<Document> bins = mongoDataStore.getCollection(INTERVAL_FREQUENCIES_COLLECTION).find(query, options).getResult();
+        // Intervals with no features are also stored, a missing one means this region was not precomputed
+        if (bins.size() != lastChunkId - firstChunkId + 1) {
+            return null;
+        }
+
+        List<Document> resultList = new ArrayList<>(bins.size());
+        for (Document bin : bins) {
+            int chunkId = bin.getInteger("bin");
+            int count = bin.getInteger("count");
+            Document intervalObj = new Document();
+            intervalObj.put("_id", chunkId);
+            intervalObj.put("chromosome", region.getChromosome());
+            intervalObj.put("start", getChunkStart(chunkId, interval));
+            intervalObj.put("end", getChunkEnd(chunkId, interval));
+            if (count > 0) {
+                intervalObj.put("features_count", Math.log(count));
+            } else {
+                intervalObj.put("features_count", 0);
+            }
+            resultList.add(intervalObj);
+        }
+
+        QueryResult queryResult = new QueryResult();
+        queryResult.setResult(resultList);
+        queryResult.setNumResults(resultList.size());
+        queryResult.setId(region.toString());
+        queryResult.setResultType("frequencies");
+        queryResult.setDbTime((int) (System.currentTimeMillis() - dbTimeStart));
+        return queryResult;
+    }
+
+    /**
+     * Counts the features matching the query for each one of the PRECOMPUTED_INTERVAL_SIZES and stores them in the
+     * INTERVAL_FREQUENCIES_COLLECTION, replacing any previous values of the same featureSetId. Features are aggregated
+     * once for the smallest interval size, the rest are summed up from those counts.
+     * @param featureSetId id of the precomputed intervals, e.g. 'gene'
+     * @param query MongoDB query selecting the features to count
+     * @return QueryResult with the number of intervals stored
+     */
+    protected QueryResult<Long> createIntervalFrequencies(String featureSetId, Bson query) {
+        long dbTimeStart = System.currentTimeMillis();
+        int baseInterval = PRECOMPUTED_INTERVAL_SIZES[0];
+
+        Document groupId = new Document("chromosome", "$chromosome").append("bin", getIntervalIdExpression(baseInterval));
+        Document group = new Document("$group", new Document("_id", groupId).append("count", new Document("$sum", 1)));
+        QueryResult<Document> aggregationOutput = mongoDBCollection.aggregate(Arrays.asList(Aggregates.match(query), group),
+                new QueryOptions());
+
+        Map<String, Map<Integer, Integer>> chromosomeCounts = new HashMap<>();
+        for (Document document : aggregationOutput.getResult()) {
+            Document id = (Document) document.get("_id");
+            if (id.getString("chromosome") != null) {
+                int bin = (int) Math.round(((Number) id.get("bin")).doubleValue());
+                chromosomeCounts.computeIfAbsent(id.getString("chromosome"), chromosome -> new HashMap<>())
+                        .merge(bin, ((Number) document.get("count")).intValue(), Integer::sum);
+            }
+        }
+
+        MongoDBCollection intervalFrequenciesCollection = mongoDataStore.getCollection(INTERVAL_FREQUENCIES_COLLECTION);
+        intervalFrequenciesCollection.remove(Filters.eq("id", featureSetId), new QueryOptions(MongoDBCollection.MULTI, true));
+
+        long numIntervals = 0;
+        List<Document> batch = new ArrayList<>(INTERVAL_FREQUENCIES_BATCH_SIZE);
+        for (int intervalSize : PRECOMPUTED_INTERVAL_SIZES) {
+            int factor = intervalSize / baseInterval;
+            for (Map.Entry<String, Map<Integer, Integer>> entry : chromosomeCounts.entrySet()) {
+                // Empty intervals are stored too so that reads can tell them apart from not precomputed regions
+                int[] counts = new int[Collections.max(entry.getValue().keySet()) / factor + 1];
+                entry.getValue().forEach((bin, count) -> counts[bin / factor] += count);
+                for (int bin = 0; bin < counts.length; bin++) {
+                    batch.add(new Document("id", featureSetId)
+                            .append("chromosome", entry.getKey())
+                            .append("interval", intervalSize)
+                            .append("bin", bin)
+                            .append("count", counts[bin]));
+                    if (batch.size() == INTERVAL_FREQUENCIES_BATCH_SIZE) {
+                        intervalFrequenciesCollection.insert(batch, new QueryOptions());
+                        numIntervals += batch.size();
+                        batch = new ArrayList<>(INTERVAL_FREQUENCIES_BATCH_SIZE);
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            intervalFrequenciesCollection.insert(batch, new QueryOptions());
+            numIntervals += batch.size();
+        }
+        intervalFrequenciesCollection.createIndex(new Document("id", 1).append("chromosome", 1).append("interval", 1)
+                .append("bin", 1), new ObjectMap());
+
+        logger.info("{} intervals precomputed for '{}'", numIntervals, featureSetId);
+        return new QueryResult<>(featureSetId, (int) (System.currentTimeMillis() - dbTimeStart), 1, 1, null, null,
+                Collections.singletonList(numIntervals));
+    }
+
+    /**
+     * Precomputed interval frequencies count all the features of a collection, they can only be used for queries with
+     * no other filter than the region.
+     * @param bsonQuery query parsed without the region
+     * @return true if the query has no filters
+     */
+    protected boolean isEmptyQuery(Bson bsonQuery) {
+        return bsonQuery instanceof Document && ((Document) bsonQuery).isEmpty();
+    }
+
+    private Document getIntervalIdExpression(int interval) {
+        // start / interval - (start % interval) / interval, i.e. the integer division of start by interval
+        BsonArray divide1 = new BsonArray();
+        divide1.add(new BsonString("$start"));
+        divide1.add(new BsonInt32(interval));
+
+        BsonArray divide2 = new BsonArray();
+        divide2.add(new BsonDocument("$mod", divide1));
+        divide2.add(new BsonInt32(interval));
+
+        BsonArray subtractList = new BsonArray();
+        subtractList.add(new BsonDocument("$divide", divide1));
+        subtractList.add(new BsonDocument("$divide", divide2));
+        return new Document("$subtract", subtractList);
+    }
+
+
+
+
+
+
+    /**
+     * Executes a list of queries concurrently in the shared query pool. Results are returned in the same order than the
+     * queries. Each query gets its own copy of the QueryOptions since adaptors may modify them, e.g. to add excludes.
+     * Resume token pagination is not supported for more than one query: the token identifies a position in the results of
+     * a single query and there is only one 'nextToken' to return.
+     * @param queries list of queries to execute, usually one per region or id
+     * @param options query options shared by all the queries
+     * @param queryFunction adaptor method that executes a single query, e.g. this::nativeGet
+     * @param <T> type of the value returned for each query
+     * @return list with the result of each query
+     */
+    protected <T> List<T> executeQueriesInParallel(List<Query> queries, QueryOptions options,
+                                                  BiFunction<Query, QueryOptions, T> queryFunction) {
+        Objects.requireNonNull(queries);
+        // No need to pay the thread hand-off for a single query
+        if (queries.size() == 1) {
+            return Collections.singletonList(queryFunction.apply(queries.get(0), options));
+        }
+        if (options != null && options.containsKey(CellBaseDBAdaptor.RESUME_TOKEN)) {
+            throw new IllegalArgumentException("Option '" + CellBaseDBAdaptor.RESUME_TOKEN + "' is not supported when querying "
+                    + queries.size() + " ids or regions at once, please page through them one by one");
+        }
+
+        List<Future<T>> futures = new ArrayList<>(queries.size());
+        for (Query query : queries) {
+            QueryOptions queryOptions = (options != null) ? new QueryOptions(options) : new QueryOptions();
+            futures.add(QUERY_EXECUTOR_SERVICE.submit(() -> queryFunction.apply(query, queryOptions)));
+        }
+
+        List<T> results = new ArrayList<>(queries.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing " + queries.size() + " queries", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Same as MongoDBCollection.find but supporting the resume token pagination mode: when CellBaseDBAdaptor.RESUME_TOKEN
+     * is set in the options documents are sorted by _id and filtered by the _id encoded in the token instead of using
+     * 'skip', which gets slower the deeper clients go. The token of the next page is put in the options passed under the
+     * CellBaseDBAdaptor.NEXT_RESUME_TOKEN key, so it is returned to REST clients together with the rest of options.
+     * @param query MongoDB query
+     * @param options query options, the next page token is added to this object if there are more pages
+     * @return QueryResult with the native documents found
+     */
+    protected QueryResult<Document> nativeFind(Bson query, QueryOptions options) {
+        if (options == null || !options.containsKey(CellBaseDBAdaptor.RESUME_TOKEN)) {
+            return mongoDBCollection.find(query, options);
+        }
 
+        Bson pageQuery = query;
+        String token = options.getString(CellBaseDBAdaptor.RESUME_TOKEN);
+        if (token != null && !token.isEmpty()) {
+            pageQuery = Filters.and(query, Filters.gt("_id", decodeResumeToken(token)));
+        }
 
+        QueryOptions pageOptions = new QueryOptions(options);
+        pageOptions.put(QueryOptions.SORT, new Document("_id", 1));
+        pageOptions.remove(QueryOptions.SKIP);
+        // _id is needed to create the next token, it is removed from the documents below if it was excluded
+        boolean excludeId = false;
+        if (pageOptions.containsKey(QueryOptions.EXCLUDE)) {
+            List<String> excludeList = new ArrayList<>(pageOptions.getAsStringList(QueryOptions.EXCLUDE));
+            excludeId = excludeList.remove("_id");
+            if (excludeList.isEmpty()) {
+                pageOptions.remove(QueryOptions.EXCLUDE);
+            } else {
+                pageOptions.put(QueryOptions.EXCLUDE, excludeList);
+            }
+        }
 
+        QueryResult<Document> queryResult = mongoDBCollection.find(pageQuery, pageOptions);
+        List<Document> documents = queryResult.getResult();
+        options.remove(CellBaseDBAdaptor.NEXT_RESUME_TOKEN);
+        // A page shorter than the limit is the last one
+        if (!documents.isEmpty() && documents.size() >= options.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE)) {
+            Object lastId = documents.get(documents.size() - 1).get("_id");
+            if (lastId instanceof ObjectId) {
+                options.put(CellBaseDBAdaptor.NEXT_RESUME_TOKEN, encodeResumeToken((ObjectId) lastId));
+            } else {
+                logger.warn("Resume token not supported for _id '{}', only ObjectId is supported", lastId);
+            }
+        }
+        if (excludeId) {
+            for (Document document : documents) {
+                document.remove("_id");
+            }
+        }
+        return queryResult;
+    }
+
+    private String encodeResumeToken(ObjectId objectId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(objectId.toByteArray());
+    }
 
+    private ObjectId decodeResumeToken(String token) {
+        try {
+            return new ObjectId(Base64.getUrlDecoder().decode(token));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid resume token '" + token + "'", e);
+        }
+    }
 
     protected QueryResult executeDistinct(Object id, String fields, Document query) {
 //        long dbTimeStart, dbTimeEnd;
@@ -429,19 +732,25 @@ public class MongoDBAdaptor {
             if (options.containsKey("count") && options.getBoolean("count")) {
                 queryResult = mongoDBCollection2.count(query);
             } else {
-                MongoCursor<Document> cursor = mongoDBCollection2.nativeQuery().find(query, options).iterator();
-                List<Document> dbObjectList = new LinkedList<>();
-                while (cursor.hasNext()) {
-                    dbObjectList.add(cursor.next());
+                int limit = options.getInt(QueryOptions.LIMIT, 0);
+                List<Document> dbObjectList = new ArrayList<>(limit > 0 ? Math.min(limit, MAX_PRESIZED_RESULTS) : 10);
+                try (MongoCursor<Document> cursor = mongoDBCollection2.nativeQuery().find(query, options).iterator()) {
+                    while (cursor.hasNext()) {
+                        dbObjectList.add(cursor.next());
+                    }
                 }
                 queryResult.setNumResults(dbObjectList.size());
                 queryResult.setResult(dbObjectList);
 
-                // Limit is set in queryOptions, count number of total results
-                if (options != null && options.getInt("limit", 0) > 0) {
-                    queryResult.setNumTotalResults(mongoDBCollection2.count(query).first());
-                } else {
+                // Limit is set in queryOptions, count number of total results unless the server has already returned
+                // all of them or counting has been skipped
+                int skip = options.getInt(QueryOptions.SKIP, 0);
+                if (limit <= 0 || (skip <= 0 && dbObjectList.size() < limit)) {
                     queryResult.setNumTotalResults(dbObjectList.size());
+                } else if (options.getBoolean(QueryOptions.SKIP_COUNT, false)) {
+                    queryResult.setNumTotalResults(-1);
+                } else {
+                    queryResult.setNumTotalResults(mongoDBCollection2.count(query).first());
                 }
             }
             dbTimeEnd = System.currentTimeMillis();
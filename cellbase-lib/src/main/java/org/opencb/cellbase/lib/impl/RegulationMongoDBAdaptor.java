@@ -30,6 +30,8 @@ import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.function.Consumer;
@@ -39,6 +41,11 @@ import java.util.function.Consumer;
  */
 public class RegulationMongoDBAdaptor extends MongoDBAdaptor implements RegulationDBAdaptor<RegulatoryFeature> {
 
+    private static final String REGULATORY_REGION_INTERVAL_FREQUENCIES_ID = "regulatory_region";
+    private static final String TFBS_INTERVAL_FREQUENCIES_ID = "tfbs";
+    private static final List<String> TFBS_FEATURE_TYPES = Arrays.asList(FeatureType.TF_binding_site.name(),
+            FeatureType.TF_binding_site_motif.name());
+
     public RegulationMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore) {
         super(species, assembly, mongoDataStore);
         mongoDBCollection = mongoDataStore.getCollection("regulatory_region");
@@ -79,11 +86,42 @@ public class RegulationMongoDBAdaptor extends MongoDBAdaptor implements Regulati
         if (query.getString(QueryParams.REGION.key()) != null) {
             Region region = Region.parseRegion(query.getString(QueryParams.REGION.key()));
             Bson bsonDocument = parseQuery(query);
-            return getIntervalFrequencies(bsonDocument, region, intervalSize, options);
+            return getIntervalFrequencies(getIntervalFrequenciesId(query), bsonDocument, region, intervalSize, options);
+        }
+        return null;
+    }
+
+    @Override
+    public QueryResult<Long> createIntervalFrequencies() {
+        QueryResult<Long> queryResult = createIntervalFrequencies(REGULATORY_REGION_INTERVAL_FREQUENCIES_ID, new Document());
+        QueryResult<Long> tfbsQueryResult = createIntervalFrequencies(TFBS_INTERVAL_FREQUENCIES_ID,
+                Filters.in("featureType", TFBS_FEATURE_TYPES));
+        queryResult.setDbTime(queryResult.getDbTime() + tfbsQueryResult.getDbTime());
+        queryResult.setResult(Collections.singletonList(queryResult.first() + tfbsQueryResult.first()));
+        return queryResult;
+    }
+
+    private String getIntervalFrequenciesId(Query query) {
+        Query filters = new Query(query);
+        filters.remove(QueryParams.REGION.key());
+        if (isEmptyQuery(parseQuery(filters))) {
+            return REGULATORY_REGION_INTERVAL_FREQUENCIES_ID;
+        }
+        // Transcription factor binding sites are precomputed too, they are queried by feature type
+        filters.remove(QueryParams.FEATURE_TYPE.key());
+        if (isEmptyQuery(parseQuery(filters)) && query.getAsStringList(QueryParams.FEATURE_TYPE.key()).size() == TFBS_FEATURE_TYPES.size()
+                && TFBS_FEATURE_TYPES.containsAll(query.getAsStringList(QueryParams.FEATURE_TYPE.key()))) {
+            return TFBS_INTERVAL_FREQUENCIES_ID;
         }
         return null;
     }
 
+    @Override
+    public List<QueryResult> getIntervalFrequencies(List<Query> queries, int intervalSize, QueryOptions options) {
+        return executeQueriesInParallel(queries, options,
+                (query, queryOptions) -> getIntervalFrequencies(query, intervalSize, queryOptions));
+    }
+
     @Override
     public QueryResult<Long> update(List objectList, String field, String[] innerFields) {
         return null;
@@ -117,7 +155,12 @@ public class RegulationMongoDBAdaptor extends MongoDBAdaptor implements Regulati
     @Override
     public QueryResult nativeGet(Query query, QueryOptions options) {
         Bson bson = parseQuery(query);
-        return mongoDBCollection.find(bson, options);
+        return nativeFind(bson, options);
+    }
+
+    @Override
+    public List<QueryResult> nativeGet(List<Query> queries, QueryOptions options) {
+        return executeQueriesInParallel(queries, options, (query, queryOptions) -> nativeGet(query, queryOptions));
     }
 
     @Override
@@ -5,6 +5,7 @@ import com.mongodb.client.model.Filters;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.opencb.biodata.models.variant.avro.Repeat;
+import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
 import org.opencb.cellbase.core.api.RepeatsDBAdaptor;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.commons.datastore.core.Query;
@@ -66,7 +67,20 @@ public class RepeatsMongoDBAdaptor extends MongoDBAdaptor implements RepeatsDBAd
         QueryOptions options = addPrivateExcludeOptions(new QueryOptions(inputOptions));
 
         logger.debug("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()) .toJson());
-        return mongoDBCollection.find(bson, options);
+        QueryResult queryResult = nativeFind(bson, options);
+        // The token of the next page is returned in the options of the caller, not in the copy with the private excludes
+        if (inputOptions != null) {
+            inputOptions.remove(CellBaseDBAdaptor.NEXT_RESUME_TOKEN);
+            if (options.containsKey(CellBaseDBAdaptor.NEXT_RESUME_TOKEN)) {
+                inputOptions.put(CellBaseDBAdaptor.NEXT_RESUME_TOKEN, options.get(CellBaseDBAdaptor.NEXT_RESUME_TOKEN));
+            }
+        }
+        return queryResult;
+    }
+
+    @Override
+    public List<QueryResult> nativeGet(List<Query> queries, QueryOptions options) {
+        return executeQueriesInParallel(queries, options, (query, queryOptions) -> nativeGet(query, queryOptions));
     }
 
     @Override
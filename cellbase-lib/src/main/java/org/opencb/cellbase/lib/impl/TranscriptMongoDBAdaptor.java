@@ -111,6 +111,11 @@ public class TranscriptMongoDBAdaptor extends MongoDBAdaptor implements Transcri
         return mongoDBCollection.aggregate(aggregateList, options);
     }
 
+    @Override
+    public List<QueryResult> nativeGet(List<Query> queries, QueryOptions options) {
+        return executeQueriesInParallel(queries, options, (query, queryOptions) -> nativeGet(query, queryOptions));
+    }
+
     @Override
     public Iterator<Transcript> iterator(Query query, QueryOptions options) {
         return null;
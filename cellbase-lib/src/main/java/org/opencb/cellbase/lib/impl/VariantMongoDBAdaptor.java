@@ -54,8 +54,10 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements VariantDBAd
     private static final String POP_FREQUENCIES_FIELD = "annotation.populationFrequencies";
     private static final String ANNOTATION_FIELD = "annotation";
     private static final float DECIMAL_RESOLUTION = 100f;
+    private static final String INTERVAL_FREQUENCIES_ID = "variation";
     private static final String ENSEMBL_GENE_ID_PATTERN = "ENSG00";
     private static final String ENSEMBL_TRANSCRIPT_ID_PATTERN = "ENST00";
+    private static final String CURSOR_BATCH_SIZE = "batchSize";
     private static PopulationFrequencyPhasedQueryManager populationFrequencyPhasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
@@ -104,11 +106,28 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements VariantDBAd
         if (query.getString(QueryParams.REGION.key()) != null) {
             Region region = Region.parseRegion(query.getString(QueryParams.REGION.key()));
             Bson bsonDocument = parseQuery(query);
-            return getIntervalFrequencies(bsonDocument, region, intervalSize, options);
+            return getIntervalFrequencies(getIntervalFrequenciesId(query), bsonDocument, region, intervalSize, options);
         }
         return null;
     }
 
+    @Override
+    public QueryResult<Long> createIntervalFrequencies() {
+        return createIntervalFrequencies(INTERVAL_FREQUENCIES_ID, new Document());
+    }
+
+    private String getIntervalFrequenciesId(Query query) {
+        Query filters = new Query(query);
+        filters.remove(QueryParams.REGION.key());
+        return isEmptyQuery(parseQuery(filters)) ? INTERVAL_FREQUENCIES_ID : null;
+    }
+
+    @Override
+    public List<QueryResult> getIntervalFrequencies(List<Query> queries, int intervalSize, QueryOptions options) {
+        return executeQueriesInParallel(queries, options,
+                (query, queryOptions) -> getIntervalFrequencies(query, intervalSize, queryOptions));
+    }
+
     @Override
     public QueryResult<Long> update(List objectList, String field, String[] innerFields) {
         QueryResult<Long> nLoadedObjects = null;
@@ -179,13 +198,23 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements VariantDBAd
         Bson bson = parseQuery(query);
 //        options.put(MongoDBCollection.SKIP_COUNT, true);
         logger.debug("query: {}", bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry()) .toJson());
-        return mongoDBCollection.find(bson, options);
+        return nativeFind(bson, options);
+    }
+
+    @Override
+    public List<QueryResult> nativeGet(List<Query> queries, QueryOptions options) {
+        return executeQueriesInParallel(queries, options, (query, queryOptions) -> nativeGet(query, queryOptions));
     }
 
     @Override
     public Iterator<Variant> iterator(Query query, QueryOptions inputOptions) {
         Bson bson = parseQuery(query);
         QueryOptions options = addPrivateExcludeOptions(new QueryOptions(inputOptions));
+        if (options.getInt(CURSOR_BATCH_SIZE, 0) > 0) {
+            // Big batches save round trips when whole chromosomes are iterated
+            return new VariantMongoIterator(mongoDBCollection.nativeQuery().find(bson, options)
+                    .batchSize(options.getInt(CURSOR_BATCH_SIZE)).iterator());
+        }
         return new VariantMongoIterator(mongoDBCollection.nativeQuery().find(bson, options).iterator());
     }
 
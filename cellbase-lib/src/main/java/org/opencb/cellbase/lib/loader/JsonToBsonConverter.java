@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonBinaryWriter;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.opencb.biodata.formats.io.FileFormatException;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Converts JSON lines into BSON by streaming the Jackson tokens straight into a BsonBinaryWriter, no intermediate
+ * Document is built. Private fields used by the queries, i.e. _chunkIds and the clinical _featureXrefs and _traits,
+ * are collected while the tokens go by and appended at the end of the document together with the _id.
+ *
+ * Not thread safe, each loader must use its own instance.
+ */
+public class JsonToBsonConverter {
+
+    static final String CHUNK_IDS_FIELD = "_chunkIds";
+    static final String PRIVATE_FEATURE_XREF_FIELD = "_featureXrefs";
+    static final String PRIVATE_TRAIT_FIELD = "_traits";
+
+    private static final Set<String> SKIP_WORDS = new HashSet<>(Arrays.asList("or", "and", "the", "of", "at", "in", "on"));
+
+    private static final String ANNOTATION = "annotation";
+    private static final String TRAIT_ASSOCIATION_PATH = "annotation.traitAssociation";
+    private static final String XREFS_PATH = "annotation.traitAssociation.genomicFeatures.xrefs";
+    private static final String SOMATIC_INFORMATION_PATH = "annotation.traitAssociation.somaticInformation";
+    private static final String TRAIT_PATH = "annotation.traitAssociation.heritableTraits.trait";
+    // Only the children of these paths are tracked, the rest of the document is written without building any path
+    private static final Set<String> TRACKED_PARENT_PATHS = new HashSet<>(Arrays.asList(ANNOTATION, TRAIT_ASSOCIATION_PATH,
+            "annotation.traitAssociation.genomicFeatures", XREFS_PATH, SOMATIC_INFORMATION_PATH,
+            "annotation.traitAssociation.heritableTraits", "annotation.consequenceTypes",
+            "annotation.consequenceTypes.proteinVariantAnnotation"));
+    private static final Set<String> FEATURE_XREF_PATHS = new HashSet<>(Arrays.asList(
+            "annotation.consequenceTypes.geneName", "annotation.consequenceTypes.ensemblGeneId",
+            "annotation.consequenceTypes.ensemblTranscriptId",
+            "annotation.consequenceTypes.proteinVariantAnnotation.uniprotAccession",
+            "annotation.consequenceTypes.proteinVariantAnnotation.uniprotName"));
+    private static final Set<String> SOMATIC_INFORMATION_FIELDS = new HashSet<>(Arrays.asList("primarySite", "siteSubtype",
+            "primaryHistology", "histologySubtype", "tumourOrigin", "sampleSource"));
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final int[] chunkSizes;
+    private final boolean clinicalPrivateFields;
+    private final BasicOutputBuffer outputBuffer;
+
+    // Per document state
+    private BsonBinaryWriter writer;
+    private boolean hasId;
+    private ObjectId id;
+    private Integer start;
+    private Integer end;
+    private String chromosome;
+    private boolean hasChromosome;
+    private String sequenceName;
+    private boolean traitAssociationFound;
+    private Set<String> featureXrefs;
+    private Set<String> traits;
+
+    public JsonToBsonConverter(int[] chunkSizes, boolean clinicalPrivateFields) {
+        this.chunkSizes = chunkSizes;
+        this.clinicalPrivateFields = clinicalPrivateFields;
+        this.outputBuffer = new BasicOutputBuffer(16 * 1024);
+    }
+
+    /**
+     * Converts one JSON object into BSON.
+     *
+     * @param json JSON object
+     * @return BSON document including the private fields
+     * @throws IOException              if JSON is not well formed
+     * @throws FileFormatException      if a clinical variant has no traitAssociation
+     * @throws IllegalArgumentException if JSON contains MongoDB extended JSON, e.g. $numberLong, which must be
+     *                                  parsed with Document.parse
+     */
+    public RawBsonDocument convert(String json) throws IOException, FileFormatException {
+        return convert(json, null);
+    }
+
+    /**
+     * Converts a JSON object into BSON with the given _id, unless the JSON object has its own.
+     *
+     * @param json JSON object
+     * @param id   _id of the document, null to generate a new one
+     * @return BSON document including the private fields
+     * @throws IOException              if JSON is not well formed
+     * @throws FileFormatException      if a clinical variant has no traitAssociation
+     * @throws IllegalArgumentException if JSON contains MongoDB extended JSON
+     */
+    public RawBsonDocument convert(String json, ObjectId id) throws IOException, FileFormatException {
+        resetState();
+        this.id = id;
+        outputBuffer.truncateToPosition(0);
+        writer = new BsonBinaryWriter(outputBuffer);
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JSON object expected: " + StringUtils.abbreviate(json, 100));
+            }
+            writeDocument(parser, clinicalPrivateFields ? "" : null, true);
+        } finally {
+            writer.close();
+        }
+        return new RawBsonDocument(outputBuffer.toByteArray());
+    }
+
+    private void resetState() {
+        hasId = false;
+        start = null;
+        end = null;
+        chromosome = null;
+        hasChromosome = false;
+        sequenceName = null;
+        traitAssociationFound = false;
+        if (clinicalPrivateFields) {
+            featureXrefs = new HashSet<>();
+            traits = new HashSet<>();
+        }
+    }
+
+    /*
+     * 'path' is the dot separated path of the fields from the root, arrays are transparent. It is only tracked
+     * when clinical private fields are needed, null otherwise.
+     */
+    private void writeDocument(JsonParser parser, String path, boolean root) throws IOException, FileFormatException {
+        writer.writeStartDocument();
+        while (parser.nextToken() != JsonToken.END_OBJECT) {
+            String name = parser.getCurrentName();
+            if (name.startsWith("$")) {
+                throw new IllegalArgumentException("Extended JSON field '" + name + "' is not supported");
+            }
+            writer.writeName(name);
+            if (root && name.equals("_id")) {
+                hasId = true;
+            }
+            String fieldPath = null;
+            if (path != null && (root ? name.equals(ANNOTATION) : TRACKED_PARENT_PATHS.contains(path))) {
+                fieldPath = root ? name : path + "." + name;
+            }
+            writeValue(parser, parser.nextToken(), fieldPath, root ? name : null);
+        }
+        if (root) {
+            writePrivateFields();
+        }
+        writer.writeEndDocument();
+    }
+
+    private void writeValue(JsonParser parser, JsonToken token, String path, String rootField)
+            throws IOException, FileFormatException {
+        switch (token) {
+            case START_OBJECT:
+                if (TRAIT_ASSOCIATION_PATH.equals(path)) {
+                    traitAssociationFound = true;
+                }
+                writeDocument(parser, path, false);
+                break;
+            case START_ARRAY:
+                if (TRAIT_ASSOCIATION_PATH.equals(path)) {
+                    traitAssociationFound = true;
+                }
+                writer.writeStartArray();
+                JsonToken arrayToken;
+                while ((arrayToken = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    writeValue(parser, arrayToken, path, null);
+                }
+                writer.writeEndArray();
+                break;
+            case VALUE_STRING:
+                String value = parser.getText();
+                writer.writeString(value);
+                if (rootField != null) {
+                    if (rootField.equals("chromosome")) {
+                        chromosome = value;
+                        hasChromosome = true;
+                    } else if (rootField.equals("sequenceName")) {
+                        sequenceName = value;
+                    }
+                }
+                if (path != null) {
+                    collectClinicalValue(path, value);
+                }
+                break;
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        int intValue = parser.getIntValue();
+                        writer.writeInt32(intValue);
+                        if (rootField != null) {
+                            if (rootField.equals("start")) {
+                                start = intValue;
+                            } else if (rootField.equals("end")) {
+                                end = intValue;
+                            }
+                        }
+                        break;
+                    case LONG:
+                        writer.writeInt64(parser.getLongValue());
+                        break;
+                    default:
+                        writer.writeDouble(parser.getDoubleValue());
+                        break;
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                writer.writeDouble(parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+                writer.writeBoolean(true);
+                break;
+            case VALUE_FALSE:
+                writer.writeBoolean(false);
+                break;
+            case VALUE_NULL:
+                writer.writeNull();
+                if ("chromosome".equals(rootField)) {
+                    hasChromosome = true;
+                }
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + token);
+        }
+    }
+
+    private void collectClinicalValue(String path, String value) {
+        int lastDot = path.lastIndexOf('.');
+        String parentPath = path.substring(0, lastDot);
+        if (XREFS_PATH.equals(parentPath) || FEATURE_XREF_PATHS.contains(path)) {
+            featureXrefs.add(value);
+        } else if (StringUtils.isNotBlank(value)) {
+            if ((SOMATIC_INFORMATION_PATH.equals(parentPath) && SOMATIC_INFORMATION_FIELDS.contains(path.substring(lastDot + 1)))
+                    || TRAIT_PATH.equals(path)) {
+                traits.addAll(splitKeywords(value));
+            }
+        }
+    }
+
+    private void writePrivateFields() throws FileFormatException {
+        // The _id is generated here rather than by MongoDB so that a batch retried after a partial insert is detected
+        // by the duplicated keys
+        if (!hasId) {
+            writer.writeObjectId("_id", id != null ? id : new ObjectId());
+        }
+
+        if (chunkSizes != null && chunkSizes.length > 0 && start != null && end != null) {
+            writer.writeName(CHUNK_IDS_FIELD);
+            writer.writeStartArray();
+            String chunkIdPrefix = (hasChromosome ? chromosome : sequenceName) + "_";
+            for (int chunkSize : chunkSizes) {
+                int chunkStart = start / chunkSize;
+                int chunkEnd = end / chunkSize;
+                String chunkIdSuffix = "_" + chunkSize / 1000 + "k";
+                for (int i = chunkStart; i <= chunkEnd; i++) {
+                    writer.writeString(chunkIdPrefix + i + chunkIdSuffix);
+                }
+            }
+            writer.writeEndArray();
+        }
+
+        if (clinicalPrivateFields) {
+            if (!traitAssociationFound) {
+                throw new FileFormatException("traitAssociation field missing in input objects. Please, ensure"
+                        + " that input file contains variants with appropriate clinical annotation");
+            }
+            writeStringArray(PRIVATE_FEATURE_XREF_FIELD, featureXrefs);
+            writeStringArray(PRIVATE_TRAIT_FIELD, traits);
+        }
+    }
+
+    private void writeStringArray(String name, Collection<String> values) {
+        if (!values.isEmpty()) {
+            writer.writeName(name);
+            writer.writeStartArray();
+            for (String value : values) {
+                writer.writeString(value);
+            }
+            writer.writeEndArray();
+        }
+    }
+
+    static List<String> splitKeywords(String string) {
+        String[] stringArray = string.toLowerCase().split("\\W");
+        List<String> stringList = new ArrayList<>(stringArray.length);
+        for (String keyword : stringArray) {
+            if (!keyword.isEmpty() && !SKIP_WORDS.contains(keyword)) {
+                stringList.add(keyword);
+            }
+        }
+
+        return stringList;
+    }
+
+}
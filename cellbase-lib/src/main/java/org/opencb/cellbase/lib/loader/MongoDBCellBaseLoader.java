@@ -23,17 +23,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.mongodb.ErrorCategory;
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.BsonSerializationException;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
 import org.opencb.biodata.formats.io.FileFormatException;
 import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
 import org.opencb.cellbase.core.api.DBAdaptorFactory;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.config.DatabaseCredentials;
 import org.opencb.cellbase.core.loader.CellBaseLoader;
+import org.opencb.cellbase.core.loader.LoadBatch;
 import org.opencb.cellbase.core.loader.LoadRunner;
 import org.opencb.cellbase.core.loader.LoaderException;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
@@ -47,6 +54,7 @@ import org.opencb.commons.datastore.mongodb.MongoDataStore;
 import org.opencb.commons.datastore.mongodb.MongoDataStoreManager;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -70,13 +78,21 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     private static final String SAMPLE_SOURCE = "sampleSource";
     private static final String HERITABLE_TRAITS = "heritableTraits";
     private static final String TRAIT = "trait";
-    private static final String PRIVATE_FEATURE_XREF_FIELD = "_featureXrefs";
-    private static final String PRIVATE_TRAIT_FIELD = "_traits";
-    private static final Set<String> SKIP_WORKDS = new HashSet<>(Arrays.asList("or", "and", "the", "of", "at",
-            "in", "on"));
+    public static final String BULK_LOAD = "mongodb-bulk-load";
+    public static final String WRITE_CONCERN = "mongodb-write-concern";
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+    private static final String PRIVATE_FEATURE_XREF_FIELD = JsonToBsonConverter.PRIVATE_FEATURE_XREF_FIELD;
+    private static final String PRIVATE_TRAIT_FIELD = JsonToBsonConverter.PRIVATE_TRAIT_FIELD;
     private MongoDataStoreManager mongoDataStoreManager;
     private MongoDataStore mongoDataStore;
     private MongoDBCollection mongoDBCollection;
+    private MongoCollection<RawBsonDocument> rawMongoCollection;
+    private MongoCollection<Document> documentMongoCollection;
+    private boolean bulkLoad;
+    private WriteConcern writeConcern;
+    private JsonToBsonConverter jsonToBsonConverter;
+    // Duplicated keys are expected only in the batches of a resumed load
+    private boolean skipDuplicatedKeys;
 
     private DBAdaptorFactory dbAdaptorFactory;
     @Deprecated
@@ -106,6 +122,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
         if (cellBaseConfiguration.getDatabases().getMongodb().getOptions().get("mongodb-index-folder") != null) {
             indexScriptFolder = Paths.get(cellBaseConfiguration.getDatabases().getMongodb().getOptions().get("mongodb-index-folder"));
         }
+        bulkLoad = Boolean.parseBoolean(cellBaseConfiguration.getDatabases().getMongodb().getOptions().get(BULK_LOAD));
     }
 
 
@@ -150,18 +167,38 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 
         mongoDataStore = mongoDataStoreManager.get(database, mongoDBConfiguration);
 
-        collectionName = getCollectionName(data);
+        initCollection();
         mongoDBCollection = mongoDataStore.getCollection(collectionName);
+        // Raw BSON documents produced by the JsonToBsonConverter are inserted as they are, without any codec
+        rawMongoCollection = mongoDataStore.getDb().getCollection(collectionName, RawBsonDocument.class);
+        documentMongoCollection = mongoDataStore.getDb().getCollection(collectionName);
+
+        String writeConcernName = mongodbCredentials.getOptions().get(WRITE_CONCERN);
+        writeConcern = StringUtils.isNotEmpty(writeConcernName) ? WriteConcern.valueOf(writeConcernName) : WriteConcern.ACKNOWLEDGED;
+        if (writeConcern == null) {
+            throw new LoaderException("Unknown MongoDB write concern '" + writeConcernName + "'");
+        }
+        logger.debug("Bulk load mode '{}', write concern '{}'", bulkLoad, writeConcern);
         logger.debug("Connection to MongoDB datastore '{}' created, collection '{}' is used",
                 mongoDataStore.getDatabaseName(), collectionName);
 
+        dbAdaptorFactory = new MongoDBAdaptorFactory(cellBaseConfiguration);
+        // This is not currently used and should no longer be used. To be soon removed
+//        dbAdaptor = getDBAdaptor(data);
+    }
+
+    public void initCollection() throws LoaderException {
+        collectionName = getCollectionName(data);
+
         // Some collections need to add an extra _chunkIds field to speed up some queries
         getChunkSizes();
         logger.debug("Chunk sizes '{}' used for collection '{}'", Arrays.toString(chunkSizes), collectionName);
 
-        dbAdaptorFactory = new MongoDBAdaptorFactory(cellBaseConfiguration);
-        // This is not currently used and should no longer be used. To be soon removed
-//        dbAdaptor = getDBAdaptor(data);
+        jsonToBsonConverter = new JsonToBsonConverter(chunkSizes, collectionName.equals(CLINICAL_VARIANTS_COLLECTION));
+    }
+
+    public JsonToBsonConverter getJsonToBsonConverter() {
+        return jsonToBsonConverter;
     }
 
     @Deprecated
@@ -390,6 +427,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 
                     Long numUpdates = (Long) dbAdaptor.update(dbObjectsBatch, field, innerFields).first();
                     numLoadedObjects += numUpdates;
+                    commit(batch);
                 }
             } catch (InterruptedException e) {
                 logger.error("Loader thread interrupted: " + e.getMessage());
@@ -401,37 +439,96 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
         return numLoadedObjects;
     }
 
+    /**
+     * A batch failing for any other reason than duplicated keys is not committed to the load journal and the next
+     * batches are still loaded, the load fails at the end so that the missing batches can be loaded with --resume.
+     */
     private int prepareBatchAndLoad() {
         int numLoadedObjects = 0;
         boolean finished = false;
+        MongoBulkWriteException duplicatedKeyException = null;
+        int numFailedBatches = 0;
+        Exception batchException = null;
         while (!finished) {
             try {
                 List<String> batch = blockingQueue.take();
                 if (batch == LoadRunner.POISON_PILL) {
                     finished = true;
-                } else {
-                    List<Document> documentBatch = new ArrayList<>(batch.size());
-                    for (String jsonLine : batch) {
-                        Document document = Document.parse(jsonLine);
-                        addChunkId(document);
-                        addClinicalPrivateFields(document);
-//                        addVariationPrivateFields(document);
-                        documentBatch.add(document);
+                } else if (duplicatedKeyException == null) {
+                    skipDuplicatedKeys = batch instanceof LoadBatch && ((LoadBatch) batch).isResumed();
+                    List<RawBsonDocument> documentBatch = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        documentBatch.add(convert(batch.get(i), getDocumentId(batch, i)));
                     }
-                    numLoadedObjects += load(documentBatch);
+                    numLoadedObjects += loadRaw(documentBatch);
+                    commit(batch);
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 logger.error("Loader thread interrupted: " + e.getMessage());
+            } catch (MongoBulkWriteException e) {
+                if (hasDuplicatedKeys(e)) {
+                    // Documents already in the collection, loading the rest would leave it with a mix of old and new
+                    // data. The queue is still drained so that the readers are not blocked
+                    logger.error("Duplicated keys loading '{}', is the collection empty? {}", data, e.getMessage());
+                    duplicatedKeyException = e;
+                } else {
+                    logger.error("Error Loading batch: " + e.getMessage());
+                    numFailedBatches++;
+                    batchException = batchException != null ? batchException : e;
+                }
             } catch (Exception e) {
                 e.printStackTrace();
                 logger.error("Error Loading batch: " + e.getMessage());
+                numFailedBatches++;
+                batchException = batchException != null ? batchException : e;
             }
         }
         logger.debug("'load' finished. " + numLoadedObjects + " records loaded");
+        if (duplicatedKeyException != null) {
+            throw duplicatedKeyException;
+        }
+        if (numFailedBatches > 0) {
+            throw new IllegalStateException(numFailedBatches + " batches of '" + data + "' could not be loaded, "
+                    + numLoadedObjects + " records were loaded", batchException);
+        }
         return numLoadedObjects;
     }
 
+    private RawBsonDocument convert(String jsonLine, ObjectId id) throws IOException, FileFormatException {
+        try {
+            return jsonToBsonConverter.convert(jsonLine, id);
+        } catch (IllegalArgumentException e) {
+            // MongoDB extended JSON, e.g. {"$numberLong": ...}, is only understood by Document.parse
+            logger.debug("{}, parsing document with Document.parse", e.getMessage());
+            Document document = parseDocument(jsonLine);
+            if (id != null && !document.containsKey("_id")) {
+                document.put("_id", id);
+            }
+            return new RawBsonDocument(document, new DocumentCodec());
+        }
+    }
+
+    /**
+     * Batches read by the LoadRunner come with an id for each line that is the same when an interrupted load is resumed,
+     * so the documents of a batch loaded again are skipped as duplicated keys.
+     */
+    private ObjectId getDocumentId(List<String> batch, int index) {
+        return batch instanceof LoadBatch ? new ObjectId(((LoadBatch) batch).getDocumentId(index)) : null;
+    }
+
+    /**
+     * Former conversion path, an intermediate Document is parsed and then modified to add the private fields. This is
+     * used for the documents that need to be fixed before being loaded, e.g. when they are too big.
+     */
+    public Document parseDocument(String jsonLine) throws JsonProcessingException, FileFormatException {
+        Document document = Document.parse(jsonLine);
+        addChunkId(document);
+        addClinicalPrivateFields(document);
+//        addVariationPrivateFields(document);
+        return document;
+    }
+
 //    private void addVariationPrivateFields(Document document) {
 //        if (data.equals("variation")) {
 //            document.put("_id", buildId((String) document.get("chromosome"), (int) document.get("start"),
@@ -447,7 +544,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 document.put(PRIVATE_FEATURE_XREF_FIELD, featureXrefs);
             }
             List<String> traitList = getTraitFromClinicalVariants(annotationDocument);
-            if (!featureXrefs.isEmpty()) {
+            if (!traitList.isEmpty()) {
                 document.put(PRIVATE_TRAIT_FIELD, traitList);
             }
         }
@@ -535,15 +632,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     }
 
     private List<String> splitKeywords(String string) {
-        String[] stringArray = string.toLowerCase().split("\\W");
-        List<String> stringList = new ArrayList<>(stringArray.length);
-        for (String keyword : stringArray) {
-            if (!keyword.isEmpty() && !SKIP_WORKDS.contains(keyword)) {
-                stringList.add(keyword);
-            }
-        }
-
-        return stringList;
+        return JsonToBsonConverter.splitKeywords(string);
     }
 
     private void getValuesFromClinicalObject(List clinicalObjectList, String field, Set<String> values) {
@@ -587,11 +676,11 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                     values.add(geneName);
                 }
                 String ensemblGeneId = (String) ((Document) consequenceTypeObject).get("ensemblGeneId");
-                if (geneName != null) {
+                if (ensemblGeneId != null) {
                     values.add(ensemblGeneId);
                 }
                 String ensemblTranscriptId = (String) ((Document) consequenceTypeObject).get("ensemblTranscriptId");
-                if (geneName != null) {
+                if (ensemblTranscriptId != null) {
                     values.add(ensemblTranscriptId);
                 }
                 Document proteinVariantAnnotationObject
@@ -617,8 +706,10 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 if (genomicFeatureList != null) {
                     for (Document genomicFeature : genomicFeatureList) {
                         if (genomicFeature.get(XREFS) != null && !((Document) genomicFeature.get(XREFS)).isEmpty()) {
-                            for (String key : ((Document) genomicFeature.get(XREFS)).keySet()) {
-                                values.add((String) ((Document) genomicFeature.get(XREFS)).get(key));
+                            for (Object value : ((Document) genomicFeature.get(XREFS)).values()) {
+                                if (value != null) {
+                                    values.add((String) value);
+                                }
                             }
                         }
                     }
@@ -720,15 +811,51 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
         }
     }
 
+    /**
+     * In bulk load mode secondary indexes are dropped before loading so that they are not maintained on every insert.
+     * They are built in one pass by createIndex once the load finishes, this is only done when there is an index
+     * script to build them again.
+     *
+     * @return true if indexes were dropped
+     */
+    @Override
+    public boolean preLoad() throws LoaderException {
+        if (!bulkLoad || field != null) {
+            return false;
+        }
+        Path indexFilePath = indexScriptFolder != null ? getIndexFilePath(data) : null;
+        if (indexFilePath == null || !Files.exists(indexFilePath)) {
+            logger.warn("No index script found for '{}', existing indexes are kept during the load", data);
+            return false;
+        }
+        boolean dropped = false;
+        for (Document index : rawMongoCollection.listIndexes()) {
+            String indexName = index.getString("name");
+            if (!indexName.equals("_id_")) {
+                logger.info("Dropping index '{}' from '{}', it will be created after loading", indexName, collectionName);
+                rawMongoCollection.dropIndex(indexName);
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
     @Override
     public void createIndex(String data) throws LoaderException {
         Path indexFilePath = getIndexFilePath(data);
         if (indexFilePath != null) {
             logger.info("Creating indexes...");
+            boolean created;
             try {
-                runCreateIndexProcess(indexFilePath);
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
+                created = runCreateIndexProcess(indexFilePath);
+            } catch (IOException e) {
+                throw new LoaderException("Error running index script " + indexFilePath + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LoaderException("Interrupted while running index script " + indexFilePath);
+            }
+            if (!created) {
+                throw new LoaderException("Index script " + indexFilePath + " failed, indexes of '" + data + "' may be missing");
             }
         } else {
             logger.warn("No index found for '{}'", data);
@@ -736,10 +863,97 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
     }
 
 
+    private int loadRaw(List<RawBsonDocument> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            return insert(rawMongoCollection, batch);
+        } catch (BsonSerializationException e) {
+            // Documents too big to be loaded are truncated by load(List<Document>), which needs them decoded.
+            // The _id generated by the converter is kept so that documents already inserted are not duplicated, the
+            // failed insert may have written part of this batch so its duplicated keys are skipped
+            logger.warn("Found problems loading raw BSON batch, decoding documents to fix them...");
+            skipDuplicatedKeys = true;
+            List<Document> documentBatch = new ArrayList<>(batch.size());
+            for (RawBsonDocument rawBsonDocument : batch) {
+                documentBatch.add(rawBsonDocument.decode(DOCUMENT_CODEC));
+            }
+            return load(documentBatch);
+        }
+    }
+
+    /**
+     * Inserts the batch with the configured write concern, unordered in bulk load mode so that MongoDB can apply the
+     * writes in parallel and a failing document does not stop the rest of the batch. Duplicated keys are only skipped
+     * when resuming a load, otherwise they are an error.
+     */
+    private <T> int insert(MongoCollection<T> collection, List<T> batch) {
+        try {
+            if (bulkLoad) {
+                collection.withWriteConcern(writeConcern).insertMany(batch, new InsertManyOptions().ordered(false));
+            } else {
+                collection.insertMany(batch);
+            }
+            return batch.size();
+        } catch (MongoBulkWriteException e) {
+            // Duplicated keys due to a batch which was partially inserted before the load was resumed, just skip those
+            // documents. Unordered writes insert all the others
+            checkDuplicatedKeys(e);
+            int numInserted = e.getWriteResult().getInsertedCount();
+            if (bulkLoad) {
+                return numInserted;
+            }
+            // Ordered writes stop at the first duplicated document, the rest is inserted in one single unordered write
+            // which skips any other duplicated document
+            List<T> remaining = batch.subList(e.getWriteErrors().get(0).getIndex() + 1, batch.size());
+            if (remaining.isEmpty()) {
+                return numInserted;
+            }
+            try {
+                collection.insertMany(remaining, new InsertManyOptions().ordered(false));
+                return numInserted + remaining.size();
+            } catch (MongoBulkWriteException retryException) {
+                checkDuplicatedKeys(retryException);
+                return numInserted + retryException.getWriteResult().getInsertedCount();
+            }
+        }
+    }
+
+    /**
+     * @param e exception of an insert
+     * @throws MongoBulkWriteException the exception given if some error is not a duplicated key, or duplicated keys are
+     * not expected because the load was not resumed
+     */
+    private static boolean hasDuplicatedKeys(MongoBulkWriteException e) {
+        for (BulkWriteError bulkWriteError : e.getWriteErrors()) {
+            if (ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkDuplicatedKeys(MongoBulkWriteException e) {
+        if (!skipDuplicatedKeys) {
+            // Documents ids are unique to each load, the collection was not empty or the input has duplicated lines
+            throw e;
+        }
+        for (BulkWriteError bulkWriteError : e.getWriteErrors()) {
+            // It is not a duplicated key error - propagate it
+            if (!ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
+                throw e;
+            }
+        }
+    }
+
     public int load(List<Document> batch) {
         // End recursive calls
         if (batch.size() > 0) {
             try {
+                if (bulkLoad) {
+                    return insert(documentMongoCollection, batch);
+                }
                 // TODO: queryOptions?
                 QueryResult<BulkWriteResult> result = mongoDBCollection.insert(batch, new QueryOptions());
                 return result.first().getInsertedCount();
@@ -766,6 +980,13 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                         return 0;
                     }
                 }
+                if (bulkLoad) {
+                    // Bisection isolates the failing documents in log2(n) inserts, the rest are still loaded in big
+                    // batches. Unordered inserts skip the duplicated keys of any half partially inserted before
+                    logger.warn("Found problems loading document batch of size {}, splitting it...", batch.size());
+                    int middle = batch.size() / 2;
+                    return load(batch.subList(0, middle)) + load(batch.subList(middle, batch.size()));
+                }
                 logger.warn("Found problems loading document batch, loading one by one...");
                 int nInserted = 0;
                 for (Document document : batch) {
@@ -774,14 +995,10 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 }
                 return nInserted;
             } catch (MongoBulkWriteException e) {
-                for (BulkWriteError bulkWriteError : e.getWriteErrors()) {
-                    // Duplicated key due to a batch which was partially inserted before, just skip the variant
-                    if (ErrorCategory.fromErrorCode(bulkWriteError.getCode()).equals(ErrorCategory.DUPLICATE_KEY)) {
-                        return 0;
-                    }
-                }
-                // It is not a duplicated key error - propagate it
-                throw e;
+                // Duplicated keys of a batch which was partially inserted before, skip the duplicated documents and
+                // insert the rest
+                checkDuplicatedKeys(e);
+                return insert(documentMongoCollection, batch);
             }
         } else {
             return 0;
@@ -804,7 +1021,7 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
                 }
             }
             logger.debug("Setting chunkIds to {}", chunkIds.toString());
-            document.put("_chunkIds", chunkIds);
+            document.put(JsonToBsonConverter.CHUNK_IDS_FIELD, chunkIds);
         }
     }
 
@@ -898,6 +1115,8 @@ public class MongoDBCellBaseLoader extends CellBaseLoader {
 
         ProcessBuilder processBuilder = new ProcessBuilder(args);
         logger.debug("Executing command: '{}'", StringUtils.join(processBuilder.command(), " "));
+        // Errors of the script are shown, the output is not buffered in a pipe that could fill up and block the script
+        processBuilder.inheritIO();
 
 //        processBuilder.redirectErrorStream(true);
 //        if (logFilePath != null) {
@@ -1,11 +1,16 @@
 package org.opencb.cellbase.lib.impl;
 
 import org.hamcrest.CoreMatchers;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.Expression;
 import org.opencb.biodata.models.variant.avro.ExpressionCall;
+import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
 import org.opencb.cellbase.core.api.GeneDBAdaptor;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
 import org.opencb.commons.datastore.core.Query;
@@ -15,6 +20,10 @@ import org.opencb.commons.datastore.core.QueryResult;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -107,4 +116,90 @@ public class GeneMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         }
         assertEquals(true, found);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void nativeGetMultipleRegions() throws Exception {
+        GeneDBAdaptor geneDBAdaptor = dbAdaptorFactory.getGeneDBAdaptor("hsapiens", "GRCh37");
+        List<Query> queries = Arrays.asList(new Query(GeneDBAdaptor.QueryParams.REGION.key(), "13:32889611-32973805"),
+                new Query(GeneDBAdaptor.QueryParams.REGION.key(), "1:1-1000000"),
+                new Query(GeneDBAdaptor.QueryParams.REGION.key(), "2:179390716-179695529"));
+        QueryOptions queryOptions = new QueryOptions("include", "id");
+
+        // Queries run concurrently, results must be returned in the same order than the queries and must be equal to
+        // the results of running each query on its own
+        List<QueryResult> queryResults = geneDBAdaptor.nativeGet(queries, queryOptions);
+        assertEquals(queries.size(), queryResults.size());
+        for (int i = 0; i < queries.size(); i++) {
+            QueryResult queryResult = geneDBAdaptor.nativeGet(queries.get(i), new QueryOptions(queryOptions));
+            assertEquals(queryResult.getNumResults(), queryResults.get(i).getNumResults());
+            assertEquals(queryResult.getResult(), queryResults.get(i).getResult());
+        }
+    }
+
+    @Test
+    public void nativeGetWithResumeToken() throws Exception {
+        GeneDBAdaptor geneDBAdaptor = dbAdaptorFactory.getGeneDBAdaptor("hsapiens", "GRCh37");
+        Query query = new Query();
+        QueryResult allGenes = geneDBAdaptor.nativeGet(query, new QueryOptions("include", "id"));
+
+        // Page through all genes using the token returned by the previous page
+        List<Object> pagedIds = new ArrayList<>();
+        QueryOptions queryOptions = new QueryOptions("include", "id");
+        queryOptions.put(QueryOptions.LIMIT, 7);
+        queryOptions.put(CellBaseDBAdaptor.RESUME_TOKEN, "");
+        int numPages = 0;
+        do {
+            QueryResult queryResult = geneDBAdaptor.nativeGet(query, queryOptions);
+            for (Object document : queryResult.getResult()) {
+                pagedIds.add(((Map) document).get("id"));
+            }
+            queryOptions.put(CellBaseDBAdaptor.RESUME_TOKEN, queryOptions.getString(CellBaseDBAdaptor.NEXT_RESUME_TOKEN));
+            numPages++;
+        } while (queryOptions.getString(CellBaseDBAdaptor.NEXT_RESUME_TOKEN) != null);
+
+        assertEquals(allGenes.getNumResults(), pagedIds.size());
+        assertEquals((allGenes.getNumResults() / 7) + 1, numPages);
+        for (Object document : allGenes.getResult()) {
+            assertTrue(pagedIds.contains(((Map) document).get("id")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nativeGetWithResumeTokenMultipleQueries() throws Exception {
+        GeneDBAdaptor geneDBAdaptor = dbAdaptorFactory.getGeneDBAdaptor("hsapiens", "GRCh37");
+        QueryOptions queryOptions = new QueryOptions(CellBaseDBAdaptor.RESUME_TOKEN, "");
+        geneDBAdaptor.nativeGet(Arrays.asList(new Query(GeneDBAdaptor.QueryParams.REGION.key(), "1:1-100000"),
+                new Query(GeneDBAdaptor.QueryParams.REGION.key(), "2:1-100000")), queryOptions);
+    }
+
+    @Test
+    public void getIntervalFrequenciesPrecomputed() throws Exception {
+        GeneMongoDBAdaptor geneDBAdaptor = (GeneMongoDBAdaptor) dbAdaptorFactory.getGeneDBAdaptor("hsapiens", "GRCh37");
+        assertTrue(geneDBAdaptor.createIntervalFrequencies().first() > 0);
+
+        // Region starting and ending at interval boundaries, all intervals are read from the precomputed counts
+        assertSameIntervalFrequencies(geneDBAdaptor, new Region("1", 1, 1399999), 7);
+        // Both the first and last intervals are only partially covered and must be aggregated
+        assertSameIntervalFrequencies(geneDBAdaptor, new Region("1", 150000, 1250000), 7);
+        assertSameIntervalFrequencies(geneDBAdaptor, new Region("1", 1, 1250000), 7);
+        assertSameIntervalFrequencies(geneDBAdaptor, new Region("1", 1000000, 1100000), 1);
+    }
+
+    private void assertSameIntervalFrequencies(GeneMongoDBAdaptor geneDBAdaptor, Region region, int numIntervals) {
+        Query query = new Query(GeneDBAdaptor.QueryParams.REGION.key(), region.toString());
+        QueryResult precomputed = geneDBAdaptor.getIntervalFrequencies(query, 200000, new QueryOptions());
+        Bson regionQuery = Filters.and(Filters.eq("chromosome", region.getChromosome()), Filters.lte("start", region.getEnd()),
+                Filters.gte("end", region.getStart()));
+        QueryResult aggregated = geneDBAdaptor.getIntervalFrequencies(regionQuery, region, 200000, new QueryOptions());
+
+        assertEquals(numIntervals, precomputed.getResult().size());
+        assertEquals(aggregated.getResult().size(), precomputed.getResult().size());
+        for (int i = 0; i < aggregated.getResult().size(); i++) {
+            Document expected = (Document) aggregated.getResult().get(i);
+            Document actual = (Document) precomputed.getResult().get(i);
+            assertEquals(expected.get("start"), actual.get("start"));
+            assertEquals(expected.get("end"), actual.get("end"));
+            assertEquals(region.toString(), expected.get("features_count"), actual.get("features_count"));
+        }
+    }
+}
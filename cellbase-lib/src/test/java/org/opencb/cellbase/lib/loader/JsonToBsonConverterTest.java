@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the streaming JSON to BSON conversion produces the same documents as Document.parse plus the private
+ * fields. Throughput of both paths is measured by LoaderConversionBenchmark in cellbase-benchmark.
+ */
+public class JsonToBsonConverterTest {
+
+    private static final String GENE_FILE = "/gene.test.json.gz";
+    private static final String VARIATION_FILE = "/variation_chr1.full.test.json.gz";
+    private static final String CLINICAL_FILE = "/clinicalMongoDBAdaptor/phasedQueries/clinical_variants.full.test.json.gz";
+
+    @Test
+    public void convertGene() throws Exception {
+        checkConversion("gene", GENE_FILE);
+    }
+
+    @Test
+    public void convertVariation() throws Exception {
+        checkConversion("variation", VARIATION_FILE);
+    }
+
+    @Test
+    public void convertClinicalVariants() throws Exception {
+        checkConversion("clinical_variants", CLINICAL_FILE);
+    }
+
+    @Test
+    public void convertChunkIds() throws Exception {
+        JsonToBsonConverter converter = new JsonToBsonConverter(new int[]{2000, 20000}, false);
+        Document document = decode(converter.convert("{\"chromosome\":\"1\",\"start\":1999,\"end\":2001,\"id\":\"rs1\"}"));
+
+        assertEquals("rs1", document.get("id"));
+        assertEquals(Arrays.asList("1_0_2k", "1_1_2k", "1_0_20k"), document.get(JsonToBsonConverter.CHUNK_IDS_FIELD));
+    }
+
+    @Test
+    public void convertNumbers() throws Exception {
+        JsonToBsonConverter converter = new JsonToBsonConverter(null, false);
+        String json = "{\"int\":1,\"long\":12345678901,\"double\":0.5,\"exp\":1e3,\"bool\":true,\"null\":null,\"list\":[1,\"a\",{}]}";
+
+        Document document = decode(converter.convert(json));
+        assertTrue(document.get("_id") instanceof ObjectId);
+        document.remove("_id");
+        assertEquals(Document.parse(json), document);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertExtendedJson() throws Exception {
+        new JsonToBsonConverter(null, false).convert("{\"start\":{\"$numberLong\":\"1\"}}");
+    }
+
+    private void checkConversion(String data, String file) throws Exception {
+        MongoDBCellBaseLoader loader = getLoader(data);
+        JsonToBsonConverter converter = loader.getJsonToBsonConverter();
+        for (String jsonLine : readLines(file)) {
+            Document expected = normalize(loader.parseDocument(jsonLine));
+            Document actual = normalize(decode(converter.convert(jsonLine)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    private MongoDBCellBaseLoader getLoader(String data) throws Exception {
+        CellBaseConfiguration cellBaseConfiguration = CellBaseConfiguration
+                .load(JsonToBsonConverterTest.class.getClassLoader().getResourceAsStream("configuration.test.json"));
+        MongoDBCellBaseLoader loader = new MongoDBCellBaseLoader(new ArrayBlockingQueue<>(1), data, "cellbase_test", null,
+                null, cellBaseConfiguration);
+        loader.initCollection();
+        return loader;
+    }
+
+    private Document decode(RawBsonDocument rawBsonDocument) {
+        return new DocumentCodec().decode(new BsonBinaryReader(rawBsonDocument.getByteBuffer().asNIO()),
+                DecoderContext.builder().build());
+    }
+
+    // Private clinical fields are built from sets, order is not relevant. _id is generated
+    private Document normalize(Document document) {
+        document.remove("_id");
+        for (String field : Arrays.asList(JsonToBsonConverter.PRIVATE_FEATURE_XREF_FIELD, JsonToBsonConverter.PRIVATE_TRAIT_FIELD)) {
+            if (document.get(field) != null) {
+                List<String> values = new ArrayList<>((List<String>) document.get(field));
+                Collections.sort(values);
+                document.put(field, values);
+            }
+        }
+        return document;
+    }
+
+    private List<String> readLines(String file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(getClass().getResourceAsStream(file))))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.loader;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.loader.LoadRunner;
+import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
+import org.opencb.commons.datastore.core.DataStoreServerAddress;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.mongodb.MongoDBConfiguration;
+import org.opencb.commons.datastore.mongodb.MongoDataStoreManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Loads the same data with the former ordered inserts and with the bulk load mode, i.e. unordered inserts with
+ * bisection of failing batches, and checks both collections end up with the same documents.
+ */
+public class MongoDBCellBaseLoaderBulkLoadTest extends GenericMongoDBAdaptorTest {
+
+    private static final String BULK_LOAD_DBNAME = "cellbase_hsapiens_grch37_v4_bulk";
+    private static final String MONGODB_CELLBASE_LOADER = "org.opencb.cellbase.lib.loader.MongoDBCellBaseLoader";
+
+    public MongoDBCellBaseLoaderBulkLoadTest() throws IOException {
+    }
+
+    @Test
+    public void bulkLoadVariation() throws Exception {
+        compareLoads("variation", "variation", Arrays.asList("/variation_chr1.full.test.json.gz",
+                "/variation_chr10.full.test.json.gz", "/variation_chr17.full.test.json.gz", "/variation_chr22.full.test.json.gz"));
+    }
+
+    @Test
+    public void bulkLoadGene() throws Exception {
+        compareLoads("gene", "gene", Collections.singletonList("/gene.test.json.gz"));
+    }
+
+    @Test
+    public void bulkLoadClinicalVariants() throws Exception {
+        compareLoads("clinical_variants", "clinical_variants",
+                Collections.singletonList("/clinicalMongoDBAdaptor/phasedQueries/clinical_variants.full.test.json.gz"));
+    }
+
+    private void compareLoads(String data, String collection, List<String> resources) throws Exception {
+        List<Path> files = new ArrayList<>(resources.size());
+        for (String resource : resources) {
+            files.add(Paths.get(getClass().getResource(resource).toURI()));
+        }
+
+        clearDB(GRCH37_DBNAME);
+        loadRunner.load(files, data);
+
+        CellBaseConfiguration cellBaseConfiguration = CellBaseConfiguration
+                .load(getClass().getClassLoader().getResourceAsStream("configuration.test.json"));
+        cellBaseConfiguration.getDatabases().getMongodb().getOptions().put(MongoDBCellBaseLoader.BULK_LOAD, "true");
+        cellBaseConfiguration.getDatabases().getMongodb().getOptions().put(MongoDBCellBaseLoader.WRITE_CONCERN, "W1");
+        LoadRunner bulkLoadRunner = new LoadRunner(MONGODB_CELLBASE_LOADER, BULK_LOAD_DBNAME, 2, 2, cellBaseConfiguration);
+        clearDB(BULK_LOAD_DBNAME);
+        bulkLoadRunner.load(files, data);
+
+        List<String> expected = getDocuments(GRCH37_DBNAME, collection);
+        List<String> actual = getDocuments(BULK_LOAD_DBNAME, collection);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    // Documents as JSON without the generated _id, sorted since the load order is not deterministic
+    private List<String> getDocuments(String database, String collection) throws IOException {
+        try (MongoDataStoreManager mongoManager = new MongoDataStoreManager(
+                Collections.singletonList(new DataStoreServerAddress("localhost", 27017)))) {
+            List<Document> documents = mongoManager.get(database, MongoDBConfiguration.builder().build())
+                    .getCollection(collection).find(new Document(), new QueryOptions(QueryOptions.EXCLUDE, "_id")).getResult();
+            List<String> jsonDocuments = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                normalizePrivateFields(document);
+                jsonDocuments.add(document.toJson());
+            }
+            Collections.sort(jsonDocuments);
+            return jsonDocuments;
+        }
+    }
+
+    // Clinical private fields are built from sets, order is not relevant
+    private void normalizePrivateFields(Document document) {
+        for (String field : Arrays.asList(JsonToBsonConverter.PRIVATE_FEATURE_XREF_FIELD, JsonToBsonConverter.PRIVATE_TRAIT_FIELD)) {
+            if (document.get(field) != null) {
+                List<String> values = new ArrayList<>((List<String>) document.get(field));
+                Collections.sort(values);
+                document.put(field, values);
+            }
+        }
+    }
+
+}
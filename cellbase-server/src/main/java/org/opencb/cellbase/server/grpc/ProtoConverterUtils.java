@@ -16,6 +16,8 @@
 
 package org.opencb.cellbase.server.grpc;
 
+import com.google.protobuf.Any;
+import com.google.protobuf.Message;
 import org.bson.Document;
 import org.opencb.biodata.models.core.protobuf.GeneModel;
 import org.opencb.biodata.models.core.protobuf.RegulatoryRegionModel;
@@ -23,9 +25,13 @@ import org.opencb.biodata.models.core.protobuf.TranscriptModel;
 import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.biodata.models.variant.protobuf.VariantAnnotationProto;
 import org.opencb.biodata.models.variant.protobuf.VariantProto;
+import org.opencb.cellbase.core.grpc.service.QueryResponseModel;
+import org.opencb.commons.datastore.core.QueryResponse;
+import org.opencb.commons.datastore.core.QueryResult;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Created by swaathi on 03/03/16.
@@ -199,20 +205,63 @@ public class ProtoConverterUtils {
 //                .setStudyId((String) document.getOrDefault("studyId", ""))
 //    }
 
+    /**
+     * Converts a REST QueryResponse whose results have a proto model: proto messages are kept and VariantAnnotation
+     * objects are converted.
+     * @param queryResponse QueryResponse to convert
+     * @param queryOptions query options of the queryResponse as JSON, may be null
+     * @return proto QueryResponse with the results packed as Any, null if some result has no proto model
+     */
+    public static QueryResponseModel.QueryResponse createQueryResponse(QueryResponse<?> queryResponse, String queryOptions) {
+        QueryResponseModel.QueryResponse.Builder builder = QueryResponseModel.QueryResponse.newBuilder()
+                .setTime(queryResponse.getTime());
+        setIfNotNull(queryResponse.getApiVersion(), builder::setApiVersion);
+        setIfNotNull(queryResponse.getWarning(), builder::setWarning);
+        setIfNotNull(queryResponse.getError(), builder::setError);
+        setIfNotNull(queryOptions, builder::setQueryOptions);
+        for (Object object : queryResponse.getResponse()) {
+            if (!(object instanceof QueryResult)) {
+                return null;
+            }
+            QueryResult<?> queryResult = (QueryResult<?>) object;
+            QueryResponseModel.QueryResult.Builder queryResultBuilder = QueryResponseModel.QueryResult.newBuilder()
+                    .setDbTime(queryResult.getDbTime())
+                    .setNumResults(queryResult.getNumResults())
+                    .setNumTotalResults(queryResult.getNumTotalResults());
+            setIfNotNull(queryResult.getId(), queryResultBuilder::setId);
+            setIfNotNull(queryResult.getWarningMsg(), queryResultBuilder::setWarningMsg);
+            setIfNotNull(queryResult.getErrorMsg(), queryResultBuilder::setErrorMsg);
+            setIfNotNull(queryResult.getResultType(), queryResultBuilder::setResultType);
+            if (queryResult.getResult() != null) {
+                for (Object result : queryResult.getResult()) {
+                    if (result instanceof Message) {
+                        queryResultBuilder.addResult(Any.pack((Message) result));
+                    } else if (result instanceof VariantAnnotation) {
+                        queryResultBuilder.addResult(Any.pack(createVariantAnnotation((VariantAnnotation) result)));
+                    } else {
+                        return null;
+                    }
+                }
+            }
+            builder.addResponse(queryResultBuilder);
+        }
+        return builder.build();
+    }
+
     public static VariantAnnotationProto.VariantAnnotation createVariantAnnotation(VariantAnnotation annotation) {
-        VariantAnnotationProto.VariantAnnotation.Builder builder = VariantAnnotationProto.VariantAnnotation.newBuilder()
-                .setChromosome(annotation.getChromosome())
-                .setStart(annotation.getStart())
-                .setReference(annotation.getReference())
-                .setAlternate(annotation.getAlternate())
-                .setId(annotation.getId());
+        VariantAnnotationProto.VariantAnnotation.Builder builder = VariantAnnotationProto.VariantAnnotation.newBuilder();
+        setIfNotNull(annotation.getChromosome(), builder::setChromosome);
+        setIfNotNull(annotation.getStart(), builder::setStart);
+        setIfNotNull(annotation.getReference(), builder::setReference);
+        setIfNotNull(annotation.getAlternate(), builder::setAlternate);
+        setIfNotNull(annotation.getId(), builder::setId);
         List<Xref> xrefs = annotation.getXrefs();
         if (xrefs != null) {
             for (Xref xref : xrefs) {
                 VariantAnnotationProto.VariantAnnotation.Xref.Builder xrefBuilder =
-                        VariantAnnotationProto.VariantAnnotation.Xref.newBuilder()
-                                .setId(xref.getId())
-                                .setSource(xref.getSource());
+                        VariantAnnotationProto.VariantAnnotation.Xref.newBuilder();
+                setIfNotNull(xref.getId(), xrefBuilder::setId);
+                setIfNotNull(xref.getSource(), xrefBuilder::setSource);
                 builder.addXrefs(xrefBuilder.build());
             }
         }
@@ -233,16 +282,16 @@ public class ProtoConverterUtils {
         if (populationFrequencies != null) {
             for (PopulationFrequency pf: populationFrequencies) {
                 VariantAnnotationProto.PopulationFrequency.Builder popFreqBuilder =
-                        VariantAnnotationProto.PopulationFrequency.newBuilder()
-                        .setStudy(pf.getStudy())
-                        .setPopulation(pf.getPopulation())
-                        .setRefAllele(pf.getRefAllele())
-                        .setAltAllele(pf.getAltAllele())
-                        .setRefAlleleFreq(pf.getRefAlleleFreq())
-                        .setAltAlleleFreq(pf.getAltAlleleFreq())
-                        .setRefHomGenotypeFreq(pf.getRefHomGenotypeFreq())
-                        .setHetGenotypeFreq(pf.getHetGenotypeFreq())
-                        .setAltHomGenotypeFreq(pf.getAltHomGenotypeFreq());
+                        VariantAnnotationProto.PopulationFrequency.newBuilder();
+                setIfNotNull(pf.getStudy(), popFreqBuilder::setStudy);
+                setIfNotNull(pf.getPopulation(), popFreqBuilder::setPopulation);
+                setIfNotNull(pf.getRefAllele(), popFreqBuilder::setRefAllele);
+                setIfNotNull(pf.getAltAllele(), popFreqBuilder::setAltAllele);
+                setIfNotNull(pf.getRefAlleleFreq(), popFreqBuilder::setRefAlleleFreq);
+                setIfNotNull(pf.getAltAlleleFreq(), popFreqBuilder::setAltAlleleFreq);
+                setIfNotNull(pf.getRefHomGenotypeFreq(), popFreqBuilder::setRefHomGenotypeFreq);
+                setIfNotNull(pf.getHetGenotypeFreq(), popFreqBuilder::setHetGenotypeFreq);
+                setIfNotNull(pf.getAltHomGenotypeFreq(), popFreqBuilder::setAltHomGenotypeFreq);
                 builder.addPopulationFrequencies(popFreqBuilder.build());
             }
         }
@@ -256,23 +305,25 @@ public class ProtoConverterUtils {
     }
 
     public static VariantAnnotationProto.ConsequenceType createConsequenceType(ConsequenceType type) {
-        VariantAnnotationProto.ConsequenceType.Builder builder= VariantAnnotationProto.ConsequenceType.newBuilder()
-                .setGeneName(type.getGeneName())
-                .setEnsemblGeneId(type.getEnsemblGeneId())
-                .setEnsemblTranscriptId(type.getEnsemblTranscriptId())
-                .setStrand(type.getStrand())
-                .setBiotype(type.getBiotype())
-                .setCDnaPosition(type.getCdnaPosition())
-                .setCdsPosition(type.getCdsPosition())
-                .setCodon(type.getCodon())
-                .setProteinVariantAnnotation(createProteinVariantAnnotation(type.getProteinVariantAnnotation()));
+        VariantAnnotationProto.ConsequenceType.Builder builder = VariantAnnotationProto.ConsequenceType.newBuilder();
+        setIfNotNull(type.getGeneName(), builder::setGeneName);
+        setIfNotNull(type.getEnsemblGeneId(), builder::setEnsemblGeneId);
+        setIfNotNull(type.getEnsemblTranscriptId(), builder::setEnsemblTranscriptId);
+        setIfNotNull(type.getStrand(), builder::setStrand);
+        setIfNotNull(type.getBiotype(), builder::setBiotype);
+        setIfNotNull(type.getCdnaPosition(), builder::setCDnaPosition);
+        setIfNotNull(type.getCdsPosition(), builder::setCdsPosition);
+        setIfNotNull(type.getCodon(), builder::setCodon);
+        if (type.getProteinVariantAnnotation() != null) {
+            builder.setProteinVariantAnnotation(createProteinVariantAnnotation(type.getProteinVariantAnnotation()));
+        }
         List<SequenceOntologyTerm> sequenceOntologyTerms = type.getSequenceOntologyTerms();
         if (sequenceOntologyTerms != null) {
             for (SequenceOntologyTerm so : sequenceOntologyTerms) {
                 VariantAnnotationProto.SequenceOntologyTerm.Builder soBuilder =
-                        VariantAnnotationProto.SequenceOntologyTerm.newBuilder()
-                                .setAccession(so.getAccession())
-                                .setName(so.getName());
+                        VariantAnnotationProto.SequenceOntologyTerm.newBuilder();
+                setIfNotNull(so.getAccession(), soBuilder::setAccession);
+                setIfNotNull(so.getName(), soBuilder::setName);
                 builder.addSequenceOntologyTerms(soBuilder.build());
             }
         }
@@ -282,14 +333,14 @@ public class ProtoConverterUtils {
     public static VariantAnnotationProto.ProteinVariantAnnotation createProteinVariantAnnotation(
             ProteinVariantAnnotation proteinAnnotation) {
         VariantAnnotationProto.ProteinVariantAnnotation.Builder builder =
-                VariantAnnotationProto.ProteinVariantAnnotation.newBuilder()
-                .setUniprotAccession(proteinAnnotation.getUniprotAccession())
-                .setUniprotName(proteinAnnotation.getUniprotName())
-                .setPosition(proteinAnnotation.getPosition())
-                .setReference(proteinAnnotation.getReference())
-                .setAlternate(proteinAnnotation.getAlternate())
-                .setUniprotVariantId(proteinAnnotation.getUniprotVariantId())
-                .setFunctionalDescription(proteinAnnotation.getFunctionalDescription());
+                VariantAnnotationProto.ProteinVariantAnnotation.newBuilder();
+        setIfNotNull(proteinAnnotation.getUniprotAccession(), builder::setUniprotAccession);
+        setIfNotNull(proteinAnnotation.getUniprotName(), builder::setUniprotName);
+        setIfNotNull(proteinAnnotation.getPosition(), builder::setPosition);
+        setIfNotNull(proteinAnnotation.getReference(), builder::setReference);
+        setIfNotNull(proteinAnnotation.getAlternate(), builder::setAlternate);
+        setIfNotNull(proteinAnnotation.getUniprotVariantId(), builder::setUniprotVariantId);
+        setIfNotNull(proteinAnnotation.getFunctionalDescription(), builder::setFunctionalDescription);
 
         List<Score> substitutionScores = proteinAnnotation.getSubstitutionScores();
         if (substitutionScores != null) {
@@ -307,12 +358,12 @@ public class ProtoConverterUtils {
         if (features != null) {
             for (ProteinFeature feature : features) {
                 VariantAnnotationProto.ProteinFeature.Builder featureBuilder =
-                        VariantAnnotationProto.ProteinFeature.newBuilder()
-                        .setId(feature.getId())
-                        .setStart(feature.getStart())
-                        .setEnd(feature.getEnd())
-                        .setType(feature.getType())
-                        .setDescription(feature.getDescription());
+                        VariantAnnotationProto.ProteinFeature.newBuilder();
+                setIfNotNull(feature.getId(), featureBuilder::setId);
+                setIfNotNull(feature.getStart(), featureBuilder::setStart);
+                setIfNotNull(feature.getEnd(), featureBuilder::setEnd);
+                setIfNotNull(feature.getType(), featureBuilder::setType);
+                setIfNotNull(feature.getDescription(), featureBuilder::setDescription);
                 builder.addFeatures(featureBuilder.build());
             }
         }
@@ -320,10 +371,19 @@ public class ProtoConverterUtils {
     }
 
     public static VariantAnnotationProto.Score createVariantAnnotationScore(Score score) {
-        VariantAnnotationProto.Score.Builder builder = VariantAnnotationProto.Score.newBuilder()
-                .setScore(score.getScore())
-                .setSource(score.getSource())
-                .setDescription(score.getDescription());
+        VariantAnnotationProto.Score.Builder builder = VariantAnnotationProto.Score.newBuilder();
+        setIfNotNull(score.getScore(), builder::setScore);
+        setIfNotNull(score.getSource(), builder::setSource);
+        setIfNotNull(score.getDescription(), builder::setDescription);
         return builder.build();
     }
+
+    /**
+     * Proto builders do not accept null values, fields of null values are left unset.
+     */
+    private static <V> void setIfNotNull(V value, Consumer<V> setter) {
+        if (value != null) {
+            setter.accept(value);
+        }
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses responses on the fly when the client sends 'Accept-Encoding: gzip', 'gzip;q=0' is a refusal. The response is
+ * streamed through the compressor so no extra copy of the body is kept in memory.
+ */
+@Provider
+public class GZipWriterInterceptor implements WriterInterceptor {
+
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    @Context
+    private HttpHeaders httpHeaders;
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        String acceptEncoding = httpHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        if (!HttpHeaderUtils.isAccepted(acceptEncoding, GZIP) || context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            context.proceed();
+            return;
+        }
+
+        context.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+        context.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        // Content-Length, if set, refers to the uncompressed body
+        context.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(context.getOutputStream(), BUFFER_SIZE);
+        context.setOutputStream(gzipOutputStream);
+        try {
+            context.proceed();
+        } finally {
+            gzipOutputStream.finish();
+        }
+    }
+}
@@ -26,14 +26,19 @@ import com.fasterxml.jackson.module.jsonSchema.factories.SchemaFactoryWrapper;
 import com.google.common.base.Splitter;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import org.apache.avro.Schema;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
+import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
 import org.opencb.cellbase.core.api.DBAdaptorFactory;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.config.Species;
+import org.opencb.cellbase.core.grpc.service.QueryResponseModel;
 import org.opencb.cellbase.core.monitor.Monitor;
+import org.opencb.cellbase.core.serializer.QueryResponseCodec;
 import org.opencb.cellbase.server.exception.SpeciesException;
 import org.opencb.cellbase.server.exception.VersionException;
+import org.opencb.cellbase.server.grpc.ProtoConverterUtils;
 import org.opencb.commons.datastore.core.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -100,17 +105,26 @@ public class GenericRestWSServer implements IWSServer {
     @DefaultValue("false")
     @QueryParam("skipCount")
     @ApiParam(name = "skipCount", value = "Skip counting the total number of results. In other words, will leave "
-            + "numTotalResults in the QueryResult object to -1. This can make queries much faster."
+            + "numTotalResults in the QueryResult object to -1. The total number of results is only counted when count=true."
             + " Please note that this option may not be available for all web services.")
     protected String skipCount;
 
     @DefaultValue("false")
     @QueryParam("count")
-    @ApiParam(name = "count", value = "Get a count of the number of results obtained. Deactivated by default. "
+    @ApiParam(name = "count", value = "Get a count of the number of results obtained. Deactivated by default since it "
+            + "requires an extra query to the database, numTotalResults will be -1 when not all results are returned. "
             + " Please note that this option may not be available for all web services.",
             defaultValue = "false", allowableValues = "false,true")
     protected String count;
 
+    @QueryParam("token")
+    @ApiParam(name = "token", value = "Page through the results with the 'nextToken' returned in the queryOptions of the "
+            + "previous response instead of using 'skip', which is much faster for deep pages. Leave empty to get the "
+            + "first page. Results are not sorted when this option is used and it cannot be used when querying more than one "
+            + "id or region."
+            + " Please note that this option may not be available for all web services.")
+    protected String token;
+
     @DefaultValue("")
     @QueryParam("sort")
     @ApiParam(name = "sort", value = "Sort returned results by a certain data model attribute."
@@ -119,8 +133,9 @@ public class GenericRestWSServer implements IWSServer {
 
     @DefaultValue("json")
     @QueryParam("of")
-    @ApiParam(name = "Output format", value = "Output format, Protobuf is not yet implemented", defaultValue = "json",
-            allowableValues = "json,pb (Not implemented yet)")
+    @ApiParam(name = "Output format", value = "Output format, binary formats can also be requested with the 'Accept' header: "
+            + QueryResponseCodec.PROTOBUF_MEDIA_TYPE + " or " + QueryResponseCodec.AVRO_MEDIA_TYPE, defaultValue = "json",
+            allowableValues = "json,pb,avro")
     protected String outputFormat;
 
 
@@ -162,6 +177,10 @@ public class GenericRestWSServer implements IWSServer {
     private static final String ERROR = "error";
     private static final String OK = "ok";
 
+    static final String JSON_OUTPUT_FORMAT = "json";
+    static final String PROTOBUF_OUTPUT_FORMAT = "pb";
+    static final String AVRO_OUTPUT_FORMAT = "avro";
+
     static {
         SERVICE_START_DATE = new SimpleDateFormat("yyyyMMdd_HHmmss").format(Calendar.getInstance().getTime());
         WATCH = new StopWatch();
@@ -292,8 +311,10 @@ public class GenericRestWSServer implements IWSServer {
 
         queryOptions.put(LIMIT, (limit > 0) ? Math.min(limit, LIMIT_MAX) : LIMIT_DEFAULT);
         queryOptions.put(SKIP, (skip >= 0) ? skip : -1);
-        queryOptions.put(SKIP_COUNT, StringUtils.isNotBlank(skipCount) && Boolean.parseBoolean(skipCount));
-        queryOptions.put(COUNT, StringUtils.isNotBlank(count) && Boolean.parseBoolean(count));
+        QueryParamUtils.putCountOptions(queryOptions, count, skipCount);
+        if (multivaluedMap.containsKey(CellBaseDBAdaptor.RESUME_TOKEN)) {
+            queryOptions.put(CellBaseDBAdaptor.RESUME_TOKEN, token != null ? token : "");
+        }
 //        outputFormat = (outputFormat != null && !outputFormat.equals("")) ? outputFormat : "json";
 
         // Add all the others QueryParams from the URL
@@ -386,6 +407,7 @@ public class GenericRestWSServer implements IWSServer {
     protected Response createErrorResponse(String method, String errorMessage) {
         try {
             logQuery(ERROR);
+            setNotCacheable();
             return buildResponse(Response.ok(jsonObjectWriter.writeValueAsString(new HashMap<>().put("[ERROR] " + method, errorMessage)),
                     MediaType.APPLICATION_JSON_TYPE));
         } catch (Exception e) {
@@ -409,8 +431,38 @@ public class GenericRestWSServer implements IWSServer {
         }
         queryResponse.setResponse(list);
         logQuery(OK);
+        if (hasError(queryResponse)) {
+            setNotCacheable();
+        }
 
-        return createJsonResponse(queryResponse);
+        switch (getOutputFormat(outputFormat, httpServletRequest.getHeader(HttpHeaders.ACCEPT))) {
+            case PROTOBUF_OUTPUT_FORMAT:
+            case AVRO_OUTPUT_FORMAT:
+                return createBinaryResponse(queryResponse);
+            default:
+                return createJsonResponse(queryResponse);
+        }
+    }
+
+    private boolean hasError(QueryResponse queryResponse) {
+        if (StringUtils.isNotEmpty(queryResponse.getError())) {
+            return true;
+        }
+        for (Object result : queryResponse.getResponse()) {
+            if (result instanceof QueryResult && StringUtils.isNotEmpty(((QueryResult) result).getErrorMsg())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Responses with an error in the body are returned with status 200, this prevents HttpCacheFilter from caching them.
+     */
+    private void setNotCacheable() {
+        if (httpServletRequest != null) {
+            httpServletRequest.setAttribute(HttpCacheFilter.NOT_CACHEABLE_PROPERTY, true);
+        }
     }
 
     protected Response createOkResponse(Object obj, MediaType mediaType) {
@@ -436,6 +488,56 @@ public class GenericRestWSServer implements IWSServer {
         }
     }
 
+    /**
+     * Encodes the QueryResponse with the binary format requested: Avro when the results are biodata Avro records, e.g.
+     * VariantAnnotation, and protobuf when they have a proto model. Other results are returned as JSON, the Content-Type
+     * tells the client the format used.
+     */
+    protected Response createBinaryResponse(QueryResponse queryResponse) {
+        try {
+            String options = queryResponse.getQueryOptions() != null
+                    ? jsonObjectWriter.writeValueAsString(queryResponse.getQueryOptions())
+                    : null;
+            if (PROTOBUF_OUTPUT_FORMAT.equals(getOutputFormat(outputFormat, httpServletRequest.getHeader(HttpHeaders.ACCEPT)))) {
+                QueryResponseModel.QueryResponse protoQueryResponse = ProtoConverterUtils.createQueryResponse(queryResponse, options);
+                if (protoQueryResponse != null) {
+                    return buildResponse(Response.ok(protoQueryResponse.toByteArray(), QueryResponseCodec.PROTOBUF_MEDIA_TYPE));
+                }
+            } else {
+                Schema resultSchema = QueryResponseCodec.getResultSchema(queryResponse);
+                if (resultSchema != null) {
+                    MediaType mediaType = new MediaType("avro", "binary",
+                            Collections.singletonMap(QueryResponseCodec.RECORD_PARAMETER, resultSchema.getFullName()));
+                    return buildResponse(Response.ok(QueryResponseCodec.encodeAvro(queryResponse, resultSchema), mediaType));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("QueryResponse cannot be binary encoded, returning JSON: {}", e.getMessage());
+        }
+        return createJsonResponse(queryResponse);
+    }
+
+    /**
+     * Output format of a request, the 'of' query param takes precedence over the 'Accept' header.
+     * @param outputFormat value of the 'of' query param
+     * @param accept value of the 'Accept' header
+     * @return one of JSON_OUTPUT_FORMAT, PROTOBUF_OUTPUT_FORMAT or AVRO_OUTPUT_FORMAT
+     */
+    static String getOutputFormat(String outputFormat, String accept) {
+        if (PROTOBUF_OUTPUT_FORMAT.equalsIgnoreCase(outputFormat) || AVRO_OUTPUT_FORMAT.equalsIgnoreCase(outputFormat)) {
+            return outputFormat.toLowerCase();
+        }
+        if (StringUtils.isEmpty(outputFormat) || JSON_OUTPUT_FORMAT.equalsIgnoreCase(outputFormat)) {
+            if (HttpHeaderUtils.isAccepted(accept, QueryResponseCodec.PROTOBUF_MEDIA_TYPE)) {
+                return PROTOBUF_OUTPUT_FORMAT;
+            }
+            if (HttpHeaderUtils.isAccepted(accept, QueryResponseCodec.AVRO_MEDIA_TYPE)) {
+                return AVRO_OUTPUT_FORMAT;
+            }
+        }
+        return JSON_OUTPUT_FORMAT;
+    }
+
     private Response buildResponse(ResponseBuilder responseBuilder) {
         return responseBuilder
                 .header("Access-Control-Allow-Origin", "*")
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.cellbase.core.api.CellBaseDBAdaptor;
+import org.opencb.cellbase.core.config.ServerProperties;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.*;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP caching of GET responses. CellBase data does not change for a loaded release, so responses are identified by an
+ * ETag built from the release, i.e. the database species, assembly, version and metadata, and the normalized request URI.
+ * Requests with a matching 'If-None-Match' get a 304 before any resource code runs, and if 'responseCacheSize' is
+ * configured the serialized responses are kept in a size-bounded LRU cache so that repeated requests skip MongoDB and
+ * serialization entirely.
+ */
+@Provider
+public class HttpCacheFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /**
+     * Request property set by the resources when the response must not be cached although its status is 200, e.g. when
+     * the QueryResponse carries an error.
+     */
+    static final String NOT_CACHEABLE_PROPERTY = "cellbase.notCacheable";
+
+    private static final String ETAG_PROPERTY = "cellbase.etag";
+    private static final String DATA_RELEASE_PROPERTY = "cellbase.dataRelease";
+    private static final String CACHE_HIT_PROPERTY = "cellbase.cacheHit";
+    private static final long RELEASE_REFRESH_MILLIS = 60 * 1000;
+
+    private static final Map<String, DataRelease> DATA_RELEASES = new ConcurrentHashMap<>();
+    private ResponseCache responseCache;
+
+    private static Logger logger = LoggerFactory.getLogger(HttpCacheFilter.class);
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!HttpMethod.GET.equals(requestContext.getMethod())) {
+            return;
+        }
+        UriInfo uriInfo = requestContext.getUriInfo();
+        DataRelease dataRelease = getDataRelease(uriInfo.getPathParameters().getFirst("version"),
+                uriInfo.getPathParameters().getFirst("species"), uriInfo.getQueryParameters().getFirst("assembly"));
+        if (dataRelease == null) {
+            return;
+        }
+
+        String etag = createETag(dataRelease, uriInfo, GenericRestWSServer.getOutputFormat(
+                uriInfo.getQueryParameters().getFirst("of"), requestContext.getHeaderString(HttpHeaders.ACCEPT)));
+        requestContext.setProperty(ETAG_PROPERTY, etag);
+        requestContext.setProperty(DATA_RELEASE_PROPERTY, dataRelease);
+        if (matches(requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH), etag)) {
+            requestContext.setProperty(CACHE_HIT_PROPERTY, true);
+            requestContext.abortWith(addCacheHeaders(Response.notModified(), etag, dataRelease).build());
+            return;
+        }
+
+        ResponseCache cache = getResponseCache();
+        CachedResponse cachedResponse = (cache != null) ? cache.get(etag) : null;
+        if (cachedResponse != null) {
+            requestContext.setProperty(CACHE_HIT_PROPERTY, true);
+            requestContext.abortWith(addCacheHeaders(Response.ok(cachedResponse.body, cachedResponse.mediaType), etag, dataRelease)
+                    .build());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        String etag = (String) requestContext.getProperty(ETAG_PROPERTY);
+        if (etag == null || requestContext.getProperty(CACHE_HIT_PROPERTY) != null
+                || requestContext.getProperty(NOT_CACHEABLE_PROPERTY) != null
+                || responseContext.getStatus() != Response.Status.OK.getStatusCode()) {
+            return;
+        }
+        DataRelease dataRelease = (DataRelease) requestContext.getProperty(DATA_RELEASE_PROPERTY);
+
+        MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+        headers.putSingle(HttpHeaders.ETAG, new EntityTag(etag));
+        headers.putSingle(HttpHeaders.LAST_MODIFIED, dataRelease.lastModified);
+        headers.putSingle(HttpHeaders.CACHE_CONTROL, getCacheControl());
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+        ResponseCache cache = getResponseCache();
+        if (cache != null) {
+            byte[] body = null;
+            if (responseContext.getEntity() instanceof String) {
+                body = ((String) responseContext.getEntity()).getBytes(StandardCharsets.UTF_8);
+            } else if (responseContext.getEntity() instanceof byte[]) {
+                body = (byte[]) responseContext.getEntity();
+            }
+            if (body != null) {
+                cache.put(etag, new CachedResponse(body, responseContext.getMediaType()));
+            }
+        }
+    }
+
+    private Response.ResponseBuilder addCacheHeaders(Response.ResponseBuilder responseBuilder, String etag, DataRelease dataRelease) {
+        return responseBuilder
+                .tag(new EntityTag(etag))
+                .lastModified(dataRelease.lastModified)
+                .cacheControl(getCacheControl());
+    }
+
+    private CacheControl getCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(getServerProperties().getCacheMaxAge());
+        return cacheControl;
+    }
+
+    /**
+     * ETag of a request, requests with the same path, parameters, in any order, and output format get the same ETag for
+     * a data release.
+     */
+    private String createETag(DataRelease dataRelease, UriInfo uriInfo, String outputFormat) {
+        StringBuilder uri = new StringBuilder(dataRelease.id).append('/').append(outputFormat).append('/').append(uriInfo.getPath());
+        Map<String, List<String>> queryParameters = new TreeMap<>(uriInfo.getQueryParameters());
+        for (Map.Entry<String, List<String>> entry : queryParameters.entrySet()) {
+            for (String value : entry.getValue()) {
+                uri.append('&').append(entry.getKey()).append('=').append(value);
+            }
+        }
+        return Hashing.sha1().hashString(uri, StandardCharsets.UTF_8).toString();
+    }
+
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            value = StringUtils.removeStart(value.trim(), "W/");
+            if (value.equals("*") || StringUtils.strip(value, "\"").equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Data release of a species database. Metadata of the database is read again every RELEASE_REFRESH_MILLIS so that
+     * reloaded databases get new ETags, Last-Modified is the time this server found the current release.
+     */
+    DataRelease getDataRelease(String version, String species, String assembly) {
+        if (StringUtils.isEmpty(version) || StringUtils.isEmpty(species)) {
+            return null;
+        }
+        String key = version + "_" + species + "_" + StringUtils.defaultString(assembly);
+        DataRelease dataRelease = DATA_RELEASES.get(key);
+        if (dataRelease == null || System.currentTimeMillis() - dataRelease.checkedAt > RELEASE_REFRESH_MILLIS) {
+            try {
+                CellBaseDBAdaptor metaDBAdaptor = GenericRestWSServer.dbAdaptorFactory.getMetaDBAdaptor(species, assembly);
+                QueryResult metadata = metaDBAdaptor.nativeGet(new Query(), new QueryOptions());
+                String id = Hashing.sha1().hashString(key + GenericRestWSServer.jsonObjectWriter.writeValueAsString(metadata.getResult()),
+                        StandardCharsets.UTF_8).toString();
+                if (dataRelease == null || !dataRelease.id.equals(id)) {
+                    dataRelease = new DataRelease(id, new Date());
+                } else {
+                    dataRelease.checkedAt = System.currentTimeMillis();
+                }
+                DATA_RELEASES.put(key, dataRelease);
+            } catch (Exception e) {
+                // Not valid species or database not available, responses are not cached
+                logger.debug("Data release of '{}' not found: {}", key, e.getMessage());
+                return null;
+            }
+        }
+        return dataRelease;
+    }
+
+    ServerProperties getServerProperties() {
+        ServerProperties serverProperties = GenericRestWSServer.cellBaseConfiguration.getServer();
+        return (serverProperties != null) ? serverProperties : new ServerProperties();
+    }
+
+    private synchronized ResponseCache getResponseCache() {
+        if (responseCache == null && getServerProperties().getResponseCacheSize() > 0) {
+            responseCache = new ResponseCache(getServerProperties().getResponseCacheSize() * 1024L * 1024L);
+        }
+        return responseCache;
+    }
+
+    static class DataRelease {
+        private final String id;
+        private final Date lastModified;
+        private volatile long checkedAt;
+
+        DataRelease(String id, Date lastModified) {
+            this.id = id;
+            // HTTP dates have a resolution of seconds
+            this.lastModified = new Date(lastModified.getTime() / 1000 * 1000);
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static class CachedResponse {
+        private final byte[] body;
+        private final MediaType mediaType;
+
+        CachedResponse(byte[] body, MediaType mediaType) {
+            this.body = body;
+            this.mediaType = mediaType;
+        }
+    }
+
+    /**
+     * LRU cache of serialized responses bounded by the total number of bytes.
+     */
+    private static class ResponseCache {
+        private final long maxBytes;
+        private long bytes;
+        private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+        ResponseCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized CachedResponse get(String etag) {
+            return responses.get(etag);
+        }
+
+        synchronized void put(String etag, CachedResponse cachedResponse) {
+            // Responses bigger than a tenth of the cache would evict too many entries
+            if (cachedResponse.body.length > maxBytes / 10) {
+                return;
+            }
+            CachedResponse previous = responses.put(etag, cachedResponse);
+            if (previous != null) {
+                bytes -= previous.body.length;
+            }
+            bytes += cachedResponse.body.length;
+            Iterator<CachedResponse> iterator = responses.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+    }
+}
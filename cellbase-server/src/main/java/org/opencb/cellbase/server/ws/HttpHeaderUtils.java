@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Parsing of the 'Accept' and 'Accept-Encoding' request headers.
+ */
+final class HttpHeaderUtils {
+
+    private HttpHeaderUtils() {
+    }
+
+    /**
+     * Whether a value is explicitly accepted, e.g. 'gzip' in 'Accept-Encoding: deflate, gzip;q=0.5'. Values with q=0 are
+     * refused as stated by RFC 7231, wildcards are not taken into account.
+     * @param header value of the header, may be null
+     * @param value media type or encoding, compared ignoring case
+     * @return true if the header lists the value with a quality greater than 0
+     */
+    static boolean isAccepted(String header, String value) {
+        if (StringUtils.isEmpty(header)) {
+            return false;
+        }
+        for (String element : header.split(",")) {
+            String[] parameters = element.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase(value)) {
+                continue;
+            }
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+/**
+ * Conversion of the common REST query params into QueryOptions.
+ */
+final class QueryParamUtils {
+
+    private QueryParamUtils() {
+    }
+
+    /**
+     * Counting the total number of results needs an extra query to the database, so it is only run when 'count=true'.
+     * 'skipCount=true' skips it even then.
+     * @param queryOptions options the COUNT and SKIP_COUNT keys are put in
+     * @param count value of the 'count' query param, may be null
+     * @param skipCount value of the 'skipCount' query param, may be null
+     */
+    static void putCountOptions(QueryOptions queryOptions, String count, String skipCount) {
+        boolean countResults = StringUtils.isNotBlank(count) && Boolean.parseBoolean(count);
+        boolean skipCountResults = StringUtils.isNotBlank(skipCount) && Boolean.parseBoolean(skipCount);
+        queryOptions.put(QueryOptions.SKIP_COUNT, !countResults || skipCountResults);
+        queryOptions.put(QueryOptions.COUNT, countResults);
+    }
+}
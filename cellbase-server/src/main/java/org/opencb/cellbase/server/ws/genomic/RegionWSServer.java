@@ -762,11 +762,14 @@ public class RegionWSServer extends GenericRestWSServer {
             RegulationDBAdaptor regulationDBAdaptor = dbAdaptorFactory.getRegulationDBAdaptor(this.species, this.assembly);
 
             if (hasHistogramQueryParam()) {
-                List<Query> queries = createQueries(chrRegionId, GeneDBAdaptor.QueryParams.REGION.key());
+                List<Query> queries = createQueries(chrRegionId, RegulationDBAdaptor.QueryParams.REGION.key(),
+                        RegulationDBAdaptor.QueryParams.FEATURE_TYPE.key(),
+                        RegulationDBAdaptor.FeatureType.TF_binding_site + ","
+                                + RegulationDBAdaptor.FeatureType.TF_binding_site_motif);
                 List<QueryResult> queryResults = regulationDBAdaptor.getIntervalFrequencies(queries,
                         getHistogramIntervalSize(), queryOptions);
                 for (int i = 0; i < queries.size(); i++) {
-                    queryResults.get(i).setId((String) query.get(GeneDBAdaptor.QueryParams.REGION.key()));
+                    queryResults.get(i).setId((String) queries.get(i).get(RegulationDBAdaptor.QueryParams.REGION.key()));
                 }
                 return createOkResponse(queryResults);
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.grpc;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.protobuf.VariantAnnotationProto;
+import org.opencb.cellbase.core.grpc.service.QueryResponseModel;
+import org.opencb.commons.datastore.core.QueryResponse;
+import org.opencb.commons.datastore.core.QueryResult;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ProtoConverterUtilsTest {
+
+    @Test
+    public void createQueryResponse() throws Exception {
+        // Intergenic variant, fields not set are null
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setChromosome("1");
+        variantAnnotation.setStart(1000);
+        variantAnnotation.setReference("A");
+        variantAnnotation.setAlternate("T");
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setSequenceOntologyTerms(Collections.singletonList(new SequenceOntologyTerm("SO:0001628",
+                "intergenic_variant")));
+        variantAnnotation.setConsequenceTypes(Collections.singletonList(consequenceType));
+
+        QueryResponse<VariantAnnotation> queryResponse = new QueryResponse<>("v4", 3, null, null, null,
+                Collections.singletonList(new QueryResult<>("1:1000:A:T", 1, 1, 1, null, null,
+                        Collections.singletonList(variantAnnotation))));
+        QueryResponseModel.QueryResponse protoQueryResponse = QueryResponseModel.QueryResponse.parseFrom(
+                ProtoConverterUtils.createQueryResponse(queryResponse, "{\"limit\":10}").toByteArray());
+
+        assertEquals("v4", protoQueryResponse.getApiVersion());
+        assertEquals("{\"limit\":10}", protoQueryResponse.getQueryOptions());
+        assertEquals(1, protoQueryResponse.getResponseCount());
+        QueryResponseModel.QueryResult queryResult = protoQueryResponse.getResponse(0);
+        assertEquals("1:1000:A:T", queryResult.getId());
+        assertEquals(1, queryResult.getResultCount());
+        VariantAnnotationProto.VariantAnnotation protoAnnotation = queryResult.getResult(0)
+                .unpack(VariantAnnotationProto.VariantAnnotation.class);
+        assertEquals("1", protoAnnotation.getChromosome());
+        assertEquals(1000, protoAnnotation.getStart());
+        assertEquals("", protoAnnotation.getId());
+        assertEquals("intergenic_variant", protoAnnotation.getConsequenceTypes(0).getSequenceOntologyTerms(0).getName());
+        assertFalse(protoAnnotation.getConsequenceTypes(0).hasProteinVariantAnnotation());
+    }
+
+    @Test
+    public void createQueryResponseWithoutProtoModel() {
+        QueryResponse<Document> queryResponse = new QueryResponse<>("v4", 3, null, null, null,
+                Collections.singletonList(new QueryResult<>("BRCA2", 1, 1, 1, null, null,
+                        Collections.singletonList(new Document("id", "ENSG00000139618")))));
+        assertNull(ProtoConverterUtils.createQueryResponse(queryResponse, null));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import org.junit.Test;
+import org.opencb.cellbase.core.config.ServerProperties;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.*;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the filter on request and response contexts holding just what it reads, as the resources of a species would.
+ */
+public class HttpCacheFilterTest {
+
+    private static final String PATH = "v4/hsapiens/feature/gene/BRCA2/info";
+    private static final String OK_BODY = "{\"response\":[{\"id\":\"BRCA2\"}]}";
+    private static final String ERROR_BODY = "{\"error\":\"Database not available\",\"response\":[]}";
+
+    @Test
+    public void cacheHeaders() throws Exception {
+        HttpCacheFilter filter = new TestHttpCacheFilter(new ServerProperties(600, 0));
+        Request request = new Request(PATH, null);
+        filter.filter(request.context);
+        assertNull(request.abortResponse);
+
+        MultivaluedMap<String, Object> headers = respond(filter, request, OK_BODY);
+        assertNotNull(headers.getFirst(HttpHeaders.ETAG));
+        assertEquals(new Date(0), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+        assertEquals(600, ((CacheControl) headers.getFirst(HttpHeaders.CACHE_CONTROL)).getMaxAge());
+        assertEquals(HttpHeaders.ACCEPT, headers.getFirst(HttpHeaders.VARY));
+    }
+
+    @Test
+    public void notModified() throws Exception {
+        HttpCacheFilter filter = new TestHttpCacheFilter(new ServerProperties(600, 0));
+        Request request = new Request(PATH, null);
+        filter.filter(request.context);
+        String etag = ((EntityTag) respond(filter, request, OK_BODY).getFirst(HttpHeaders.ETAG)).getValue();
+
+        Request conditionalRequest = new Request(PATH, "\"" + etag + "\"");
+        filter.filter(conditionalRequest.context);
+        assertNotNull(conditionalRequest.abortResponse);
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), conditionalRequest.abortResponse.getStatus());
+        assertEquals(etag, conditionalRequest.abortResponse.getEntityTag().getValue());
+        assertEquals(600, ((CacheControl) conditionalRequest.abortResponse.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL))
+                .getMaxAge());
+
+        // Any other request gets its own ETag
+        Request otherRequest = new Request("v4/hsapiens/feature/gene/BRCA1/info", "\"" + etag + "\"");
+        filter.filter(otherRequest.context);
+        assertNull(otherRequest.abortResponse);
+    }
+
+    @Test
+    public void responseCache() throws Exception {
+        HttpCacheFilter filter = new TestHttpCacheFilter(new ServerProperties(600, 1));
+        Request request = new Request(PATH, null);
+        filter.filter(request.context);
+        respond(filter, request, OK_BODY);
+
+        Request cachedRequest = new Request(PATH, null);
+        filter.filter(cachedRequest.context);
+        assertNotNull(cachedRequest.abortResponse);
+        assertEquals(Response.Status.OK.getStatusCode(), cachedRequest.abortResponse.getStatus());
+        assertArrayEquals(OK_BODY.getBytes(StandardCharsets.UTF_8), (byte[]) cachedRequest.abortResponse.getEntity());
+    }
+
+    @Test
+    public void errorResponseNotCached() throws Exception {
+        HttpCacheFilter filter = new TestHttpCacheFilter(new ServerProperties(600, 1));
+        Request request = new Request(PATH, null);
+        filter.filter(request.context);
+        // Set by GenericRestWSServer when the QueryResponse has an error
+        request.context.setProperty(HttpCacheFilter.NOT_CACHEABLE_PROPERTY, true);
+        MultivaluedMap<String, Object> headers = respond(filter, request, ERROR_BODY);
+        assertNull(headers.getFirst(HttpHeaders.ETAG));
+        assertNull(headers.getFirst(HttpHeaders.CACHE_CONTROL));
+
+        Request nextRequest = new Request(PATH, null);
+        filter.filter(nextRequest.context);
+        assertNull(nextRequest.abortResponse);
+    }
+
+    private MultivaluedMap<String, Object> respond(HttpCacheFilter filter, Request request, String body) throws Exception {
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ContainerResponseContext responseContext = (ContainerResponseContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ContainerResponseContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStatus":
+                            return Response.Status.OK.getStatusCode();
+                        case "getHeaders":
+                            return headers;
+                        case "getEntity":
+                            return body;
+                        case "getMediaType":
+                            return MediaType.APPLICATION_JSON_TYPE;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        filter.filter(request.context, responseContext);
+        return headers;
+    }
+
+    private static class TestHttpCacheFilter extends HttpCacheFilter {
+        private final ServerProperties serverProperties;
+
+        TestHttpCacheFilter(ServerProperties serverProperties) {
+            this.serverProperties = serverProperties;
+        }
+
+        @Override
+        DataRelease getDataRelease(String version, String species, String assembly) {
+            return new DataRelease(version + "_" + species, new Date(0));
+        }
+
+        @Override
+        ServerProperties getServerProperties() {
+            return serverProperties;
+        }
+    }
+
+    /**
+     * GET request of a species resource, the response the filter aborts the request with, if any, is kept.
+     */
+    private static class Request {
+        private final ContainerRequestContext context;
+        private final Map<String, Object> properties = new HashMap<>();
+        private Response abortResponse;
+
+        Request(String path, String ifNoneMatch) {
+            MultivaluedMap<String, String> pathParameters = new MultivaluedHashMap<>();
+            pathParameters.putSingle("version", "v4");
+            pathParameters.putSingle("species", "hsapiens");
+            MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<>();
+            queryParameters.putSingle("exclude", "transcripts");
+            UriInfo uriInfo = (UriInfo) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{UriInfo.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getPath":
+                                return path;
+                            case "getPathParameters":
+                                return pathParameters;
+                            case "getQueryParameters":
+                                return queryParameters;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+
+            context = (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[]{ContainerRequestContext.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getMethod":
+                                return HttpMethod.GET;
+                            case "getUriInfo":
+                                return uriInfo;
+                            case "getHeaderString":
+                                return HttpHeaders.IF_NONE_MATCH.equals(args[0]) ? ifNoneMatch : null;
+                            case "getProperty":
+                                return properties.get(args[0]);
+                            case "setProperty":
+                                properties.put((String) args[0], args[1]);
+                                return null;
+                            case "abortWith":
+                                abortResponse = (Response) args[0];
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HttpHeaderUtilsTest {
+
+    @Test
+    public void isAccepted() {
+        assertTrue(HttpHeaderUtils.isAccepted("gzip", "gzip"));
+        assertTrue(HttpHeaderUtils.isAccepted("deflate, GZIP;q=0.5", "gzip"));
+        assertTrue(HttpHeaderUtils.isAccepted("gzip ; q=1.0, identity", "gzip"));
+        assertFalse(HttpHeaderUtils.isAccepted("gzip;q=0", "gzip"));
+        assertFalse(HttpHeaderUtils.isAccepted("identity, gzip; q=0.000", "gzip"));
+        assertFalse(HttpHeaderUtils.isAccepted("x-gzip, deflate", "gzip"));
+        assertFalse(HttpHeaderUtils.isAccepted(null, "gzip"));
+
+        assertTrue(HttpHeaderUtils.isAccepted("avro/binary, application/json", "avro/binary"));
+        assertFalse(HttpHeaderUtils.isAccepted("application/json, avro/binary;q=0", "avro/binary"));
+    }
+}
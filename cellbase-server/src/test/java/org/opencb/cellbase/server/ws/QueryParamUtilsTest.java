@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.ws;
+
+import org.junit.Test;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import static org.junit.Assert.*;
+
+public class QueryParamUtilsTest {
+
+    @Test
+    public void putCountOptions() {
+        // Not counted by default
+        assertCount(false, null, null);
+        assertCount(false, "false", "false");
+        assertCount(false, "", "");
+
+        assertCount(true, "true", null);
+        assertCount(true, "true", "false");
+        assertCount(false, "true", "true");
+        assertCount(false, null, "true");
+    }
+
+    private static void assertCount(boolean expected, String count, String skipCount) {
+        QueryOptions queryOptions = new QueryOptions();
+        QueryParamUtils.putCountOptions(queryOptions, count, skipCount);
+        assertEquals(expected, queryOptions.getBoolean(QueryOptions.COUNT) && !queryOptions.getBoolean(QueryOptions.SKIP_COUNT));
+        assertEquals(!expected, queryOptions.getBoolean(QueryOptions.SKIP_COUNT));
+    }
+}